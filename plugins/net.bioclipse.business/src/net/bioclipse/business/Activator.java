@@ -33,6 +33,10 @@ public class Activator extends AbstractUIPlugin {
 
     private ServiceTracker javaBioclipseManagerTracker;
     private ServiceTracker javaScriptBioclipseManagerTracker;
+    private ServiceTracker javaPerfManagerTracker;
+    private ServiceTracker javaScriptPerfManagerTracker;
+    private ServiceTracker javaTableManagerTracker;
+    private ServiceTracker javaScriptTableManagerTracker;
 
     public Activator() {}
 
@@ -51,6 +55,30 @@ public class Activator extends AbstractUIPlugin {
             null
         );
         javaScriptBioclipseManagerTracker.open();
+        javaPerfManagerTracker = new ServiceTracker(
+            context, 
+            IJavaPerfManager.class.getName(), 
+            null
+        );
+        javaPerfManagerTracker.open();
+        javaScriptPerfManagerTracker = new ServiceTracker(
+            context, 
+            IJavaScriptPerfManager.class.getName(), 
+            null
+        );
+        javaScriptPerfManagerTracker.open();
+        javaTableManagerTracker = new ServiceTracker(
+            context, 
+            IJavaTableManager.class.getName(), 
+            null
+        );
+        javaTableManagerTracker.open();
+        javaScriptTableManagerTracker = new ServiceTracker(
+            context, 
+            IJavaScriptTableManager.class.getName(), 
+            null
+        );
+        javaScriptTableManagerTracker.open();
     }
 
     public void stop(BundleContext context) throws Exception {
@@ -89,4 +117,60 @@ public class Activator extends AbstractUIPlugin {
         }
         return manager;
     }
+
+    public IPerfManager getJavaPerfManager() {
+        IPerfManager manager = null;
+        try {
+            manager = (IPerfManager) 
+                      javaPerfManagerTracker.waitForService(1000*10);
+        } catch (InterruptedException e) {
+            LogUtils.debugTrace(logger, e);
+        }
+        if (manager == null) {
+            throw new IllegalStateException("Could not get the perf manager");
+        }
+        return manager;
+    }
+
+    public IPerfManager getJavaScriptPerfManager() {
+        IPerfManager manager = null;
+        try {
+            manager = (IPerfManager) 
+                      javaScriptPerfManagerTracker.waitForService(1000*10);
+        } catch (InterruptedException e) {
+            LogUtils.debugTrace(logger, e);
+        }
+        if (manager == null) {
+            throw new IllegalStateException("Could not get the perf manager");
+        }
+        return manager;
+    }
+
+    public ITableManager getJavaTableManager() {
+        ITableManager manager = null;
+        try {
+            manager = (ITableManager) 
+                      javaTableManagerTracker.waitForService(1000*10);
+        } catch (InterruptedException e) {
+            LogUtils.debugTrace(logger, e);
+        }
+        if (manager == null) {
+            throw new IllegalStateException("Could not get the table manager");
+        }
+        return manager;
+    }
+
+    public ITableManager getJavaScriptTableManager() {
+        ITableManager manager = null;
+        try {
+            manager = (ITableManager) 
+                      javaScriptTableManagerTracker.waitForService(1000*10);
+        } catch (InterruptedException e) {
+            LogUtils.debugTrace(logger, e);
+        }
+        if (manager == null) {
+            throw new IllegalStateException("Could not get the table manager");
+        }
+        return manager;
+    }
 }
@@ -25,6 +25,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.BulkInvoker;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 import org.eclipse.core.resources.IFile;
@@ -294,4 +296,23 @@ public class BioclipsePlatformManager implements IBioclipseManager {
             throw new BioclipseException(e.getMessage(), e);
         }
     }
+
+    public List<Object> invokeAll( Object manager, 
+                                   String method, 
+                                   List<?> arguments,
+                                   IProgressMonitor monitor )
+                        throws BioclipseException {
+        return BulkInvoker.invokeAll( manager, method, arguments, 
+                                      null, monitor );
+    }
+
+    public void invokeAll( Object manager, 
+                           String method, 
+                           List<?> arguments,
+                           IReturner<Object> returner,
+                           IProgressMonitor monitor )
+                throws BioclipseException {
+        BulkInvoker.invokeAll( manager, method, arguments, 
+                               returner, monitor );
+    }
 }
@@ -10,9 +10,13 @@
  ******************************************************************************/
 package net.bioclipse.business;
 
+import java.util.List;
+
 import net.bioclipse.core.PublishedClass;
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.managers.business.IBioclipseManager;
 
 @PublishedClass("The Bioclipse Platform manager is used for providing some " +
@@ -90,4 +94,24 @@ public interface IBioclipsePlatformManager extends IBioclipseManager {
     public void requireVersion( String lowerVersionBound,
                                    String upperVersionBound )
                    throws BioclipseException;
+
+    @PublishedMethod(
+        params="Object manager, String method, List<?> arguments",
+        methodSummary="Calls the method with the given name on the given " +
+        		"manager once for every item in the list, spreading the " +
+        		"calls over all processors. An item that is a list holds " +
+        		"all arguments for one call, anything else is the only " +
+        		"argument. Returns the results in the same order as the " +
+        		"items, e.g. bioclipse.invokeAll( cdk, \"calculateMass\", " +
+        		"molecules )"
+    )
+    public List<Object> invokeAll( Object manager, 
+                                   String method, 
+                                   List<?> arguments )
+                        throws BioclipseException;
+
+    public BioclipseJob<Object> invokeAll( Object manager, 
+                                           String method, 
+                                           List<?> arguments,
+                                           BioclipseJobUpdateHook<Object> h );
 }
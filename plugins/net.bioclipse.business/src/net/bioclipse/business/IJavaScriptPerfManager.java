@@ -0,0 +1,19 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: Bioclipse Project <http://www.bioclipse.net>
+ ******************************************************************************/
+package net.bioclipse.business;
+
+
+public interface IJavaScriptPerfManager extends IPerfManager {
+
+}
@@ -0,0 +1,70 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.business;
+
+import net.bioclipse.core.PublishedClass;
+import net.bioclipse.core.PublishedMethod;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+/**
+ * @author agent
+ */
+@PublishedClass("The perf manager shows how many times manager methods " +
+		"have been called and how long the calls took.")
+public interface IPerfManager extends IBioclipseManager {
+
+    @PublishedMethod(
+        methodSummary="Returns a table with number of calls, number of " +
+        		"failed calls, median, 99th percentile and longest call time " +
+        		"and the mean time spent waiting to run for all manager " +
+        		"methods called since start or since the last reset. Times " +
+        		"are in milliseconds."
+    )
+    public String report();
+
+    @PublishedMethod(
+        params="int n",
+        methodSummary="Returns the same table as report but only for the " +
+        		"n manager methods that have taken most time in total, the " +
+        		"most expensive first."
+    )
+    public String top( int n );
+
+    @PublishedMethod(
+        methodSummary="Returns how many results of memoized manager " +
+        		"methods are held, how many calls were answered with a held " +
+        		"result and how many results have been dropped."
+    )
+    public String memoization();
+
+    @PublishedMethod(
+        methodSummary="Returns how many file paths given to manager " +
+        		"methods are remembered as resolved, how many were found " +
+        		"resolved and how many have been forgotten because their " +
+        		"files changed."
+    )
+    public String pathResolution();
+
+    @PublishedMethod(
+        methodSummary="Returns how many parsed models are held and how " +
+        		"much they weigh, how many times a held model was found and " +
+        		"how many models have been dropped."
+    )
+    public String models();
+
+    @PublishedMethod(
+        methodSummary="Forgets all calls recorded so far."
+    )
+    public void reset();
+}
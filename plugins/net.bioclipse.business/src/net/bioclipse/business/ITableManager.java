@@ -0,0 +1,170 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.business;
+
+import net.bioclipse.core.PublishedClass;
+import net.bioclipse.core.PublishedMethod;
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IDataset;
+import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+/**
+ * @author agent
+ */
+@PublishedClass("The table manager filters, sorts, groups and joins " +
+		"matrices and datasets using all processors, much faster than " +
+		"going through them row by row in a script.")
+public interface ITableManager extends IBioclipseManager {
+
+    @PublishedMethod(
+        params="IStringMatrix matrix, String column, String operator, " +
+        		"String value",
+        methodSummary="Returns the rows where the value in the column " +
+        		"compares to the given value as the operator says. The " +
+        		"operator is one of =, !=, <, <=, >, >=, contains and " +
+        		"matches, the last taking a regular expression. Values are " +
+        		"compared as numbers when both are numbers."
+    )
+    public IStringMatrix filter( IStringMatrix matrix,
+                                 String column,
+                                 String operator,
+                                 String value )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IStringMatrix matrix, String columns",
+        methodSummary="Returns the columns given as a comma separated " +
+        		"list of names, in that order."
+    )
+    public IStringMatrix select( IStringMatrix matrix, String columns )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IStringMatrix matrix, String column, boolean ascending",
+        methodSummary="Returns the rows sorted by the values in the " +
+        		"column, as numbers if they all are numbers."
+    )
+    public IStringMatrix sort( IStringMatrix matrix,
+                               String column,
+                               boolean ascending )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IStringMatrix matrix, String keyColumn, String aggregate, " +
+        		"String valueColumn",
+        methodSummary="Groups the rows by the value in keyColumn and " +
+        		"returns one row per group with that value and the " +
+        		"aggregate, one of count, sum, mean, min and max, of the " +
+        		"values in valueColumn."
+    )
+    public IStringMatrix groupBy( IStringMatrix matrix,
+                                  String keyColumn,
+                                  String aggregate,
+                                  String valueColumn )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IStringMatrix left, String leftColumn, IStringMatrix right, " +
+        		"String rightColumn",
+        methodSummary="Returns the rows of left combined with the rows of " +
+        		"right having the same value in rightColumn as they have in " +
+        		"leftColumn."
+    )
+    public IStringMatrix join( IStringMatrix left,
+                               String leftColumn,
+                               IStringMatrix right,
+                               String rightColumn )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IStringMatrix left, String leftColumn, IStringMatrix right, " +
+        		"String rightColumn",
+        methodSummary="Returns the same rows as join and the rows of left " +
+        		"without a match in right, with empty values for right."
+    )
+    public IStringMatrix leftJoin( IStringMatrix left,
+                                   String leftColumn,
+                                   IStringMatrix right,
+                                   String rightColumn )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset dataset, String column, String operator, " +
+        		"String value",
+        methodSummary="Returns the rows of a dense or sparse dataset where " +
+        		"the value in the column compares to the given value as " +
+        		"the operator says, as for filter."
+    )
+    public IDataset filterDataset( IDataset dataset,
+                                   String column,
+                                   String operator,
+                                   String value )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset dataset, String columns",
+        methodSummary="Returns the columns of a dense or sparse dataset " +
+        		"given as a comma separated list of names."
+    )
+    public IDataset selectDataset( IDataset dataset, String columns )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset dataset, String column, boolean ascending",
+        methodSummary="Returns the rows of a dense or sparse dataset " +
+        		"sorted by the values in the column."
+    )
+    public IDataset sortDataset( IDataset dataset,
+                                 String column,
+                                 boolean ascending )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset dataset, String keyColumn, String aggregate, " +
+        		"String valueColumn",
+        methodSummary="Groups the rows of a dense or sparse dataset by " +
+        		"the value in keyColumn, as for groupBy."
+    )
+    public IStringMatrix groupByDataset( IDataset dataset,
+                                         String keyColumn,
+                                         String aggregate,
+                                         String valueColumn )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset left, String leftColumn, IDataset right, " +
+        		"String rightColumn",
+        methodSummary="Returns the rows of left combined with the rows of " +
+        		"right having the same value in rightColumn as they have in " +
+        		"leftColumn. Both datasets must be dense or both sparse."
+    )
+    public IDataset joinDatasets( IDataset left,
+                                  String leftColumn,
+                                  IDataset right,
+                                  String rightColumn )
+        throws BioclipseException;
+
+    @PublishedMethod(
+        params="IDataset left, String leftColumn, IDataset right, " +
+        		"String rightColumn",
+        methodSummary="Returns the same rows as joinDatasets and the rows " +
+        		"of left without a match in right, with no values for right."
+    )
+    public IDataset leftJoinDatasets( IDataset left,
+                                      String leftColumn,
+                                      IDataset right,
+                                      String rightColumn )
+        throws BioclipseException;
+}
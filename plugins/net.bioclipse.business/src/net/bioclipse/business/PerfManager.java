@@ -0,0 +1,137 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.business;
+
+import java.util.List;
+
+import net.bioclipse.core.BioclipseStore;
+import net.bioclipse.core.ModelDiskCache;
+import net.bioclipse.core.PathResolutionCache;
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.managers.business.LatencyHistogram;
+import net.bioclipse.managers.business.ManagerMethodStatistics;
+import net.bioclipse.managers.business.MethodStatistics;
+import net.bioclipse.managers.business.ResultCache;
+
+/**
+ * Presents the figures recorded in {@link ManagerMethodStatistics},
+ * {@link ResultCache}, {@link PathResolutionCache} and
+ * {@link BioclipseStore}.
+ * 
+ * @author agent
+ */
+public class PerfManager implements IBioclipseManager {
+
+    private static final String NEWLINE 
+        = System.getProperty( "line.separator" );
+    private static final String ROW = "%-40s %8s %8s %10s %10s %10s %10s";
+
+    public String getManagerName() {
+        return "perf";
+    }
+
+    public String report() {
+        return format( ManagerMethodStatistics.getInstance().getAll() );
+    }
+
+    public String top( int n ) {
+        return format( ManagerMethodStatistics.getInstance().getTop( n ) );
+    }
+
+    public String memoization() {
+        ResultCache cache = ResultCache.getInstance();
+        return String.format( "%d results held, %d hits, %d misses "
+                              + "(%.1f%% hit rate), %d evicted, "
+                              + "%d invalidated",
+                              cache.size(),
+                              cache.getHits(),
+                              cache.getMisses(),
+                              cache.getHitRate() * 100,
+                              cache.getEvictions(),
+                              cache.getInvalidations() );
+    }
+
+    public String pathResolution() {
+        PathResolutionCache cache = ResourcePathTransformer.getCache();
+        return String.format( "%d paths held, %d hits, %d misses "
+                              + "(%.1f%% hit rate), %d invalidated",
+                              cache.size(),
+                              cache.getHits(),
+                              cache.getMisses(),
+                              cache.getHitRate() * 100,
+                              cache.getInvalidations() );
+    }
+
+    public String models() {
+        BioclipseStore store = BioclipseStore.instance;
+        String result
+            = String.format( "%d models held weighing %d of at most %d "
+                             + "bytes, %d hits, %d misses "
+                             + "(%.1f%% hit rate), %d evicted, "
+                             + "%d invalidated",
+                             store.size(),
+                             store.getWeight(),
+                             store.getMaxWeight(),
+                             store.getHits(),
+                             store.getMisses(),
+                             store.getHitRate() * 100,
+                             store.getEvictions(),
+                             store.getInvalidations() );
+        ModelDiskCache disk = store.getDiskCache();
+        if ( disk != null ) {
+            result += String.format( NEWLINE + "%d models on disk taking %d "
+                                     + "bytes, %d hits, %d misses, "
+                                     + "%d written, %d unreadable",
+                                     disk.getEntries(),
+                                     disk.getSize(),
+                                     disk.getHits(),
+                                     disk.getMisses(),
+                                     disk.getWrites(),
+                                     disk.getCorrupted() );
+        }
+        return result;
+    }
+
+    public void reset() {
+        ManagerMethodStatistics.getInstance().reset();
+        ResultCache.getInstance().resetStatistics();
+        ResourcePathTransformer.getCache().resetStatistics();
+        BioclipseStore.instance.resetStatistics();
+    }
+
+    private String format( List<MethodStatistics> statistics ) {
+        StringBuilder result = new StringBuilder();
+        result.append( String.format( ROW, "method", "calls", "errors", 
+                                      "p50", "p99", "max", "queued" ) );
+        for ( MethodStatistics s : statistics ) {
+            LatencyHistogram latencies = s.getLatencies();
+            result.append( NEWLINE )
+                  .append( String.format( 
+                      ROW, 
+                      s.getName(), 
+                      s.getCalls(), 
+                      s.getErrors(),
+                      millis( latencies.getPercentile( 50 ) ),
+                      millis( latencies.getPercentile( 99 ) ),
+                      millis( latencies.getMax() ),
+                      millis( s.getQueueTimes().getMean() ) ) );
+        }
+        return result.toString();
+    }
+
+    private static String millis( double micros ) {
+        return String.format( "%.3f", micros / 1000 );
+    }
+}
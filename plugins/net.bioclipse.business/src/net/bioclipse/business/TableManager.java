@@ -0,0 +1,266 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.business;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.DenseDataset;
+import net.bioclipse.core.domain.IDataset;
+import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.core.domain.SparseDataset;
+import net.bioclipse.core.query.Aggregate;
+import net.bioclipse.core.query.Condition;
+import net.bioclipse.core.query.TableQueries;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+/**
+ * Makes the queries of {@link TableQueries} available to scripts.
+ * 
+ * @author agent
+ */
+public class TableManager implements IBioclipseManager {
+
+    public String getManagerName() {
+        return "table";
+    }
+
+    public IStringMatrix filter( IStringMatrix matrix,
+                                 String column,
+                                 String operator,
+                                 String value ) throws BioclipseException {
+        try {
+            return TableQueries.filter( matrix,
+                                        column,
+                                        Condition.of( operator, value ) );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+        catch ( IllegalAccessError e ) {
+            throw noColumn( column );
+        }
+    }
+
+    public IStringMatrix select( IStringMatrix matrix, String columns )
+                         throws BioclipseException {
+        String[] names = split( columns );
+        try {
+            return TableQueries.select( matrix, names );
+        }
+        catch ( IllegalAccessError e ) {
+            throw noColumn( columns );
+        }
+    }
+
+    public IStringMatrix sort( IStringMatrix matrix,
+                               String column,
+                               boolean ascending )
+                         throws BioclipseException {
+        try {
+            return TableQueries.sort( matrix, column, ascending );
+        }
+        catch ( IllegalAccessError e ) {
+            throw noColumn( column );
+        }
+    }
+
+    public IStringMatrix groupBy( IStringMatrix matrix,
+                                  String keyColumn,
+                                  String aggregate,
+                                  String valueColumn )
+                         throws BioclipseException {
+        try {
+            return TableQueries.groupBy( matrix,
+                                         keyColumn,
+                                         Aggregate.parse( aggregate ),
+                                         valueColumn );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+        catch ( IllegalAccessError e ) {
+            throw noColumn( keyColumn + " or " + valueColumn );
+        }
+    }
+
+    public IStringMatrix join( IStringMatrix left,
+                               String leftColumn,
+                               IStringMatrix right,
+                               String rightColumn )
+                         throws BioclipseException {
+        return join( left, leftColumn, right, rightColumn, false );
+    }
+
+    public IStringMatrix leftJoin( IStringMatrix left,
+                                   String leftColumn,
+                                   IStringMatrix right,
+                                   String rightColumn )
+                         throws BioclipseException {
+        return join( left, leftColumn, right, rightColumn, true );
+    }
+
+    private IStringMatrix join( IStringMatrix left,
+                                String leftColumn,
+                                IStringMatrix right,
+                                String rightColumn,
+                                boolean keepUnmatched )
+                          throws BioclipseException {
+        try {
+            return TableQueries.join( left, leftColumn,
+                                      right, rightColumn,
+                                      keepUnmatched );
+        }
+        catch ( IllegalAccessError e ) {
+            throw noColumn( leftColumn + " or " + rightColumn );
+        }
+    }
+
+    public IDataset filterDataset( IDataset dataset,
+                                   String column,
+                                   String operator,
+                                   String value )
+                    throws BioclipseException {
+        try {
+            Condition condition = Condition.of( operator, value );
+            if ( dataset instanceof DenseDataset ) {
+                return TableQueries.filter( (DenseDataset) dataset,
+                                            column,
+                                            condition );
+            }
+            return TableQueries.filter( sparse( dataset ),
+                                        column,
+                                        condition );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public IDataset selectDataset( IDataset dataset, String columns )
+                    throws BioclipseException {
+        String[] names = split( columns );
+        try {
+            if ( dataset instanceof DenseDataset ) {
+                return TableQueries.select( (DenseDataset) dataset, names );
+            }
+            return TableQueries.select( sparse( dataset ), names );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public IDataset sortDataset( IDataset dataset,
+                                 String column,
+                                 boolean ascending )
+                    throws BioclipseException {
+        try {
+            if ( dataset instanceof DenseDataset ) {
+                return TableQueries.sort( (DenseDataset) dataset,
+                                          column,
+                                          ascending );
+            }
+            return TableQueries.sort( sparse( dataset ), column, ascending );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public IStringMatrix groupByDataset( IDataset dataset,
+                                         String keyColumn,
+                                         String aggregate,
+                                         String valueColumn )
+                         throws BioclipseException {
+        try {
+            Aggregate a = Aggregate.parse( aggregate );
+            if ( dataset instanceof DenseDataset ) {
+                return TableQueries.groupBy( (DenseDataset) dataset,
+                                             keyColumn,
+                                             a,
+                                             valueColumn );
+            }
+            return TableQueries.groupBy( sparse( dataset ),
+                                         keyColumn,
+                                         a,
+                                         valueColumn );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    public IDataset joinDatasets( IDataset left,
+                                  String leftColumn,
+                                  IDataset right,
+                                  String rightColumn )
+                    throws BioclipseException {
+        return joinDatasets( left, leftColumn, right, rightColumn, false );
+    }
+
+    public IDataset leftJoinDatasets( IDataset left,
+                                      String leftColumn,
+                                      IDataset right,
+                                      String rightColumn )
+                    throws BioclipseException {
+        return joinDatasets( left, leftColumn, right, rightColumn, true );
+    }
+
+    private IDataset joinDatasets( IDataset left,
+                                   String leftColumn,
+                                   IDataset right,
+                                   String rightColumn,
+                                   boolean keepUnmatched )
+                     throws BioclipseException {
+        try {
+            if ( left instanceof DenseDataset
+                 && right instanceof DenseDataset ) {
+                return TableQueries.join( (DenseDataset) left, leftColumn,
+                                          (DenseDataset) right, rightColumn,
+                                          keepUnmatched );
+            }
+            if ( left instanceof DenseDataset
+                 || right instanceof DenseDataset ) {
+                throw new BioclipseException(
+                    "Can not join a dense dataset with a sparse one" );
+            }
+            return TableQueries.join( sparse( left ), leftColumn,
+                                      sparse( right ), rightColumn,
+                                      keepUnmatched );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+    }
+
+    private static SparseDataset sparse( IDataset dataset )
+                                 throws BioclipseException {
+        if ( dataset instanceof SparseDataset ) {
+            return (SparseDataset) dataset;
+        }
+        throw new BioclipseException( "Can not query a dataset of type "
+                                      + dataset.getClass().getSimpleName() );
+    }
+
+    private static String[] split( String columns ) {
+        String[] names = columns.split( "," );
+        for ( int i = 0; i < names.length; i++ ) {
+            names[i] = names[i].trim();
+        }
+        return names;
+    }
+
+    private static BioclipseException noColumn( String column ) {
+        return new BioclipseException( "No column named " + column );
+    }
+}
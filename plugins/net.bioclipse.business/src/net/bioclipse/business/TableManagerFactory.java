@@ -0,0 +1,42 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.business;
+
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExecutableExtension;
+import org.eclipse.core.runtime.IExecutableExtensionFactory;
+
+public class TableManagerFactory implements IExecutableExtension, 
+    IExecutableExtensionFactory {
+    
+    private Object manager;
+
+    public void setInitializationData( IConfigurationElement config,
+                                       String propertyName, 
+                                       Object data ) 
+                throws CoreException {
+        
+        manager = Activator.getDefault().getJavaScriptTableManager();
+        
+        if (manager == null ) {
+            manager = new Object();
+        }
+    }
+
+    public Object create() throws CoreException {
+        return manager;
+    }
+}
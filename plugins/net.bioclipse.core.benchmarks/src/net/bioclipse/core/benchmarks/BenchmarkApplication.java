@@ -0,0 +1,64 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.benchmarks;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks headless, without a workbench, e.g.:
+ * <pre>
+ * eclipse -nosplash -application net.bioclipse.core.benchmarks.benchmarks
+ * </pre>
+ * Any further arguments are passed on to JMH, so for example 
+ * <code>-i 20 javaDispatcher</code> can be used to change the number of 
+ * iterations and choose benchmarks. The benchmarks are run in the same 
+ * virtual machine since they need the running platform, forking is not 
+ * possible.
+ * <p>
+ * JMH is not in the target platform, so this bundle is not part of any
+ * feature and is built from the workspace only. Add the
+ * <code>jmh-core</code> bundle to the target platform and turn on
+ * annotation processing for the project with the
+ * <code>jmh-generator-annprocess</code> jar on the factory path; JMH
+ * generates the benchmark classes and the benchmark list it runs from the
+ * annotations when the project is compiled.
+ *
+ * @author agent
+ */
+public class BenchmarkApplication implements IApplication {
+
+    public Object start( IApplicationContext context ) throws Exception {
+
+        String[] args = (String[]) context.getArguments()
+                                          .get( IApplicationContext
+                                                .APPLICATION_ARGS );
+        OptionsBuilder options = new OptionsBuilder();
+        if ( args != null && args.length > 0 ) {
+            options.parent( new CommandLineOptions( args ) );
+        }
+        else {
+            options.include( ManagerDispatchBenchmark.class.getName() );
+        }
+        options.forks( 0 );
+        new Runner( options.build() ).run();
+        return IApplication.EXIT_OK;
+    }
+
+    public void stop() {
+    }
+}
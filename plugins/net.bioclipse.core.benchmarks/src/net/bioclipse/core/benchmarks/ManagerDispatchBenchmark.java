@@ -0,0 +1,163 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import net.bioclipse.core.Activator;
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.managers.business.JavaManagerDispatcherAdvisor;
+import net.bioclipse.managers.business.JavaManagerMethodDispatcher;
+import net.bioclipse.managers.business.JavaScriptManagerDispatcherAdvisor;
+import net.bioclipse.managers.business.JavaScriptManagerMethodDispatcher;
+import net.bioclipse.managers.tests.IJSTestManager;
+import net.bioclipse.managers.tests.IJTestManager;
+import net.bioclipse.managers.tests.ITestManager;
+import net.bioclipse.managers.tests.TestManager;
+import net.bioclipse.recording.History;
+import net.bioclipse.recording.RecordedMethodPointcutAdvisor;
+import net.bioclipse.recording.RecordingAdvice;
+import net.bioclipse.recording.WrapInProxyAdvice;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.RegexpMethodPointcutAdvisor;
+
+/**
+ * Measures what it costs to call a manager method through the same chain of
+ * advices as the managers get in their Spring configurations: the recording
+ * advisor, the wrap in proxy advice and one of the manager dispatcher 
+ * advisors. The {@link TestManager} from the core tests is used as manager.
+ * Nothing run needs a workbench, but ui jobs and <code>@GuiAction</code> 
+ * methods are left out for that reason.
+ *
+ * @author agent
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+public class ManagerDispatchBenchmark {
+
+    private static final String FILENAME = "benchmark.file";
+    private static final String PATH     = "/Virtual/" + FILENAME;
+
+    private TestManager    manager;
+    private IJTestManager  javaManager;
+    private IJSTestManager javaScriptManager;
+    private IFile          file;
+
+    @Setup
+    public void setUp() throws CoreException {
+        manager = new TestManager();
+        javaManager = (IJTestManager) createProxy( 
+            IJTestManager.class, 
+            new JavaManagerDispatcherAdvisor(), 
+            new JavaManagerMethodDispatcher() );
+        javaScriptManager = (IJSTestManager) createProxy( 
+            IJSTestManager.class, 
+            new JavaScriptManagerDispatcherAdvisor(), 
+            new JavaScriptManagerMethodDispatcher() );
+        
+        file = Activator.getVirtualProject().getFile( new Path(FILENAME) );
+        if ( !file.exists() ) {
+            file.create( new ByteArrayInputStream( "".getBytes() ), 
+                         true, 
+                         new NullProgressMonitor() );
+        }
+    }
+
+    private Object createProxy( Class<? extends ITestManager> managerInterface,
+                                RegexpMethodPointcutAdvisor dispatcherAdvisor,
+                                MethodInterceptor dispatcher ) {
+
+        RecordedMethodPointcutAdvisor recordingAdvisor 
+            = new RecordedMethodPointcutAdvisor();
+        recordingAdvisor.setAdvice( new RecordingAdvice( new History() ) );
+        
+        dispatcherAdvisor.setAdvice( dispatcher );
+        dispatcherAdvisor.setPattern( ".*" );
+        
+        ProxyFactory factory = new ProxyFactory();
+        factory.setTarget( manager );
+        factory.setInterfaces( new Class[] { managerInterface } );
+        factory.addAdvisor( recordingAdvisor );
+        factory.addAdvice( new WrapInProxyAdvice() );
+        factory.addAdvisor( dispatcherAdvisor );
+        return factory.getProxy( getClass().getClassLoader() );
+    }
+
+    @Benchmark
+    public Object directCall() {
+        return manager.getGreeting( "benchmark" );
+    }
+
+    @Benchmark
+    public Object javaDispatcherCall() {
+        return javaManager.getGreeting( "benchmark" );
+    }
+
+    @Benchmark
+    public Object javaScriptDispatcherCall() {
+        return javaScriptManager.getGreeting( "benchmark" );
+    }
+
+    @Benchmark
+    public Object fileConvertingCall() {
+        return javaManager.getPath( PATH );
+    }
+
+    @Benchmark
+    public void returnerCall() {
+        javaScriptManager.getBioObject( file, null );
+    }
+
+    @Benchmark
+    public Object partialReturnJob( final Blackhole blackhole ) 
+                  throws InterruptedException {
+
+        BioclipseJob<?> job = javaManager.getBioObjects( 
+            file, 
+            new BioclipseJobUpdateHook<Object>( "benchmark" ) {
+                @Override
+                public void partialReturn( Object chunk ) {
+                    blackhole.consume( chunk );
+                }
+            } );
+        job.join();
+        return job.getReturnValue();
+    }
+
+    @Benchmark
+    public void jobCall() throws InterruptedException {
+        javaManager.voidJobMethod( PATH ).join();
+    }
+}
@@ -8,6 +8,8 @@
  *****************************************************************************/
 
 package net.bioclipse;
+import net.bioclipse.core.MemoryFileSystemTest;
+import net.bioclipse.core.ModelDiskCacheTest;
 import net.bioclipse.core.ResourcePathTransformerTest;
 import net.bioclipse.managers.tests.AllManagerMethodDispatcherTests;
 
@@ -18,6 +20,8 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(value=Suite.class)
 @SuiteClasses( value = { ResourcePathTransformerTest.class,
+                         ModelDiskCacheTest.class,
+                         MemoryFileSystemTest.class,
                          AllManagerMethodDispatcherTests.class } )
 public class AllCorePluginTestsSuit {
 
@@ -9,7 +9,12 @@
 
 package net.bioclipse;
 
+import net.bioclipse.core.domain.ArrayDenseDatasetTest;
+import net.bioclipse.core.domain.ColumnarStringMatrixTest;
+import net.bioclipse.core.domain.CsrSparseDatasetTest;
+import net.bioclipse.core.domain.MappedStringMatrixTest;
 import net.bioclipse.core.domain.RecordableListTest;
+import net.bioclipse.core.query.TableQueriesTest;
 import net.bioclipse.recording.AllRecordingTests;
 
 import org.junit.runner.RunWith;
@@ -19,6 +24,11 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(value=Suite.class)
 @SuiteClasses( { RecordableListTest.class,
+                 ArrayDenseDatasetTest.class,
+                 CsrSparseDatasetTest.class,
+                 ColumnarStringMatrixTest.class,
+                 MappedStringMatrixTest.class,
+                 TableQueriesTest.class,
                  AllRecordingTests.class } )
 public class AllCoreTestsSuite {
 
@@ -45,4 +45,37 @@ public class BioclipseStoreTest {
         assertSame( model1, BioclipseStore.get( file, key1 ) );
         assertSame( model2, BioclipseStore.get( file, key2 ) );
     }
+
+    @Test
+    public void testHeaviestLeastRecentlyUsedIsDropped() {
+        BioclipseStore store = new BioclipseStore( 10 );
+        IResource a = new MockIFile();
+        IResource b = new MockIFile();
+        IResource c = new MockIFile();
+        store.putModel( a, "model", "A", 4 );
+        store.putModel( b, "model", "B", 4 );
+        assertEquals( "A", store.getModel( a, "model" ) );
+        store.putModel( c, "model", "C", 4 );
+        assertNull( store.getModel( b, "model" ) );
+        assertEquals( "A", store.getModel( a, "model" ) );
+        assertEquals( "C", store.getModel( c, "model" ) );
+        assertEquals( 8, store.getWeight() );
+        assertEquals( 1, store.getEvictions() );
+        assertEquals( 3, store.getHits() );
+        assertEquals( 1, store.getMisses() );
+    }
+
+    @Test
+    public void testInvalidate() {
+        BioclipseStore store = new BioclipseStore( 10 );
+        IResource file = new MockIFile();
+        store.putModel( file, "a", "A", 1 );
+        store.putModel( file, "b", "B", 1 );
+        store.invalidate( file );
+        assertNull( store.getModel( file, "a" ) );
+        assertNull( store.getModel( file, "b" ) );
+        assertEquals( 0, store.size() );
+        assertEquals( 0, store.getWeight() );
+        assertEquals( 2, store.getInvalidations() );
+    }
 }
@@ -0,0 +1,226 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+package net.bioclipse.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the in-memory file system through the <code>memory:</code> scheme.
+ * Needs the platform so must be run as a plugin test.
+ *
+ * @author agent
+ */
+public class MemoryFileSystemTest {
+
+    private static final String RECORD = "0123456789abcdefghijklmnopqrstuv";
+
+    private IFileStore dir;
+
+    @Before
+    public void createDirectory() throws CoreException {
+        dir = EFS.getStore( URI.create( "memory:/memoryFileSystemTest" ) );
+        dir.mkdir( EFS.NONE, null );
+    }
+
+    @After
+    public void deleteDirectory() throws CoreException {
+        dir.delete( EFS.NONE, null );
+    }
+
+    private static void write( IFileStore file, byte[] bytes, int options )
+                        throws CoreException, IOException {
+        OutputStream out = file.openOutputStream( options, null );
+        out.write( bytes );
+        out.close();
+    }
+
+    private static void write( IFileStore file, String text, int options )
+                        throws CoreException, IOException {
+        write( file, text.getBytes( "US-ASCII" ), options );
+    }
+
+    private static byte[] readBytes( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ( (n = in.read( buffer )) != -1 ) {
+            out.write( buffer, 0, n );
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static String read( IFileStore file )
+                          throws CoreException, IOException {
+        return new String( readBytes( file.openInputStream( EFS.NONE, null ) ),
+                           "US-ASCII" );
+    }
+
+    private static byte[] bytes( int length ) {
+        byte[] bytes = new byte[length];
+        for ( int i = 0; i < length; i++ ) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        IFileStore file = dir.getChild( "append.txt" );
+        write( file, "abc", EFS.NONE );
+        write( file, "def", EFS.APPEND );
+        write( file, "", EFS.APPEND );
+        assertEquals( "abcdef", read( file ) );
+        assertEquals( 6, file.fetchInfo().getLength() );
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        IFileStore file = dir.getChild( "overwrite.txt" );
+        write( file, "a longer first version", EFS.NONE );
+        write( file, " and more", EFS.APPEND );
+        write( file, "short", EFS.NONE );
+        assertEquals( "short", read( file ) );
+        assertEquals( 5, file.fetchInfo().getLength() );
+    }
+
+    @Test
+    public void testLength() throws Exception {
+        IFileStore file = dir.getChild( "length.bin" );
+        assertEquals( 0, file.fetchInfo().getLength() );
+        // several chunks, the last of them not full
+        byte[] first = bytes( 20000 );
+        write( file, first, EFS.NONE );
+        assertEquals( first.length, file.fetchInfo().getLength() );
+
+        OutputStream out = file.openOutputStream( EFS.APPEND, null );
+        for ( int i = 0; i < 10; i++ ) {
+            out.write( i );
+        }
+        // nothing is written until the stream is closed
+        assertEquals( first.length, file.fetchInfo().getLength() );
+        out.close();
+        assertEquals( first.length + 10, file.fetchInfo().getLength() );
+
+        byte[] read = readBytes( file.openInputStream( EFS.NONE, null ) );
+        assertEquals( first.length + 10, read.length );
+        for ( int i = 0; i < first.length; i++ ) {
+            assertEquals( first[i], read[i] );
+        }
+        for ( int i = 0; i < 10; i++ ) {
+            assertEquals( i, read[first.length + i] );
+        }
+    }
+
+    @Test
+    public void testInputStreamKeepsContents() throws Exception {
+        IFileStore file = dir.getChild( "snapshot.txt" );
+        write( file, "abc", EFS.NONE );
+        InputStream before = file.openInputStream( EFS.NONE, null );
+        assertEquals( 'a', before.read() );
+
+        OutputStream out = file.openOutputStream( EFS.APPEND, null );
+        out.write( "def".getBytes( "US-ASCII" ) );
+        InputStream during = file.openInputStream( EFS.NONE, null );
+        out.close();
+        write( file, "xyz", EFS.NONE );
+
+        assertEquals( "bc", new String( readBytes( before ), "US-ASCII" ) );
+        assertEquals( "abc", new String( readBytes( during ), "US-ASCII" ) );
+        assertEquals( "xyz", read( file ) );
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        final IFileStore file = dir.getChild( "concurrent.txt" );
+        final byte[] record = RECORD.getBytes( "US-ASCII" );
+        final int records = 500;
+        write( file, "", EFS.NONE );
+        final List<Throwable> failures
+            = Collections.synchronizedList( new ArrayList<Throwable>() );
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    for ( int i = 0; i < records; i++ ) {
+                        write( file, record, EFS.APPEND );
+                    }
+                }
+                catch ( Throwable t ) {
+                    failures.add( t );
+                }
+            }
+        };
+        Thread[] readers = new Thread[4];
+        for ( int r = 0; r < readers.length; r++ ) {
+            readers[r] = new Thread() {
+                public void run() {
+                    try {
+                        int length = 0;
+                        while ( length < records * record.length
+                                && failures.isEmpty() ) {
+                            String text = read( file );
+                            // whole records only, and never fewer
+                            assertEquals( 0, text.length() % record.length );
+                            assertTrue( text.length() >= length );
+                            for ( int i = 0; i < text.length();
+                                  i += record.length ) {
+                                assertEquals( RECORD, text.substring(
+                                    i, i + record.length ) );
+                            }
+                            length = text.length();
+                        }
+                    }
+                    catch ( Throwable t ) {
+                        failures.add( t );
+                    }
+                }
+            };
+        }
+        writer.start();
+        for ( Thread reader : readers ) {
+            reader.start();
+        }
+        writer.join();
+        for ( Thread reader : readers ) {
+            reader.join( 10000 );
+        }
+        assertEquals( Collections.emptyList(), failures );
+        assertEquals( records * record.length, file.fetchInfo().getLength() );
+        byte[] expected = new byte[records * record.length];
+        for ( int i = 0; i < records; i++ ) {
+            System.arraycopy( record, 0, expected, i * record.length,
+                              record.length );
+        }
+        assertArrayEquals( expected,
+                           readBytes( file.openInputStream( EFS.NONE,
+                                                            null ) ) );
+    }
+}
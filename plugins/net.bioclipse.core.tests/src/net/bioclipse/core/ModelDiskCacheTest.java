@@ -0,0 +1,163 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+package net.bioclipse.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+/**
+ * Needs the workspace so must be run as a plugin test.
+ *
+ * @author agent
+ */
+public class ModelDiskCacheTest {
+
+    private static IFile createFile( String contents ) throws CoreException {
+        return createFile( "model.txt", contents );
+    }
+
+    private static IFile createFile( String name, String contents )
+                         throws CoreException {
+        IProject project = ResourcesPlugin.getWorkspace()
+                                          .getRoot()
+                                          .getProject( "modelDiskCache" );
+        if ( !project.exists() ) project.create( null );
+        if ( !project.isOpen() ) project.open( null );
+        IFile file = project.getFile( name );
+        ByteArrayInputStream source
+            = new ByteArrayInputStream( contents.getBytes() );
+        if ( file.exists() ) {
+            file.setContents( source, true, false, null );
+        }
+        else {
+            file.create( source, true, null );
+        }
+        return file;
+    }
+
+    private static File createDirectory() throws IOException {
+        File dir = File.createTempFile( "models", "" );
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void testModelSurvivesRestart() throws Exception {
+        File dir = createDirectory();
+        IFile file = createFile( "contents" );
+        ModelDiskCache.register( "restart", "test", 1 );
+        ModelDiskCache cache = new ModelDiskCache( dir, 1 << 20 );
+        List<String> model = new ArrayList<String>( Arrays.asList( "model" ) );
+        cache.put( file, "restart", model );
+        cache.close( 5000 );
+
+        cache = new ModelDiskCache( dir, 1 << 20 );
+        assertEquals( Arrays.asList( "model" ), cache.get( file, "restart" ) );
+        ModelDiskCache.register( "restart", "test", 2 );
+        assertNull( cache.get( file, "restart" ) );
+        ModelDiskCache.register( "restart", "test", 1 );
+        createFile( "other contents" );
+        assertNull( cache.get( file, "restart" ) );
+    }
+
+    @Test
+    public void testOnlyRegisteredKeysAreStored() throws Exception {
+        File dir = createDirectory();
+        IFile file = createFile( "not registered" );
+        ModelDiskCache cache = new ModelDiskCache( dir, 1 << 20 );
+        cache.put( file, new Object(), "model" );
+        cache.close( 5000 );
+        assertEquals( 0, cache.getWrites() );
+        assertEquals( 0, dir.listFiles().length );
+    }
+
+    @Test
+    public void testModelOnDiskIsNotWrittenAgain() throws Exception {
+        File dir = createDirectory();
+        IFile file = createFile( "written once" );
+        ModelDiskCache.register( "once", "test", 1 );
+        ModelDiskCache cache = new ModelDiskCache( dir, 1 << 20 );
+        cache.put( file, "once", "model" );
+        cache.put( file, "once", "model" );
+        cache.close( 5000 );
+        assertEquals( 1, cache.getWrites() );
+
+        cache = new ModelDiskCache( dir, 1 << 20 );
+        assertEquals( "model", cache.get( file, "once" ) );
+        cache.put( file, "once", "model" );
+        cache.close( 5000 );
+        assertEquals( 0, cache.getWrites() );
+    }
+
+    @Test
+    public void testLeastRecentlyReadIsEvicted() throws Exception {
+        File dir = createDirectory();
+        IFile a = createFile( "a.txt", "a" );
+        IFile b = createFile( "b.txt", "b" );
+        IFile c = createFile( "c.txt", "c" );
+        ModelDiskCache.register( "evicted", "test", 1 );
+        ModelDiskCache cache = new ModelDiskCache( dir, 1 << 20 );
+        cache.put( a, "evicted", "model" );
+        cache.close( 5000 );
+        long entrySize = cache.getSize();
+
+        // room for two entries but not for three
+        cache = new ModelDiskCache( dir, entrySize * 5 / 2 );
+        cache.put( b, "evicted", "model" );
+        cache.close( 5000 );
+        cache = new ModelDiskCache( dir, entrySize * 5 / 2 );
+        assertEquals( "model", cache.get( a, "evicted" ) );
+        cache.put( c, "evicted", "model" );
+        cache.close( 5000 );
+        assertEquals( 2, cache.getEntries() );
+        assertEquals( 2 * entrySize, cache.getSize() );
+        assertEquals( 2, dir.listFiles().length );
+        assertEquals( "model", cache.get( a, "evicted" ) );
+        assertNull( cache.get( b, "evicted" ) );
+    }
+
+    @Test
+    public void testUnreadableModelIsDeleted() throws Exception {
+        File dir = createDirectory();
+        IFile file = createFile( "unreadable" );
+        ModelDiskCache.register( "unreadable", "test", 1 );
+        ModelDiskCache cache = new ModelDiskCache( dir, 1 << 20 );
+        cache.put( file, "unreadable", "model" );
+        cache.close( 5000 );
+        for ( File entry : dir.listFiles() ) {
+            FileOutputStream out = new FileOutputStream( entry );
+            out.write( 1 );
+            out.close();
+        }
+
+        cache = new ModelDiskCache( dir, 1 << 20 );
+        assertNull( cache.get( file, "unreadable" ) );
+        assertEquals( 1, cache.getCorrupted() );
+        assertEquals( 0, cache.getEntries() );
+    }
+}
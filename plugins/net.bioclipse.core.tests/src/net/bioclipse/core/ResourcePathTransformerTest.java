@@ -9,6 +9,7 @@
 
 package net.bioclipse.core;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -20,6 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.core.resources.IFile;
@@ -211,4 +213,85 @@ public class ResourcePathTransformerTest {
         }
     }
 
+    @Test
+    public void testResolutionIsRemembered() throws CoreException {
+        IFile file = createProjectWithFile();
+        String path = file.getFullPath().toString();
+        PathResolutionCache cache = ResourcePathTransformer.getCache();
+        ResourcePathTransformer.getInstance().transform( path );
+        long hits = cache.getHits();
+        assertEquals( file,
+                      ResourcePathTransformer.getInstance().transform( path ) );
+        assertEquals( hits + 1, cache.getHits() );
+    }
+
+    @Test
+    public void testResolutionIsForgottenWhenFileIsRemoved() 
+                throws CoreException {
+        IFile file = createProjectWithFile();
+        String path = file.getFullPath().toString();
+        PathResolutionCache cache = ResourcePathTransformer.getCache();
+        ResourcePathTransformer.getInstance().transform( path );
+        file.delete( true, null );
+        long misses = cache.getMisses();
+        assertEquals( file,
+                      ResourcePathTransformer.getInstance().transform( path ) );
+        assertEquals( misses + 1, cache.getMisses() );
+    }
+
+    private File createExternalFile( String name ) throws IOException {
+        File dir = File.createTempFile( "bioclipse", "" );
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File file = new File( dir, name );
+        file.createNewFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testResolutionIsForgottenWhenLinkTargetIsRemoved() 
+                throws IOException {
+        File external = createExternalFile( "removedTarget.txt" );
+        PathResolutionCache cache = ResourcePathTransformer.getCache();
+        IFile link = ResourcePathTransformer.getInstance()
+                                            .transform( external.getPath() );
+        assertTrue( link.isLinked() );
+        external.delete();
+        long misses = cache.getMisses();
+        try {
+            ResourcePathTransformer.getInstance()
+                                   .transform( external.getPath() );
+            Assert.fail( "A removed file should not be resolved" );
+        }
+        catch ( IllegalArgumentException e ) {
+            //this is what we want
+        }
+        assertEquals( misses + 1, cache.getMisses() );
+    }
+
+    @Test
+    public void testTransformAll() throws Exception {
+        IFile inWorkspace = createProjectWithFile();
+        File a = createExternalFile( "transformAll.txt" );
+        File b = createExternalFile( "transformAll.txt" );
+        List<IFile> files = ResourcePathTransformer.getInstance().transformAll(
+            Arrays.asList( a.getAbsolutePath(),
+                           inWorkspace.getFullPath().toString(),
+                           b.getAbsolutePath(),
+                           a.getAbsolutePath() ) );
+        assertEquals( 4, files.size() );
+        assertEquals( inWorkspace, files.get( 1 ) );
+        assertEquals( files.get( 0 ), files.get( 3 ) );
+        assertFalse( files.get( 0 ).equals( files.get( 2 ) ) );
+        for ( IFile file : files ) {
+            assertTrue( file.exists() );
+        }
+        assertEquals( a.toURI().getPath(),
+                      files.get( 0 ).getLocationURI().getPath() );
+        assertEquals( b.toURI().getPath(),
+                      files.get( 2 ).getLocationURI().getPath() );
+    }
+
 }
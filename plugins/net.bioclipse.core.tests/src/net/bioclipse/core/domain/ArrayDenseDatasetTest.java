@@ -0,0 +1,79 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArrayDenseDatasetTest {
+
+    private static DenseDataset listDataset() {
+        List<List<Float>> values = Arrays.asList( Arrays.asList( 1f, 2f, 3f ),
+                                                  Arrays.asList( 4f, 5f, 6f ) );
+        return new DenseDataset( Arrays.asList( "a", "b", "c" ),
+                                 Arrays.asList( "m1", "m2" ),
+                                 values,
+                                 "activity",
+                                 Arrays.asList( "x", "y" ) );
+    }
+
+    @Test
+    public void testSameCSVAsListDataset() throws Exception {
+        DenseDataset lists = listDataset();
+        for ( boolean columnMajor : new boolean[] { false, true } ) {
+            ArrayDenseDataset arrays
+                = ArrayDenseDataset.copyOf( lists, columnMajor );
+            assertEquals( lists.asCSV(), arrays.asCSV() );
+            StringWriter writer = new StringWriter();
+            arrays.writeFileContents( writer );
+            assertEquals( lists.getFileContents(), writer.toString() );
+        }
+    }
+
+    @Test
+    public void testAccess() {
+        for ( boolean columnMajor : new boolean[] { false, true } ) {
+            ArrayDenseDataset dataset
+                = ArrayDenseDataset.copyOf( listDataset(), columnMajor );
+            assertEquals( 6f, dataset.get( 1, 2 ), 0 );
+            assertEquals( "[2.0, 5.0]",
+                          Arrays.toString( dataset.getColumn( 1 ) ) );
+            assertEquals( "[4.0, 5.0, 6.0]",
+                          Arrays.toString( dataset.getRow( 1 ) ) );
+            dataset.getValues().get( 0 ).set( 1, 7f );
+            assertEquals( 7f, dataset.get( 0, 1 ), 0 );
+            assertEquals( Arrays.asList( 1f, 7f, 3f ),
+                          dataset.getValues().get( 0 ) );
+        }
+    }
+
+    @Test
+    public void testHeadersKeepShape() {
+        ArrayDenseDataset dataset
+            = ArrayDenseDataset.copyOf( listDataset(), false );
+        dataset.setRowHeaders( Arrays.asList( "n1", "n2" ) );
+        assertEquals( "n2", dataset.getRowHeaders().get( 1 ) );
+        try {
+            dataset.setColHeaders( Arrays.asList( "a", "b" ) );
+            fail( "Should not take fewer column headers than columns" );
+        }
+        catch ( IllegalArgumentException e ) {
+            // expected
+        }
+        assertEquals( 3, dataset.getColHeaders().size() );
+        assertEquals( 2, dataset.getRowCount() );
+    }
+}
@@ -0,0 +1,96 @@
+/* ***************************************************************************
+ * Copyright (c) 2010 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ColumnarStringMatrixTest {
+
+    private static void fill( IStringMatrix matrix ) {
+        matrix.setColumnName( 1, "name" );
+        matrix.setColumnName( 2, "kind" );
+        matrix.set( 1, 1, "water" );
+        matrix.set( 1, "kind", "solvent" );
+        matrix.set( 3, 1, "ethanol" );
+        matrix.set( 3, 2, "solvent" );
+        matrix.setRowName( 1, "first" );
+        matrix.setColumnName( 3, "empty" );
+    }
+
+    @Test
+    public void testSameAsStringMatrix() {
+        IStringMatrix expected = new StringMatrix();
+        IStringMatrix actual = new ColumnarStringMatrix();
+        fill( expected );
+        fill( actual );
+        assertEquals( expected.getRowCount(), actual.getRowCount() );
+        assertEquals( expected.getColumnCount(), actual.getColumnCount() );
+        for ( int row = 1; row <= expected.getRowCount(); row++ ) {
+            for ( int col = 1; col <= expected.getColumnCount(); col++ ) {
+                assertEquals( expected.get( row, col ),
+                              actual.get( row, col ) );
+            }
+            assertEquals( expected.getRowName( row ),
+                          actual.getRowName( row ) );
+        }
+        assertEquals( expected.getColumn( "kind" ),
+                      actual.getColumn( "kind" ) );
+        assertEquals( expected.getColumnNames(), actual.getColumnNames() );
+        assertEquals( expected.getRowNames(), actual.getRowNames() );
+        assertEquals( expected.toString(), actual.toString() );
+        assertEquals( expected.toString(),
+                      ColumnarStringMatrix.copyOf( expected ).toString() );
+    }
+
+    @Test
+    public void testUnsetValues() {
+        IStringMatrix matrix = new ColumnarStringMatrix();
+        matrix.setSize( 2, 2 );
+        assertEquals( "", matrix.get( 1, 1 ) );
+        matrix.set( 1, 1, "a" );
+        assertNull( matrix.get( 1, 2 ) );
+        assertEquals( "", matrix.get( 2, 2 ) );
+        assertEquals( Arrays.asList( "", "" ), matrix.getColumn( 2 ) );
+    }
+
+    @Test
+    public void testUnknownColumn() {
+        IStringMatrix matrix = new ColumnarStringMatrix();
+        matrix.setColumnName( 1, "a" );
+        try {
+            matrix.getColumnNumber( "b" );
+            fail( "There is no column b" );
+        }
+        catch ( IllegalAccessError e ) {
+            // this is what we want
+        }
+        matrix.setColumnName( 1, "b" );
+        assertEquals( 1, matrix.getColumnNumber( "b" ) );
+    }
+
+    @Test
+    public void testManyDistinctValues() {
+        ColumnarStringMatrix matrix = new ColumnarStringMatrix();
+        for ( int row = 1; row <= 5000; row++ ) {
+            matrix.set( row, 1, "value" + row );
+            matrix.set( row, 2, "kind" + row % 3 );
+        }
+        for ( int row = 1; row <= 5000; row++ ) {
+            assertEquals( "value" + row, matrix.get( row, 1 ) );
+            assertEquals( "kind" + row % 3, matrix.get( row, 2 ) );
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+public class CsrSparseDatasetTest {
+
+    private static final String MATRIX = "3:7\n"
+                                         + "2:1 3:2 4:3\n"
+                                         + "\n"
+                                         + "1:4 4:5\n";
+
+    private static CsrSparseDataset build() {
+        return new CsrSparseDataset.Builder( 4 )
+            .add( 2, 7 ).endRow()
+            .add( 3, 3 ).add( 1, 1 ).add( 2, 2 ).endRow()
+            .endRow()
+            .add( 0, 4 ).add( 3, 5 ).endRow()
+            .build();
+    }
+
+    @Test
+    public void testBuilder() {
+        CsrSparseDataset dataset = build();
+        assertEquals( 4, dataset.getRowCount() );
+        assertEquals( 4, dataset.getColumnCount() );
+        assertEquals( 6, dataset.getNonZeroCount() );
+        assertEquals( 2, dataset.get( 1, 2 ) );
+        assertEquals( 0, dataset.get( 2, 2 ) );
+        assertEquals( 5, dataset.get( 3, 3 ) );
+        assertEquals( MATRIX, dataset.getFileContents() );
+    }
+
+    @Test
+    public void testReadText() throws IOException {
+        CsrSparseDataset dataset
+            = CsrSparseDataset.read( new StringReader( MATRIX ) );
+        assertEquals( MATRIX, dataset.getFileContents() );
+
+        dataset = CsrSparseDataset.read(
+                      new StringReader( "+1 1:2\n-1\t3:4\n" ) );
+        assertEquals( Arrays.asList( "+1", "-1" ),
+                      dataset.getResponseValues() );
+        assertEquals( 4, dataset.get( 1, 2 ) );
+    }
+
+    @Test
+    public void testMalformedText() {
+        try {
+            CsrSparseDataset.read( new StringReader( "1:2 3:x\n" ) );
+            fail( "Should not read a value that is no number" );
+        }
+        catch ( IOException e ) {
+            // this is what we want
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        CsrSparseDataset dataset = build();
+        dataset.setColHeaders( Arrays.asList( "a", "b", "c", "d" ) );
+        dataset.setResponseValues( Arrays.asList( "1", null, "3", "4" ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dataset.writeBinary( out );
+        CsrSparseDataset read = CsrSparseDataset.readBinary(
+                               new ByteArrayInputStream( out.toByteArray() ) );
+        assertEquals( MATRIX, read.getFileContents() );
+        assertEquals( dataset.getColHeaders(), read.getColHeaders() );
+        assertEquals( dataset.getResponseValues(), read.getResponseValues() );
+    }
+
+    @Test
+    public void testCopyOf() {
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>();
+        values.put( new Point( 1, 3 ), 7 );
+        values.put( new Point( 2, 2 ), 1 );
+        values.put( new Point( 2, 3 ), 2 );
+        values.put( new Point( 2, 4 ), 3 );
+        values.put( new Point( 4, 4 ), 5 );
+        values.put( new Point( 4, 1 ), 4 );
+        SparseDataset sparse = new SparseDataset(
+            Arrays.asList( "a", "b", "c", "d" ),
+            Arrays.asList( "m1", "m2", "m3", "m4" ),
+            values );
+        CsrSparseDataset dataset = CsrSparseDataset.copyOf( sparse );
+        assertEquals( MATRIX, dataset.getFileContents() );
+        assertEquals( values.size(), dataset.getValues().size() );
+        assertEquals( Integer.valueOf( 2 ),
+                      dataset.getValues().get( new Point( 2, 3 ) ) );
+    }
+
+    @Test
+    public void testSetValues() {
+        CsrSparseDataset dataset = build();
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>( dataset.getValues() );
+        values.remove( new Point( 2, 2 ) );
+        values.put( new Point( 3, 1 ), 6 );
+        values.put( new Point( 5, 2 ), 8 );
+        dataset.setValues( values );
+        assertEquals( "3:7\n"
+                      + "3:2 4:3\n"
+                      + "1:6\n"
+                      + "1:4 4:5\n"
+                      + "2:8\n",
+                      dataset.getFileContents() );
+        assertEquals( 5, dataset.getRowCount() );
+        assertEquals( values, dataset.getValues() );
+    }
+
+    @Test
+    public void testValuesReadOnly() {
+        LinkedHashMap<Point, Integer> values = build().getValues();
+        try {
+            values.put( new Point( 1, 1 ), 1 );
+            fail( "values should be read-only" );
+        }
+        catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+        try {
+            values.entrySet().iterator().next().setValue( 1 );
+            fail( "entries should be read-only" );
+        }
+        catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLabelsWithoutResponseValues() throws IOException {
+        try {
+            build().write( new StringWriter(), " ", true );
+            fail( "there are no labels to write" );
+        }
+        catch ( IllegalStateException e ) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MappedStringMatrixTest {
+
+    private static File write( String contents ) throws IOException {
+        File file = File.createTempFile( "matrix", ".csv" );
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ),
+                                                "UTF-8" );
+        try {
+            writer.write( contents );
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        MappedStringMatrix matrix = new MappedStringMatrix(
+            write( "name,smiles\r\n"
+                   + "water,O\r\n"
+                   + "\"ethanol, dry\",\"C\"\"CO\"\r\n"
+                   + "caf\u00e9ine\n" ),
+            ',', true );
+        assertEquals( 3, matrix.getRowCount() );
+        assertEquals( 2, matrix.getColumnCount() );
+        assertEquals( Arrays.asList( "name", "smiles" ),
+                      matrix.getColumnNames() );
+        assertEquals( "O", matrix.get( 1, 2 ) );
+        assertEquals( "ethanol, dry", matrix.get( 2, "name" ) );
+        assertEquals( "C\"CO", matrix.get( 2, 2 ) );
+        assertEquals( "caf\u00e9ine", matrix.get( 3, 1 ) );
+        assertEquals( "", matrix.get( 3, 2 ) );
+        assertEquals( Arrays.asList( "O", "C\"CO", "" ),
+                      matrix.getColumn( "smiles" ) );
+        try {
+            matrix.get( 4, 1 );
+            fail( "There is no fourth row" );
+        }
+        catch ( ArrayIndexOutOfBoundsException e ) {
+            // this is what we want
+        }
+    }
+
+    @Test
+    public void testSet() throws Exception {
+        MappedStringMatrix matrix = new MappedStringMatrix(
+            write( "a\tb\n1\t2\n" ), '\t', false );
+        assertFalse( matrix.hasColHeader() );
+        matrix.set( 2, 2, "3" );
+        matrix.set( 3, 1, "4" );
+        assertEquals( 3, matrix.getRowCount() );
+        assertEquals( "3", matrix.get( 2, 2 ) );
+        assertEquals( "4", matrix.get( 3, 1 ) );
+        assertEquals( null, matrix.get( 3, 2 ) );
+        assertEquals( "a", matrix.get( 1, 1 ) );
+        IStringMatrix expected = new StringMatrix();
+        expected.set( 1, 1, "a" );
+        expected.set( 1, 2, "b" );
+        expected.set( 2, 1, "1" );
+        expected.set( 2, 2, "3" );
+        expected.set( 3, 1, "4" );
+        assertEquals( expected.toString(),
+                      ColumnarStringMatrix.copyOf( matrix ).toString() );
+    }
+
+    @Test
+    public void testToStringShowsFirstRows() throws Exception {
+        StringBuilder contents = new StringBuilder( "value\n" );
+        for ( int i = 1; i <= 20; i++ )
+            contents.append( i ).append( '\n' );
+        File file = write( contents.toString() );
+        MappedStringMatrix matrix = new MappedStringMatrix( file, ',', true );
+        matrix.awaitIndex();
+        String text = matrix.toString();
+        assertTrue( text, text.startsWith(
+            file.getName() + ": 20 rows, 1 columns\n[[\"value\"],\n"
+            + "[\"1\"],\n" ) );
+        assertTrue( text, text.endsWith( "[\"10\"],\n...\n]\n" ) );
+
+        matrix = new MappedStringMatrix( write( "a,b\n" ), ',', false );
+        matrix.awaitIndex();
+        assertTrue( matrix.toString().endsWith(
+            "1 rows, 2 columns\n[[\"a\",\"b\"]\n]\n" ) );
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        MappedStringMatrix matrix = new MappedStringMatrix(
+            write( "a,b\n1,2\n" ), ',', false );
+        assertEquals( "1", matrix.get( 2, 1 ) );
+        matrix.close();
+        assertTrue( matrix.isIndexed() );
+        try {
+            matrix.get( 2, 1 );
+            fail( "The file is closed" );
+        }
+        catch ( IllegalStateException e ) {
+            // this is what we want
+        }
+        assertTrue( matrix.toString().endsWith( ": closed" ) );
+    }
+
+    @Test
+    public void testTooManyFields() throws Exception {
+        MappedStringMatrix matrix = new MappedStringMatrix(
+            write( "a,b\n1,2,3\n" ), ',', true );
+        assertEquals( "1", matrix.get( 1, 1 ) );
+        try {
+            matrix.get( 1, 2 );
+            fail( "The row has more fields than the table has columns" );
+        }
+        catch ( IllegalStateException e ) {
+            // this is what we want
+        }
+        try {
+            matrix.getRow( 1 );
+            fail( "The row has more fields than the table has columns" );
+        }
+        catch ( IllegalStateException e ) {
+            // this is what we want
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testWideCharset() throws Exception {
+        new MappedStringMatrix( write( "a,b\n" ), ',', true,
+                                Charset.forName( "UTF-16" ) );
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        StringBuilder contents = new StringBuilder( "value\n" );
+        for ( int i = 1; i <= 10000; i++ )
+            contents.append( i ).append( '\n' );
+        MappedStringMatrix matrix
+            = new MappedStringMatrix( write( contents.toString() ), ',', true );
+        assertEquals( "5000", matrix.get( 5000, 1 ) );
+        final AtomicLong sum = new AtomicLong();
+        matrix.scan( new MappedStringMatrix.RowHandler() {
+            public void handle( int row, String[] values ) {
+                sum.addAndGet( Long.parseLong( values[0] ) );
+            }
+        }, 4 );
+        assertEquals( 10000L * 10001 / 2, sum.get() );
+    }
+}
@@ -183,6 +183,42 @@ public class RecordableListTest {
         assertFalse( RecordableList.existsListContaining(bioObject.getUID()) );
     }
 
+    @Test
+    public void testPositionFollowsChanges() {
+        IBioObject first = new TestBioObject();
+        biolist.add(first);
+        biolist.add(bioObject);
+        biolist.add(bioObject2);
+        assertEquals( 2, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+        biolist.remove(first);
+        assertEquals( 1, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+        biolist.add(0, bioObject2);
+        assertEquals( 0, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+        biolist.set(0, first);
+        assertEquals( 2, 
+                      RecordableList.positionOfBioObjectInList(bioObject2.getUID()) );
+        assertFalse( RecordableList.existsListContaining(
+                         new TestBioObject().getUID()) );
+    }
+
+    @Test
+    public void testCollectedListIsForgotten() throws InterruptedException {
+        RecordableList<IBioObject> list = new RecordableList<IBioObject>();
+        list.add(bioObject);
+        assertTrue( RecordableList.existsListContaining(bioObject.getUID()) );
+        list = null;
+        long giveUp = System.currentTimeMillis() + 10000;
+        while ( RecordableList.existsListContaining(bioObject.getUID())
+                && System.currentTimeMillis() < giveUp ) {
+            System.gc();
+            Thread.sleep( 10 );
+        }
+        assertFalse( RecordableList.existsListContaining(bioObject.getUID()) );
+    }
+
     @Test
     public void testSubList() {
         fail("this method not implemented in BioList. It is complicated...");
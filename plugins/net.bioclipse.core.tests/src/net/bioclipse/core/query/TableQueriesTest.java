@@ -0,0 +1,238 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.core.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import net.bioclipse.core.domain.ColumnarStringMatrix;
+import net.bioclipse.core.domain.DenseDataset;
+import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.core.domain.SparseDataset;
+import net.bioclipse.core.domain.StringMatrix;
+
+import org.junit.Test;
+
+public class TableQueriesTest {
+
+    private static IStringMatrix compounds() {
+        IStringMatrix matrix = new StringMatrix();
+        matrix.setColumnName( 1, "name" );
+        matrix.setColumnName( 2, "kind" );
+        matrix.setColumnName( 3, "mass" );
+        String[][] rows = { { "water", "solvent", "18" },
+                            { "ethanol", "solvent", "46" },
+                            { "caffeine", "drug", "194" },
+                            { "aspirin", "drug", "180" },
+                            { "benzene", "solvent", "78" } };
+        for ( int row = 0; row < rows.length; row++ ) {
+            for ( int col = 0; col < 3; col++ ) {
+                matrix.set( row + 1, col + 1, rows[row][col] );
+            }
+        }
+        return matrix;
+    }
+
+    @Test
+    public void testFilterSelectSort() {
+        IStringMatrix solvents = TableQueries.filter(
+            compounds(), "kind", Condition.of( "=", "solvent" ) );
+        assertEquals( 3, solvents.getRowCount() );
+        IStringMatrix sorted = TableQueries.sort(
+            TableQueries.select( solvents, "mass", "name" ), "mass", false );
+        assertEquals( Arrays.asList( "mass", "name" ),
+                      sorted.getColumnNames() );
+        assertEquals( Arrays.asList( "benzene", "ethanol", "water" ),
+                      sorted.getColumn( "name" ) );
+        IStringMatrix heavy = TableQueries.filter(
+            compounds(), "mass", Condition.of( ">", "100" ) );
+        assertEquals( Arrays.asList( "caffeine", "aspirin" ),
+                      heavy.getColumn( 1 ) );
+    }
+
+    @Test
+    public void testViewWritesThrough() {
+        IStringMatrix matrix = compounds();
+        IStringMatrix view = TableQueries.filter(
+            matrix, "name", Condition.of( "contains", "ol" ) );
+        assertEquals( "ethanol", view.get( 1, "name" ) );
+        view.set( 1, "mass", "46.07" );
+        assertEquals( "46.07", matrix.get( 2, 3 ) );
+    }
+
+    @Test
+    public void testGroupBy() {
+        ColumnarStringMatrix groups = TableQueries.groupBy(
+            compounds(), "kind", Aggregate.SUM, "mass" );
+        assertEquals( Arrays.asList( "kind", "sum(mass)" ),
+                      groups.getColumnNames() );
+        assertEquals( Arrays.asList( "solvent", "drug" ),
+                      groups.getColumn( 1 ) );
+        assertEquals( Arrays.asList( "142", "374" ), groups.getColumn( 2 ) );
+        groups = TableQueries.groupBy(
+            compounds(), "kind", Aggregate.COUNT, null );
+        assertEquals( Arrays.asList( "3", "2" ), groups.getColumn( 2 ) );
+    }
+
+    @Test
+    public void testJoin() {
+        IStringMatrix hazards = new StringMatrix();
+        hazards.setColumnName( 1, "compound" );
+        hazards.setColumnName( 2, "hazard" );
+        hazards.set( 1, 1, "benzene" );
+        hazards.set( 1, 2, "toxic" );
+        hazards.set( 2, 1, "ethanol" );
+        hazards.set( 2, 2, "flammable" );
+        hazards.set( 3, 1, "benzene" );
+        hazards.set( 3, 2, "flammable" );
+
+        IStringMatrix joined = TableQueries.join(
+            compounds(), "name", hazards, "compound", false );
+        assertEquals( Arrays.asList( "name", "kind", "mass", "hazard" ),
+                      joined.getColumnNames() );
+        assertEquals( Arrays.asList( "ethanol", "benzene", "benzene" ),
+                      joined.getColumn( "name" ) );
+        assertEquals( Arrays.asList( "flammable", "toxic", "flammable" ),
+                      joined.getColumn( "hazard" ) );
+
+        joined = TableQueries.join(
+            compounds(), "name", hazards, "compound", true );
+        assertEquals( 6, joined.getRowCount() );
+        assertNull( joined.get( 1, "hazard" ) );
+    }
+
+    @Test
+    public void testLargeJoin() {
+        int size = 50000;
+        ColumnarStringMatrix left = new ColumnarStringMatrix();
+        ColumnarStringMatrix right = new ColumnarStringMatrix();
+        left.setColumnName( 1, "id" );
+        right.setColumnName( 1, "id" );
+        right.setColumnName( 2, "value" );
+        for ( int row = 1; row <= size; row++ ) {
+            left.set( row, 1, "id" + row );
+            right.set( row, 1, "id" + ( size - row + 1 ) );
+            right.set( row, 2, Integer.toString( size - row + 1 ) );
+        }
+        IStringMatrix joined
+            = TableQueries.join( left, "id", right, "id", false );
+        assertEquals( size, joined.getRowCount() );
+        IStringMatrix sorted = TableQueries.sort( joined, "value", true );
+        for ( int row = 1; row <= size; row += 997 ) {
+            assertEquals( "id" + row, joined.get( row, 1 ) );
+            assertEquals( Integer.toString( row ), joined.get( row, 2 ) );
+            assertEquals( Integer.toString( row ), sorted.get( row, 2 ) );
+        }
+    }
+
+    @Test
+    public void testDatasets() {
+        List<List<Float>> values = Arrays.asList( Arrays.asList( 1f, 5f ),
+                                                  Arrays.asList( 2f, 3f ),
+                                                  Arrays.asList( 3f, 4f ) );
+        DenseDataset dense = new DenseDataset( Arrays.asList( "a", "b" ),
+                                               Arrays.asList( "m1", "m2",
+                                                              "m3" ),
+                                               values );
+        DenseDataset sorted = TableQueries.sort( dense, "b", true );
+        assertEquals( Arrays.asList( "m2", "m3", "m1" ),
+                      sorted.getRowHeaders() );
+        DenseDataset selected = TableQueries.select(
+            TableQueries.filter( dense, "a", Condition.of( ">=", "2" ) ),
+            "b" );
+        assertEquals( Arrays.asList( Arrays.asList( 3f ),
+                                     Arrays.asList( 4f ) ),
+                      selected.getValues() );
+
+        LinkedHashMap<Point, Integer> sparseValues
+            = new LinkedHashMap<Point, Integer>();
+        sparseValues.put( new Point( 1, 2 ), 7 );
+        sparseValues.put( new Point( 2, 1 ), 1 );
+        sparseValues.put( new Point( 3, 1 ), 4 );
+        sparseValues.put( new Point( 3, 2 ), 2 );
+        SparseDataset sparse = new SparseDataset( Arrays.asList( "a", "b" ),
+                                                  Arrays.asList( "m1", "m2",
+                                                                 "m3" ),
+                                                  sparseValues );
+        SparseDataset filtered = TableQueries.filter(
+            sparse, "b", Condition.of( ">", "0" ) );
+        assertEquals( "2:7\n1:4 2:2\n", filtered.getFileContents() );
+        assertEquals( "1:2\n1:7\n",
+                      TableQueries.select( TableQueries.sort( filtered, "b",
+                                                              true ), "b" )
+                                  .getFileContents() );
+    }
+
+    @Test
+    public void testDatasetGroupByAndJoin() {
+        DenseDataset dense = new DenseDataset(
+            Arrays.asList( "kind", "mass" ),
+            Arrays.asList( "m1", "m2", "m3" ),
+            Arrays.asList( Arrays.asList( 1f, 18f ),
+                           Arrays.asList( 2f, 194f ),
+                           Arrays.asList( 1f, 46f ) ) );
+        ColumnarStringMatrix groups = TableQueries.groupBy(
+            dense, "kind", Aggregate.SUM, "mass" );
+        assertEquals( Arrays.asList( "1", "2" ), groups.getColumn( "kind" ) );
+        assertEquals( Arrays.asList( "64", "194" ),
+                      groups.getColumn( "sum(mass)" ) );
+
+        DenseDataset kinds = new DenseDataset(
+            Arrays.asList( "id", "kind" ),
+            Arrays.asList( "solvent" ),
+            Arrays.<List<Float>>asList( Arrays.asList( 7f, 1f ) ) );
+        DenseDataset joined
+            = TableQueries.join( dense, "kind", kinds, "kind", false );
+        assertEquals( Arrays.asList( "kind", "mass", "id" ),
+                      joined.getColHeaders() );
+        assertEquals( Arrays.asList( "m1", "m3" ), joined.getRowHeaders() );
+        assertEquals( Arrays.asList( Arrays.asList( 1f, 18f, 7f ),
+                                     Arrays.asList( 1f, 46f, 7f ) ),
+                      joined.getValues() );
+        DenseDataset leftJoined
+            = TableQueries.join( dense, "kind", kinds, "kind", true );
+        assertEquals( Arrays.asList( 2f, 194f, null ),
+                      leftJoined.getValues().get( 1 ) );
+
+        LinkedHashMap<Point, Integer> leftValues
+            = new LinkedHashMap<Point, Integer>();
+        leftValues.put( new Point( 1, 1 ), 1 );
+        leftValues.put( new Point( 1, 2 ), 5 );
+        leftValues.put( new Point( 2, 2 ), 3 );
+        leftValues.put( new Point( 3, 1 ), 1 );
+        SparseDataset left = new SparseDataset( Arrays.asList( "key", "a" ),
+                                                Arrays.asList( "m1", "m2",
+                                                               "m3" ),
+                                                leftValues );
+        ColumnarStringMatrix counts = TableQueries.groupBy(
+            left, "key", Aggregate.COUNT, null );
+        assertEquals( Arrays.asList( "1", "0" ), counts.getColumn( "key" ) );
+        assertEquals( Arrays.asList( "2", "1" ), counts.getColumn( "count" ) );
+
+        LinkedHashMap<Point, Integer> rightValues
+            = new LinkedHashMap<Point, Integer>();
+        rightValues.put( new Point( 1, 1 ), 9 );
+        rightValues.put( new Point( 1, 2 ), 1 );
+        SparseDataset right = new SparseDataset( Arrays.asList( "b", "key" ),
+                                                 Arrays.asList( "r1" ),
+                                                 rightValues );
+        SparseDataset sparseJoined
+            = TableQueries.join( left, "key", right, "key", true );
+        assertEquals( Arrays.asList( "key", "a", "b" ),
+                      sparseJoined.getColHeaders() );
+        assertEquals( "1:1 2:5 3:9\n2:3\n1:1 3:9\n",
+                      sparseJoined.getFileContents() );
+    }
+}
@@ -5,7 +5,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith( value = Suite.class )
-@SuiteClasses( value = { JavaManagerMethodTest.class,
+@SuiteClasses( value = { BulkInvokerTest.class,
+                         DispatchPlanTest.class,
+                         JavaManagerMethodTest.class,
+                         BioclipseFutureTest.class,
+                         BioclipseJobSchedulerTest.class,
+                         CallContextTest.class,
+                         LatencyHistogramTest.class,
+                         ResultCacheTest.class,
+                         StreamingReturnerTest.class,
                          JavaScriptManagerMethodTest.class } )
 public class AllManagerMethodDispatcherTests {
 
@@ -0,0 +1,77 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.bioclipse.core.util.Function;
+import net.bioclipse.jobs.BioclipseFuture;
+import net.bioclipse.jobs.BioclipseJob;
+
+import org.junit.Test;
+
+/**
+ * Needs the job manager so must be run as a plugin test.
+ *
+ * @author agent
+ */
+public class BioclipseFutureTest {
+
+    private static BioclipseJob<String> greet( String name ) 
+                                        throws Exception {
+        BioclipseJob<String> job = new BioclipseJob<String>( "greeting" );
+        job.setBioclipseManager( new TestManager() );
+        job.setMethodCalled( ITestManager.class.getMethod( "getGreeting",
+                                                           String.class ) );
+        job.setMethod( TestManager.class.getMethod( "getGreeting",
+                                                    String.class ) );
+        job.setArguments( new Object[] { name } );
+        return job;
+    }
+
+    @Test
+    public void completesWithReturnValue() throws Exception {
+        BioclipseJob<String> job = greet( "future" );
+        BioclipseFuture<String> future = job.getFuture();
+        job.schedule();
+        assertEquals( "OH HAI future", future.get( 10, TimeUnit.SECONDS ) );
+        assertTrue( future.isDone() );
+    }
+
+    @Test
+    public void futureOfFinishedJob() throws Exception {
+        BioclipseJob<String> job = greet( "late" );
+        job.schedule();
+        job.join();
+        assertEquals( "OH HAI late", 
+                      job.getFuture().get( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void composed() throws Exception {
+        List<BioclipseFuture<Integer>> lengths 
+            = new ArrayList<BioclipseFuture<Integer>>();
+        List<BioclipseJob<String>> jobs = new ArrayList<BioclipseJob<String>>();
+        for ( String name : Arrays.asList( "a", "bb", "ccc" ) ) {
+            BioclipseJob<String> job = greet( name );
+            jobs.add( job );
+            lengths.add( job.getFuture().map( 
+                new Function<Integer, String>() {
+                    public Integer eval( String greeting ) {
+                        return greeting.length();
+                    }
+                }) );
+        }
+        BioclipseFuture<List<Integer>> all 
+            = BioclipseFuture.allOf( lengths );
+        for ( BioclipseJob<String> job : jobs ) {
+            job.schedule();
+        }
+        assertEquals( Arrays.asList( 8, 9, 10 ),
+                      all.get( 10, TimeUnit.SECONDS ) );
+    }
+}
@@ -0,0 +1,185 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobScheduler;
+import net.bioclipse.jobs.BioclipseJobScheduler.Admission;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.junit.Test;
+
+/**
+ * Needs the job manager so must be run as a plugin test.
+ *
+ * @author agent
+ */
+public class BioclipseJobSchedulerTest {
+
+    private static class Manager implements IBioclipseManager {
+        private final String name;
+        Manager( String name ) {
+            this.name = name;
+        }
+        public String getManagerName() {
+            return name;
+        }
+    }
+
+    private static class CountingJob extends BioclipseJob<Object> {
+
+        private final AtomicInteger running;
+        private final AtomicInteger max;
+        private final CountDownLatch gate;
+
+        CountingJob( IBioclipseManager manager,
+                     AtomicInteger running,
+                     AtomicInteger max,
+                     CountDownLatch gate ) {
+            super( "counting" );
+            setBioclipseManager( manager );
+            setArguments( new Object[0] );
+            this.running = running;
+            this.max     = max;
+            this.gate    = gate;
+        }
+
+        @Override
+        protected IStatus run( IProgressMonitor monitor ) {
+            int now = running.incrementAndGet();
+            int seen = max.get();
+            while ( now > seen && !max.compareAndSet( seen, now ) ) {
+                seen = max.get();
+            }
+            try {
+                if ( gate != null ) {
+                    gate.await();
+                }
+                else {
+                    Thread.sleep( 10 );
+                }
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return Status.OK_STATUS;
+        }
+    }
+
+    @Test
+    public void globalLimit() throws Exception {
+        BioclipseJobScheduler scheduler
+            = new BioclipseJobScheduler( 2, 2, Admission.FIFO, false );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<BioclipseJob<?>> jobs = new ArrayList<BioclipseJob<?>>();
+        for ( int i = 0; i < 20; i++ ) {
+            jobs.add( scheduler.schedule(
+                new CountingJob( new Manager( "m" + i ),
+                                 running, max, null ) ) );
+        }
+        for ( BioclipseJob<?> job : jobs ) {
+            job.join();
+        }
+        assertTrue( max.get() <= 2 );
+        assertEquals( 0, scheduler.getRunning() );
+        assertEquals( 0, scheduler.getWaiting() );
+    }
+
+    @Test
+    public void managerLimit() throws Exception {
+        BioclipseJobScheduler scheduler
+            = new BioclipseJobScheduler( 8, 1, Admission.PRIORITY, false );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        Manager manager = new Manager( "m" );
+        List<BioclipseJob<?>> jobs = new ArrayList<BioclipseJob<?>>();
+        for ( int i = 0; i < 10; i++ ) {
+            jobs.add( scheduler.schedule(
+                new CountingJob( manager, running, max, null ) ) );
+        }
+        for ( BioclipseJob<?> job : jobs ) {
+            job.join();
+        }
+        assertEquals( 1, max.get() );
+    }
+
+    @Test
+    public void coalescing() throws Exception {
+        BioclipseJobScheduler scheduler
+            = new BioclipseJobScheduler( 1, 1, Admission.FIFO, true );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch gate = new CountDownLatch( 1 );
+        Manager manager = new Manager( "m" );
+        BioclipseJob<?> first = scheduler.schedule(
+            new CountingJob( manager, running, max, gate ) );
+        BioclipseJob<?> second = scheduler.schedule(
+            new CountingJob( manager, running, max, gate ) );
+        BioclipseJob<?> third = scheduler.schedule(
+            new CountingJob( manager, running, max, gate ) );
+        assertNotSame( first, second );
+        assertSame( second, third );
+        assertEquals( 1, scheduler.getWaiting() );
+        gate.countDown();
+        first.join();
+        second.join();
+        assertEquals( 0, scheduler.getWaiting() );
+    }
+
+    @Test
+    public void nestedJobs() throws Exception {
+        final BioclipseJobScheduler scheduler
+            = new BioclipseJobScheduler( 1, 1, Admission.FIFO, false );
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final Manager manager = new Manager( "m" );
+        final AtomicBoolean childFinished = new AtomicBoolean();
+        BioclipseJob<Object> parent = new BioclipseJob<Object>( "parent" ) {
+            @Override
+            protected IStatus run( IProgressMonitor monitor ) {
+                final CountDownLatch done = new CountDownLatch( 1 );
+                BioclipseJob<?> child
+                    = new CountingJob( manager, running, max, null );
+                child.addJobChangeListener( new JobChangeAdapter() {
+                    @Override
+                    public void done( IJobChangeEvent event ) {
+                        done.countDown();
+                    }
+                });
+                scheduler.schedule( child );
+                try {
+                    // would wait for ever if the child waited for a place
+                    childFinished.set( done.await( 10, TimeUnit.SECONDS ) );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        parent.setBioclipseManager( manager );
+        parent.setArguments( new Object[0] );
+        scheduler.schedule( parent );
+        parent.join();
+        assertTrue( childFinished.get() );
+        assertEquals( 0, scheduler.getRunning() );
+        assertEquals( 0, scheduler.getWaiting() );
+    }
+}
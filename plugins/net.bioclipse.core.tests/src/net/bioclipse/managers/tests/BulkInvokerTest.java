@@ -0,0 +1,129 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.BioObject;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.business.BulkInvoker;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class BulkInvokerTest {
+
+    public static class Calculator {
+        
+        public Integer square( Integer i ) throws InterruptedException {
+            // Let later calls finish before earlier ones
+            Thread.sleep( ( 10 - i % 10 ) );
+            return i * i;
+        }
+        
+        public Integer add( Integer a, Integer b ) {
+            return a + b;
+        }
+        
+        public IBioObject wrap( String s ) {
+            return new BioObject() {};
+        }
+        
+        public Integer fail( Integer i ) throws BioclipseException {
+            throw new BioclipseException( "failed on " + i );
+        }
+    }
+    
+    private static List<Integer> numbers( int n ) {
+        List<Integer> result = new ArrayList<Integer>();
+        for ( int i = 0; i < n; i++ ) {
+            result.add( i );
+        }
+        return result;
+    }
+    
+    @Test
+    public void resultsInOrder() throws Exception {
+        final List<Object> streamed 
+            = Collections.synchronizedList( new ArrayList<Object>() );
+        List<Object> results = BulkInvoker.invokeAll( 
+            new Calculator(), "square", numbers( 100 ),
+            new IReturner<Object>() {
+                public void partialReturn( Object object ) {
+                    streamed.add( object );
+                }
+                public void completeReturn( Object object ) {
+                    fail( "Should only do partial returns" );
+                }
+            }, 
+            new NullProgressMonitor() );
+        assertTrue( results.isEmpty() );
+        assertEquals( 100, streamed.size() );
+        for ( int i = 0; i < 100; i++ ) {
+            assertEquals( i * i, streamed.get( i ) );
+        }
+    }
+    
+    @Test
+    public void resultsReturnedWithoutReturner() throws Exception {
+        List<Object> results = BulkInvoker.invokeAll( 
+            new Calculator(), "square", numbers( 20 ), null, null );
+        assertEquals( 20, results.size() );
+        for ( int i = 0; i < 20; i++ ) {
+            assertEquals( i * i, results.get( i ) );
+        }
+    }
+    
+    @Test
+    public void argumentTuples() throws Exception {
+        List<Object> results = BulkInvoker.invokeAll( 
+            new Calculator(), "add", 
+            Arrays.asList( new Object[] { 1, 2 }, Arrays.asList( 3, 4 ) ),
+            null, null );
+        assertEquals( Arrays.asList( 3, 7 ), results );
+    }
+    
+    @Test
+    public void bioObjectsGiveRecordableList() throws Exception {
+        List<Object> results = BulkInvoker.invokeAll( 
+            new Calculator(), "wrap", Arrays.asList( "a", "b" ), 
+            null, null );
+        assertTrue( results instanceof RecordableList );
+        assertEquals( 2, results.size() );
+    }
+    
+    @Test
+    public void emptyInputGivesPlainList() throws Exception {
+        List<Object> results = BulkInvoker.invokeAll( 
+            new Calculator(), "wrap", new ArrayList<Object>(), null, null );
+        assertTrue( results.isEmpty() );
+        assertFalse( results instanceof RecordableList );
+    }
+    
+    @Test( expected = BioclipseException.class )
+    public void failureIsThrown() throws Exception {
+        BulkInvoker.invokeAll( 
+            new Calculator(), "fail", numbers( 10 ), null, null );
+    }
+    
+    @Test( expected = OperationCanceledException.class )
+    public void cancel() throws Exception {
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled( true );
+        BulkInvoker.invokeAll( 
+            new Calculator(), "square", numbers( 10 ), null, monitor );
+    }
+}
@@ -0,0 +1,96 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.bioclipse.managers.CallContext;
+import net.bioclipse.managers.MonitorContainer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class CallContextTest {
+
+    @After
+    public void clear() {
+        CallContext.attach( null );
+    }
+
+    @Test
+    public void childIsCancelledWithParent() {
+        CallContext root = CallContext.newRoot( new NullProgressMonitor() );
+        CallContext child = root.child( new NullProgressMonitor() );
+        assertEquals( root.getTraceId(), child.getTraceId() );
+        assertSame( root, child.getParent() );
+        assertFalse( child.getMonitor().isCanceled() );
+        root.cancel();
+        assertTrue( child.isCanceled() );
+        assertTrue( child.getMonitor().isCanceled() );
+    }
+
+    @Test
+    public void childCancelDoesNotReachParent() {
+        CallContext root = CallContext.newRoot( new NullProgressMonitor() );
+        root.child( new NullProgressMonitor() ).cancel();
+        assertFalse( root.isCanceled() );
+    }
+
+    @Test
+    public void rootsGetNewTraceIds() {
+        assertFalse( CallContext.newRoot( new NullProgressMonitor() )
+                                .getTraceId()
+                     == CallContext.newRoot( new NullProgressMonitor() )
+                                   .getTraceId() );
+    }
+
+    @Test
+    public void attachRestores() {
+        CallContext a = CallContext.newRoot( new NullProgressMonitor() );
+        CallContext b = a.child( new NullProgressMonitor() );
+        assertNull( CallContext.attach( a ) );
+        assertSame( a, CallContext.attach( b ) );
+        assertSame( b, CallContext.current() );
+        CallContext.attach( a );
+        assertSame( a, CallContext.current() );
+    }
+
+    @Test
+    public void carriedToPoolThread() throws Exception {
+        IProgressMonitor monitor = new NullProgressMonitor();
+        CallContext previous = CallContext.current();
+        MonitorContainer.getInstance().addMonitor( monitor );
+        final CallContext context = CallContext.current();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            CallContext seen = pool.submit( context.wrap(
+                new Callable<CallContext>() {
+                    public CallContext call() {
+                        return CallContext.current();
+                    }
+                })).get();
+            assertSame( context, seen );
+            assertNull( pool.submit( new Callable<CallContext>() {
+                public CallContext call() {
+                    return CallContext.current();
+                }
+            }).get() );
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertSame( monitor, MonitorContainer.getInstance().getMonitor() );
+        CallContext.attach( previous );
+    }
+}
@@ -0,0 +1,99 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.managers.business.DispatchPlan;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class DispatchPlanTest {
+
+    @Test
+    public void planIsReused() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getGreeting", String.class ) );
+        assertSame( plan,
+                    DispatchPlan.forMethod(
+                        TestManager.class,
+                        ITestManager.class.getMethod( "getGreeting",
+                                                      String.class ) ) );
+        assertTrue( plan.runsInSameThread() );
+        assertFalse( plan.convertsFiles() );
+    }
+
+    @Test
+    public void stringToIFileMethod() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "runAsJob", String.class ) );
+        assertEquals( TestManager.class.getMethod( "runAsJob",
+                                                   IFile.class,
+                                                   IProgressMonitor.class ),
+                      plan.getMethodToRun() );
+        assertTrue( plan.runsAsJob() );
+        assertFalse( plan.runsInSameThread() );
+        assertTrue( plan.isFileParameter( 0 ) );
+        assertEquals( 1, plan.getMonitorIndex() );
+    }
+
+    @Test
+    public void returnerAndHookPositions() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getBioObjects",
+                                          IFile.class,
+                                          BioclipseJobUpdateHook.class ) );
+        assertEquals( 1, plan.getReturnerIndex() );
+        assertEquals( 2, plan.getMonitorIndex() );
+        assertEquals( 1, plan.getUpdateHookIndex() );
+        assertEquals( -1, plan.getUIJobIndex() );
+        assertFalse( plan.isExtended() );
+    }
+
+    @Test
+    public void uiJobPosition() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getBioObjects",
+                                          IFile.class,
+                                          BioclipseUIJob.class ) );
+        assertEquals( 1, plan.getUIJobIndex() );
+        assertTrue( plan.runsAsJob() );
+    }
+
+    @Test
+    public void guiAction() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "guiAction" ) );
+        assertTrue( plan.isGuiAction() );
+    }
+
+    @Test
+    public void invokerArguments() throws Exception {
+        DispatchPlan plan = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getBioObjects",
+                                          IFile.class,
+                                          BioclipseUIJob.class ) );
+        IProgressMonitor monitor = new NullProgressMonitor();
+        Object[] arguments = plan.getInvoker().arguments(
+            new Object[] { null, null }, null, monitor );
+        assertEquals( plan.getMethodToRun().getParameterTypes().length,
+                      arguments.length );
+        assertSame( monitor, arguments[plan.getMonitorIndex()] );
+        assertSame( plan.getInvoker(), plan.getInvoker() );
+    }
+}
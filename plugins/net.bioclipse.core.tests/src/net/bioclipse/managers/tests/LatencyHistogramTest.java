@@ -0,0 +1,62 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.bioclipse.managers.business.LatencyHistogram;
+import net.bioclipse.managers.business.ManagerMethodStatistics;
+import net.bioclipse.managers.business.MethodStatistics;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ ) {
+            histogram.record( i * 1000000L );
+        }
+        assertEquals( 1000, histogram.getCount() );
+        assertEquals( 1000000, histogram.getMax() );
+        long p50 = histogram.getPercentile( 50 );
+        assertTrue( "p50 was " + p50, 
+                    p50 >= 500000 && p50 <= 500000 * 1.07 );
+        long p99 = histogram.getPercentile( 99 );
+        assertTrue( "p99 was " + p99, 
+                    p99 >= 990000 && p99 <= 1000000 );
+        assertEquals( 1000000, histogram.getPercentile( 100 ) );
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record( 3000 );
+        histogram.record( 7000 );
+        assertEquals( 3, histogram.getPercentile( 50 ) );
+        assertEquals( 7, histogram.getPercentile( 100 ) );
+        assertEquals( 5.0, histogram.getMean(), 0.0001 );
+    }
+
+    @Test
+    public void reset() {
+        MethodStatistics statistics = ManagerMethodStatistics.getInstance()
+                                      .getStatistics( "test", "reset" );
+        statistics.recordCall( 1000, true );
+        statistics.recordQueued( 1000 );
+        assertEquals( 1, statistics.getCalls() );
+        assertEquals( 1, statistics.getErrors() );
+        assertTrue( ManagerMethodStatistics.getInstance().getAll()
+                                           .contains( statistics ) );
+        ManagerMethodStatistics.getInstance().reset();
+        assertEquals( 0, statistics.getCalls() );
+        assertEquals( 0, statistics.getErrors() );
+        assertEquals( 0, statistics.getQueueTimes().getCount() );
+        assertSame( statistics, ManagerMethodStatistics.getInstance()
+                                .getStatistics( "test.reset" ) );
+    }
+}
@@ -0,0 +1,117 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bioclipse.managers.business.DispatchPlan;
+import net.bioclipse.managers.business.ResultCache;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class ResultCacheTest {
+
+    private static final TestManager manager = new TestManager();
+
+    private static DispatchPlan greeting() throws Exception {
+        return DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getGreeting", String.class ) );
+    }
+
+    @Test
+    public void hitsAndMisses() throws Exception {
+        ResultCache cache = new ResultCache( 10 );
+        ResultCache.Key key
+            = cache.keyFor( manager, greeting(), new Object[] { "a" } );
+        assertSame( ResultCache.MISSING, cache.get( key ) );
+        cache.put( key, "OH HAI a" );
+        assertEquals( "OH HAI a",
+                      cache.get( cache.keyFor( manager,
+                                               greeting(),
+                                               new Object[] { "a" } ) ) );
+        assertSame( ResultCache.MISSING,
+                    cache.get( cache.keyFor( manager,
+                                             greeting(),
+                                             new Object[] { "b" } ) ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 2, cache.getMisses() );
+        assertEquals( 1.0 / 3, cache.getHitRate(), 1e-9 );
+    }
+
+    @Test
+    public void nullIsAResult() throws Exception {
+        ResultCache cache = new ResultCache( 10 );
+        ResultCache.Key key
+            = cache.keyFor( manager, greeting(), new Object[] { null } );
+        cache.put( key, null );
+        assertNull( cache.get( key ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedIsDropped() throws Exception {
+        ResultCache cache = new ResultCache( 1 );
+        ResultCache.Key a
+            = cache.keyFor( manager, greeting(), new Object[] { "a" } );
+        ResultCache.Key b
+            = cache.keyFor( manager, greeting(), new Object[] { "b" } );
+        cache.put( a, "A" );
+        cache.put( b, "B" );
+        assertSame( ResultCache.MISSING, cache.get( a ) );
+        assertEquals( "B", cache.get( b ) );
+        assertEquals( 1, cache.size() );
+        assertEquals( 1, cache.getEvictions() );
+    }
+
+    @Test
+    public void resultsAreCopied() throws Exception {
+        ResultCache cache = new ResultCache( 10 );
+        ResultCache.Key key
+            = cache.keyFor( manager, greeting(), new Object[] { "a" } );
+        List<String> result = new ArrayList<String>( Arrays.asList( "x" ) );
+        cache.put( key, result );
+        result.add( "changed by the first caller" );
+        @SuppressWarnings("unchecked")
+        List<String> cached = (List<String>) cache.get( key );
+        assertEquals( Arrays.asList( "x" ), cached );
+        cached.clear();
+        assertEquals( Arrays.asList( "x" ), cache.get( key ) );
+    }
+
+    @Test
+    public void keyArgumentsAreCopied() throws Exception {
+        ResultCache cache = new ResultCache( 10 );
+        String[] array = { "a" };
+        List<String> list = new ArrayList<String>( Arrays.asList( "a" ) );
+        ResultCache.Key key = cache.keyFor( manager,
+                                            greeting(),
+                                            new Object[] { array, list } );
+        cache.put( key, "A" );
+        array[0] = "b";
+        list.set( 0, "b" );
+        assertEquals( "A",
+                      cache.get( cache.keyFor( manager,
+                                               greeting(),
+                                               new Object[] {
+                                                   new String[] { "a" },
+                                                   Arrays.asList( "a" ) } ) ) );
+    }
+
+    @Test
+    public void fileArguments() throws Exception {
+        assertFalse( greeting().getInvoker().isFileArgument( 0 ) );
+        DispatchPlan path = DispatchPlan.forMethod(
+            TestManager.class,
+            ITestManager.class.getMethod( "getPath", String.class ) );
+        assertTrue( path.getInvoker().isFileArgument( 0 ) );
+    }
+}
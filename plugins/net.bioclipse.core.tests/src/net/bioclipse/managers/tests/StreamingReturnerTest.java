@@ -0,0 +1,139 @@
+package net.bioclipse.managers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.bioclipse.jobs.StreamingReturner;
+import net.bioclipse.jobs.StreamingReturner.Policy;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class StreamingReturnerTest {
+
+    private static Thread produce( final StreamingReturner<Integer> stream, 
+                                   final int n, 
+                                   final Throwable failure ) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    for ( int i = 0; i < n; i++ ) {
+                        stream.partialReturn( i );
+                    }
+                }
+                catch ( OperationCanceledException e ) {
+                    // the consumer gave up
+                }
+                stream.close( failure );
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void blockingKeepsEverything() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4 );
+        produce( stream, 1000, null );
+        List<Integer> result = new ArrayList<Integer>();
+        for ( Integer i : stream ) {
+            result.add( i );
+        }
+        assertEquals( 1000, result.size() );
+        for ( int i = 0; i < 1000; i++ ) {
+            assertEquals( i, (int) result.get( i ) );
+        }
+        assertEquals( 0, stream.getDropped() );
+    }
+
+    @Test
+    public void dropOldestKeepsTheLatest() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4, Policy.DROP_OLDEST );
+        produce( stream, 100, null ).join();
+        List<Integer> result = new ArrayList<Integer>();
+        for ( Integer i : stream ) {
+            result.add( i );
+        }
+        assertEquals( 4, result.size() );
+        for ( int i = 0; i < 4; i++ ) {
+            assertEquals( 96 + i, (int) result.get( i ) );
+        }
+        assertEquals( 96, stream.getDropped() );
+    }
+
+    @Test
+    public void dropNewestKeepsTheFirst() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4, Policy.DROP_NEWEST );
+        produce( stream, 100, null ).join();
+        Iterator<Integer> i = stream.iterator();
+        for ( int j = 0; j < 4; j++ ) {
+            assertTrue( i.hasNext() );
+            assertEquals( j, (int) i.next() );
+        }
+        assertFalse( i.hasNext() );
+        assertEquals( 96, stream.getDropped() );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void failureReachesTheConsumer() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4 );
+        produce( stream, 2, new IllegalStateException() );
+        for ( @SuppressWarnings("unused") Integer i : stream ) {
+        }
+    }
+
+    @Test
+    public void cancelStopsTheProducer() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4 );
+        Thread producer = produce( stream, Integer.MAX_VALUE, null );
+        Iterator<Integer> i = stream.iterator();
+        i.next();
+        stream.cancel();
+        producer.join( 5000 );
+        assertFalse( producer.isAlive() );
+    }
+
+    @Test( timeout = 5000 )
+    public void iterationEndsAfterCancel() throws Exception {
+        StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4 );
+        Thread producer = produce( stream, Integer.MAX_VALUE, null );
+        Iterator<Integer> i = stream.iterator();
+        i.next();
+        stream.cancel();
+        producer.join();
+        assertFalse( i.hasNext() );
+        assertFalse( i.hasNext() );
+    }
+
+    @Test( timeout = 5000 )
+    public void cancelWakesWaitingConsumer() throws Exception {
+        final StreamingReturner<Integer> stream 
+            = new StreamingReturner<Integer>( "", 4 );
+        final Iterator<Integer> i = stream.iterator();
+        final boolean[] hasNext = { true };
+        Thread consumer = new Thread() {
+            public void run() {
+                hasNext[0] = i.hasNext();
+            }
+        };
+        consumer.start();
+        Thread.sleep( 50 );
+        stream.cancel();
+        consumer.join();
+        assertFalse( hasNext[0] );
+    }
+}
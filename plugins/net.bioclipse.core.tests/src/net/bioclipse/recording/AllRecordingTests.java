@@ -21,6 +21,9 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(value=Suite.class)
 @SuiteClasses( { RecordTest.class,
+                 HistoryTest.class,
+                 RecordingProxyTest.class,
+                 SessionJournalTest.class,
                  ScriptGenerationTests.class } )
 public class AllRecordingTests {
 
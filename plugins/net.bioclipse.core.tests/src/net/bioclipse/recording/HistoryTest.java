@@ -0,0 +1,92 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HistoryTest {
+
+    private static class QueuedHistory extends History {
+
+        private List<Runnable> queued = new ArrayList<Runnable>();
+
+        QueuedHistory( int capacity ) {
+            super( capacity );
+        }
+
+        @Override
+        protected void dispatch( Runnable notification ) {
+            queued.add( notification );
+        }
+    }
+
+    private static IRecord record( String script ) {
+        ScriptRecord record = new ScriptRecord();
+        record.setScript( ScriptRecord.Language.JS, script );
+        return record;
+    }
+
+    @Test
+    public void testKeepsLatestRecords() {
+        History history = new QueuedHistory( 3 );
+        List<IRecord> records = new ArrayList<IRecord>();
+        for ( int i = 0; i < 5; i++ ) {
+            IRecord r = record( "r" + i );
+            records.add( r );
+            history.addRecord( r );
+        }
+        assertEquals( 3, history.getRecordCount() );
+        assertEquals( records.subList( 2, 5 ), history.getRecords() );
+    }
+
+    @Test
+    public void testCoalescesNotifications() {
+        QueuedHistory history = new QueuedHistory( 10 );
+        final int[] events = new int[1];
+        history.addHistoryListener( new IHistoryListener() {
+            public void receiveHistoryEvent( HistoryEvent e ) {
+                events[0]++;
+            }
+        } );
+        for ( int i = 0; i < 1000; i++ ) {
+            history.addRecord( record( "r" + i ) );
+        }
+        assertEquals( 1, history.queued.size() );
+        history.queued.remove( 0 ).run();
+        assertEquals( 1, events[0] );
+        history.addRecord( record( "last" ) );
+        assertEquals( 1, history.queued.size() );
+    }
+
+    @Test
+    public void testConcurrentAdds() throws InterruptedException {
+        final History history = new QueuedHistory( 100 );
+        Thread[] threads = new Thread[4];
+        for ( int t = 0; t < threads.length; t++ ) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for ( int i = 0; i < 10000; i++ ) {
+                        history.addRecord( record( "r" + i ) );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        assertEquals( 100, history.getRecords().size() );
+    }
+}
@@ -0,0 +1,183 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import net.bioclipse.core.Recorded;
+import net.bioclipse.core.domain.BioObject;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+import net.bioclipse.recording.ScriptGenerationTests.TestObject;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import org.junit.Test;
+
+public class RecordingProxyTest {
+
+    public interface IRecordedObject extends IBioObject {
+
+        @Recorded
+        public String name( String prefix );
+    }
+
+    public static class RecordedObject extends BioObject
+                                       implements IRecordedObject {
+
+        public String name( String prefix ) {
+            return prefix + "x";
+        }
+
+        public RecordedObject child() {
+            return new RecordedObject();
+        }
+
+        public Object getParsedResource() {
+            return null;
+        }
+    }
+
+    public static class NamedObject extends RecordedObject {
+
+        private final String name;
+
+        public NamedObject() {
+            // calls an overridable method while being constructed
+            name = name( "n" );
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static MethodInvocation returning( final Object returnValue ) {
+        return new MethodInvocation() {
+            public Method getMethod() {
+                return null;
+            }
+            public Object[] getArguments() {
+                return new Object[0];
+            }
+            public Object proceed() {
+                return returnValue;
+            }
+            public Object getThis() {
+                return null;
+            }
+            public AccessibleObject getStaticPart() {
+                return null;
+            }
+        };
+    }
+
+    private History history = new History( 10 ) {
+        @Override
+        protected void dispatch( Runnable notification ) {
+        }
+    };
+
+    private WrapInProxyAdvice wrapInProxyAdvice() {
+        return new WrapInProxyAdvice();
+    }
+
+    @After
+    public void enableRecording() {
+        Recording.setEnabled( true );
+    }
+
+    @Test
+    public void testRecordedMethods() throws Exception {
+        assertTrue( Recording.isRecorded(
+            RecordedObject.class.getMethod( "name", String.class ) ) );
+        assertFalse( Recording.isRecorded(
+            RecordedObject.class.getMethod( "child" ) ) );
+        assertTrue( Recording.hasRecordedMethods( RecordedObject.class ) );
+        assertFalse( Recording.hasRecordedMethods( TestObject.class ) );
+    }
+
+    @Test
+    public void testProxiesWrap() throws Throwable {
+        WrapInProxyAdvice advice = wrapInProxyAdvice();
+        RecordedObject target = new RecordedObject();
+        RecordedObject proxy
+            = (RecordedObject) advice.invoke( returning( target ) );
+        assertNotSame( target, proxy );
+        assertEquals( target.getUID(), proxy.getUID() );
+        assertEquals( "ax", proxy.name( "a" ) );
+
+        // returned bioobjects are wrapped too, in the same proxy class
+        RecordedObject child = proxy.child();
+        assertSame( proxy.getClass(), child.getClass() );
+        Object other = advice.invoke( returning( new RecordedObject() ) );
+        assertSame( proxy.getClass(), other.getClass() );
+    }
+
+    @Test
+    public void testConstructorNotIntercepted() throws Throwable {
+        WrapInProxyAdvice advice = wrapInProxyAdvice();
+        NamedObject proxy
+            = (NamedObject) advice.invoke( returning( new NamedObject() ) );
+        assertEquals( "nx", proxy.getName() );
+        proxy = (NamedObject) advice.invoke( returning( new NamedObject() ) );
+        assertEquals( "nx", proxy.getName() );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testListReadsNotRecorded() throws Throwable {
+        RecordedObject element = new RecordedObject();
+        RecordableList<IBioObject> target = new RecordableList<IBioObject>();
+        target.add( element );
+        RecordableList<IBioObject> list = (RecordableList<IBioObject>)
+            wrapInProxyAdvice().invoke( returning( target ) );
+        assertNotSame( target, list );
+
+        assertEquals( 1, list.size() );
+        assertFalse( list.isEmpty() );
+        assertTrue( list.contains( element ) );
+        assertEquals( 0, list.indexOf( element ) );
+        assertEquals( element.getUID(), list.get( 0 ).getUID() );
+        assertEquals( 0, history.getRecordCount() );
+    }
+
+    @Test
+    public void testUnrecordedNotWrapped() throws Throwable {
+        TestObject target = new TestObject();
+        assertSame( target, wrapInProxyAdvice().invoke( returning( target ) ) );
+    }
+
+    @Test
+    public void testRecordingOff() throws Throwable {
+        Recording.setEnabled( false );
+        RecordedObject target = new RecordedObject();
+        assertSame( target, wrapInProxyAdvice().invoke( returning( target ) ) );
+
+        Method name = IRecordedObject.class.getMethod( "name", String.class );
+        new RecordingAdvice( history ).afterReturning( "ax", name,
+                                                       new Object[] { "a" },
+                                                       target );
+        assertEquals( 0, history.getRecordCount() );
+
+        Recording.setEnabled( true );
+        new RecordingAdvice( history ).afterReturning( "ax", name,
+                                                       new Object[] { "a" },
+                                                       target );
+        assertEquals( 1, history.getRecordCount() );
+    }
+}
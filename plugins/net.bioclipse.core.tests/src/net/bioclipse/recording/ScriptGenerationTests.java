@@ -12,7 +12,10 @@ package net.bioclipse.recording;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import net.bioclipse.core.domain.BioObject;
@@ -221,4 +224,35 @@ public class ScriptGenerationTests {
                 }
         );
     }
+
+    @Test
+    public void testWrittenScript() throws IOException {
+
+        List<IRecord> records = new ArrayList<IRecord>();
+        for ( int i = 0; i < 10000; i++ ) {
+            TestObject testObject = new TestObject();
+            records.add( new ManagerObjectRecord( "load",
+                                                  "manager",
+                                                  new Object[] { i },
+                                                  testObject ) );
+            if ( i % 2 == 0 ) {
+                records.add( new BioObjectRecord( "method",
+                                                  testObject.getUID(),
+                                                  new Object[] {},
+                                                  null ) );
+            }
+        }
+
+        StringWriter written = new StringWriter();
+        new JsScriptGenerator().generateScript( records, written );
+        String[] lines = written.toString().split( "\n" );
+        String[] statements = new JsScriptGenerator().generateScript(
+                                  records.toArray( new IRecord[0] ) );
+
+        assertEquals( records.size(), lines.length );
+        assertEquals( Arrays.asList( statements ), Arrays.asList( lines ) );
+        assertEquals( "testObject1 = manager.load( 0 )", lines[0] );
+        assertEquals( "testObject1.method()", lines[1] );
+        assertEquals( "manager.load( 1 )", lines[2] );
+    }
 }
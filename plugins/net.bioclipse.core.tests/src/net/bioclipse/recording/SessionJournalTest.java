@@ -0,0 +1,201 @@
+/* ***************************************************************************
+ * Copyright (c) 2011 Bioclipse Project
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *****************************************************************************/
+
+package net.bioclipse.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bioclipse.recording.ScriptGenerationTests.TestObject;
+
+import org.junit.Test;
+
+public class SessionJournalTest {
+
+    private static File createDirectory() throws IOException {
+        File dir = File.createTempFile( "journal", "" );
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static List<MethodRecord> records() {
+        TestObject object = new TestObject();
+        List<MethodRecord> records = new ArrayList<MethodRecord>();
+        records.add( new ManagerObjectRecord( "load", "cdk",
+                                              new Object[] { "caf\u00e9.mol" },
+                                              object ) );
+        records.add( new BioObjectRecord( "getName", object.getUID(),
+                                          new Object[0], "water" ) );
+        records.add( new ManagerObjectRecord( "calculate", "qsar",
+                                              new Object[] { object, 3 },
+                                              null ) );
+        return records;
+    }
+
+    private static String[] script( List<MethodRecord> records ) {
+        return new JsScriptGenerator().generateScript(
+                   records.toArray( new IRecord[records.size()] ) );
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        SessionJournal journal
+            = new SessionJournal( createDirectory(),
+                                  SessionJournal.DEFAULT_SEGMENT_SIZE );
+        List<MethodRecord> records = records();
+        for ( MethodRecord r : records ) {
+            journal.append( r );
+        }
+        journal.flush();
+        assertEquals( 3, journal.getEntryCount() );
+        String[] replayed
+            = journal.replay( 0, Long.MAX_VALUE, new JsScriptGenerator() );
+        assertEquals( Arrays.asList( script( records ) ),
+                      Arrays.asList( replayed ) );
+        assertEquals( 0, journal.getRecords( 0, 1 ).size() );
+
+        List<MethodRecord> qsar
+            = journal.getRecords( "qsar", 0, Long.MAX_VALUE );
+        assertEquals( 1, qsar.size() );
+        assertEquals( records.get( 2 ).toString(), qsar.get( 0 ).toString() );
+        assertEquals( 0, journal.getRecords( "none", 0, Long.MAX_VALUE )
+                                .size() );
+        journal.close();
+    }
+
+    @Test
+    public void testReopenAndRotate() throws Exception {
+        File dir = createDirectory();
+        SessionJournal journal = new SessionJournal( dir, 64 );
+        List<MethodRecord> records = new ArrayList<MethodRecord>();
+        for ( int i = 0; i < 20; i++ ) {
+            records.addAll( records() );
+        }
+        for ( MethodRecord r : records ) {
+            journal.append( r );
+        }
+        journal.close();
+        assertTrue( journal.getSegmentCount() > 1 );
+
+        journal = new SessionJournal( dir, 64 );
+        assertEquals( records.size(), journal.getEntryCount() );
+        List<MethodRecord> read = journal.getRecords( 0, Long.MAX_VALUE );
+        for ( int i = 0; i < records.size(); i++ ) {
+            assertEquals( records.get( i ).toString(),
+                          read.get( i ).toString() );
+        }
+        journal.append( records.get( 0 ) );
+        journal.flush();
+        assertEquals( 21, journal.getRecords( "cdk", 0, Long.MAX_VALUE )
+                                 .size() );
+        journal.close();
+    }
+
+    private static int segmentFiles( File dir ) {
+        return dir.list().length;
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        File dir = createDirectory();
+        SessionJournal journal = new SessionJournal( dir, 64, 3 );
+        List<MethodRecord> records = new ArrayList<MethodRecord>();
+        for ( int i = 0; i < 20; i++ ) {
+            records.addAll( records() );
+        }
+        for ( MethodRecord r : records ) {
+            journal.append( r );
+        }
+        journal.close();
+        assertEquals( 3, journal.getSegmentCount() );
+        assertEquals( 3, segmentFiles( dir ) );
+        int kept = journal.getEntryCount();
+        assertTrue( kept > 0 && kept < records.size() );
+        List<MethodRecord> read = journal.getRecords( 0, Long.MAX_VALUE );
+        assertEquals( kept, read.size() );
+        for ( int i = 0; i < kept; i++ ) {
+            assertEquals( records.get( records.size() - kept + i ).toString(),
+                          read.get( i ).toString() );
+        }
+
+        // reopening with a lower limit deletes the oldest segments
+        journal = new SessionJournal( dir, 64, 2 );
+        assertEquals( 2, journal.getSegmentCount() );
+        assertEquals( 2, segmentFiles( dir ) );
+        journal.close();
+    }
+
+    @Test
+    public void testSegmentNumbersWithGaps() throws Exception {
+        File dir = createDirectory();
+        SessionJournal journal = new SessionJournal( dir, 64 );
+        List<MethodRecord> records = records();
+        for ( MethodRecord r : records ) {
+            journal.append( r );
+        }
+        journal.close();
+        String[] names = dir.list();
+        Arrays.sort( names );
+        assertTrue( names.length > 2 );
+        // a gap, so there are fewer segments than the highest number
+        assertTrue( new File( dir, names[0] ).delete() );
+
+        journal = new SessionJournal( dir, 64 );
+        int before = journal.getEntryCount();
+        for ( MethodRecord r : records ) {
+            journal.append( r );
+        }
+        journal.close();
+        assertEquals( before + records.size(), journal.getEntryCount() );
+        assertEquals( names.length - 1 + records.size(),
+                      segmentFiles( dir ) );
+    }
+
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        SessionJournal journal = new SessionJournal( createDirectory(), 64 );
+        journal.close();
+        journal.append( records().get( 0 ) );
+        journal.flush();
+        assertEquals( 0, journal.getEntryCount() );
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        final SessionJournal journal
+            = new SessionJournal( createDirectory(),
+                                  SessionJournal.DEFAULT_SEGMENT_SIZE );
+        final List<MethodRecord> records = records();
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for ( int n = 0; n < 100; n++ ) {
+                        journal.append( records.get( n % records.size() ) );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread t : threads ) {
+            t.join();
+        }
+        journal.flush();
+        assertEquals( threads.length * 100, journal.getEntryCount() );
+        journal.close();
+    }
+}
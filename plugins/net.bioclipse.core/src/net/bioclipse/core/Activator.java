@@ -17,6 +17,8 @@ import net.bioclipse.core.util.FileUtil;
 import net.bioclipse.core.util.ListFuncs;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.core.util.Predicate;
+import net.bioclipse.managers.business.DispatchPlan;
+import net.bioclipse.recording.WrapInProxyAdvice;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IProject;
@@ -29,7 +31,10 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Plugin;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.SynchronousBundleListener;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -49,6 +54,20 @@ public class Activator extends Plugin {
     private static Activator plugin;
     
     private static final Logger logger = Logger.getLogger(Activator.class);
+
+    /*
+     * Caches keyed by class would otherwise keep the classes of stopped,
+     * updated or uninstalled bundles, and their class loaders, alive
+     */
+    private final BundleListener classCacheCleaner
+        = new SynchronousBundleListener() {
+            public void bundleChanged(BundleEvent event) {
+                if ( event.getType() == BundleEvent.STOPPED
+                     || event.getType() == BundleEvent.UNRESOLVED ) {
+                    clearClassCaches();
+                }
+            }
+        };
     
     public Activator() {
     }
@@ -56,16 +75,24 @@ public class Activator extends Plugin {
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
+        context.addBundleListener(classCacheCleaner);
         getVirtualProject();
         startBundleExtender();
     }
     
     public void stop(BundleContext context) throws Exception {
+        context.removeBundleListener(classCacheCleaner);
+        clearClassCaches();
         FileUtil.deleteLinkedProject();
         plugin = null;
         super.stop(context);
     }
     
+    private static void clearClassCaches() {
+        DispatchPlan.clearCache();
+        WrapInProxyAdvice.clearPrototypes();
+    }
+
     /**
      * Returns the shared instance
      *
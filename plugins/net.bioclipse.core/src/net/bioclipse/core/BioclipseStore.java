@@ -4,104 +4,484 @@
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * <http://www.eclipse.org/legal/epl-v10.html>
- * 
+ *
  * Contributors:
  *     Jonathan Alvarsson
  *     Arvid Berg - redesign
- *     
+ *
  ******************************************************************************/
 package net.bioclipse.core;
 
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.Map;
-
-import net.bioclipse.core.util.LogUtils;
+import java.io.File;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 
 /**
+ * Holds models parsed from resources so that they don't have to be parsed
+ * again, e.g. when an editor is reopened. A model is stored for a resource
+ * under a key, typically telling what kind of model it is.
+ * <p>
+ * The store holds models up to a total weight, by default the sizes of the
+ * files they were parsed from, and drops the least recently used models
+ * when it gets heavier. Lookups don't wait for other threads; if another
+ * thread is busy with the store a lookup is not counted as a use.
+ * <p>
+ * The models of a resource are dropped when the resource is changed,
+ * moved or removed, or when its project is closed.
+ * <p>
+ * If a {@link ModelDiskCache} is set, models parsed from files under keys
+ * registered with {@link ModelDiskCache#register(Object, String, int)} are
+ * also written to disk, and a model not held in memory is looked for there
+ * before <code>null</code> is returned, so that models survive restarts.
+ *
  * @author jonalv
  */
-public class BioclipseStore {
-
-    public static final BioclipseStore instance = new BioclipseStore();
-    
-    Logger logger = Logger.getLogger(BioclipseStore.class);
-   
-    Map<IResource,SoftReference<Map<Object,Object>>> resourceMap;
-    
-    IResourceChangeListener listener;
-    
-    private BioclipseStore() {
-       resourceMap = new HashMap< IResource,
-                                  SoftReference<Map<Object,Object>> >();
-    }
-    
-    public synchronized static Object get( IResource resource, Object key) {
-       return instance.getModel(resource,key);
-    }
-    
-    public synchronized static void put( IResource resource, 
-                            Object key, 
+public class BioclipseStore implements IResourceChangeListener {
+
+    public static final long DEFAULT_MAX_WEIGHT = 128L * 1024 * 1024;
+
+    private static final Logger logger
+        = Logger.getLogger( BioclipseStore.class );
+
+    private static final int CHANGES = IResourceDelta.CONTENT
+                                       | IResourceDelta.REPLACED
+                                       | IResourceDelta.ENCODING
+                                       | IResourceDelta.LOCAL_CHANGED
+                                       | IResourceDelta.TYPE;
+
+    public static final BioclipseStore instance = newListeningStore();
+
+    private final ConcurrentMap<Key, Entry> entries
+        = new ConcurrentHashMap<Key, Entry>();
+    // changed holding lock, the sets are guarded by lock and never empty
+    private final ConcurrentMap<IResource, Set<Key>> keysByResource
+        = new ConcurrentHashMap<IResource, Set<Key>>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock, least recently used first
+    private final LinkedHashMap<Key, Entry> order
+        = new LinkedHashMap<Key, Entry>( 16, 0.75f, true );
+    // guarded by lock
+    private long weight;
+    private volatile long maxWeight;
+    private volatile ModelDiskCache diskCache;
+
+    private final AtomicLong hits          = new AtomicLong();
+    private final AtomicLong misses        = new AtomicLong();
+    private final AtomicLong evictions     = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static BioclipseStore newListeningStore() {
+        BioclipseStore store = new BioclipseStore( DEFAULT_MAX_WEIGHT );
+        try {
+            IWorkspace workspace = ResourcesPlugin.getWorkspace();
+            if ( workspace != null ) {
+                workspace.addResourceChangeListener(
+                    store, IResourceChangeEvent.POST_CHANGE );
+            }
+        }
+        catch ( Exception e ) {
+            logger.debug( "No workspace to listen to, "
+                          + "if running tests this is ok", e );
+        }
+        return store;
+    }
+
+    /**
+     * Creates a store not listening to the workspace. The store used by
+     * the static methods is {@link #instance}.
+     *
+     * @param maxWeight the total weight of the models to hold at most
+     */
+    public BioclipseStore( long maxWeight ) {
+        setMaxWeight( maxWeight );
+    }
+
+    /**
+     * @param resource the resource the model was parsed from
+     * @param key what kind of model to get
+     * @return the model or <code>null</code> if there is none
+     */
+    public static Object get( IResource resource, Object key ) {
+        return instance.getModel( resource, key );
+    }
+
+    /**
+     * Stores a model weighing the size of the file it was parsed from.
+     *
+     * @param resource the resource the model was parsed from
+     * @param key what kind of model it is
+     * @param model the model
+     */
+    public static void put( IResource resource,
+                            Object key,
                             Object model ) {
-        instance.putModel(resource,key,model);
-    }
-    
-
-    private void putModel( IResource resource, 
-                           Object key, 
-                           Object model ) {
-        
-        SoftReference<Map<Object,Object>> ref=resourceMap.get(resource);
-        Map<Object,Object> values = null;
-                
-        values = (ref == null?null: ref.get() );
-        if(values== null) {
-            values = new HashMap<Object,Object>();
-        }
-        values.put(key, model );
-        if(ref==null){           
-            ref = new SoftReference<Map<Object,Object>>(values);            
-            resourceMap.put(resource,ref);
-            addResourceListener(resource );
-        }
-    }
-
-    private Object getModel(IResource resource, Object key){
-        SoftReference<Map<Object,Object>> ref=resourceMap.get(resource);
-        if(ref == null) return null;
-        Map<Object,Object> values=ref.get();
-        if(values!=null){
-            //logger.debug("Retriving Object from Cache" );
-            return values.get(key );
-        }else
-            resourceMap.remove(resource );
-        return null;
-    }
-    
-    private void addResourceListener(IResource resource){
-        if(listener == null){
-            listener = new IResourceChangeListener() {
-                
-                public void resourceChanged(IResourceChangeEvent event) {
-                    if ( event.getResource() instanceof IResource ) {
-                        resourceMap.remove(event.getResource());
+        instance.putModel( resource, key, model, weigh( resource ) );
+    }
+
+    /**
+     * @param resource the resource the model was parsed from
+     * @param key what kind of model it is
+     * @param model the model
+     * @param weight the approximate size of the model, in bytes
+     */
+    public static void put( IResource resource,
+                            Object key,
+                            Object model,
+                            long weight ) {
+        instance.putModel( resource, key, model, weight );
+    }
+
+    /**
+     * @param resource the resource the model was parsed from
+     * @param key what kind of model to get
+     * @return the model or <code>null</code> if there is none
+     */
+    public Object getModel( IResource resource, Object key ) {
+        Key k = new Key( resource, key );
+        Entry entry = entries.get( k );
+        if ( entry == null ) {
+            misses.incrementAndGet();
+            ModelDiskCache disk = diskCache;
+            if ( disk != null && resource instanceof IFile ) {
+                Object model = disk.get( (IFile) resource, key );
+                if ( model != null ) {
+                    store( k, model, weigh( resource ) );
+                }
+                return model;
+            }
+            return null;
+        }
+        hits.incrementAndGet();
+        if ( lock.tryLock() ) {
+            try {
+                order.get( k );
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return entry.model;
+    }
+
+    /**
+     * Stores a model, dropping the least recently used models if the store
+     * gets too heavy. The model just stored is kept even if it alone is
+     * too heavy. Models of files are also written to the disk cache, if
+     * there is one and the key is registered with it.
+     *
+     * @param resource the resource the model was parsed from
+     * @param key what kind of model it is
+     * @param model the model
+     * @param weight the approximate size of the model, in bytes
+     */
+    public void putModel( IResource resource,
+                          Object key,
+                          Object model,
+                          long weight ) {
+
+        store( new Key( resource, key ), model, weight );
+        ModelDiskCache disk = diskCache;
+        if ( disk != null && resource instanceof IFile ) {
+            disk.put( (IFile) resource, key, model );
+        }
+    }
+
+    private void store( Key k, Object model, long weight ) {
+        Entry entry = new Entry( model, Math.max( 1, weight ) );
+        lock.lock();
+        try {
+            Set<Key> keys = keysByResource.get( k.resource );
+            if ( keys == null ) {
+                keys = new HashSet<Key>();
+                keysByResource.put( k.resource, keys );
+            }
+            keys.add( k );
+            Entry old = entries.put( k, entry );
+            order.put( k, entry );
+            if ( old != null ) {
+                this.weight -= old.weight;
+            }
+            this.weight += entry.weight;
+            while ( this.weight > maxWeight && order.size() > 1 ) {
+                Key eldest = order.keySet().iterator().next();
+                remove( eldest );
+                evictions.incrementAndGet();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // requires lock
+    private boolean remove( Key k ) {
+        Entry entry = order.remove( k );
+        entries.remove( k );
+        Set<Key> keys = keysByResource.get( k.resource );
+        if ( keys != null && keys.remove( k ) && keys.isEmpty() ) {
+            keysByResource.remove( k.resource );
+        }
+        if ( entry == null ) {
+            return false;
+        }
+        weight -= entry.weight;
+        return true;
+    }
+
+    /**
+     * Drops all models of the given resource.
+     *
+     * @param resource a resource
+     */
+    public void invalidate( IResource resource ) {
+        if ( !keysByResource.containsKey( resource ) ) {
+            return;
+        }
+        lock.lock();
+        try {
+            Set<Key> keys = keysByResource.remove( resource );
+            if ( keys == null ) {
+                return;
+            }
+            for ( Key k : keys ) {
+                if ( remove( k ) ) {
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Drops the models of the given container and everything in it
+     */
+    private void invalidateAllIn( IResource container ) {
+        IPath path = container.getFullPath();
+        for ( IResource resource : keysByResource.keySet() ) {
+            IPath p = resource.getFullPath();
+            if ( resource.equals( container )
+                 || path != null && p != null && path.isPrefixOf( p ) ) {
+                invalidate( resource );
+            }
+        }
+    }
+
+    /**
+     * Drops all models.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            order.clear();
+            keysByResource.clear();
+            weight = 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void resourceChanged( IResourceChangeEvent event ) {
+        if ( keysByResource.isEmpty() || event.getDelta() == null ) {
+            return;
+        }
+        try {
+            event.getDelta().accept( new IResourceDeltaVisitor() {
+                public boolean visit( IResourceDelta delta ) {
+                    IResource resource = delta.getResource();
+                    int flags = delta.getFlags();
+                    if ( delta.getKind() == IResourceDelta.REMOVED ) {
+                        invalidateAllIn( resource );
+                        return false;
+                    }
+                    if ( ( flags & IResourceDelta.OPEN ) != 0 ) {
+                        invalidateAllIn( resource );
+                        return false;
                     }
+                    if ( ( flags & CHANGES ) != 0 ) {
+                        invalidate( resource );
+                    }
+                    return !keysByResource.isEmpty();
                 }
-            };
+            });
+        }
+        catch ( CoreException e ) {
+            logger.warn( "Could not read the resource delta, "
+                         + "dropping all stored models", e );
+            clear();
+        }
+    }
+
+    /**
+     * @param maxWeight the total weight of the models to hold at most
+     */
+    public void setMaxWeight( long maxWeight ) {
+        if ( maxWeight < 1 ) {
+            throw new IllegalArgumentException(
+                "The store must be able to hold some weight" );
         }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @param diskCache the cache to also keep models on disk in or
+     *        <code>null</code> to only keep them in memory
+     */
+    public void setDiskCache( ModelDiskCache diskCache ) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * @return the cache models are also kept on disk in or
+     *         <code>null</code>
+     */
+    public ModelDiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * @return the total weight of the models to hold at most
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return the total weight of the models held
+     */
+    public long getWeight() {
+        lock.lock();
         try {
-        ResourcesPlugin.getWorkspace()
-                       .addResourceChangeListener(listener);
+            return weight;
         }
-        catch(Exception e) {
-            logger.error( "If running tests this is ok", 
-                          new RuntimeException(e) );
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of models held
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of lookups that found a model
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no model
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups that found a model, between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of models dropped because the store was too heavy
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of models dropped because their resource changed
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Sets all counts to zero, the models are kept.
+     */
+    public void resetStatistics() {
+        hits.set( 0 );
+        misses.set( 0 );
+        evictions.set( 0 );
+        invalidations.set( 0 );
+    }
+
+    /*
+     * The size of the file the resource is, or 1 if it is no file
+     */
+    private static long weigh( IResource resource ) {
+        IPath location = resource.getLocation();
+        if ( location == null ) {
+            return 1;
+        }
+        File file = location.toFile();
+        return file == null ? 1 : Math.max( 1, file.length() );
+    }
+
+    private static class Entry {
+
+        private final Object model;
+        private final long   weight;
+
+        Entry( Object model, long weight ) {
+            this.model  = model;
+            this.weight = weight;
+        }
+    }
+
+    private static class Key {
+
+        private final IResource resource;
+        private final Object    key;
+
+        Key( IResource resource, Object key ) {
+            this.resource = resource;
+            this.key      = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * resource.hashCode()
+                   + ( key == null ? 0 : key.hashCode() );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !(obj instanceof Key) ) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return resource.equals( other.resource )
+                   && ( key == null ? other.key == null
+                                    : key.equals( other.key ) );
         }
     }
 }
@@ -11,6 +11,9 @@
  *******************************************************************************/
 package net.bioclipse.core;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.eclipse.core.resources.IFile;
 
 public interface IResourcePathTransformer {
@@ -26,4 +29,26 @@ public interface IResourcePathTransformer {
      */
     public IFile transform( String resourceString );
 
+    /**
+     * Converts many Strings to IFiles like {@link #transform(String)} but
+     * creates all needed links in /Virtual in one workspace operation, so
+     * that only one resource change event is sent for all of them. If any
+     * of the Strings can not be handled no links are created.
+     *
+     * @param resourceStrings
+     * @return the IFiles in the order of the Strings
+     */
+    public List<IFile> transformAll( Collection<String> resourceStrings );
+
+    /**
+     * Looks up the IFile resourceString would be transformed to without
+     * changing the workspace. A file outside of the workspace is only found
+     * if it is already linked in /Virtual.
+     *
+     * @param resourceString
+     * @return the IFile or <code>null</code> if it would have to be linked
+     *         or if the String can not be handled
+     */
+    public IFile find( String resourceString );
+
 }
\ No newline at end of file
@@ -0,0 +1,566 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Keeps serialized models on disk so that they survive a restart. Only
+ * models of keys registered with {@link #register(Object, String, int)}
+ * are kept, under the parser and parser version given there. A model is
+ * stored under the length and the hash of the contents of the file it was
+ * parsed from, so a model is only found for exactly the contents it was
+ * parsed from and files of another length are never read to be hashed.
+ * <p>
+ * Models are serialized and written to disk by a background thread, so a
+ * model must not be changed once it is stored. A model already on disk for
+ * the contents of its file is not written again. Only serializable models
+ * are stored. Entries that can not be read, e.g. because a class has
+ * changed, are deleted and counted as misses. When the entries take more
+ * room than the quota the least recently read ones are deleted. The
+ * entries are kept in the order they were read in memory, the time of last
+ * change of their files only gives the order at start up.
+ * <p>
+ * The classes of the models are loaded by the core plugin, which can see
+ * every exported package.
+ *
+ * @author agent
+ */
+public class ModelDiskCache {
+
+    public static final long DEFAULT_QUOTA = 512L * 1024 * 1024;
+
+    private static final Logger logger
+        = Logger.getLogger( ModelDiskCache.class );
+
+    private static final int    FORMAT_VERSION = 2;
+    private static final String SUFFIX         = ".model";
+    private static final String TEMP_SUFFIX    = ".tmp";
+    private static final int    MAX_HASHES     = 1024;
+
+    // key in the BioclipseStore -> parser:version
+    private static final ConcurrentMap<Object, String> parsers
+        = new ConcurrentHashMap<Object, String>();
+
+    private final File dir;
+    private final long quota;
+
+    private final ExecutorService writer
+        = Executors.newSingleThreadExecutor( new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "Bioclipse model cache writer" );
+                t.setDaemon( true );
+                t.setPriority( Thread.MIN_PRIORITY );
+                return t;
+            }
+        });
+
+    // entry name -> bytes, from least to most recently read. The entries,
+    // their size and prefixes are changed holding the lock of the map
+    private final LinkedHashMap<String, Long> entries
+        = new LinkedHashMap<String, Long>( 16, 0.75f, true );
+    private final AtomicLong size = new AtomicLong();
+    // <length>-<hash of parser>- of the entries -> how many
+    private final Map<String, Integer> prefixes
+        = new HashMap<String, Integer>();
+
+    private final ConcurrentMap<IFile, ContentHash> hashes
+        = new ConcurrentHashMap<IFile, ContentHash>();
+
+    private final AtomicLong hits      = new AtomicLong();
+    private final AtomicLong misses    = new AtomicLong();
+    private final AtomicLong writes    = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+
+    /**
+     * @param dir the directory to keep the models in, created if missing
+     * @param quota the number of bytes the models may take at most
+     */
+    public ModelDiskCache( File dir, long quota ) {
+        if ( quota < 1 ) {
+            throw new IllegalArgumentException(
+                "The quota must be at least one byte" );
+        }
+        this.dir   = dir;
+        this.quota = quota;
+        if ( !dir.isDirectory() && !dir.mkdirs() ) {
+            throw new IllegalArgumentException(
+                "Could not create the directory " + dir );
+        }
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            Arrays.sort( files, new Comparator<File>() {
+                public int compare( File a, File b ) {
+                    long x = a.lastModified();
+                    long y = b.lastModified();
+                    return x < y ? -1 : x == y ? 0 : 1;
+                }
+            });
+            for ( File f : files ) {
+                String name = f.getName();
+                if ( name.endsWith( SUFFIX ) && prefixOf( name ) != null ) {
+                    added( name, f.length() );
+                }
+                else if ( name.endsWith( SUFFIX )
+                          || name.endsWith( TEMP_SUFFIX ) ) {
+                    // of an older format or left by an interrupted write
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the models stored under the given key in the BioclipseStore be
+     * kept on disk. Raise the version when the parser changes what models
+     * it makes so that models made by an older version are not found.
+     *
+     * @param key the key of the models in the BioclipseStore
+     * @param parser the name of the parser making the models, e.g.
+     *        <code>"cml-molecules"</code>
+     * @param version the version of the parser
+     */
+    public static void register( Object key, String parser, int version ) {
+        if ( key == null || parser == null ) {
+            throw new IllegalArgumentException(
+                "Both a key and a parser are needed" );
+        }
+        parsers.put( key, parser + ":" + version );
+    }
+
+    /**
+     * @param key a key in the BioclipseStore
+     * @return whether models of the key are kept on disk
+     */
+    public static boolean isRegistered( Object key ) {
+        return key != null && parsers.containsKey( key );
+    }
+
+    /**
+     * @param file the file the model was parsed from
+     * @param key the key of the model in the BioclipseStore
+     * @return the model stored for the current contents of the file or
+     *         <code>null</code>
+     */
+    public Object get( IFile file, Object key ) {
+        String parser = key == null ? null : parsers.get( key );
+        String name = null;
+        if ( parser != null ) {
+            long stamp = file.getModificationStamp();
+            String prefix = prefix( file, parser );
+            // only hashes the contents if there may be an entry for them
+            if ( prefix != null && hasPrefix( prefix ) ) {
+                name = entryName( file, parser, stamp );
+            }
+        }
+        if ( name == null || !touch( name ) ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        File entry = new File( dir, name );
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream( new FileInputStream( entry ) ) );
+            try {
+                if ( in.readInt() != FORMAT_VERSION
+                     || !in.readUTF().equals( parser ) ) {
+                    throw new IOException( "Not an entry for " + parser );
+                }
+                Object model = in.readObject();
+                entry.setLastModified( System.currentTimeMillis() );
+                hits.incrementAndGet();
+                return model;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( Exception e ) {
+            logger.debug( "Could not read the stored model " + name
+                          + ", deleting it", e );
+            corrupted.incrementAndGet();
+            misses.incrementAndGet();
+            delete( name );
+            return null;
+        }
+    }
+
+    /**
+     * Serializes the model and writes it in the background, unless its key
+     * is not registered, it is not serializable or there already is a model
+     * for the contents of the file. Nothing is stored if the file is changed
+     * before the model is written.
+     *
+     * @param file the file the model was parsed from
+     * @param key the key of the model in the BioclipseStore
+     * @param model the model
+     */
+    public void put( final IFile file,
+                     final Object key,
+                     final Object model ) {
+
+        final String parser = key == null ? null : parsers.get( key );
+        if ( parser == null || !(model instanceof Serializable) ) {
+            return;
+        }
+        final long stamp = file.getModificationStamp();
+        // the contents are only hashed here if that has been done before
+        ContentHash known = hashes.get( file );
+        if ( known != null && known.stamp == stamp ) {
+            String prefix = prefix( file, parser );
+            if ( prefix != null
+                 && contains( prefix + known.hash + SUFFIX ) ) {
+                return;
+            }
+        }
+        writer.execute( new Runnable() {
+            public void run() {
+                String name = entryName( file, parser, stamp );
+                if ( name == null || contains( name ) ) {
+                    return;
+                }
+                byte[] bytes;
+                try {
+                    bytes = serialize( parser, model );
+                }
+                catch ( Exception e ) {
+                    logger.debug( "Could not serialize the model "
+                                  + parser, e );
+                    return;
+                }
+                write( name, parser, bytes );
+            }
+        });
+    }
+
+    private static byte[] serialize( String parser, Object model )
+                          throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( bytes );
+        out.writeInt( FORMAT_VERSION );
+        out.writeUTF( parser );
+        out.writeObject( model );
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void write( String name, String parser, byte[] bytes ) {
+        File temp  = new File( dir, name + TEMP_SUFFIX );
+        File entry = new File( dir, name );
+        try {
+            OutputStream out = new FileOutputStream( temp );
+            try {
+                out.write( bytes );
+            }
+            finally {
+                out.close();
+            }
+            if ( !temp.renameTo( entry ) ) {
+                throw new IOException( "Could not rename " + temp );
+            }
+        }
+        catch ( IOException e ) {
+            logger.debug( "Could not store the model " + parser, e );
+            temp.delete();
+            return;
+        }
+        writes.incrementAndGet();
+        added( name, entry.length() );
+        if ( size.get() > quota ) {
+            evict();
+        }
+    }
+
+    private void added( String name, long bytes ) {
+        synchronized ( entries ) {
+            if ( entries.put( name, bytes ) != null ) {
+                return;
+            }
+            size.addAndGet( bytes );
+            String prefix = prefixOf( name );
+            Integer count = prefixes.get( prefix );
+            prefixes.put( prefix, count == null ? 1 : count + 1 );
+        }
+    }
+
+    /*
+     * Deletes the least recently read entries until they take no more than
+     * nine tenths of the quota. Only called by the writer thread.
+     */
+    private void evict() {
+        List<String> evicted = new ArrayList<String>();
+        synchronized ( entries ) {
+            Iterator<Map.Entry<String, Long>> i
+                = entries.entrySet().iterator();
+            while ( size.get() > quota / 10 * 9 && i.hasNext() ) {
+                Map.Entry<String, Long> entry = i.next();
+                i.remove();
+                removed( entry.getKey(), entry.getValue() );
+                evicted.add( entry.getKey() );
+            }
+        }
+        for ( String name : evicted ) {
+            new File( dir, name ).delete();
+        }
+    }
+
+    private void delete( String name ) {
+        synchronized ( entries ) {
+            Long bytes = entries.remove( name );
+            if ( bytes != null ) {
+                removed( name, bytes );
+            }
+        }
+        new File( dir, name ).delete();
+    }
+
+    /*
+     * Counts an entry taken out of the map, holding its lock
+     */
+    private void removed( String name, long bytes ) {
+        size.addAndGet( -bytes );
+        String prefix = prefixOf( name );
+        int count = prefixes.get( prefix ) - 1;
+        if ( count == 0 ) {
+            prefixes.remove( prefix );
+        }
+        else {
+            prefixes.put( prefix, count );
+        }
+    }
+
+    private boolean hasPrefix( String prefix ) {
+        synchronized ( entries ) {
+            return prefixes.containsKey( prefix );
+        }
+    }
+
+    private boolean contains( String name ) {
+        synchronized ( entries ) {
+            return entries.containsKey( name );
+        }
+    }
+
+    /*
+     * Marks the entry as the most recently read one
+     */
+    private boolean touch( String name ) {
+        synchronized ( entries ) {
+            return entries.get( name ) != null;
+        }
+    }
+
+    /*
+     * <length of file>-<hash of parser>- or null if the file is not on disk
+     */
+    private static String prefix( IFile file, String parser ) {
+        IPath location = file.getLocation();
+        if ( location == null ) {
+            return null;
+        }
+        File f = location.toFile();
+        if ( !f.isFile() ) {
+            return null;
+        }
+        try {
+            byte[] p = MessageDigest.getInstance( "SHA-1" )
+                                    .digest( parser.getBytes( "UTF-8" ) );
+            return f.length() + "-" + hex( p, 8 ) + "-";
+        }
+        catch ( Exception e ) {
+            return null;
+        }
+    }
+
+    /*
+     * The prefix of an entry name, null if it is not one
+     */
+    private static String prefixOf( String name ) {
+        int second = name.indexOf( '-', name.indexOf( '-' ) + 1 );
+        return second < 0 ? null : name.substring( 0, second + 1 );
+    }
+
+    /*
+     * <length of file>-<hash of parser>-<hash of contents>.model or null if
+     * the file can not be read or has been changed since the given stamp
+     */
+    private String entryName( IFile file, String parser, long stamp ) {
+        String prefix = prefix( file, parser );
+        if ( prefix == null ) {
+            return null;
+        }
+        String contents = contentHash( file, stamp );
+        if ( contents == null ) {
+            return null;
+        }
+        return prefix + contents + SUFFIX;
+    }
+
+    private String contentHash( IFile file, long stamp ) {
+        ContentHash known = hashes.get( file );
+        if ( known != null && known.stamp == stamp ) {
+            return known.hash;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            InputStream in = file.getContents();
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ( ( n = in.read( buffer ) ) != -1 ) {
+                    digest.update( buffer, 0, n );
+                }
+            }
+            finally {
+                in.close();
+            }
+            if ( file.getModificationStamp() != stamp ) {
+                return null;
+            }
+            String hash = hex( digest.digest(), 20 );
+            if ( hashes.size() >= MAX_HASHES ) {
+                hashes.clear();
+            }
+            hashes.put( file, new ContentHash( stamp, hash ) );
+            return hash;
+        }
+        catch ( CoreException e ) {
+            return null;
+        }
+        catch ( IOException e ) {
+            return null;
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static String hex( byte[] bytes, int length ) {
+        StringBuilder result = new StringBuilder( length * 2 );
+        for ( int i = 0; i < length; i++ ) {
+            result.append( Character.forDigit( ( bytes[i] >> 4 ) & 0xf, 16 ) )
+                  .append( Character.forDigit( bytes[i] & 0xf, 16 ) );
+        }
+        return result.toString();
+    }
+
+    /**
+     * Finishes the writes not done yet, waiting at most the given time.
+     *
+     * @param timeout the number of milliseconds to wait at most
+     */
+    public void close( long timeout ) {
+        writer.shutdown();
+        try {
+            writer.awaitTermination( timeout, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the directory the models are kept in
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return the number of bytes taken by the stored models
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of models stored
+     */
+    public int getEntries() {
+        synchronized ( entries ) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups that found a model
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no readable model
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of models written
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * @return the number of stored models that could not be read
+     */
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    private static class ContentHash {
+
+        private final long   stamp;
+        private final String hash;
+
+        ContentHash( long stamp, String hash ) {
+            this.stamp = stamp;
+            this.hash  = hash;
+        }
+    }
+}
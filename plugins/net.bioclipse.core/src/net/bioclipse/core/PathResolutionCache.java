@@ -0,0 +1,297 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Remembers which IFile the {@link ResourcePathTransformer} resolved a
+ * String to so that a String given again does not have to be looked up in
+ * the workspace. A resolution is forgotten when its file is removed or
+ * moved or when its project is closed or removed. Opening a project may
+ * make a String resolve to another file than before so then everything is
+ * forgotten. A resolution is also checked when it is looked up and
+ * forgotten if its file, or the target of a linked file, is gone.
+ * <p>
+ * At most a given number of resolutions are held. When full, some held
+ * resolution is dropped to make room for a new one.
+ *
+ * @author agent
+ */
+public class PathResolutionCache implements IResourceChangeListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private static final Logger logger
+        = Logger.getLogger( PathResolutionCache.class );
+
+    private final int maxEntries;
+
+    private final ConcurrentMap<String, IFile> files
+        = new ConcurrentHashMap<String, IFile>();
+    private final ConcurrentMap<IPath, Set<String>> stringsByFile
+        = new ConcurrentHashMap<IPath, Set<String>>();
+
+    private final AtomicLong hits          = new AtomicLong();
+    private final AtomicLong misses        = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxEntries the number of resolutions to hold at most
+     */
+    public PathResolutionCache( int maxEntries ) {
+        if ( maxEntries < 1 ) {
+            throw new IllegalArgumentException(
+                "The cache must be able to hold at least one resolution" );
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param resourceString a String given to the transformer
+     * @return the file the String was resolved to or <code>null</code>
+     */
+    public IFile get( String resourceString ) {
+        IFile result = files.get( resourceString );
+        if ( result != null && !exists( result ) ) {
+            forget( resourceString );
+            invalidations.incrementAndGet();
+            result = null;
+        }
+        if ( result == null ) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @param resourceString a String given to the transformer
+     * @param file the file the String was resolved to
+     */
+    public void put( String resourceString, IFile file ) {
+        if ( files.size() >= maxEntries ) {
+            Iterator<String> i = files.keySet().iterator();
+            if ( i.hasNext() ) {
+                forget( i.next() );
+            }
+        }
+        IPath path = file.getFullPath();
+        while ( true ) {
+            Set<String> strings = stringsByFile.get( path );
+            if ( strings == null ) {
+                strings = Collections.newSetFromMap(
+                              new ConcurrentHashMap<String, Boolean>() );
+                Set<String> existing
+                    = stringsByFile.putIfAbsent( path, strings );
+                if ( existing != null ) {
+                    strings = existing;
+                }
+            }
+            // forget may just have dropped the set as empty
+            synchronized ( strings ) {
+                if ( stringsByFile.get( path ) == strings ) {
+                    strings.add( resourceString );
+                    break;
+                }
+            }
+        }
+        files.put( resourceString, file );
+    }
+
+    private void forget( String resourceString ) {
+        IFile file = files.remove( resourceString );
+        if ( file != null ) {
+            IPath path = file.getFullPath();
+            Set<String> strings = stringsByFile.get( path );
+            if ( strings != null ) {
+                synchronized ( strings ) {
+                    strings.remove( resourceString );
+                    if ( strings.isEmpty() ) {
+                        stringsByFile.remove( path, strings );
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * A link stays in the workspace when the file it points to is removed
+     * outside of it
+     */
+    private static boolean exists( IFile file ) {
+        if ( !file.exists() ) {
+            return false;
+        }
+        if ( file.isLinked() ) {
+            IPath location = file.getLocation();
+            return location == null || location.toFile().exists();
+        }
+        return true;
+    }
+
+    /**
+     * Forgets all Strings resolved to the file with the given path.
+     *
+     * @param path full path of a file in the workspace
+     */
+    public void invalidate( IPath path ) {
+        Set<String> strings = stringsByFile.remove( path );
+        if ( strings == null ) {
+            return;
+        }
+        for ( String s : strings ) {
+            if ( files.remove( s ) != null ) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Forgets all Strings resolved to files in the given project.
+     *
+     * @param project a project in the workspace
+     */
+    public void invalidate( IProject project ) {
+        IPath projectPath = project.getFullPath();
+        for ( IPath path : stringsByFile.keySet() ) {
+            if ( projectPath.isPrefixOf( path ) ) {
+                invalidate( path );
+            }
+        }
+    }
+
+    /**
+     * Forgets all resolutions.
+     */
+    public void clear() {
+        files.clear();
+        stringsByFile.clear();
+    }
+
+    public void resourceChanged( IResourceChangeEvent event ) {
+        if ( event.getDelta() == null ) {
+            return;
+        }
+        try {
+            event.getDelta().accept( new IResourceDeltaVisitor() {
+                public boolean visit( IResourceDelta delta ) {
+                    IResource resource = delta.getResource();
+                    switch ( resource.getType() ) {
+                    case IResource.PROJECT:
+                        return visitProject( delta, (IProject) resource );
+                    case IResource.FILE:
+                        if ( delta.getKind() == IResourceDelta.REMOVED ) {
+                            invalidate( delta.getFullPath() );
+                        }
+                        return false;
+                    default:
+                        return !files.isEmpty();
+                    }
+                }
+            });
+        }
+        catch ( CoreException e ) {
+            logger.warn( "Could not read the resource delta, "
+                         + "forgetting all resolved paths", e );
+            clear();
+        }
+    }
+
+    private boolean visitProject( IResourceDelta delta, IProject project ) {
+        if ( delta.getKind() == IResourceDelta.ADDED ) {
+            clear();
+            return false;
+        }
+        if ( delta.getKind() == IResourceDelta.REMOVED ) {
+            invalidate( project );
+            return false;
+        }
+        if ( ( delta.getFlags() & IResourceDelta.OPEN ) != 0 ) {
+            if ( project.isOpen() ) {
+                clear();
+            }
+            else {
+                invalidate( project );
+            }
+            return false;
+        }
+        return !files.isEmpty();
+    }
+
+    /**
+     * @return the number of resolutions held
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * @return the number of lookups that found a resolution
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no resolution
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups that found a resolution, between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of resolutions forgotten because their file or
+     *         project changed
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Sets all counts to zero, the resolutions are kept.
+     */
+    public void resetStatistics() {
+        hits.set( 0 );
+        misses.set( 0 );
+        invalidations.set( 0 );
+    }
+}
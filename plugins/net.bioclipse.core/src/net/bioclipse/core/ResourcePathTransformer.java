@@ -13,15 +13,27 @@ package net.bioclipse.core;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import net.bioclipse.core.Activator;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 
@@ -33,17 +45,41 @@ import org.eclipse.core.runtime.Path;
  * When the string that starts with a '/' it will check if the project exists 
  * if it dose not it will assume it is a absolute path on a UNIX/OSX type 
  * system where '/' indicates the root in the file system.
+ * <p>
+ * Resolved Strings are remembered in a {@link PathResolutionCache} so that
+ * a String given again is not looked up in the workspace again.
  *
  * @author jonalv
  *
  */
 public class ResourcePathTransformer implements IResourcePathTransformer {
 
-    private static volatile IResourcePathTransformer instance =
+    private static final Logger logger
+        = Logger.getLogger( ResourcePathTransformer.class );
+
+    /**
+     * The number of alternative names tried for a link in the Virtual
+     * project when a file with the same name is already there.
+     */
+    private static final int MAX_ALTERNATIVE_NAMES = 10000;
+
+    private static volatile ResourcePathTransformer instance =
         new ResourcePathTransformer();
 
-    private ResourcePathTransformer() {
+    private final PathResolutionCache cache
+        = new PathResolutionCache( PathResolutionCache.DEFAULT_MAX_ENTRIES );
 
+    private ResourcePathTransformer() {
+        try {
+            IWorkspace workspace = ResourcesPlugin.getWorkspace();
+            if ( workspace != null ) {
+                workspace.addResourceChangeListener(
+                    cache, IResourceChangeEvent.POST_CHANGE );
+            }
+        }
+        catch ( IllegalStateException e ) {
+            logger.debug( "No workspace to listen to", e );
+        }
     }
 
     /**
@@ -55,12 +91,23 @@ public class ResourcePathTransformer implements IResourcePathTransformer {
         return instance;
     }
 
+    /**
+     * @return the cache of Strings resolved by the singleton instance
+     */
+    public static PathResolutionCache getCache() {
+        return instance.cache;
+    }
+
     /* (non-Javadoc)
      * @see net.bioclipse.core.IResourcePathTransformer#transform(java.lang.String)
      */
     public IFile transform(String resourceString) {
 
-        IFile result;
+        IFile result = cache.get( resourceString );
+        if ( result != null ) {
+            refreshLink( result );
+            return result;
+        }
         try {
         result = parseRelative(resourceString);
         if (result == null) result = parseURI(resourceString);
@@ -71,9 +118,170 @@ public class ResourcePathTransformer implements IResourcePathTransformer {
             throw new IllegalArgumentException("Could not handle "
                                             + resourceString,e);
         }
+        cache.put( resourceString, result );
         return result;
     }
 
+    /* (non-Javadoc)
+     * @see net.bioclipse.core.IResourcePathTransformer#transformAll(
+     *      java.util.Collection)
+     */
+    public List<IFile> transformAll( Collection<String> resourceStrings ) {
+
+        List<IFile> result = new ArrayList<IFile>( resourceStrings.size() );
+        final Map<URI, IFile> links = new LinkedHashMap<URI, IFile>();
+        Map<String, Integer> taken = new HashMap<String, Integer>();
+        boolean refresh = false;
+        for ( String resourceString : resourceStrings ) {
+            IFile file = cache.get( resourceString );
+            if ( file == null ) {
+                try {
+                    file = parseRelative( resourceString );
+                    if ( file == null ) file = parseURI( resourceString );
+                    if ( file == null ) file = planLink( resourceString,
+                                                         links,
+                                                         taken );
+                }
+                catch ( URISyntaxException e ) {
+                    throw new IllegalArgumentException(
+                        "Could not handle " + resourceString, e );
+                }
+                if ( file == null ) {
+                    throw new IllegalArgumentException(
+                        "Could not handle " + resourceString );
+                }
+            }
+            refresh |= file.isLinked();
+            result.add( file );
+        }
+        if ( !links.isEmpty() || refresh ) {
+            createLinks( links );
+        }
+        Iterator<String> strings = resourceStrings.iterator();
+        for ( IFile file : result ) {
+            cache.put( strings.next(), file );
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see net.bioclipse.core.IResourcePathTransformer#find(java.lang.String)
+     */
+    public IFile find( String resourceString ) {
+
+        IFile result = cache.get( resourceString );
+        if ( result != null ) {
+            refreshLink( result );
+            return result;
+        }
+        try {
+            result = parseRelative( resourceString );
+            if ( result == null ) result = parseURI( resourceString );
+            if ( result == null ) result = findLinked( resourceString );
+        }
+        catch ( URISyntaxException e ) {
+            return null;
+        }
+        catch ( RuntimeException e ) {
+            return null;
+        }
+        if ( result != null ) {
+            refreshLink( result );
+        }
+        return result;
+    }
+
+    /*
+     * Like parsePath but only finds a file already in the workspace or
+     * linked in the Virtual project.
+     */
+    private IFile findLinked( String resourceString )
+                  throws URISyntaxException {
+
+        java.io.File localFile = new java.io.File( resourceString );
+        if ( !localFile.exists() ) return null;
+        URI uri = new URI( "file", localFile.getAbsolutePath(), null );
+        IFile[] files = ResourcesPlugin.getWorkspace()
+                                       .getRoot()
+                                       .findFilesForLocationURI( uri );
+        if ( files.length != 0 ) {
+            return files[0];
+        }
+        IFile vFile = linkFor( localFile.getName(),
+                               uri,
+                               new HashMap<String, Integer>() );
+        return vFile != null && vFile.exists() ? vFile : null;
+    }
+
+    /*
+     * Like parsePath but only decides which file in the Virtual project to
+     * link and leaves the creation of the link to createLinks.
+     */
+    private IFile planLink( String resourceString,
+                            Map<URI, IFile> links,
+                            Map<String, Integer> taken )
+                  throws URISyntaxException {
+
+        java.io.File localFile = new java.io.File( resourceString );
+        if ( !localFile.exists() ) return null;
+        URI uri = new URI( "file", localFile.getAbsolutePath(), null );
+        IFile planned = links.get( uri );
+        if ( planned != null ) {
+            return planned;
+        }
+        IFile[] files = ResourcesPlugin.getWorkspace()
+                                       .getRoot()
+                                       .findFilesForLocationURI( uri );
+        if ( files.length != 0 ) {
+            return files[0];
+        }
+        IFile vFile = linkFor( localFile.getName(), uri, taken );
+        if ( vFile != null && !vFile.exists() ) {
+            links.put( uri, vFile );
+        }
+        return vFile;
+    }
+
+    /*
+     * Creates all links and refreshes the Virtual project in one workspace
+     * operation so that only one resource change event is sent.
+     */
+    private void createLinks( final Map<URI, IFile> links ) {
+        final IProject vProject = Activator.getVirtualProject();
+        try {
+            ResourcesPlugin.getWorkspace().run( new IWorkspaceRunnable() {
+                public void run( IProgressMonitor monitor )
+                            throws CoreException {
+                    for ( Map.Entry<URI, IFile> link : links.entrySet() ) {
+                        link.getValue().createLink( link.getKey(),
+                                                    IResource.NONE,
+                                                    null );
+                    }
+                    vProject.refreshLocal( IResource.DEPTH_ONE, null );
+                }
+            }, vProject, IWorkspace.AVOID_UPDATE, new NullProgressMonitor() );
+        }
+        catch ( CoreException e ) {
+            throw new IllegalArgumentException(
+                "Could not link the files to the Virtual project", e );
+        }
+    }
+
+    /*
+     * A linked file may have been changed outside of the workspace since it
+     * was resolved. Refreshing it only looks at the file itself.
+     */
+    private void refreshLink( IFile file ) {
+        if ( file.isLinked() ) {
+            try {
+                file.refreshLocal( IResource.DEPTH_ZERO, null );
+            }
+            catch ( CoreException e ) {
+                logger.debug( "Could not refresh " + file, e );
+            }
+        }
+    }
+
     /**
      * Check if the path represent a local file that exists. If it dose it
      * creates a link to the file from the the 'Virtual' project, if the a link
@@ -85,36 +293,26 @@ public class ResourcePathTransformer implements IResourcePathTransformer {
      * @throws URISyntaxException
      */
     private IFile parsePath( String resourceString ) throws URISyntaxException {
-        URI uri;
         java.io.File localFile = new java.io.File(resourceString);
         if (!localFile.exists()) return null;
-        uri = new URI("file",localFile.getAbsolutePath(),null);
+        URI uri = new URI("file",localFile.getAbsolutePath(),null);
         // Check if uri referes to a file in workspace if so return it
         IFile[] files = ResourcesPlugin.getWorkspace().getRoot()
         .findFilesForLocationURI( uri );
         if(files.length!=0)
             return files[0];
 
-        IProject vProject=Activator.getVirtualProject();
-        IFile vFile=vProject.getFile(localFile.getName());
-        // if file already exist in Virtual project
-        if (vFile.exists()) {
-            if (vFile.isLinked()) {
-                if ( uri.equals( vFile.getLocationURI()) ) {
-                    try {
-                        vFile.refreshLocal( IResource.DEPTH_ONE, null );
-                        return vFile;
-                    } catch ( CoreException e ) {
-                        return null;
-                    }
-                }
-            }
-
-            vFile = createAlternativeFile(vFile);
-            if ( vFile == null)
-                return null;
-        }
+        IFile vFile = linkFor( localFile.getName(),
+                               uri,
+                               new HashMap<String, Integer>() );
+        if ( vFile == null )
+            return null;
         try {
+            // a link to the file already exist in the Virtual project
+            if ( vFile.exists() ) {
+                vFile.refreshLocal( IResource.DEPTH_ONE, null );
+                return vFile;
+            }
             vFile.createLink(uri,IResource.NONE, null);
             vFile.refreshLocal(0, new NullProgressMonitor());
         } catch (CoreException e) {
@@ -123,29 +321,50 @@ public class ResourcePathTransformer implements IResourcePathTransformer {
         return vFile;
     }
 
-    /*
-     * Recursive algorithm for creating unique file
+    /**
+     * Finds the file in the Virtual project to link to the given location.
+     * That is the file with the given name or, if that name is taken by
+     * another file, the first free of name1.ext, name2.ext and so on. A
+     * file already linked to the location is reused.
+     *
+     * @param name the name of the file linked to
+     * @param uri the location of the file linked to
+     * @param taken for each name, the number of the first alternative name
+     *        not handed out yet. Names handed out are counted in it so that
+     *        a batch of links never get the same name.
+     * @return the file, existing if it is already linked to the location,
+     *         or <code>null</code> if no free name was found
      */
-    private IFile createAlternativeFile( IFile file ) {
-        return createAlternativeFile( file, 0 );
+    private IFile linkFor( String name, URI uri, Map<String, Integer> taken ) {
+        IProject vProject = Activator.getVirtualProject();
+        Integer next = taken.get( name );
+        for ( int count = next == null ? 0 : next;
+              count <= MAX_ALTERNATIVE_NAMES;
+              count++ ) {
+            IFile file = vProject.getFile( count == 0
+                                           ? name
+                                           : alternativeName( name, count ) );
+            boolean free = !file.exists();
+            if ( free || file.isLinked()
+                         && uri.equals( file.getLocationURI() ) ) {
+                if ( free ) {
+                    taken.put( name, count + 1 );
+                }
+                return file;
+            }
+        }
+        return null;
     }
 
-    private IFile createAlternativeFile( IFile file , int count) {
-        int MAX_RECURSION = 10;
-        if (count > MAX_RECURSION) return null;
-        file =file.getParent().getFile(
-                       new Path(generateUniqueFileName( file,++count)));
-        if(file.exists()) return createAlternativeFile( file, count );
-
-        return file;
-    }
-    
-    private String generateUniqueFileName(IFile file,int count) {
-        // FIXME : this should replace last entered number with new
-        String name = file.getName();
-        name = name.replaceAll( "\\..*$", Integer.toString( count ));
-        name = name + "."+file.getFileExtension();
-        return name;
+    /*
+     * file.txt -> file<count>.txt
+     */
+    private static String alternativeName( String name, int count ) {
+        int dot = name.indexOf( '.', 1 );
+        if ( dot == -1 ) {
+            return name + count;
+        }
+        return name.substring( 0, dot ) + count + name.substring( dot );
     }
 
     private IFile parseRelative( String resourceString ) {
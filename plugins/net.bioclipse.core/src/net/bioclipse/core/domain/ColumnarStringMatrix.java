@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright (c) 2010 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ *******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StringMatrix} keeping each column in arrays instead of one
+ * Hashtable per row. Columns with few distinct values, as are common in
+ * query results, store each distinct value once and a two byte code per
+ * row. Columns are looked up by name in a hash map.
+ * <p>
+ * Rows and columns are numbered from 1, as in StringMatrix, and the
+ * methods behave as those of StringMatrix.
+ */
+public class ColumnarStringMatrix implements IStringMatrix {
+
+	private int cols;
+	private int rows;
+	// indexed by column number, index 0 is a valid column as in StringMatrix
+	private Column[] columns = new Column[0];
+	private BitSet setRows;
+	private String[] rowHeaders;
+	private String[] colHeaders;
+	private Map<String,Integer> colNumbers;
+
+	public ColumnarStringMatrix() {
+		cols = 0;
+		rows = 0;
+	}
+
+	/**
+	 * Copies all values and headers of a matrix.
+	 *
+	 * @param matrix the matrix to copy
+	 * @return the copy
+	 */
+	public static ColumnarStringMatrix copyOf(IStringMatrix matrix) {
+		ColumnarStringMatrix result = new ColumnarStringMatrix();
+		result.setSize(matrix.getRowCount(), matrix.getColumnCount());
+		for (int col=1; col<=matrix.getColumnCount(); col++) {
+			if (matrix.hasColHeader())
+				result.setColumnName(col, matrix.getColumnName(col));
+			for (int row=1; row<=matrix.getRowCount(); row++) {
+				String value = matrix.get(row, col);
+				if (value != null)
+					result.set(row, col, value);
+			}
+		}
+		if (matrix.hasRowHeader())
+			for (int row=1; row<=matrix.getRowCount(); row++)
+				result.setRowName(row, matrix.getRowName(row));
+		return result;
+	}
+
+	private void checkDimensions(int row, int col) {
+		checkRows(row);
+		checkCols(col);
+	}
+	private void checkRows(int row) {
+		if (row < 0 || row > rows)
+			throw new ArrayIndexOutOfBoundsException(
+				"Incorrect row number: " + row
+			);
+	}
+	private void checkCols(int col) {
+		if (col < 0 || col > cols)
+			throw new ArrayIndexOutOfBoundsException(
+				"Incorrect column number: " + col
+			);
+	}
+
+	public String get(int row, int col) {
+		checkDimensions(row, col);
+
+		if (setRows == null || !setRows.get(row)) return "";
+		if (col >= columns.length || columns[col] == null) return null;
+		return columns[col].get(row);
+	}
+
+	public String get(int row, String col) {
+		checkRows(row);
+		return get(row, getColumnNumber(col));
+	}
+
+	public int getColumnCount() {
+		return this.cols;
+	}
+
+	public boolean hasColumn(String col) {
+		return colNumbers != null && colNumbers.containsKey(col);
+	}
+
+	public int getColumnNumber(String col) {
+		Integer index = colNumbers == null ? null : colNumbers.get(col);
+		if (index == null)
+			throw new IllegalAccessError(
+				"No column found with this label."
+			);
+		return index;
+	}
+
+	public String getColumnName(int index) {
+		checkCols(index);
+
+		if (colHeaders == null) return "";
+		return index < colHeaders.length ? colHeaders[index] : null;
+	}
+
+	public int getRowCount() {
+		return this.rows;
+	}
+
+	public String getRowName(int index) {
+		checkRows(index);
+
+		if (rowHeaders == null) return "";
+		return index < rowHeaders.length ? rowHeaders[index] : null;
+	}
+
+	public boolean hasColHeader() {
+		return colHeaders != null;
+	}
+
+	public boolean hasRowHeader() {
+		return rowHeaders != null;
+	}
+
+	public void set(int row, int col, String value) {
+		if (row > rows) rows = row;
+		if (col > cols) cols = col;
+		checkDimensions(row, col);
+
+		if (setRows == null)
+			setRows = new BitSet();
+		setRows.set(row);
+		if (col >= columns.length)
+			columns = Arrays.copyOf(columns, Math.max(col + 1,
+			                                          columns.length * 2));
+		if (columns[col] == null)
+			columns[col] = new Column();
+		columns[col].set(row, value);
+	}
+
+	public void setColumnName(int index, String name) {
+		if (index > cols) cols = index;
+		checkCols(index);
+
+		if (colHeaders == null) {
+			colHeaders = new String[index + 1];
+			colNumbers = new HashMap<String,Integer>();
+		}
+		if (index >= colHeaders.length)
+			colHeaders = Arrays.copyOf(colHeaders, Math.max(
+				index + 1, colHeaders.length * 2));
+		String old = colHeaders[index];
+		colHeaders[index] = name;
+		if (old != null
+		    && Integer.valueOf(index).equals(colNumbers.get(old))) {
+			colNumbers.remove(old);
+			// another column may have the same name
+			for (int i=0; i<colHeaders.length; i++)
+				if (old.equals(colHeaders[i])) {
+					colNumbers.put(old, i);
+					break;
+				}
+		}
+		if (name != null) {
+			Integer existing = colNumbers.get(name);
+			if (existing == null || existing > index)
+				colNumbers.put(name, index);
+		}
+	}
+
+	public void setRowName(int index, String name) {
+		checkRows(index);
+
+		if (rowHeaders == null)
+			rowHeaders = new String[index + 1];
+		if (index >= rowHeaders.length)
+			rowHeaders = Arrays.copyOf(rowHeaders, Math.max(
+				index + 1, rowHeaders.length * 2));
+		rowHeaders[index] = name;
+	}
+
+	public void setSize(int row, int col) {
+		this.rows = row;
+		this.cols = col;
+	}
+
+	public void set(int row, String col, String value) {
+		checkRows(row);
+		set(row, getColumnNumber(col), value);
+	}
+
+	/**
+	 * Sets the values of a column from the first row down, growing the
+	 * matrix if needed.
+	 *
+	 * @param col the number of the column, starting at 1
+	 * @param values the values
+	 */
+	public void setColumn(int col, List<String> values) {
+		int row = 1;
+		for (String value : values)
+			set(row++, col, value);
+	}
+
+	public List<String> getColumn(int col) {
+		checkCols(col);
+
+		List<String> results = new ArrayList<String>(rows);
+		for (int i=1; i<=rows; i++) {
+			String result = cell(i, col);
+			results.add(result == null ? "" : result);
+		}
+		return results;
+	}
+
+	/*
+	 * The value of a cell without checking the dimensions, null if unset
+	 */
+	private String cell(int row, int col) {
+		if (setRows == null || !setRows.get(row)
+		    || col >= columns.length || columns[col] == null)
+			return null;
+		return columns[col].get(row);
+	}
+
+	public List<String> getColumn(String col) {
+		int colNo = getColumnNumber(col);
+		return getColumn(colNo);
+	}
+
+	/**
+	 * Writes the same text as {@link #toString()}.
+	 *
+	 * @param out where to write
+	 * @throws IOException if writing fails
+	 */
+	public void write(Appendable out) throws IOException {
+		out.append('[');
+		if (hasColHeader()) {
+			out.append("[");
+			for (int col=1; col<=cols; col++) {
+				out.append('"');
+				String result = getColumnName(col);
+				out.append(result == null ? "" : result);
+				out.append('"');
+				if (col<cols) out.append(',');
+			}
+			out.append("],\n");
+		}
+		for (int row=1; row<=rows; row++) {
+			if (hasRowHeader()) {
+				out.append('"');
+				String result = getRowName(row);
+				out.append(result == null ? "" : result);
+				out.append("\": ");
+			}
+			out.append('[');
+			for (int col=1; col<=cols; col++) {
+				out.append('"');
+				String result = cell(row, col);
+				out.append(result == null ? "" : result);
+				out.append('"');
+				if (col<cols) out.append(',');
+			}
+			out.append(']');
+			if (row<rows) out.append(',');
+			out.append('\n');
+		}
+		out.append(']');
+		out.append('\n');
+	}
+
+	public String toString() {
+		long estimate = 8L * (rows + 1) * (cols + 1);
+		StringBuilder builder
+			= new StringBuilder((int) Math.min(estimate, 1 << 20));
+		try {
+			write(builder);
+		} catch (IOException e) {
+			//A StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return builder.toString();
+	}
+
+	public List<String> getColumnNames() {
+		List<String> names = new ArrayList<String>(getColumnCount());
+		for (int i=1; i<=getColumnCount(); i++)
+			names.add(getColumnName(i));
+		return names;
+	}
+
+	public List<String> getRowNames() {
+		List<String> names = new ArrayList<String>(getRowCount());
+		for (int i=1; i<=getRowCount(); i++)
+			names.add(getRowName(i));
+		return names;
+	}
+
+	/*
+	 * The values of a column, indexed by row number. Starts out dictionary
+	 * encoded, with code 0 for no value, and turns into a plain array if it
+	 * gets too many distinct values for that to save memory.
+	 */
+	private static class Column {
+
+		private static final int MAX_CODES = Character.MAX_VALUE;
+		private static final int MIN_DICTIONARY = 256;
+
+		private char[] codes = new char[16];
+		private List<String> dictionary = new ArrayList<String>();
+		private Map<String,Character> codeOf = new HashMap<String,Character>();
+		private String[] values;
+
+		String get(int row) {
+			if (values != null)
+				return row < values.length ? values[row] : null;
+			if (row >= codes.length || codes[row] == 0)
+				return null;
+			return dictionary.get(codes[row] - 1);
+		}
+
+		void set(int row, String value) {
+			if (values != null) {
+				if (row >= values.length)
+					values = Arrays.copyOf(values, Math.max(row + 1,
+					                                        values.length * 2));
+				values[row] = value;
+				return;
+			}
+			if (row >= codes.length)
+				codes = Arrays.copyOf(codes, Math.max(row + 1,
+				                                      codes.length * 2));
+			if (value == null) {
+				codes[row] = 0;
+				return;
+			}
+			Character code = codeOf.get(value);
+			if (code == null) {
+				int size = dictionary.size();
+				if (size + 1 >= MAX_CODES
+				    || size >= MIN_DICTIONARY && size * 2 > codes.length) {
+					decode();
+					set(row, value);
+					return;
+				}
+				dictionary.add(value);
+				code = (char) (size + 1);
+				codeOf.put(value, code);
+			}
+			codes[row] = code;
+		}
+
+		private void decode() {
+			values = new String[codes.length];
+			for (int i=0; i<codes.length; i++)
+				if (codes[i] != 0)
+					values[i] = dictionary.get(codes[i] - 1);
+			codes = null;
+			dictionary = null;
+			codeOf = null;
+		}
+	}
+}
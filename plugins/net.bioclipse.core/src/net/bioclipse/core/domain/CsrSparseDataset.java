@@ -0,0 +1,608 @@
+/* ******************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A sparse dataset in compressed sparse row form: the non zero values of
+ * all rows one after the other in one int array, the column of each value
+ * in another and where each row starts in a third. This takes a few bytes
+ * per non zero value instead of several objects.
+ * <p>
+ * Rows and columns are numbered from 0 in the methods of this class and
+ * from 1 in the files written and read, as in the libsvm format and in the
+ * Points of {@link SparseDataset#getValues()}. Datasets are built row by
+ * row with a {@link Builder}, read with {@link #read(Reader)} or
+ * {@link #readBinary(InputStream)}, or converted with
+ * {@link #copyOf(SparseDataset)}.
+ * <p>
+ * {@link #getValues()} gives the values as a read-only map built when it
+ * is called. Change the values with {@link #setValues(LinkedHashMap)},
+ * which compresses them again.
+ *
+ * @author agent
+ *
+ */
+public class CsrSparseDataset extends SparseDataset {
+
+	private static final int BINARY_MAGIC = 0x43535231; // "CSR1"
+
+	private int rows;
+	private int cols;
+	private int[] rowPtr;
+	private int[] colIdx;
+	private int[] data;
+
+	/**
+	 * @param rows the number of rows
+	 * @param cols the number of columns
+	 * @param rowPtr where the values of each row start in colIdx and data,
+	 *        followed by the number of values
+	 * @param colIdx the column of each value, increasing within each row
+	 * @param data the values
+	 */
+	public CsrSparseDataset(int rows, int cols, int[] rowPtr, int[] colIdx,
+			int[] data) {
+		super();
+		if (rowPtr.length != rows + 1 || rowPtr[0] != 0
+				|| rowPtr[rows] > colIdx.length
+				|| colIdx.length != data.length)
+			throw new IllegalArgumentException("Inconsistent CSR arrays");
+		this.rows = rows;
+		this.cols = cols;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.data = data;
+	}
+
+	/**
+	 * Copies a dataset into compressed sparse rows.
+	 *
+	 * @param dataset the dataset to copy
+	 * @return the copy
+	 */
+	public static CsrSparseDataset copyOf(SparseDataset dataset) {
+		CsrSparseDataset result = compress(dataset.getValues(),
+		                                   dataset.getRowHeaders(),
+		                                   dataset.getColHeaders());
+		result.setColHeaders(dataset.getColHeaders());
+		result.setRowHeaders(dataset.getRowHeaders());
+		result.setResponseProperty(dataset.getResponseProperty());
+		result.setResponseValues(dataset.getResponseValues());
+		return result;
+	}
+
+	/*
+	 * Values keyed by Points numbered from 1, at least as many rows and
+	 * columns as there are headers
+	 */
+	private static CsrSparseDataset compress(Map<Point, Integer> values,
+			List<String> rowHeaders, List<String> colHeaders) {
+		Point[] points = values.keySet().toArray(new Point[values.size()]);
+		Arrays.sort(points, new Comparator<Point>() {
+			public int compare(Point a, Point b) {
+				return a.x != b.x ? (a.x < b.x ? -1 : 1)
+				                  : (a.y < b.y ? -1 : a.y == b.y ? 0 : 1);
+			}
+		});
+		int rows = rowHeaders == null ? 0 : rowHeaders.size();
+		int cols = colHeaders == null ? 0 : colHeaders.size();
+		Builder builder = new Builder(cols);
+		for (Point p : points) {
+			if (p.x < 1)
+				throw new IllegalArgumentException("No row " + p.x
+				                                   + ", rows start at 1");
+			while (builder.getRowCount() < p.x - 1)
+				builder.endRow();
+			builder.add(p.y - 1, values.get(p));
+		}
+		int last = points.length == 0 ? 0 : points[points.length - 1].x;
+		while (builder.getRowCount() < Math.max(rows, last))
+			builder.endRow();
+		return builder.build();
+	}
+
+	/**
+	 * @param row index of the row, starting at 0
+	 * @param col index of the column, starting at 0
+	 * @return the value, 0 if there is none
+	 */
+	public int get(int row, int col) {
+		if (row < 0 || row >= rows)
+			throw new IndexOutOfBoundsException("No row " + row);
+		int i = Arrays.binarySearch(colIdx, rowPtr[row], rowPtr[row + 1],
+		                            col);
+		return i < 0 ? 0 : data[i];
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return cols;
+	}
+
+	/**
+	 * @return the number of values stored
+	 */
+	public int getNonZeroCount() {
+		return rowPtr[rows];
+	}
+
+	/**
+	 * @return where the values of each row start, followed by the number
+	 *         of values, not a copy
+	 */
+	public int[] getRowPointers() {
+		return rowPtr;
+	}
+
+	/**
+	 * @return the column of each value, not a copy
+	 */
+	public int[] getColumnIndices() {
+		return colIdx;
+	}
+
+	/**
+	 * @return the values, not a copy
+	 */
+	public int[] getData() {
+		return data;
+	}
+
+	/**
+	 * Builds a read-only map of all values, changing it throws an
+	 * UnsupportedOperationException. This takes as much memory as a
+	 * SparseDataset so use the array accessors when possible.
+	 */
+	@Override
+	public LinkedHashMap<Point, Integer> getValues() {
+		ReadOnlyValues result = new ReadOnlyValues(rowPtr[rows] * 2);
+		for (int r = 0; r < rows; r++)
+			for (int i = rowPtr[r]; i < rowPtr[r + 1]; i++)
+				result.add(new Point(r + 1, colIdx[i] + 1), data[i]);
+		return result;
+	}
+
+	/**
+	 * Compresses the given values, replacing the values of the dataset.
+	 * There are as many rows and columns as headers, or more if there are
+	 * values outside them.
+	 */
+	@Override
+	public void setValues(LinkedHashMap<Point, Integer> values) {
+		CsrSparseDataset compressed
+			= compress(values, rowHeaders, colHeaders);
+		rows = compressed.rows;
+		cols = compressed.cols;
+		rowPtr = compressed.rowPtr;
+		colIdx = compressed.colIdx;
+		data = compressed.data;
+	}
+
+	/**
+	 * Writes the values as {@link #write(Writer, String, boolean)} without
+	 * labels.
+	 */
+	@Override
+	public void writeSparse(Writer writer, String separator)
+	throws IOException {
+		write(writer, separator, false);
+	}
+
+	/**
+	 * Writes one line per row with <code>column:value</code> for each value,
+	 * columns numbered from 1. Empty rows give empty lines.
+	 *
+	 * @param writer where to write, not closed
+	 * @param separator the separator between values
+	 * @param labels whether to start each line with the response value of
+	 *        the row, as in the libsvm format
+	 * @throws IOException if writing fails
+	 * @throws IllegalStateException if labels are asked for but there is
+	 *         no response value for every row
+	 */
+	public void write(Writer writer, String separator, boolean labels)
+	throws IOException {
+		if (labels && (responseValues == null
+		               || responseValues.size() < rows))
+			throw new IllegalStateException(
+				"There must be a response value for each of the " + rows
+				+ " rows to label them");
+		for (int r = 0; r < rows; r++) {
+			boolean first = true;
+			if (labels) {
+				writer.write(String.valueOf(responseValues.get(r)));
+				first = false;
+			}
+			for (int i = rowPtr[r]; i < rowPtr[r + 1]; i++) {
+				if (!first)
+					writer.write(separator);
+				writer.write(Integer.toString(colIdx[i] + 1));
+				writer.write(':');
+				writer.write(Integer.toString(data[i]));
+				first = false;
+			}
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Reads lines of space or tab separated <code>column:value</code>
+	 * pairs, columns numbered from 1, one line per row. A first item
+	 * without a colon is taken as the response value of the row, as in the
+	 * libsvm format.
+	 *
+	 * @param reader where to read from, not closed
+	 * @return the dataset, with response values if the lines had labels
+	 * @throws IOException if reading fails or the contents are malformed
+	 */
+	public static CsrSparseDataset read(Reader reader) throws IOException {
+		BufferedReader in = reader instanceof BufferedReader
+		                    ? (BufferedReader) reader
+		                    : new BufferedReader(reader);
+		Builder builder = new Builder(0);
+		List<String> labels = null;
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			int pos = 0;
+			int length = line.length();
+			boolean firstItem = true;
+			while (pos < length) {
+				while (pos < length && isSpace(line.charAt(pos)))
+					pos++;
+				if (pos == length)
+					break;
+				int end = pos;
+				while (end < length && !isSpace(line.charAt(end)))
+					end++;
+				int colon = line.indexOf(':', pos);
+				if (colon == -1 || colon > end) {
+					if (!firstItem)
+						throw new IOException("Expected column:value at line "
+						                      + lineNumber);
+					if (labels == null) {
+						labels = new ArrayList<String>();
+						for (int r = 0; r < builder.getRowCount(); r++)
+							labels.add(null);
+					}
+					labels.add(line.substring(pos, end));
+				}
+				else {
+					try {
+						builder.add(
+							Integer.parseInt(line.substring(pos, colon)) - 1,
+							Integer.parseInt(line.substring(colon + 1, end)));
+					} catch (NumberFormatException e) {
+						throw new IOException("Malformed value at line "
+						                      + lineNumber + ": "
+						                      + e.getMessage());
+					} catch (IllegalArgumentException e) {
+						throw new IOException(e.getMessage() + " at line "
+						                      + lineNumber);
+					}
+				}
+				firstItem = false;
+				pos = end;
+			}
+			if (labels != null && labels.size() == builder.getRowCount())
+				labels.add(null);
+			try {
+				builder.endRow();
+			} catch (IllegalArgumentException e) {
+				throw new IOException(e.getMessage() + " at line "
+				                      + lineNumber);
+			}
+		}
+		CsrSparseDataset result = builder.build();
+		result.setResponseValues(labels);
+		return result;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	/**
+	 * Writes the dataset in a compact binary form, with its headers and
+	 * response values.
+	 *
+	 * @param out where to write, not closed
+	 * @throws IOException if writing fails
+	 */
+	public void writeBinary(OutputStream out) throws IOException {
+		DataOutputStream dos = new DataOutputStream(
+			new BufferedOutputStream(out));
+		dos.writeInt(BINARY_MAGIC);
+		dos.writeInt(rows);
+		dos.writeInt(cols);
+		int nnz = rowPtr[rows];
+		dos.writeInt(nnz);
+		for (int r = 1; r <= rows; r++)
+			dos.writeInt(rowPtr[r]);
+		for (int i = 0; i < nnz; i++)
+			dos.writeInt(colIdx[i]);
+		for (int i = 0; i < nnz; i++)
+			dos.writeInt(data[i]);
+		writeStrings(dos, colHeaders);
+		writeStrings(dos, rowHeaders);
+		dos.writeBoolean(responseProperty != null);
+		if (responseProperty != null)
+			dos.writeUTF(responseProperty);
+		writeStrings(dos, responseValues);
+		dos.flush();
+	}
+
+	/**
+	 * Reads a dataset written by {@link #writeBinary(OutputStream)}.
+	 *
+	 * @param in where to read from, not closed
+	 * @return the dataset
+	 * @throws IOException if reading fails or the contents are malformed
+	 */
+	public static CsrSparseDataset readBinary(InputStream in)
+	throws IOException {
+		DataInputStream dis = new DataInputStream(
+			new BufferedInputStream(in));
+		if (dis.readInt() != BINARY_MAGIC)
+			throw new IOException("Not a binary CSR dataset");
+		int rows = dis.readInt();
+		int cols = dis.readInt();
+		int nnz = dis.readInt();
+		if (rows < 0 || cols < 0 || nnz < 0)
+			throw new IOException("Malformed binary CSR dataset");
+		int[] rowPtr = new int[rows + 1];
+		for (int r = 1; r <= rows; r++)
+			rowPtr[r] = dis.readInt();
+		int[] colIdx = new int[nnz];
+		for (int i = 0; i < nnz; i++)
+			colIdx[i] = dis.readInt();
+		int[] data = new int[nnz];
+		for (int i = 0; i < nnz; i++)
+			data[i] = dis.readInt();
+		CsrSparseDataset result;
+		try {
+			result = new CsrSparseDataset(rows, cols, rowPtr, colIdx, data);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed binary CSR dataset");
+		}
+		result.setColHeaders(readStrings(dis));
+		result.setRowHeaders(readStrings(dis));
+		if (dis.readBoolean())
+			result.setResponseProperty(dis.readUTF());
+		result.setResponseValues(readStrings(dis));
+		return result;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> list)
+	throws IOException {
+		if (list == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(list.size());
+		for (String s : list) {
+			out.writeBoolean(s != null);
+			if (s != null)
+				out.writeUTF(s);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in)
+	throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		List<String> result = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++)
+			result.add(in.readBoolean() ? in.readUTF() : null);
+		return result;
+	}
+
+	/*
+	 * A map of values that throws when changed, since changes would not be
+	 * seen by the dataset
+	 */
+	private static class ReadOnlyValues extends LinkedHashMap<Point, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		ReadOnlyValues(int capacity) {
+			super(capacity);
+		}
+
+		void add(Point point, Integer value) {
+			super.put(point, value);
+		}
+
+		@Override
+		public Integer put(Point key, Integer value) {
+			throw readOnly();
+		}
+
+		@Override
+		public void putAll(Map<? extends Point, ? extends Integer> m) {
+			throw readOnly();
+		}
+
+		@Override
+		public Integer remove(Object key) {
+			throw readOnly();
+		}
+
+		@Override
+		public void clear() {
+			throw readOnly();
+		}
+
+		@Override
+		public Set<Point> keySet() {
+			return Collections.unmodifiableSet(super.keySet());
+		}
+
+		@Override
+		public Collection<Integer> values() {
+			return Collections.unmodifiableCollection(super.values());
+		}
+
+		@Override
+		public Set<Map.Entry<Point, Integer>> entrySet() {
+			// the entries of an unmodifiable map can not be set either
+			return Collections.unmodifiableMap(
+				new AbstractMap<Point, Integer>() {
+					@Override
+					public Set<Map.Entry<Point, Integer>> entrySet() {
+						return ReadOnlyValues.super.entrySet();
+					}
+				}).entrySet();
+		}
+
+		private static UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException(
+				"The values of a CsrSparseDataset are read-only, "
+				+ "use setValues to change them");
+		}
+	}
+
+	/**
+	 * Builds a CsrSparseDataset one row at a time: {@link #add(int, int)}
+	 * the values of a row and then call {@link #endRow()}. The arrays grow
+	 * as needed so the number of values need not be known in advance.
+	 */
+	public static class Builder {
+
+		private int cols;
+		private int rows;
+		private int nnz;
+		private int rowStart;
+		private int[] rowPtr = new int[17];
+		private int[] colIdx = new int[64];
+		private int[] data = new int[64];
+
+		/**
+		 * @param cols the number of columns, grown if a value is added in
+		 *        a column after it
+		 */
+		public Builder(int cols) {
+			this.cols = cols;
+		}
+
+		/**
+		 * Adds a value to the current row. Zeros are not stored.
+		 *
+		 * @param col index of the column, starting at 0
+		 * @param value the value
+		 * @return this builder
+		 */
+		public Builder add(int col, int value) {
+			if (col < 0)
+				throw new IllegalArgumentException("Negative column " + col);
+			if (value == 0)
+				return this;
+			if (nnz == colIdx.length) {
+				int capacity = colIdx.length * 2;
+				colIdx = Arrays.copyOf(colIdx, capacity);
+				data = Arrays.copyOf(data, capacity);
+			}
+			colIdx[nnz] = col;
+			data[nnz] = value;
+			nnz++;
+			if (col >= cols)
+				cols = col + 1;
+			return this;
+		}
+
+		/**
+		 * Ends the current row, sorting its values by column.
+		 *
+		 * @return this builder
+		 */
+		public Builder endRow() {
+			sortRow(rowStart, nnz);
+			if (rows + 2 > rowPtr.length)
+				rowPtr = Arrays.copyOf(rowPtr, rowPtr.length * 2);
+			rows++;
+			rowPtr[rows] = nnz;
+			rowStart = nnz;
+			return this;
+		}
+
+		/**
+		 * @return the number of rows ended
+		 */
+		public int getRowCount() {
+			return rows;
+		}
+
+		/**
+		 * Builds the dataset from the rows ended so far. Values added after
+		 * the last ended row are dropped.
+		 *
+		 * @return the dataset
+		 */
+		public CsrSparseDataset build() {
+			int n = rowPtr[rows];
+			return new CsrSparseDataset(rows, cols,
+			                            Arrays.copyOf(rowPtr, rows + 1),
+			                            Arrays.copyOf(colIdx, n),
+			                            Arrays.copyOf(data, n));
+		}
+
+		/*
+		 * Insertion sort, values of a row are nearly always added in order
+		 */
+		private void sortRow(int from, int to) {
+			for (int i = from + 1; i < to; i++) {
+				int c = colIdx[i];
+				int v = data[i];
+				int j = i - 1;
+				while (j >= from && colIdx[j] > c) {
+					colIdx[j + 1] = colIdx[j];
+					data[j + 1] = data[j];
+					j--;
+				}
+				if (j >= from && colIdx[j] == c)
+					throw new IllegalArgumentException(
+						"Two values in column " + (c + 1));
+				colIdx[j + 1] = c;
+				data[j + 1] = v;
+			}
+		}
+	}
+}
@@ -10,6 +10,9 @@
  ******************************************************************************/
 package net.bioclipse.core.domain;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -87,44 +90,87 @@ public class DenseDataset implements IDataset{
 	public String getFileContents() {
 		return asCSV();
 	}
+
+	/**
+	 * Writes the same contents as {@link #getFileContents()} without 
+	 * building them as one String first, so that large datasets can be 
+	 * exported directly to disk.
+	 * 
+	 * @param writer where to write the contents, not closed
+	 * @throws IOException if writing fails
+	 */
+	public void writeFileContents(Writer writer) throws IOException {
+		writeCSV(writer, CSV_SEPARATOR);
+	}
 	
 	public String asCSV() {
 		return asCSV(CSV_SEPARATOR);
 	}
 	
 	public String asCSV(String separator) {
+		StringWriter writer = new StringWriter(50000);
+		try {
+			writeCSV(writer, separator);
+		} catch (IOException e) {
+			//A StringWriter does not throw
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
 
-		//Collect as Stringbuffer
-		StringBuffer buf = new StringBuffer(50000);
-		String rowstring = getCSVString(colHeaders, separator);
-		if (responseProperty!=null)
-			 rowstring = rowstring + responseProperty;
+	/**
+	 * Writes the dataset as CSV, one row at a time.
+	 * 
+	 * @param writer where to write, not closed
+	 * @param separator the separator between values
+	 * @throws IOException if writing fails
+	 */
+	public void writeCSV(Writer writer, String separator) 
+	throws IOException {
 
-		buf.append("Molceulce" + separator + rowstring + "\n");
+		writer.write("Molceulce" + separator);
+		writeCSVString(writer, colHeaders, separator);
+		if (responseProperty!=null)
+			writer.write(responseProperty);
+		writer.write("\n");
 
-		int c=0;
-		for (List<Float> row : values){
-			rowstring = getCSVString(row, separator);
-			buf.append(rowHeaders.get(c) + separator + rowstring);
+		int rows = getRowCount();
+		for (int c = 0; c < rows; c++){
+			writer.write(rowHeaders.get(c) + separator);
+			writeRow(writer, c, separator);
 
 			if (responseProperty!=null)
-				buf.append(responseValues.get(c));
+				writer.write(String.valueOf(responseValues.get(c)));
 
-			buf.append("\n");
-			c++;
-			if (c%10==0)
-				System.out.println("Processed " + c + "/" + values.size() + " rows");
+			writer.write("\n");
 		}
-		return buf.toString();
 	}
 
-	private String getCSVString(List<?> entries, String separator) {
-		
-		StringBuffer b = new StringBuffer();
+	/**
+	 * @return the number of rows of values
+	 */
+	public int getRowCount() {
+		return values.size();
+	}
+
+	/**
+	 * Writes the values of a row, each followed by the separator.
+	 * 
+	 * @param writer where to write
+	 * @param row index of the row
+	 * @param separator the separator between values
+	 * @throws IOException if writing fails
+	 */
+	protected void writeRow(Writer writer, int row, String separator) 
+	throws IOException {
+		writeCSVString(writer, values.get(row), separator);
+	}
+
+	private void writeCSVString(Writer writer, List<?> entries, 
+			String separator) throws IOException {
 		for (Object s : entries){
-			b.append(s + separator);
+			writer.write(s + separator);
 		}
-		return b.toString();
 	}
 
 	
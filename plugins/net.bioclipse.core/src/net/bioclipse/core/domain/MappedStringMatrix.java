@@ -0,0 +1,760 @@
+/*******************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ *******************************************************************************/
+package net.bioclipse.core.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link IStringMatrix} reading a CSV or TSV file in place. The file is
+ * memory-mapped and the offsets of its lines are indexed on a background
+ * thread, so the matrix can be used as soon as it is opened. A cell is
+ * parsed from the bytes of its line when it is asked for.
+ * <p>
+ * Fields may be quoted with double quotes, a double quote in a quoted field
+ * being written twice, but a field cannot span lines. The file must be in a
+ * charset where the separator, quote and line breaks are single bytes, such
+ * as UTF-8 or ISO-8859-1. The number of columns is taken from the first
+ * line, reading the last column of a row with more fields throws an
+ * IllegalStateException.
+ * <p>
+ * Values that are set are kept in memory, the file itself is never written.
+ * Rows and columns are numbered from 1, as in {@link StringMatrix}. Methods
+ * needing the number of rows wait until the whole file is indexed.
+ * {@link #toString()} only shows the first rows, copy the matrix with
+ * {@link ColumnarStringMatrix#copyOf(IStringMatrix)} to print all of it.
+ */
+public class MappedStringMatrix implements IStringMatrix {
+
+	/**
+	 * Gets the values of the rows of a {@link MappedStringMatrix} during a
+	 * {@link MappedStringMatrix#scan(RowHandler, int)}.
+	 */
+	public interface RowHandler {
+
+		/**
+		 * Handles one row. Called from several threads at once.
+		 *
+		 * @param row the number of the row, starting at 1
+		 * @param values the values of the row, indexed from 0
+		 */
+		public void handle(int row, String[] values);
+	}
+
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+	// lines are published to readers in batches of this size
+	private static final int PUBLISH_LINES = 4096;
+	// rows shown by toString
+	private static final int SUMMARY_ROWS = 10;
+
+	private final File file;
+	private final char separator;
+	private final Charset charset;
+	private final long length;
+	// null once closed
+	private MappedByteBuffer[] segments;
+	// the header line, if any, is not a row
+	private final int firstRow;
+
+	// line i is [starts[i], starts[i+1]), guarded by index until indexed
+	private long[] starts;
+	private int lines;
+	private volatile boolean indexed;
+	private final Object index = new Object();
+	private final Thread indexer;
+
+	private int rows = -1;
+	private int cols;
+	private String[] rowHeaders;
+	private String[] colHeaders;
+	private Map<String,Integer> colNumbers;
+	private Map<Long,String> edits;
+	private BitSet editedRows;
+
+	/**
+	 * Opens a file in UTF-8 and starts indexing it.
+	 *
+	 * @param file the file to read
+	 * @param separator the character between fields, e.g. ',' or '\t'
+	 * @param header whether the first line holds the column names
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public MappedStringMatrix(File file, char separator, boolean header)
+			throws IOException {
+		this(file, separator, header, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Opens a file and starts indexing it.
+	 *
+	 * @param file the file to read
+	 * @param separator the character between fields, e.g. ',' or '\t'
+	 * @param header whether the first line holds the column names
+	 * @param charset the charset of the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public MappedStringMatrix(File file, char separator, boolean header,
+	                          Charset charset) throws IOException {
+		if (separator == '"' || separator == '\n' || separator == '\r'
+		    || separator > 0x7f)
+			throw new IllegalArgumentException(
+				"Not a valid separator: " + separator
+			);
+		String special = "\"\n\r" + separator;
+		if (!Arrays.equals(special.getBytes(charset),
+		                   special.getBytes(Charset.forName("US-ASCII"))))
+			throw new IllegalArgumentException(
+				"Not a charset the file can be read in: " + charset
+			);
+		this.file = file;
+		this.separator = separator;
+		this.charset = charset;
+		this.firstRow = header ? 1 : 0;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+			MappedByteBuffer[] segments = new MappedByteBuffer[
+				(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for (int i=0; i<segments.length; i++) {
+				long position = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(
+					FileChannel.MapMode.READ_ONLY, position,
+					Math.min(SEGMENT_MASK + 1, length - position));
+			}
+			this.segments = segments;
+		} finally {
+			// the mappings stay valid after the channel is closed
+			raf.close();
+		}
+
+		long firstEnd = lineEnd(0);
+		starts = new long[] { 0, firstEnd < length ? firstEnd + 1 : length };
+		lines = length == 0 ? 0 : 1;
+		if (lines > 0) {
+			String[] first = fields(0, trimmedEnd(0, firstEnd));
+			cols = first.length;
+			if (header)
+				for (int col=1; col<=first.length; col++)
+					setColumnName(col, first[col - 1]);
+		}
+
+		indexer = new Thread(new Runnable() {
+			public void run() {
+				indexLines();
+			}
+		}, "Indexing " + file.getName());
+		indexer.setDaemon(true);
+		indexer.start();
+	}
+
+	/**
+	 * @return the file this matrix reads
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private byte at(long position) {
+		MappedByteBuffer[] segments = this.segments;
+		if (segments == null)
+			throw new IllegalStateException(file + " is closed");
+		return segments[(int) (position >>> SEGMENT_BITS)]
+			.get((int) (position & SEGMENT_MASK));
+	}
+
+	/*
+	 * The position of the line break ending the line starting at start, or
+	 * the length of the file
+	 */
+	private long lineEnd(long start) {
+		for (long p=start; p<length; p++)
+			if (at(p) == '\n')
+				return p;
+		return length;
+	}
+
+	private long trimmedEnd(long start, long end) {
+		while (end > start && (at(end - 1) == '\n' || at(end - 1) == '\r'))
+			end--;
+		return end;
+	}
+
+	private void indexLines() {
+		long[] local;
+		int count;
+		synchronized (index) {
+			local = Arrays.copyOf(starts, 1024);
+			count = lines;
+		}
+		long p = local[count];
+		int unpublished = 0;
+		while (p < length) {
+			p = lineEnd(p);
+			p = p < length ? p + 1 : length;
+			if (count + 2 > local.length)
+				local = Arrays.copyOf(local, local.length * 2);
+			local[++count] = p;
+			if (++unpublished == PUBLISH_LINES) {
+				publish(local, count, false);
+				unpublished = 0;
+			}
+			if (Thread.interrupted())
+				return;
+		}
+		publish(local, count, true);
+	}
+
+	private void publish(long[] local, int count, boolean done) {
+		synchronized (index) {
+			starts = local;
+			lines = count;
+			if (done)
+				indexed = true;
+			index.notifyAll();
+		}
+	}
+
+	/*
+	 * The line starts with at least the given number of lines indexed, or
+	 * all of them if the file has fewer lines
+	 */
+	private long[] awaitLines(int count) {
+		if (indexed)
+			return starts;
+		synchronized (index) {
+			while (lines < count && !indexed) {
+				try {
+					index.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(
+						"Interrupted while indexing " + file, e
+					);
+				}
+			}
+			return starts;
+		}
+	}
+
+	private int lineCount() {
+		if (indexed)
+			return lines;
+		synchronized (index) {
+			return lines;
+		}
+	}
+
+	/**
+	 * Waits until all lines of the file are indexed.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitIndex() throws InterruptedException {
+		synchronized (index) {
+			while (!indexed)
+				index.wait();
+		}
+	}
+
+	/**
+	 * @return whether all lines of the file are indexed
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * @return the number of rows in the file found so far
+	 */
+	public int getIndexedRowCount() {
+		return Math.max(0, lineCount() - firstRow);
+	}
+
+	/*
+	 * The number of rows, waiting only until it is known whether there are
+	 * at least the given number
+	 */
+	private int rowsAtLeast(int row) {
+		if (rows >= 0)
+			return rows;
+		awaitLines(row + firstRow);
+		return Math.max(0, lineCount() - firstRow);
+	}
+
+	private boolean inFile(int row) {
+		return row >= 1 && row + firstRow <= lineCount();
+	}
+
+	private void checkDimensions(int row, int col) {
+		checkRows(row);
+		checkCols(col);
+	}
+	private void checkRows(int row) {
+		if (row < 0 || row > rowsAtLeast(row))
+			throw new ArrayIndexOutOfBoundsException(
+				"Incorrect row number: " + row
+			);
+	}
+	private void checkCols(int col) {
+		if (col < 0 || col > cols)
+			throw new ArrayIndexOutOfBoundsException(
+				"Incorrect column number: " + col
+			);
+	}
+
+	private static long key(int row, int col) {
+		return (long) row << 32 | col;
+	}
+
+	public String get(int row, int col) {
+		checkDimensions(row, col);
+		return cell(row, col);
+	}
+
+	/*
+	 * The value of a cell without checking the dimensions
+	 */
+	private String cell(int row, int col) {
+		if (edits != null) {
+			Long key = key(row, col);
+			if (edits.containsKey(key))
+				return edits.get(key);
+		}
+		if (inFile(row)) {
+			if (col < 1) return null;
+			long[] lineStarts = awaitLines(row + firstRow);
+			int line = row + firstRow - 1;
+			long start = lineStarts[line];
+			return field(row, start,
+			             trimmedEnd(start, lineStarts[line + 1]), col - 1);
+		}
+		if (editedRows != null && editedRows.get(row)) return null;
+		return "";
+	}
+
+	/*
+	 * The field with the given index, counted from 0, in the line of a row,
+	 * or the empty string if the line has fewer fields
+	 */
+	private String field(int row, long start, long end, int index) {
+		long p = start;
+		for (int i=0; i<index; i++) {
+			p = skipField(p, end);
+			if (p >= end)
+				return "";
+			p++;
+		}
+		long[] next = new long[1];
+		String value = readField(p, end, next);
+		if (index == cols - 1 && next[0] < end)
+			throw tooManyFields(row);
+		return value;
+	}
+
+	private IllegalStateException tooManyFields(int row) {
+		return new IllegalStateException(
+			"Row " + row + " of " + file.getName() + " has more fields "
+			+ "than the " + cols + " columns of the table"
+		);
+	}
+
+	/*
+	 * The position of the separator after the field starting at p, or end
+	 */
+	private long skipField(long p, long end) {
+		boolean quoted = p < end && at(p) == '"';
+		if (quoted) p++;
+		while (p < end) {
+			byte b = at(p);
+			if (quoted && b == '"') {
+				if (p + 1 < end && at(p + 1) == '"')
+					p++;
+				else
+					quoted = false;
+			}
+			else if (!quoted && b == separator)
+				return p;
+			p++;
+		}
+		return end;
+	}
+
+	/*
+	 * Decodes the field starting at p, storing the position of the
+	 * separator after it in next[0] if next is given
+	 */
+	private String readField(long p, long end, long[] next) {
+		long stop = skipField(p, end);
+		if (next != null)
+			next[0] = stop;
+		boolean quoted = p < stop && at(p) == '"';
+		byte[] bytes = new byte[(int) (stop - p)];
+		int n = 0;
+		if (quoted) {
+			for (long q=p+1; q<stop; q++) {
+				byte b = at(q);
+				if (b == '"') {
+					if (q + 1 < stop && at(q + 1) == '"')
+						q++;
+					else
+						continue;
+				}
+				bytes[n++] = b;
+			}
+		}
+		else {
+			for (long q=p; q<stop; q++)
+				bytes[n++] = at(q);
+		}
+		return new String(bytes, 0, n, charset);
+	}
+
+	/*
+	 * All fields of a line
+	 */
+	private String[] fields(long start, long end) {
+		List<String> values = new ArrayList<String>(Math.max(cols, 4));
+		long[] next = new long[1];
+		long p = start;
+		while (true) {
+			values.add(readField(p, end, next));
+			if (next[0] >= end)
+				break;
+			p = next[0] + 1;
+		}
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * All values of a row, with unset values as null.
+	 *
+	 * @param row the number of the row, starting at 1
+	 * @return the values, indexed from 0
+	 */
+	public String[] getRow(int row) {
+		checkRows(row);
+		String[] values = new String[cols];
+		if (inFile(row) && edits == null) {
+			long[] lineStarts = awaitLines(row + firstRow);
+			int line = row + firstRow - 1;
+			long start = lineStarts[line];
+			String[] fields = fields(start,
+			                         trimmedEnd(start, lineStarts[line + 1]));
+			if (fields.length > values.length)
+				throw tooManyFields(row);
+			for (int i=0; i<values.length; i++)
+				values[i] = i < fields.length ? fields[i] : "";
+			return values;
+		}
+		for (int i=0; i<values.length; i++)
+			values[i] = cell(row, i + 1);
+		return values;
+	}
+
+	/**
+	 * Hands all rows to a handler, splitting them over a number of threads.
+	 * The rows are handled in no particular order. Values must not be set
+	 * during a scan.
+	 *
+	 * @param handler gets the rows
+	 * @param threads the number of threads to use
+	 * @throws InterruptedException if interrupted while waiting for the scan
+	 */
+	public void scan(final RowHandler handler, int threads)
+			throws InterruptedException {
+		final int count = getRowCount();
+		if (count == 0)
+			return;
+		threads = Math.max(1, Math.min(threads, count));
+		// more parts than threads, so a slow part does not hold up the rest
+		int parts = Math.min(count, threads * 4);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(parts);
+			for (int part=0; part<parts; part++) {
+				final int from = (int) ((long) count * part / parts) + 1;
+				final int to = (int) ((long) count * (part + 1) / parts);
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						for (int row=from; row<=to; row++)
+							handler.handle(row, getRow(row));
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Hands all rows to a handler, using one thread per processor.
+	 *
+	 * @param handler gets the rows
+	 * @throws InterruptedException if interrupted while waiting for the scan
+	 * @see #scan(RowHandler, int)
+	 */
+	public void scan(RowHandler handler) throws InterruptedException {
+		scan(handler, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Stops indexing the file and lets go of its mappings, after which
+	 * reading a row of the file throws an IllegalStateException. Java can
+	 * not unmap a file explicitly, the mappings are released when the
+	 * garbage collector finds them unused, so until then the file may stay
+	 * open and, on Windows, can not be deleted.
+	 */
+	public void close() {
+		indexer.interrupt();
+		boolean interrupted = false;
+		// the indexer stops after the line it is reading
+		while (indexer.isAlive()) {
+			try {
+				indexer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		synchronized (index) {
+			segments = null;
+			indexed = true;
+			index.notifyAll();
+		}
+	}
+
+	public String get(int row, String col) {
+		checkRows(row);
+		return get(row, getColumnNumber(col));
+	}
+
+	public int getColumnCount() {
+		return this.cols;
+	}
+
+	public boolean hasColumn(String col) {
+		return colNumbers != null && colNumbers.containsKey(col);
+	}
+
+	public int getColumnNumber(String col) {
+		Integer index = colNumbers == null ? null : colNumbers.get(col);
+		if (index == null)
+			throw new IllegalAccessError(
+				"No column found with this label."
+			);
+		return index;
+	}
+
+	public String getColumnName(int index) {
+		checkCols(index);
+
+		if (colHeaders == null) return "";
+		return index < colHeaders.length ? colHeaders[index] : null;
+	}
+
+	public int getRowCount() {
+		return rowsAtLeast(Integer.MAX_VALUE - firstRow);
+	}
+
+	public String getRowName(int index) {
+		checkRows(index);
+
+		if (rowHeaders == null) return "";
+		return index < rowHeaders.length ? rowHeaders[index] : null;
+	}
+
+	public boolean hasColHeader() {
+		return colHeaders != null;
+	}
+
+	public boolean hasRowHeader() {
+		return rowHeaders != null;
+	}
+
+	public void set(int row, int col, String value) {
+		if (row > rowsAtLeast(row)) rows = row;
+		if (col > cols) cols = col;
+		checkDimensions(row, col);
+
+		if (edits == null) {
+			edits = new HashMap<Long,String>();
+			editedRows = new BitSet();
+		}
+		edits.put(key(row, col), value);
+		editedRows.set(row);
+	}
+
+	public void setColumnName(int index, String name) {
+		if (index > cols) cols = index;
+		checkCols(index);
+
+		if (colHeaders == null) {
+			colHeaders = new String[index + 1];
+			colNumbers = new HashMap<String,Integer>();
+		}
+		if (index >= colHeaders.length)
+			colHeaders = Arrays.copyOf(colHeaders, Math.max(
+				index + 1, colHeaders.length * 2));
+		String old = colHeaders[index];
+		colHeaders[index] = name;
+		if (old != null
+		    && Integer.valueOf(index).equals(colNumbers.get(old))) {
+			colNumbers.remove(old);
+			// another column may have the same name
+			for (int i=0; i<colHeaders.length; i++)
+				if (old.equals(colHeaders[i])) {
+					colNumbers.put(old, i);
+					break;
+				}
+		}
+		if (name != null) {
+			Integer existing = colNumbers.get(name);
+			if (existing == null || existing > index)
+				colNumbers.put(name, index);
+		}
+	}
+
+	public void setRowName(int index, String name) {
+		checkRows(index);
+
+		if (rowHeaders == null)
+			rowHeaders = new String[index + 1];
+		if (index >= rowHeaders.length)
+			rowHeaders = Arrays.copyOf(rowHeaders, Math.max(
+				index + 1, rowHeaders.length * 2));
+		rowHeaders[index] = name;
+	}
+
+	public void setSize(int row, int col) {
+		this.rows = row;
+		this.cols = col;
+	}
+
+	public void set(int row, String col, String value) {
+		checkRows(row);
+		set(row, getColumnNumber(col), value);
+	}
+
+	public List<String> getColumn(int col) {
+		checkCols(col);
+
+		int count = getRowCount();
+		List<String> results = new ArrayList<String>(count);
+		for (int i=1; i<=count; i++) {
+			String result = cell(i, col);
+			results.add(result == null ? "" : result);
+		}
+		return results;
+	}
+
+	public List<String> getColumn(String col) {
+		int colNo = getColumnNumber(col);
+		return getColumn(colNo);
+	}
+
+	/**
+	 * Shows the size of the matrix and its first rows, without waiting for
+	 * the whole file to be indexed.
+	 */
+	public String toString() {
+		if (segments == null)
+			return file.getName() + ": closed";
+		int shown = Math.min(rowsAtLeast(SUMMARY_ROWS + 1), SUMMARY_ROWS);
+		StringBuilder out = new StringBuilder();
+		out.append(file.getName()).append(": ");
+		if (rows >= 0 || indexed)
+			out.append(rowsAtLeast(0));
+		else
+			out.append("at least ").append(getIndexedRowCount());
+		out.append(" rows, ").append(cols).append(" columns\n");
+		out.append('[');
+		if (hasColHeader()) {
+			out.append("[");
+			for (int col=1; col<=cols; col++) {
+				String result = getColumnName(col);
+				out.append('"').append(result == null ? "" : result)
+				   .append('"');
+				if (col<cols) out.append(',');
+			}
+			out.append("],\n");
+		}
+		for (int row=1; row<=shown; row++) {
+			if (hasRowHeader()) {
+				String result = getRowName(row);
+				out.append('"').append(result == null ? "" : result)
+				   .append("\": ");
+			}
+			out.append('[');
+			for (int col=1; col<=cols; col++) {
+				String result = cell(row, col);
+				out.append('"').append(result == null ? "" : result)
+				   .append('"');
+				if (col<cols) out.append(',');
+			}
+			out.append(']');
+			if (row<shown || shown<rowsAtLeast(shown + 1)) out.append(',');
+			out.append('\n');
+		}
+		if (shown < rowsAtLeast(shown + 1))
+			out.append("...\n");
+		out.append("]\n");
+		return out.toString();
+	}
+
+	public List<String> getColumnNames() {
+		List<String> names = new ArrayList<String>(getColumnCount());
+		for (int i=1; i<=getColumnCount(); i++)
+			names.add(getColumnName(i));
+		return names;
+	}
+
+	public List<String> getRowNames() {
+		List<String> names = new ArrayList<String>(getRowCount());
+		for (int i=1; i<=getRowCount(); i++)
+			names.add(getRowName(i));
+		return names;
+	}
+}
@@ -13,15 +13,18 @@
  ******************************************************************************/
 package net.bioclipse.core.domain;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
 
 import org.eclipse.ui.views.properties.IPropertySource;
 
@@ -37,14 +40,27 @@ public class RecordableList<T extends IBioObject> extends BioObject
      */
     private IPropertySource propertySource;
 
-    //<bioList.id, list of bioObjects in that biolist>
-    private static Map<String, List<String>> createdLists 
-         = Collections.synchronizedMap( new HashMap<String, List<String>>() );
-    
-    //<bioObject.id, bioList.id>
-    private static Map<String, Stack<String>> listIdForObject 
-         = Collections.synchronizedMap( new HashMap<String, Stack<String>>() );
-    
+    private static final Object registryLock = new Object();
+
+    /*
+     * Lists are registered on their first change. A list is kept with the
+     * ids of the bioObjects in it, so looking up the lists containing a
+     * bioObject is a single map access. The lists are only weakly
+     * referenced and forgotten once collected.
+     */
+
+    //<bioObject.id, registered lists containing it>
+    private static final Map<String, Set<ListEntry>> listsForObject
+        = new HashMap<String, Set<ListEntry>>();
+
+    private static final ReferenceQueue<RecordableList<?>> collectedLists
+        = new ReferenceQueue<RecordableList<?>>();
+
+    // counts changes to registered lists, the latest change counting most
+    private static long changes;
+
+    private ListEntry entry;
+
     public List<T> list = new ArrayList<T>();
     
     public RecordableList() {
@@ -61,98 +77,290 @@ public class RecordableList<T extends IBioObject> extends BioObject
      *         with the given id 
      */
     public static String idOfListContainingBioObject(String id) {
-        if(!listIdForObject.containsKey(id)) {
-            throw new IllegalStateException( "No bioObjectlist containing " +
-                                             "that object could be found" );
+        synchronized ( registryLock ) {
+            return latestListContaining( id ).listId;
         }
-        return listIdForObject.get(id).peek();
     }
     
     public static int positionOfBioObjectInList( String id ) {
-        List<String> list = createdLists.get(idOfListContainingBioObject(id));
-        for (int i = 0; i < list.size(); i++) {
-            if( id.equals(list.get(i))) {
-                return i;
+        synchronized ( registryLock ) {
+            ListEntry entry = latestListContaining( id );
+            if ( entry.positions == null ) {
+                RecordableList<?> list = entry.get();
+                if ( list == null ) {
+                    throw new IllegalStateException( 
+                        "No bioObjectlist containing that object could be " +
+                        "found" );
+                }
+                entry.positions = new HashMap<String, Integer>();
+                for ( int i = 0; i < list.size(); i++ ) {
+                    String objectId = idOf( list.list.get( i ) );
+                    if ( objectId != null 
+                         && !entry.positions.containsKey( objectId ) ) {
+                        entry.positions.put( objectId, i );
+                    }
+                }
             }
+            return entry.positions.get( id );
         }
-        throw new IllegalStateException( "No bioObjectlist containing " +
-                                         "that object could be found" );
     }
     
     public static boolean existsListContaining(String bioObjectId) {
-        for( List<String> l : createdLists.values() ) {
-            if(l.contains(bioObjectId)) {
-                return true;
+        synchronized ( registryLock ) {
+            return latest( bioObjectId ) != null;
+        }
+    }
+
+    private static ListEntry latestListContaining( String id ) {
+        ListEntry entry = latest( id );
+        if ( entry == null ) {
+            throw new IllegalStateException( "No bioObjectlist containing " +
+                                             "that object could be found" );
+        }
+        return entry;
+    }
+
+    /*
+     * The latest changed registered list containing the bioObject with the
+     * given id, or null. Called holding the registry lock.
+     */
+    private static ListEntry latest( String id ) {
+        expungeCollectedLists();
+        Set<ListEntry> entries = listsForObject.get( id );
+        if ( entries == null ) {
+            return null;
+        }
+        ListEntry latest = null;
+        for ( ListEntry entry : entries ) {
+            if ( ( latest == null || entry.lastChange > latest.lastChange )
+                 && entry.get() != null ) {
+                latest = entry;
             }
         }
-        return false;
+        return latest;
     }
-    
-    /**
-     *  Updates the created lists table.
+
+    private static String idOf( Object o ) {
+        return o instanceof IBioObject ? ( (IBioObject) o ).getUID() : null;
+    }
+
+    /*
+     * Forgets the collected lists. Called holding the registry lock.
      */
-    private void updateCreatedLists( RecordableList<? extends IBioObject> list ) {
-        
-        createdLists.remove(list.getUID());
-        clearListIdForObject( list.getUID() );
-        
-        List<String> newList = new ArrayList<String>();
-        for( IBioObject b : list) {
-            newList.add( b.getUID() );
-            if (listIdForObject.containsKey(b.getUID())) {
-                listIdForObject.get(b.getUID()).push( list.getUID() );
+    private static void expungeCollectedLists() {
+        Reference<? extends RecordableList<?>> ref;
+        while ( ( ref = collectedLists.poll() ) != null ) {
+            ListEntry entry = (ListEntry) ref;
+            for ( String objectId : entry.counts.keySet() ) {
+                forget( entry, objectId );
             }
-            else {
-                Stack<String> newStack = new Stack<String>();
-                newStack.push( list.getUID() );
-                listIdForObject.put(b.getUID(), newStack);
+            entry.counts.clear();
+        }
+    }
+
+    private static void forget( ListEntry entry, String objectId ) {
+        Set<ListEntry> entries = listsForObject.get( objectId );
+        if ( entries != null ) {
+            entries.remove( entry );
+            if ( entries.isEmpty() ) {
+                listsForObject.remove( objectId );
             }
         }
-        createdLists.put( list.getUID(), newList );
     }
-    
-    private void clearListIdForObject(String listId) {
-        
-        for( String objectId : listIdForObject.keySet() ) {
-            Stack<String> stack = listIdForObject.get(objectId);
-            synchronized ( stack ) {
-                if( stack.contains(listId) )
-                    stack.remove(listId);
+
+    private static void register( ListEntry entry, Object element ) {
+        String objectId = idOf( element );
+        if ( objectId == null ) {
+            return;
+        }
+        Integer count = entry.counts.get( objectId );
+        if ( count == null ) {
+            entry.counts.put( objectId, 1 );
+            Set<ListEntry> entries = listsForObject.get( objectId );
+            if ( entries == null ) {
+                entries = new HashSet<ListEntry>( 4 );
+                listsForObject.put( objectId, entries );
+            }
+            entries.add( entry );
+        }
+        else {
+            entry.counts.put( objectId, count + 1 );
+        }
+    }
+
+    private static void unregister( ListEntry entry, Object element ) {
+        String objectId = idOf( element );
+        if ( objectId == null ) {
+            return;
+        }
+        Integer count = entry.counts.get( objectId );
+        if ( count == null ) {
+            return;
+        }
+        if ( count == 1 ) {
+            entry.counts.remove( objectId );
+            forget( entry, objectId );
+        }
+        else {
+            entry.counts.put( objectId, count - 1 );
+        }
+    }
+
+    /*
+     * Makes this the latest changed list, registering it with all its
+     * bioObjects if it was not registered. Called holding the registry
+     * lock, returns null if the list was registered now.
+     */
+    private ListEntry changed() {
+        expungeCollectedLists();
+        if ( entry == null ) {
+            entry = new ListEntry( this );
+            for ( T element : list ) {
+                register( entry, element );
             }
+            entry.lastChange = ++changes;
+            return null;
+        }
+        entry.lastChange = ++changes;
+        return entry;
+    }
+
+    /*
+     * Registers the elements now at from until to
+     */
+    private void added( int from, int to ) {
+        synchronized ( registryLock ) {
+            ListEntry entry = changed();
+            if ( entry == null ) {
+                return;
+            }
+            for ( int i = from; i < to; i++ ) {
+                T element = list.get( i );
+                register( entry, element );
+                if ( entry.positions != null ) {
+                    String objectId = idOf( element );
+                    if ( to != list.size() ) {
+                        // the elements after were moved
+                        entry.positions = null;
+                    }
+                    else if ( objectId != null
+                              && !entry.positions.containsKey( objectId ) ) {
+                        entry.positions.put( objectId, i );
+                    }
+                }
+            }
+        }
+    }
+
+    private void removed( Object element ) {
+        synchronized ( registryLock ) {
+            ListEntry entry = changed();
+            if ( entry == null ) {
+                return;
+            }
+            unregister( entry, element );
+            entry.positions = null;
+        }
+    }
+
+    private void replaced( int index, Object old, Object element ) {
+        synchronized ( registryLock ) {
+            ListEntry entry = changed();
+            if ( entry == null ) {
+                return;
+            }
+            unregister( entry, old );
+            register( entry, element );
+            if ( entry.positions != null ) {
+                Integer oldPosition = entry.positions.get( idOf( old ) );
+                String objectId = idOf( element );
+                if ( oldPosition != null && oldPosition == index ) {
+                    // the old element may be further on
+                    entry.positions = null;
+                }
+                else if ( objectId != null ) {
+                    Integer position = entry.positions.get( objectId );
+                    if ( position == null || position > index ) {
+                        entry.positions.put( objectId, index );
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Registers all elements again, after changes too scattered to follow
+     */
+    private void reindex() {
+        synchronized ( registryLock ) {
+            ListEntry entry = changed();
+            if ( entry == null ) {
+                return;
+            }
+            for ( String objectId : entry.counts.keySet() ) {
+                forget( entry, objectId );
+            }
+            entry.counts.clear();
+            for ( T element : list ) {
+                register( entry, element );
+            }
+            entry.positions = null;
+        }
+    }
+
+    /**
+     * A registered list, with the number of times each bioObject id is in
+     * it and the first position of each, null when they are to be found
+     * again.
+     */
+    private static final class ListEntry 
+                         extends WeakReference<RecordableList<?>> {
+
+        private final String listId;
+        private final Map<String, Integer> counts 
+            = new HashMap<String, Integer>();
+        private Map<String, Integer> positions;
+        private long lastChange;
+
+        ListEntry( RecordableList<?> list ) {
+            super( list, collectedLists );
+            this.listId = list.getUID();
         }
     }
 
     @Recorded
     public boolean add(T e) {
         boolean b = list.add(e);
-        updateCreatedLists(this);
+        added( list.size() - 1, list.size() );
         return b;
     }
 
     @Recorded
     public void add(int index, T element) {
         list.add(index, element);
-        updateCreatedLists(this);
+        added( index, index + 1 );
     }
 
     @Recorded
     public boolean addAll(Collection<? extends T> c) {
+        int from = list.size();
         boolean b = list.addAll(c);
-        updateCreatedLists(this);
+        added( from, list.size() );
         return b;
     }
 
     @Recorded
     public boolean addAll(int index, Collection<? extends T> c) {
+        int size = list.size();
         boolean b = list.addAll(index, c);
-        updateCreatedLists(this);
+        added( index, index + list.size() - size );
         return b;
     }
 
     @Recorded
     public void clear() {
         list.clear();
-        updateCreatedLists(this);
+        reindex();
     }
 
     @Recorded
@@ -199,36 +407,37 @@ public class RecordableList<T extends IBioObject> extends BioObject
 
     @Recorded
     public boolean remove(Object o) {
-        boolean b = list.remove(o);
-        updateCreatedLists(this);
+        int index = list.indexOf(o);
+        boolean b = index >= 0;
+        removed( b ? list.remove(index) : null );
         return b;
     }
 
     @Recorded
     public T remove(int index) {
         T t = list.remove(index);
-        updateCreatedLists(this);
+        removed( t );
         return t;
     }
 
     @Recorded
     public boolean removeAll(Collection<?> c) {
         boolean b = list.removeAll(c);
-        updateCreatedLists(this);
+        reindex();
         return b;
     }
 
     @Recorded
     public boolean retainAll(Collection<?> c) {
         boolean b = list.retainAll(c);
-        updateCreatedLists(this);
+        reindex();
         return b;
     }
 
     @Recorded
     public T set(int index, T element) {
         T t = list.set(index, element);
-        updateCreatedLists(this);
+        replaced( index, t, element );
         return t;
     }
 
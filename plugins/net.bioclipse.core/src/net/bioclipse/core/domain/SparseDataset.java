@@ -12,6 +12,9 @@ package net.bioclipse.core.domain;
 
 import java.awt.Point;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -116,28 +119,53 @@ public class SparseDataset implements IDataset{
 		return toSparseString(DEFAULT_SEPARATOR);
 	}
 
+	/**
+	 * Writes the same contents as {@link #getFileContents()} without 
+	 * building them as one String first.
+	 * 
+	 * @param writer where to write the contents, not closed
+	 * @throws IOException if writing fails
+	 */
+	public void writeFileContents(Writer writer) throws IOException {
+		writeSparse(writer, DEFAULT_SEPARATOR);
+	}
 
 	public String toSparseString(String separator) {
+		StringWriter writer = new StringWriter(50000);
+		try {
+			writeSparse(writer, separator);
+		} catch (IOException e) {
+			//A StringWriter does not throw
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
 
-		StringBuffer buf = new StringBuffer(50000);
+	/**
+	 * Writes the values as rows of <code>column:value</code>.
+	 * 
+	 * @param writer where to write, not closed
+	 * @param separator the separator between values
+	 * @throws IOException if writing fails
+	 * @see CsrSparseDataset for a more compact sparse dataset
+	 */
+	public void writeSparse(Writer writer, String separator) 
+	throws IOException {
 
 		int c=0;  //line number
-		for (Point p : values.keySet()){
+		for (Map.Entry<Point, Integer> e : values.entrySet()){
+			Point p = e.getKey();
 			if (p.x==c)
-				buf.append(separator + p.y+":"+values.get(p));
+				writer.write(separator + p.y+":"+e.getValue());
 			else if (p.x==(c+1)){
 				//next line
 				if (c!=0)  //not first line
-					buf.append("\n");
+					writer.write("\n");
 				c++;
-				buf.append(p.y+":"+values.get(p));
+				writer.write(p.y+":"+e.getValue());
 			}
 		}
-		buf.append("\n");  //last newline
-		
-		System.out.println(buf.toString());
-
-		return buf.toString();
+		writer.write("\n");  //last newline
 	}
 
 	/**
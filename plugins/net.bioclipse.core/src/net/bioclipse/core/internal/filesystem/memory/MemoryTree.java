@@ -12,7 +12,13 @@ package net.bioclipse.core.internal.filesystem.memory;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.bioclipse.core.Activator;
 
@@ -23,26 +29,32 @@ import org.eclipse.core.runtime.*;
 
 /**
  * An in-memory file system.
+ * <p>
+ * The tree is guarded by one read/write lock, so any number of jobs can
+ * look up and read files at the same time. Changes take the write lock,
+ * but only for as long as it takes to link in a node or a file's new
+ * contents. Children are looked up by name in a hash map.
+ * <p>
+ * File contents are kept as a list of chunks that are never changed once
+ * written. Appending adds chunks without copying the old ones, and input
+ * streams read straight from the chunks of the contents they were opened
+ * on, whatever is written to the file after that.
  */
 public class MemoryTree {
 	static class DirNode extends Node {
-		private final List<Node> children = new ArrayList<Node>();
+		// in the order they were added
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
 
 		DirNode(Node parent, String name) {
 			super(parent, name);
 		}
 
 		void add(Node child) {
-			children.add(child);
+			children.put(child.getInfo(false).getName(), child);
 		}
 
 		public String[] childNames() {
-			String[] names = new String[children.size()];
-			for (int i = 0, imax = children.size(); i < imax; i++) {
-				Node child = (Node) children.get(i);
-				names[i] = child.getInfo(false).getName();
-			}
-			return names;
+			return children.keySet().toArray(new String[children.size()]);
 		}
 
 		/**
@@ -51,12 +63,7 @@ public class MemoryTree {
 		 * @return
 		 */
 		Node getChild(String name) {
-			for (int i = 0, imax = children.size(); i < imax; i++) {
-				Node child = (Node) children.get(i);
-				if (child.getInfo(false).getName().equals(name))
-					return child;
-			}
-			return null;
+			return children.get(name);
 		}
 
 		protected void initializeInfo(FileInfo fileInfo) {
@@ -69,18 +76,16 @@ public class MemoryTree {
 		}
 
 		void remove(String name) {
-			Node child = getChild(name);
-			if (child != null)
-				children.remove(child);
+			children.remove(name);
 		}
 
 		public String toString() {
-			return super.toString() + ' ' + children;
+			return super.toString() + ' ' + children.values();
 		}
 	}
 
 	static class FileNode extends Node {
-		byte[] contents = EMPTY_CONTENTS;
+		Contents contents = Contents.EMPTY;
 
 		FileNode(Node parent, String name) {
 			super(parent, name);
@@ -91,30 +96,16 @@ public class MemoryTree {
 		}
 
 		public InputStream openInputStream() {
-			return new ByteArrayInputStream(contents);
-		}
-
-		public OutputStream openOutputStream(final int options) {
-			return new ByteArrayOutputStream() {
-				public void close() throws IOException {
-					super.close();
-					setContents(toByteArray(), options);
-				}
-			};
-		}
-
-		protected void setContents(byte[] bytes, int options) {
-			if ((options & EFS.APPEND) != 0) {
-				//create reference in case of concurrent modification
-				byte[] oldContents = this.contents;
-				byte[] newContents = new byte[oldContents.length + bytes.length];
-				System.arraycopy(oldContents, 0, newContents, 0, oldContents.length);
-				System.arraycopy(bytes, 0, newContents, oldContents.length, bytes.length);
-				this.contents = newContents;
-			} else
-				this.contents = bytes;
+			return new ContentsInputStream(contents);
+		}
+
+		protected void setContents(Contents written, int options) {
+			if ((options & EFS.APPEND) != 0)
+				this.contents = contents.append(written);
+			else
+				this.contents = written;
 			info.setLastModified(System.currentTimeMillis());
-			((FileInfo) info).setLength(bytes.length);
+			((FileInfo) info).setLength(contents.length);
 		}
 	}
 
@@ -122,11 +113,11 @@ public class MemoryTree {
 		protected IFileInfo info;
 
 		Node(Node parent, String name) {
-			if (parent != null)
-				((DirNode) parent).add(this);
 			FileInfo fileInfo = new FileInfo(name);
 			initializeInfo(fileInfo);
 			this.info = fileInfo;
+			if (parent != null)
+				((DirNode) parent).add(this);
 		}
 
 		IFileInfo getInfo(boolean copy) {
@@ -158,14 +149,189 @@ public class MemoryTree {
 		}
 	}
 
+	/**
+	 * The contents of a file as chunks of bytes. Neither the chunks nor
+	 * the first <code>count</code> slots of the chunk array are ever
+	 * changed, so appending can share the array with the contents it was
+	 * made from.
+	 */
+	static final class Contents {
+		static final Contents EMPTY = new Contents(new byte[0][], 0, 0);
+
+		final byte[][] chunks;
+		final int count;
+		final long length;
+
+		Contents(byte[][] chunks, int count, long length) {
+			this.chunks = chunks;
+			this.count = count;
+			this.length = length;
+		}
+
+		/*
+		 * Called holding the write lock, on the current contents of a file
+		 * only, so no one else appends to the same array.
+		 */
+		Contents append(Contents more) {
+			if (more.count == 0)
+				return this;
+			byte[][] result = chunks;
+			int needed = count + more.count;
+			if (needed > result.length)
+				result = Arrays.copyOf(chunks, Math.max(needed, 2 * count));
+			System.arraycopy(more.chunks, 0, result, count, more.count);
+			return new Contents(result, needed, length + more.length);
+		}
+	}
+
+	/**
+	 * Reads the chunks of the contents a file had when it was opened.
+	 */
+	static final class ContentsInputStream extends InputStream {
+		private final Contents contents;
+		private int chunk;
+		private int offset;
+		private long remaining;
+
+		ContentsInputStream(Contents contents) {
+			this.contents = contents;
+			this.remaining = contents.length;
+		}
+
+		public int read() {
+			if (!nextChunk())
+				return -1;
+			remaining--;
+			return contents.chunks[chunk][offset++] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!nextChunk())
+				return -1;
+			byte[] current = contents.chunks[chunk];
+			int n = Math.min(len, current.length - offset);
+			System.arraycopy(current, offset, b, off, n);
+			offset += n;
+			remaining -= n;
+			return n;
+		}
+
+		public long skip(long n) {
+			long skipped = 0;
+			while (skipped < n && nextChunk()) {
+				int step = (int) Math.min(n - skipped, contents.chunks[chunk].length - offset);
+				offset += step;
+				skipped += step;
+			}
+			remaining -= skipped;
+			return skipped;
+		}
+
+		public int available() {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+
+		/*
+		 * Moves past finished chunks, returns false at the end
+		 */
+		private boolean nextChunk() {
+			while (chunk < contents.count && offset == contents.chunks[chunk].length) {
+				chunk++;
+				offset = 0;
+			}
+			return chunk < contents.count;
+		}
+	}
+
+	/**
+	 * Collects what is written in chunks, which become the contents of the
+	 * file when the stream is closed.
+	 */
+	final class ContentsOutputStream extends OutputStream {
+		private static final int CHUNK_SIZE = 8192;
+
+		private final FileNode node;
+		private final int options;
+		private final List<byte[]> chunks = new ArrayList<byte[]>();
+		private byte[] current = new byte[256];
+		private int position;
+		private long length;
+		private boolean closed;
+
+		ContentsOutputStream(FileNode node, int options) {
+			this.node = node;
+			this.options = options;
+		}
+
+		public void write(int b) throws IOException {
+			checkOpen();
+			if (position == current.length)
+				grow(1);
+			current[position++] = (byte) b;
+			length++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkOpen();
+			while (len > 0) {
+				if (position == current.length)
+					grow(len);
+				int n = Math.min(len, current.length - position);
+				System.arraycopy(b, off, current, position, n);
+				position += n;
+				off += n;
+				len -= n;
+				length += n;
+			}
+		}
+
+		private void checkOpen() throws IOException {
+			if (closed)
+				throw new IOException("Stream closed");
+		}
+
+		/*
+		 * Makes room in a bigger array, or starts a new chunk once the
+		 * current one is full size
+		 */
+		private void grow(int wanted) {
+			if (current.length < CHUNK_SIZE) {
+				current = Arrays.copyOf(current, Math.min(CHUNK_SIZE, Math.max(2 * current.length, position + wanted)));
+				return;
+			}
+			chunks.add(current);
+			current = new byte[CHUNK_SIZE];
+			position = 0;
+		}
+
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (position > 0)
+				chunks.add(position == current.length ? current : Arrays.copyOf(current, position));
+			current = null;
+			Contents written = new Contents(chunks.toArray(new byte[chunks.size()][]), chunks.size(), length);
+			Lock write = lock.writeLock();
+			write.lock();
+			try {
+				node.setContents(written, options);
+			} finally {
+				write.unlock();
+			}
+		}
+	}
+
 	static final int[] ALL_ATTRIBUTES = new int[] {EFS.ATTRIBUTE_ARCHIVE, EFS.ATTRIBUTE_EXECUTABLE, EFS.ATTRIBUTE_HIDDEN, EFS.ATTRIBUTE_READ_ONLY,};
 
 	public static final MemoryTree TREE = new MemoryTree();
 
-	static final byte[] EMPTY_CONTENTS = new byte[0];
-
 	private static final String ROOT_NAME = "<root>";
 
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
 	private Node root = new DirNode(null, ROOT_NAME);
 
 	private MemoryTree() {
@@ -173,7 +339,7 @@ public class MemoryTree {
 	    try{
 	        IPath path;
 	        mkdir(path=new Path("/"+Activator.VIRTUAL_PROJECT_NAME),true);
-	        
+
 	        PrintWriter pw=new PrintWriter(openOutputStream(
 	                                   path.append(".project"),EFS.NONE));
 	        pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
@@ -191,32 +357,49 @@ public class MemoryTree {
 	    }catch(CoreException x){
 	        // Could not create Virtual project continue as nothing has happened
 	    }
-	    
+
 	}
 
 	public String[] childNames(IPath path) {
-		Node node = findNode(path);
-		if (node == null || node.isFile())
-			return null;
-		return ((DirNode) node).childNames();
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			Node node = findNode(path);
+			if (node == null || node.isFile())
+				return null;
+			return ((DirNode) node).childNames();
+		} finally {
+			read.unlock();
+		}
 	}
 
 	public void delete(IPath path) {
 		//cannot delete the root
 		if (path.segmentCount() == 0)
 			return;
-		Node parent = findNode(path.removeLastSegments(1));
-		if (parent == null || parent.isFile())
-			return;
-		((DirNode) parent).remove(path.lastSegment());
-
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			Node parent = findNode(path.removeLastSegments(1));
+			if (parent == null || parent.isFile())
+				return;
+			((DirNode) parent).remove(path.lastSegment());
+		} finally {
+			write.unlock();
+		}
 	}
 
 	/**
 	 * Deletes the entire memory tree. Used during debugging and testing only.
 	 */
 	public void deleteAll() {
-		this.root = new DirNode(null, ROOT_NAME);
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			this.root = new DirNode(null, ROOT_NAME);
+		} finally {
+			write.unlock();
+		}
 	}
 
 	/**
@@ -224,16 +407,23 @@ public class MemoryTree {
 	 * @param path
 	 * @return
 	 */
-	public synchronized IFileInfo fetchInfo(IPath path) {
-		Node node = findNode(path);
-		if (node == null)
-			return new FileInfo(path.lastSegment());
-		return node.getInfo(true);
+	public IFileInfo fetchInfo(IPath path) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			Node node = findNode(path);
+			if (node == null)
+				return new FileInfo(path.lastSegment());
+			return node.getInfo(true);
+		} finally {
+			read.unlock();
+		}
 	}
 
 	/**
-	 * Returns the node at the given path, or null if not found.
-	 * 
+	 * Returns the node at the given path, or null if not found. Must be
+	 * called holding the lock.
+	 *
 	 * @param path
 	 * @return
 	 */
@@ -248,6 +438,16 @@ public class MemoryTree {
 	}
 
 	public Node mkdir(IPath path, boolean deep) throws CoreException {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			return mkdirLocked(path, deep);
+		} finally {
+			write.unlock();
+		}
+	}
+
+	private Node mkdirLocked(IPath path, boolean deep) throws CoreException {
 		Node dir = findNode(path);
 		if (dir != null) {
 			if (dir.isFile())
@@ -262,40 +462,58 @@ public class MemoryTree {
 		} else {
 			if (!deep)
 				Policy.error("Parent does not exist: " + parentPath);
-			parent = mkdir(parentPath, deep);
+			parent = mkdirLocked(parentPath, deep);
 		}
 		//create the child directory
 		return new DirNode(parent, path.lastSegment());
 	}
 
 	public InputStream openInputStream(IPath path) throws CoreException {
-		Node node = findNode(path);
-		if (node == null)
-			Policy.error("File not found: " + path);
-		if (!node.isFile())
-			Policy.error("Cannot open stream on directory: " + path);
-		return ((FileNode) node).openInputStream();
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			Node node = findNode(path);
+			if (node == null)
+				Policy.error("File not found: " + path);
+			if (!node.isFile())
+				Policy.error("Cannot open stream on directory: " + path);
+			return ((FileNode) node).openInputStream();
+		} finally {
+			read.unlock();
+		}
 	}
 
 	public OutputStream openOutputStream(IPath path, int options) throws CoreException {
-		Node node = findNode(path);
-		//if we already have such a file, just open a stream on it
-		if (node instanceof DirNode)
-			Policy.error("Could not create file: " + path);
-		if (node instanceof FileNode)
-			return ((FileNode) node).openOutputStream(options);
-		//if the parent exists we can create the file
-		Node parent = findNode(path.removeLastSegments(1));
-		if (!(parent instanceof DirNode))
-			Policy.error("Could not create file: " + path);
-		node = new FileNode(parent, path.lastSegment());
-		return ((FileNode) node).openOutputStream(options);
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			Node node = findNode(path);
+			//if we already have such a file, just open a stream on it
+			if (node instanceof DirNode)
+				Policy.error("Could not create file: " + path);
+			if (node instanceof FileNode)
+				return new ContentsOutputStream((FileNode) node, options);
+			//if the parent exists we can create the file
+			Node parent = findNode(path.removeLastSegments(1));
+			if (!(parent instanceof DirNode))
+				Policy.error("Could not create file: " + path);
+			node = new FileNode(parent, path.lastSegment());
+			return new ContentsOutputStream((FileNode) node, options);
+		} finally {
+			write.unlock();
+		}
 	}
 
 	public void putInfo(IPath path, IFileInfo info, int options) throws CoreException {
-		Node node = findNode(path);
-		if (node == null)
-			Policy.error("File not found: " + path);
-		node.putInfo(info, options);
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			Node node = findNode(path);
+			if (node == null)
+				Policy.error("File not found: " + path);
+			node.putInfo(info, options);
+		} finally {
+			write.unlock();
+		}
 	}
 }
@@ -0,0 +1,118 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.util.Locale;
+
+/**
+ * What {@link TableQueries#groupBy} computes for each group. All but
+ * {@link #COUNT} only use the values that are numbers and give an empty
+ * string for a group without any.
+ *
+ * @author agent
+ */
+public enum Aggregate {
+
+    /** The number of rows */
+    COUNT,
+    SUM,
+    MEAN,
+    MIN,
+    MAX;
+
+    /**
+     * @param name the name of an aggregate, in any case
+     * @return the aggregate
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static Aggregate parse( String name ) {
+        try {
+            return valueOf( name.trim().toUpperCase( Locale.ENGLISH ) );
+        }
+        catch ( RuntimeException e ) {
+            throw new IllegalArgumentException(
+                "Unknown aggregate: " + name + ", use one of count, sum, "
+                + "mean, min or max" );
+        }
+    }
+
+    String label( String column ) {
+        String name = name().toLowerCase( Locale.ENGLISH );
+        return this == COUNT || column == null ? name
+                                               : name + "(" + column + ")";
+    }
+
+    String result( Accumulator accumulator ) {
+        if ( this == COUNT ) {
+            return Long.toString( accumulator.count );
+        }
+        if ( accumulator.numbers == 0 ) {
+            return "";
+        }
+        switch ( this ) {
+            case SUM:
+                return format( accumulator.sum );
+            case MEAN:
+                return format( accumulator.sum / accumulator.numbers );
+            case MIN:
+                return format( accumulator.min );
+            default:
+                return format( accumulator.max );
+        }
+    }
+
+    static String format( double d ) {
+        if ( d == Math.rint( d ) && Math.abs( d ) < 1e15 ) {
+            return Long.toString( (long) d );
+        }
+        return Double.toString( d );
+    }
+
+    /**
+     * The figures of one group
+     */
+    static class Accumulator {
+
+        long count;
+        long numbers;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add( String value ) {
+            add( Condition.parse( value ) );
+        }
+
+        /*
+         * NaN for a value that is not a number
+         */
+        void add( double d ) {
+            count++;
+            if ( !Double.isNaN( d ) ) {
+                numbers++;
+                sum += d;
+                min = Math.min( min, d );
+                max = Math.max( max, d );
+            }
+        }
+
+        void add( Accumulator other ) {
+            count += other.count;
+            numbers += other.numbers;
+            sum += other.sum;
+            min = Math.min( min, other.min );
+            max = Math.max( max, other.max );
+        }
+    }
+}
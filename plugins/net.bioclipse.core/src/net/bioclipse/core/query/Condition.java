@@ -0,0 +1,158 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.util.regex.Pattern;
+
+/**
+ * A test of the value of a cell against a constant. The comparing operators
+ * compare numerically when both the value and the constant are numbers and
+ * as strings otherwise. A condition can be used from several threads.
+ *
+ * @author agent
+ */
+public final class Condition {
+
+    private enum Operator {
+        EQUALS( "=" ), NOT_EQUALS( "!=" ), LESS( "<" ), LESS_OR_EQUAL( "<=" ),
+        GREATER( ">" ), GREATER_OR_EQUAL( ">=" ), CONTAINS( "contains" ),
+        MATCHES( "matches" );
+
+        private final String symbol;
+
+        private Operator( String symbol ) {
+            this.symbol = symbol;
+        }
+    }
+
+    private final Operator operator;
+    private final String value;
+    private final double number;
+    private final Pattern pattern;
+
+    private Condition( Operator operator, String value ) {
+        this.operator = operator;
+        this.value = value;
+        this.number = parse( value );
+        this.pattern = operator == Operator.MATCHES ? Pattern.compile( value )
+                                                    : null;
+    }
+
+    /**
+     * Creates a condition.
+     *
+     * @param operator one of =, !=, &lt;, &lt;=, &gt;, &gt;=,
+     *                 <code>contains</code> and <code>matches</code>, the
+     *                 last taking a regular expression
+     * @param value the constant to compare with
+     * @return the condition
+     * @throws IllegalArgumentException for an unknown operator or a
+     *                                  malformed regular expression
+     */
+    public static Condition of( String operator, String value ) {
+        if ( value == null ) {
+            throw new IllegalArgumentException( "No value to compare with" );
+        }
+        String op = operator == null ? "" : operator.trim();
+        if ( "==".equals( op ) ) {
+            op = "=";
+        }
+        for ( Operator o : Operator.values() ) {
+            if ( o.symbol.equalsIgnoreCase( op ) ) {
+                return new Condition( o, value );
+            }
+        }
+        throw new IllegalArgumentException( "Unknown operator: " + operator );
+    }
+
+    /**
+     * @return the value as a number or NaN if it is not a number
+     */
+    static double parse( String value ) {
+        if ( value == null || value.length() == 0 ) {
+            return Double.NaN;
+        }
+        char first = value.charAt( 0 );
+        // most strings that are not numbers are rejected without an exception
+        if ( !( first >= '0' && first <= '9' || first == '-' || first == '+'
+                || first == '.' ) ) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble( value );
+        }
+        catch ( NumberFormatException e ) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @param cell the value of a cell, <code>null</code> for no value
+     * @return whether the value fulfills this condition
+     */
+    public boolean accept( String cell ) {
+        if ( cell == null ) {
+            return operator == Operator.NOT_EQUALS;
+        }
+        switch ( operator ) {
+            case CONTAINS:
+                return cell.contains( value );
+            case MATCHES:
+                return pattern.matcher( cell ).matches();
+            default:
+                double d = Double.isNaN( number ) ? Double.NaN : parse( cell );
+                int comparison = Double.isNaN( d )
+                                 ? cell.compareTo( value )
+                                 : Double.compare( d, number );
+                return test( comparison );
+        }
+    }
+
+    /**
+     * @param cell the value of a cell in a dataset
+     * @return whether the value fulfills this condition
+     */
+    public boolean accept( double cell ) {
+        if ( Double.isNaN( number )
+             || operator == Operator.CONTAINS
+             || operator == Operator.MATCHES ) {
+            return accept( Float.toString( (float) cell ) );
+        }
+        return test( Double.compare( cell, number ) );
+    }
+
+    private boolean test( int comparison ) {
+        switch ( operator ) {
+            case EQUALS:
+                return comparison == 0;
+            case NOT_EQUALS:
+                return comparison != 0;
+            case LESS:
+                return comparison < 0;
+            case LESS_OR_EQUAL:
+                return comparison <= 0;
+            case GREATER:
+                return comparison > 0;
+            case GREATER_OR_EQUAL:
+                return comparison >= 0;
+            default:
+                throw new IllegalStateException( operator.toString() );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return operator.symbol + " " + value;
+    }
+}
@@ -0,0 +1,170 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A stable merge sort of row indexes by the values of a column. The rows
+ * are sorted in ranges in parallel and the ranges are then merged pairwise,
+ * also in parallel.
+ *
+ * @author agent
+ */
+final class IndexSort {
+
+    private static final int INSERTION_SORT = 16;
+
+    /**
+     * Compares rows by their indexes.
+     */
+    interface Order {
+        int compare( int a, int b );
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * Orders by numbers, rows without a number last.
+     */
+    static Order numbers( final double[] keys, final boolean ascending ) {
+        return new Order() {
+            public int compare( int a, int b ) {
+                double x = keys[a];
+                double y = keys[b];
+                if ( Double.isNaN( x ) || Double.isNaN( y ) ) {
+                    return Double.isNaN( x ) ? ( Double.isNaN( y ) ? 0 : 1 )
+                                             : -1;
+                }
+                return ascending ? Double.compare( x, y )
+                                 : Double.compare( y, x );
+            }
+        };
+    }
+
+    /**
+     * Orders by strings, rows without a value last.
+     */
+    static Order strings( final String[] keys, final boolean ascending ) {
+        return new Order() {
+            public int compare( int a, int b ) {
+                String x = keys[a];
+                String y = keys[b];
+                if ( x == null || y == null ) {
+                    return x == null ? ( y == null ? 0 : 1 ) : -1;
+                }
+                return ascending ? x.compareTo( y ) : y.compareTo( x );
+            }
+        };
+    }
+
+    /**
+     * @return the indexes from 0 to size sorted by order
+     */
+    static int[] sort( int size, final Order order ) {
+        final int[] a = new int[size];
+        final int[] b = new int[size];
+        for ( int i = 0; i < size; i++ ) {
+            a[i] = i;
+        }
+        // ranges sorted into a
+        List<int[]> runs = Parallel.chunks( size, new Parallel.Chunk<int[]>() {
+            public int[] run( int from, int to ) {
+                mergeSort( a, b, from, to, order );
+                return new int[] { from, to };
+            }
+        } );
+        int[] src = a;
+        int[] dst = b;
+        while ( runs.size() > 1 ) {
+            List<Callable<int[]>> merges = new ArrayList<Callable<int[]>>();
+            for ( int i = 0; i < runs.size(); i += 2 ) {
+                final int[] s = src;
+                final int[] d = dst;
+                final int from = runs.get( i )[0];
+                if ( i + 1 == runs.size() ) {
+                    final int to = runs.get( i )[1];
+                    merges.add( new Callable<int[]>() {
+                        public int[] call() {
+                            System.arraycopy( s, from, d, from, to - from );
+                            return new int[] { from, to };
+                        }
+                    } );
+                    break;
+                }
+                final int mid = runs.get( i + 1 )[0];
+                final int to = runs.get( i + 1 )[1];
+                merges.add( new Callable<int[]>() {
+                    public int[] call() {
+                        merge( s, d, from, mid, to, order );
+                        return new int[] { from, to };
+                    }
+                } );
+            }
+            runs = Parallel.invokeAll( merges );
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        return src;
+    }
+
+    /*
+     * Sorts a[from, to) using b as scratch space
+     */
+    private static void mergeSort( int[] a, int[] b, int from, int to,
+                                   Order order ) {
+        if ( to - from <= INSERTION_SORT ) {
+            for ( int i = from + 1; i < to; i++ ) {
+                int v = a[i];
+                int j = i;
+                while ( j > from && order.compare( a[j - 1], v ) > 0 ) {
+                    a[j] = a[j - 1];
+                    j--;
+                }
+                a[j] = v;
+            }
+            return;
+        }
+        int mid = ( from + to ) >>> 1;
+        mergeSort( a, b, from, mid, order );
+        mergeSort( a, b, mid, to, order );
+        if ( order.compare( a[mid - 1], a[mid] ) <= 0 ) {
+            return;
+        }
+        System.arraycopy( a, from, b, from, to - from );
+        merge( b, a, from, mid, to, order );
+    }
+
+    /*
+     * Merges the sorted src[from, mid) and src[mid, to) into dst[from, to)
+     */
+    private static void merge( int[] src, int[] dst, int from, int mid,
+                               int to, Order order ) {
+        int i = from;
+        int j = mid;
+        for ( int k = from; k < to; k++ ) {
+            if ( j >= to
+                 || i < mid && order.compare( src[i], src[j] ) <= 0 ) {
+                dst[k] = src[i++];
+            }
+            else {
+                dst[k] = src[j++];
+            }
+        }
+    }
+}
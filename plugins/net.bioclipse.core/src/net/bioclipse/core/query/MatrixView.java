@@ -0,0 +1,321 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.bioclipse.core.domain.ColumnarStringMatrix;
+import net.bioclipse.core.domain.IStringMatrix;
+
+/**
+ * The result of a query on {@link IStringMatrix}es. It holds no values of
+ * its own but the numbers of the rows and columns it shows of the queried
+ * matrices, so a query copies no columns. Setting a value sets it in the
+ * queried matrix; a view can not grow.
+ * <p>
+ * Rows and columns are numbered from 1. A row of a left join without a
+ * match has <code>null</code> for the values of the right matrix.
+ *
+ * @author agent
+ */
+public class MatrixView implements IStringMatrix {
+
+    private final IStringMatrix[] sources;
+    // the source row of each row, per source, 0 for none, null for the same
+    private final int[][] rows;
+    private final int rowCount;
+    private final int[] columnSources;
+    private final int[] columns;
+    private final String[] names;
+    private boolean colHeader;
+    private Map<String, Integer> numbers;
+    private String[] rowNames;
+
+    private MatrixView( IStringMatrix[] sources, int[][] rows, int rowCount,
+                        int[] columnSources, int[] columns, String[] names,
+                        boolean colHeader ) {
+        this.sources = sources;
+        this.rows = rows;
+        this.rowCount = rowCount;
+        this.columnSources = columnSources;
+        this.columns = columns;
+        this.names = names;
+        this.colHeader = colHeader;
+    }
+
+    /**
+     * @return the matrix itself if it is a view, else a view of all of it
+     */
+    static MatrixView of( IStringMatrix matrix ) {
+        if ( matrix instanceof MatrixView ) {
+            return (MatrixView) matrix;
+        }
+        int cols = matrix.getColumnCount();
+        int[] columns = new int[cols];
+        String[] names = new String[cols];
+        for ( int col = 1; col <= cols; col++ ) {
+            columns[col - 1] = col;
+            names[col - 1] = matrix.getColumnName( col );
+        }
+        return new MatrixView( new IStringMatrix[] { matrix },
+                               new int[1][],
+                               matrix.getRowCount(),
+                               new int[cols],
+                               columns,
+                               names,
+                               matrix.hasColHeader() );
+    }
+
+    private int sourceRow( int source, int row ) {
+        int[] r = rows[source];
+        if ( r == null || row == 0 ) {
+            return row;
+        }
+        return r[row - 1];
+    }
+
+    private int[][] composeRows( int[] viewRows ) {
+        int[][] result = new int[sources.length][];
+        for ( int s = 0; s < sources.length; s++ ) {
+            int[] r = new int[viewRows.length];
+            for ( int i = 0; i < r.length; i++ ) {
+                r[i] = sourceRow( s, viewRows[i] );
+            }
+            result[s] = r;
+        }
+        return result;
+    }
+
+    /**
+     * @param viewRows rows of this view, 0 for an empty row
+     * @return a view of those rows
+     */
+    MatrixView rows( int[] viewRows ) {
+        return new MatrixView( sources, composeRows( viewRows ),
+                               viewRows.length, columnSources, columns,
+                               names.clone(), colHeader );
+    }
+
+    /**
+     * @param viewColumns columns of this view
+     * @return a view of those columns
+     */
+    MatrixView columns( int[] viewColumns ) {
+        int[] s = new int[viewColumns.length];
+        int[] c = new int[viewColumns.length];
+        String[] n = new String[viewColumns.length];
+        for ( int i = 0; i < viewColumns.length; i++ ) {
+            checkColumn( viewColumns[i] );
+            s[i] = columnSources[viewColumns[i] - 1];
+            c[i] = columns[viewColumns[i] - 1];
+            n[i] = names[viewColumns[i] - 1];
+        }
+        return new MatrixView( sources, rows, rowCount, s, c, n, colHeader );
+    }
+
+    /**
+     * @return a view with the columns of left followed by the given columns
+     *         of right, with the given rows of each
+     */
+    static MatrixView beside( MatrixView left, int[] leftRows,
+                              MatrixView right, int[] rightRows,
+                              int[] rightColumns ) {
+        int ls = left.sources.length;
+        int rs = right.sources.length;
+        IStringMatrix[] sources = new IStringMatrix[ls + rs];
+        System.arraycopy( left.sources, 0, sources, 0, ls );
+        System.arraycopy( right.sources, 0, sources, ls, rs );
+        int[][] rows = new int[ls + rs][];
+        System.arraycopy( left.composeRows( leftRows ), 0, rows, 0, ls );
+        System.arraycopy( right.composeRows( rightRows ), 0, rows, ls, rs );
+
+        int lc = left.columns.length;
+        int cols = lc + rightColumns.length;
+        int[] columnSources = new int[cols];
+        int[] columns = new int[cols];
+        String[] names = new String[cols];
+        System.arraycopy( left.columnSources, 0, columnSources, 0, lc );
+        System.arraycopy( left.columns, 0, columns, 0, lc );
+        System.arraycopy( left.names, 0, names, 0, lc );
+        for ( int i = 0; i < rightColumns.length; i++ ) {
+            right.checkColumn( rightColumns[i] );
+            int col = rightColumns[i] - 1;
+            columnSources[lc + i] = right.columnSources[col] + ls;
+            columns[lc + i] = right.columns[col];
+            names[lc + i] = right.names[col];
+        }
+        return new MatrixView( sources, rows, leftRows.length,
+                               columnSources, columns, names,
+                               left.colHeader || right.colHeader );
+    }
+
+    private void checkRow( int row ) {
+        if ( row < 1 || row > rowCount ) {
+            throw new ArrayIndexOutOfBoundsException(
+                "Incorrect row number: " + row );
+        }
+    }
+
+    private void checkColumn( int col ) {
+        if ( col < 1 || col > columns.length ) {
+            throw new ArrayIndexOutOfBoundsException(
+                "Incorrect column number: " + col );
+        }
+    }
+
+    public String get( int row, int col ) {
+        checkRow( row );
+        checkColumn( col );
+        return cell( row, col );
+    }
+
+    /*
+     * The value of a cell without checking the dimensions
+     */
+    String cell( int row, int col ) {
+        int source = columnSources[col - 1];
+        int r = sourceRow( source, row );
+        if ( r == 0 ) {
+            return null;
+        }
+        return sources[source].get( r, columns[col - 1] );
+    }
+
+    public String get( int row, String col ) {
+        return get( row, getColumnNumber( col ) );
+    }
+
+    public void set( int row, int col, String value ) {
+        if ( row > rowCount || col > columns.length ) {
+            throw new UnsupportedOperationException( "A view can not grow" );
+        }
+        checkRow( row );
+        checkColumn( col );
+        int source = columnSources[col - 1];
+        int r = sourceRow( source, row );
+        if ( r == 0 ) {
+            throw new UnsupportedOperationException(
+                "Row " + row + " has no values in column " + col );
+        }
+        sources[source].set( r, columns[col - 1], value );
+    }
+
+    public void set( int row, String col, String value ) {
+        set( row, getColumnNumber( col ), value );
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public int getColumnNumber( String col ) {
+        if ( numbers == null ) {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for ( int i = names.length; i > 0; i-- ) {
+                if ( names[i - 1] != null ) {
+                    map.put( names[i - 1], i );
+                }
+            }
+            numbers = map;
+        }
+        Integer index = numbers.get( col );
+        if ( index == null ) {
+            throw new IllegalAccessError( "No column found with this label." );
+        }
+        return index;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void setSize( int row, int col ) {
+        throw new UnsupportedOperationException( "A view can not grow" );
+    }
+
+    public boolean hasRowHeader() {
+        return rowNames != null || sources[0].hasRowHeader();
+    }
+
+    public boolean hasColHeader() {
+        return colHeader;
+    }
+
+    public String getColumnName( int index ) {
+        checkColumn( index );
+        return names[index - 1];
+    }
+
+    public String getRowName( int index ) {
+        checkRow( index );
+        if ( rowNames != null && rowNames[index - 1] != null ) {
+            return rowNames[index - 1];
+        }
+        int r = sourceRow( 0, index );
+        return r == 0 ? "" : sources[0].getRowName( r );
+    }
+
+    public List<String> getColumnNames() {
+        List<String> result = new ArrayList<String>( names.length );
+        for ( String name : names ) {
+            result.add( name );
+        }
+        return result;
+    }
+
+    public List<String> getRowNames() {
+        List<String> result = new ArrayList<String>( rowCount );
+        for ( int row = 1; row <= rowCount; row++ ) {
+            result.add( getRowName( row ) );
+        }
+        return result;
+    }
+
+    public void setColumnName( int index, String name ) {
+        checkColumn( index );
+        names[index - 1] = name;
+        colHeader = true;
+        numbers = null;
+    }
+
+    public void setRowName( int index, String name ) {
+        checkRow( index );
+        if ( rowNames == null ) {
+            rowNames = new String[rowCount];
+        }
+        rowNames[index - 1] = name;
+    }
+
+    public List<String> getColumn( int index ) {
+        checkColumn( index );
+        List<String> result = new ArrayList<String>( rowCount );
+        for ( int row = 1; row <= rowCount; row++ ) {
+            String value = cell( row, index );
+            result.add( value == null ? "" : value );
+        }
+        return result;
+    }
+
+    public List<String> getColumn( String col ) {
+        return getColumn( getColumnNumber( col ) );
+    }
+
+    @Override
+    public String toString() {
+        return ColumnarStringMatrix.copyOf( this ).toString();
+    }
+}
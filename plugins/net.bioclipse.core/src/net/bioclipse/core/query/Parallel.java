@@ -0,0 +1,138 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the parts of a query on a shared pool with one thread per processor.
+ * Tasks run here must not wait for other tasks run here.
+ *
+ * @author agent
+ */
+final class Parallel {
+
+    /**
+     * Ranges smaller than this are not split up
+     */
+    static final int MIN_CHUNK = 4096;
+
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService executor
+        = Executors.newFixedThreadPool( THREADS, new ThreadFactory() {
+              private final AtomicInteger count = new AtomicInteger();
+              public Thread newThread( Runnable runnable ) {
+                  Thread thread = new Thread( runnable, "Table query "
+                                              + count.incrementAndGet() );
+                  thread.setDaemon( true );
+                  return thread;
+              }
+          } );
+
+    /**
+     * Works on one range of indexes.
+     */
+    interface Chunk<T> {
+
+        /**
+         * @param from the first index
+         * @param to the index after the last one
+         */
+        T run( int from, int to );
+    }
+
+    private Parallel() {
+    }
+
+    /**
+     * Splits the indexes from 0 to size in ranges and runs chunk on each.
+     *
+     * @return the results of the ranges, in the order of the ranges
+     */
+    static <T> List<T> chunks( int size, final Chunk<T> chunk ) {
+        // more ranges than threads, so a slow range does not hold up the rest
+        int parts = Math.max( 1, Math.min( THREADS * 4,
+                                           size / MIN_CHUNK ) );
+        List<Callable<T>> tasks = new ArrayList<Callable<T>>( parts );
+        for ( int part = 0; part < parts; part++ ) {
+            final int from = (int) ( (long) size * part / parts );
+            final int to = (int) ( (long) size * ( part + 1 ) / parts );
+            tasks.add( new Callable<T>() {
+                public T call() {
+                    return chunk.run( from, to );
+                }
+            } );
+        }
+        return invokeAll( tasks );
+    }
+
+    /**
+     * Runs all tasks, the last one in the calling thread, and waits for
+     * them. Exceptions thrown by a task are thrown here.
+     *
+     * @return the results of the tasks, in order
+     */
+    static <T> List<T> invokeAll( List<? extends Callable<T>> tasks ) {
+        List<Future<T>> futures = new ArrayList<Future<T>>( tasks.size() );
+        try {
+            for ( int i = 0; i < tasks.size() - 1; i++ ) {
+                futures.add( executor.submit( tasks.get( i ) ) );
+            }
+            List<T> results = new ArrayList<T>( tasks.size() );
+            T last = tasks.isEmpty() ? null
+                                     : tasks.get( tasks.size() - 1 ).call();
+            for ( Future<T> future : futures ) {
+                results.add( future.get() );
+            }
+            if ( !tasks.isEmpty() ) {
+                results.add( last );
+            }
+            return results;
+        }
+        catch ( ExecutionException e ) {
+            throw rethrow( e.getCause() );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted during query", e );
+        }
+        catch ( Exception e ) {
+            throw rethrow( e );
+        }
+        finally {
+            for ( Future<T> future : futures ) {
+                future.cancel( true );
+            }
+        }
+    }
+
+    private static RuntimeException rethrow( Throwable t ) {
+        if ( t instanceof RuntimeException ) {
+            return (RuntimeException) t;
+        }
+        if ( t instanceof Error ) {
+            throw (Error) t;
+        }
+        return new IllegalStateException( t );
+    }
+}
@@ -0,0 +1,908 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.core.query;
+
+import java.awt.Point;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.bioclipse.core.domain.ColumnarStringMatrix;
+import net.bioclipse.core.domain.DenseDataset;
+import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.core.domain.SparseDataset;
+
+/**
+ * Filters, projects, sorts, groups and joins tables. The rows are split
+ * over one thread per processor, each working through its rows one column
+ * at a time.
+ * <p>
+ * Queries on {@link IStringMatrix}es give a {@link MatrixView} of the
+ * queried matrices, so no values are copied. Queries on a
+ * {@link DenseDataset} give a dataset sharing the rows of the queried one.
+ * A {@link SparseDataset} keeps all values in one map, so queries on it
+ * copy the values they keep. Groups of any table are given as a new
+ * {@link ColumnarStringMatrix}. The queried tables must not be changed
+ * while a query runs.
+ *
+ * @author agent
+ */
+public final class TableQueries {
+
+    private TableQueries() {
+    }
+
+    /**
+     * Tests one row, counted from 0.
+     */
+    private interface RowTest {
+        boolean test( int row );
+    }
+
+    /*
+     * The rows, counted from 0, passing test
+     */
+    private static int[] matching( int size, final RowTest test ) {
+        List<int[]> parts = Parallel.chunks( size,
+                                             new Parallel.Chunk<int[]>() {
+            public int[] run( int from, int to ) {
+                IntList rows = new IntList();
+                for ( int row = from; row < to; row++ ) {
+                    if ( test.test( row ) ) {
+                        rows.add( row );
+                    }
+                }
+                return rows.toArray();
+            }
+        } );
+        return concat( parts, 0 );
+    }
+
+    private static int[] concat( List<int[]> parts, int add ) {
+        int size = 0;
+        for ( int[] part : parts ) {
+            size += part.length;
+        }
+        int[] result = new int[size];
+        int i = 0;
+        for ( int[] part : parts ) {
+            for ( int value : part ) {
+                result[i++] = value + add;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param matrix the matrix to filter
+     * @param column the name of the column to test
+     * @param condition the condition the value of a kept row fulfills
+     * @return a view of the rows fulfilling the condition
+     */
+    public static MatrixView filter( IStringMatrix matrix,
+                                     String column,
+                                     final Condition condition ) {
+        final MatrixView view = MatrixView.of( matrix );
+        final int col = view.getColumnNumber( column );
+        int[] rows = matching( view.getRowCount(), new RowTest() {
+            public boolean test( int row ) {
+                return condition.accept( view.cell( row + 1, col ) );
+            }
+        } );
+        for ( int i = 0; i < rows.length; i++ ) {
+            rows[i]++;
+        }
+        return view.rows( rows );
+    }
+
+    /**
+     * @param matrix the matrix to project
+     * @param columns the names of the columns to keep, in the order to
+     *                keep them
+     * @return a view of the columns
+     */
+    public static MatrixView select( IStringMatrix matrix,
+                                     String... columns ) {
+        MatrixView view = MatrixView.of( matrix );
+        int[] cols = new int[columns.length];
+        for ( int i = 0; i < columns.length; i++ ) {
+            cols[i] = view.getColumnNumber( columns[i] );
+        }
+        return view.columns( cols );
+    }
+
+    /**
+     * Sorts the rows by the values of a column, as numbers if all values
+     * are numbers and as strings otherwise. Rows without a value come last
+     * and rows with the same value keep their order.
+     *
+     * @param matrix the matrix to sort
+     * @param column the name of the column to sort by
+     * @param ascending whether the smallest value comes first
+     * @return a view of the sorted rows
+     */
+    public static MatrixView sort( IStringMatrix matrix,
+                                   String column,
+                                   boolean ascending ) {
+        final MatrixView view = MatrixView.of( matrix );
+        final int col = view.getColumnNumber( column );
+        int size = view.getRowCount();
+        final String[] keys = new String[size];
+        final double[] numbers = new double[size];
+        List<Boolean> numeric = Parallel.chunks( size,
+                                                 new Parallel.Chunk<Boolean>() {
+            public Boolean run( int from, int to ) {
+                boolean all = true;
+                for ( int row = from; row < to; row++ ) {
+                    String value = view.cell( row + 1, col );
+                    if ( value != null && value.length() == 0 ) {
+                        value = null;
+                    }
+                    keys[row] = value;
+                    numbers[row] = Condition.parse( value );
+                    all &= value == null || !Double.isNaN( numbers[row] );
+                }
+                return all;
+            }
+        } );
+        IndexSort.Order order
+            = numeric.contains( Boolean.FALSE )
+                  ? IndexSort.strings( keys, ascending )
+                  : IndexSort.numbers( numbers, ascending );
+        int[] rows = IndexSort.sort( size, order );
+        for ( int i = 0; i < rows.length; i++ ) {
+            rows[i]++;
+        }
+        return view.rows( rows );
+    }
+
+    /**
+     * The key and value of a row, counted from 0, to group by
+     */
+    private interface GroupCells {
+        String key( int row );
+        /** NaN if the value is not a number */
+        double value( int row );
+    }
+
+    private static ColumnarStringMatrix group( int size,
+                                               final GroupCells cells,
+                                               String keyColumn,
+                                               Aggregate aggregate,
+                                               String valueColumn ) {
+        List<Map<String, Aggregate.Accumulator>> parts = Parallel.chunks(
+            size,
+            new Parallel.Chunk<Map<String, Aggregate.Accumulator>>() {
+                public Map<String, Aggregate.Accumulator> run( int from,
+                                                               int to ) {
+                    Map<String, Aggregate.Accumulator> groups
+                        = new LinkedHashMap<String, Aggregate.Accumulator>();
+                    for ( int row = from; row < to; row++ ) {
+                        String key = cells.key( row );
+                        if ( key == null ) {
+                            key = "";
+                        }
+                        Aggregate.Accumulator group = groups.get( key );
+                        if ( group == null ) {
+                            group = new Aggregate.Accumulator();
+                            groups.put( key, group );
+                        }
+                        group.add( cells.value( row ) );
+                    }
+                    return groups;
+                }
+            } );
+        Map<String, Aggregate.Accumulator> groups = parts.get( 0 );
+        for ( Map<String, Aggregate.Accumulator> part
+                  : parts.subList( 1, parts.size() ) ) {
+            for ( Map.Entry<String, Aggregate.Accumulator> e
+                      : part.entrySet() ) {
+                Aggregate.Accumulator group = groups.get( e.getKey() );
+                if ( group == null ) {
+                    groups.put( e.getKey(), e.getValue() );
+                }
+                else {
+                    group.add( e.getValue() );
+                }
+            }
+        }
+        ColumnarStringMatrix result = new ColumnarStringMatrix();
+        result.setSize( groups.size(), 2 );
+        result.setColumnName( 1, keyColumn );
+        result.setColumnName( 2, aggregate.label( valueColumn ) );
+        int row = 1;
+        for ( Map.Entry<String, Aggregate.Accumulator> e
+                  : groups.entrySet() ) {
+            result.set( row, 1, e.getKey() );
+            result.set( row, 2, aggregate.result( e.getValue() ) );
+            row++;
+        }
+        return result;
+    }
+
+    /**
+     * Groups the rows by the value of a column and aggregates the values
+     * of another column per group. The groups come in the order their
+     * values first appear.
+     *
+     * @param matrix the matrix to group
+     * @param keyColumn the name of the column to group by
+     * @param aggregate what to compute for each group
+     * @param valueColumn the name of the column to aggregate, may be
+     *                    <code>null</code> for {@link Aggregate#COUNT}
+     * @return a matrix with one row per group, with the value grouped by
+     *         and the aggregate
+     */
+    public static ColumnarStringMatrix groupBy( IStringMatrix matrix,
+                                                String keyColumn,
+                                                Aggregate aggregate,
+                                                String valueColumn ) {
+        final MatrixView view = MatrixView.of( matrix );
+        final int keyCol = view.getColumnNumber( keyColumn );
+        final int valueCol = valueColumn == null
+                             ? keyCol : view.getColumnNumber( valueColumn );
+        return group( view.getRowCount(), new GroupCells() {
+            public String key( int row ) {
+                return view.cell( row + 1, keyCol );
+            }
+            public double value( int row ) {
+                return Condition.parse( view.cell( row + 1, valueCol ) );
+            }
+        }, keyColumn, aggregate, valueColumn );
+    }
+
+    /**
+     * The key of a row, counted from 0, to join on, null if it has none
+     */
+    private interface JoinKey {
+        Object key( int row );
+    }
+
+    /*
+     * The pairs of rows, counted from 0, with equal keys, as the left rows
+     * and the right rows, in the order of the left rows and then the right
+     * ones. A kept left row without a match has -1 as right row.
+     */
+    private static int[][] matchingRows( int leftSize,
+                                         final JoinKey leftKeys,
+                                         int rightSize,
+                                         final JoinKey rightKeys,
+                                         final boolean keepUnmatched ) {
+        final Object[] keys = new Object[rightSize];
+        Parallel.chunks( rightSize, new Parallel.Chunk<Void>() {
+            public Void run( int from, int to ) {
+                for ( int row = from; row < to; row++ ) {
+                    keys[row] = rightKeys.key( row );
+                }
+                return null;
+            }
+        } );
+        // the first row with each key and the next row with the same key
+        final Map<Object, Integer> first
+            = new HashMap<Object, Integer>( rightSize * 4 / 3 + 1 );
+        final int[] next = new int[rightSize];
+        for ( int row = rightSize - 1; row >= 0; row-- ) {
+            if ( keys[row] != null ) {
+                Integer f = first.put( keys[row], row );
+                next[row] = f == null ? -1 : f;
+            }
+        }
+
+        List<int[][]> parts = Parallel.chunks( leftSize,
+                                               new Parallel.Chunk<int[][]>() {
+            public int[][] run( int from, int to ) {
+                IntList leftRows = new IntList();
+                IntList rightRows = new IntList();
+                for ( int row = from; row < to; row++ ) {
+                    Object key = leftKeys.key( row );
+                    Integer match = key == null ? null : first.get( key );
+                    if ( match == null ) {
+                        if ( keepUnmatched ) {
+                            leftRows.add( row );
+                            rightRows.add( -1 );
+                        }
+                        continue;
+                    }
+                    for ( int m = match; m >= 0; m = next[m] ) {
+                        leftRows.add( row );
+                        rightRows.add( m );
+                    }
+                }
+                return new int[][] { leftRows.toArray(),
+                                     rightRows.toArray() };
+            }
+        } );
+        List<int[]> leftParts = new ArrayList<int[]>( parts.size() );
+        List<int[]> rightParts = new ArrayList<int[]>( parts.size() );
+        for ( int[][] part : parts ) {
+            leftParts.add( part[0] );
+            rightParts.add( part[1] );
+        }
+        return new int[][] { concat( leftParts, 0 ),
+                             concat( rightParts, 0 ) };
+    }
+
+    /**
+     * Joins two matrices on equal values in a column of each. The right
+     * matrix is put in a hash table and the rows of the left one are looked
+     * up in it in parallel. Rows without a value never match.
+     *
+     * @param left the left matrix
+     * @param leftColumn the name of the column of the left matrix
+     * @param right the right matrix
+     * @param rightColumn the name of the column of the right matrix
+     * @param keepUnmatched whether to keep rows of the left matrix without
+     *                      a match, as a left outer join
+     * @return a view with the columns of the left matrix followed by those
+     *         of the right one but rightColumn, with a row for each pair of
+     *         matching rows in the order of the left matrix and then the
+     *         right one
+     */
+    public static MatrixView join( IStringMatrix left,
+                                   String leftColumn,
+                                   IStringMatrix right,
+                                   String rightColumn,
+                                   boolean keepUnmatched ) {
+        final MatrixView l = MatrixView.of( left );
+        final MatrixView r = MatrixView.of( right );
+        final int lc = l.getColumnNumber( leftColumn );
+        final int rc = r.getColumnNumber( rightColumn );
+
+        int[][] pairs = matchingRows( l.getRowCount(), new JoinKey() {
+            public Object key( int row ) {
+                return l.cell( row + 1, lc );
+            }
+        }, r.getRowCount(), new JoinKey() {
+            public Object key( int row ) {
+                return r.cell( row + 1, rc );
+            }
+        }, keepUnmatched );
+        // an unmatched row becomes row 0, which has no values
+        for ( int[] rows : pairs ) {
+            for ( int i = 0; i < rows.length; i++ ) {
+                rows[i]++;
+            }
+        }
+        int[] rightColumns = new int[r.getColumnCount() - 1];
+        for ( int col = 1, i = 0; col <= r.getColumnCount(); col++ ) {
+            if ( col != rc ) {
+                rightColumns[i++] = col;
+            }
+        }
+        return MatrixView.beside( l, pairs[0], r, pairs[1], rightColumns );
+    }
+
+    private static int columnIndex( List<String> headers, String column ) {
+        int index = headers == null ? -1 : headers.indexOf( column );
+        if ( index < 0 ) {
+            throw new IllegalArgumentException( "No column named " + column );
+        }
+        return index;
+    }
+
+    /*
+     * The names of the columns of left followed by those of right but the
+     * one with the given index, counted from 0
+     */
+    private static List<String> joinedHeaders( List<String> left,
+                                               List<String> right,
+                                               int skip ) {
+        List<String> headers
+            = new ArrayList<String>( left.size() + right.size() - 1 );
+        headers.addAll( left );
+        for ( int i = 0; i < right.size(); i++ ) {
+            if ( i != skip ) {
+                headers.add( right.get( i ) );
+            }
+        }
+        return headers;
+    }
+
+    /*
+     * The same key for equal numbers, none for NaN
+     */
+    private static Object numberKey( double value ) {
+        return Double.isNaN( value ) ? null : Double.valueOf( value + 0.0 );
+    }
+
+    private static <T> List<T> subList( List<T> list, int[] rows ) {
+        if ( list == null ) {
+            return null;
+        }
+        List<T> result = new ArrayList<T>( rows.length );
+        for ( int row : rows ) {
+            result.add( list.get( row ) );
+        }
+        return result;
+    }
+
+    /*
+     * A dataset with the given rows, counted from 0, sharing the row lists
+     */
+    private static DenseDataset denseRows( DenseDataset dataset,
+                                           int[] rows ) {
+        return new DenseDataset( dataset.getColHeaders(),
+                                 subList( dataset.getRowHeaders(), rows ),
+                                 subList( dataset.getValues(), rows ),
+                                 dataset.getResponseProperty(),
+                                 subList( dataset.getResponseValues(),
+                                          rows ) );
+    }
+
+    /**
+     * @param dataset the dataset to filter
+     * @param column the name of the column to test
+     * @param condition the condition the value of a kept row fulfills
+     * @return a dataset sharing the rows fulfilling the condition
+     */
+    public static DenseDataset filter( DenseDataset dataset,
+                                       String column,
+                                       final Condition condition ) {
+        final int col = columnIndex( dataset.getColHeaders(), column );
+        final List<List<Float>> values = dataset.getValues();
+        int[] rows = matching( values.size(), new RowTest() {
+            public boolean test( int row ) {
+                Float value = values.get( row ).get( col );
+                return value == null ? condition.accept( (String) null )
+                                     : condition.accept( value );
+            }
+        } );
+        return denseRows( dataset, rows );
+    }
+
+    /**
+     * @param dataset the dataset to project
+     * @param columns the names of the columns to keep
+     * @return a dataset whose rows are views of the columns of the rows of
+     *         the given one
+     */
+    public static DenseDataset select( DenseDataset dataset,
+                                       String... columns ) {
+        final int[] cols = new int[columns.length];
+        for ( int i = 0; i < columns.length; i++ ) {
+            cols[i] = columnIndex( dataset.getColHeaders(), columns[i] );
+        }
+        List<List<Float>> rows
+            = new ArrayList<List<Float>>( dataset.getValues().size() );
+        for ( final List<Float> row : dataset.getValues() ) {
+            rows.add( new AbstractList<Float>() {
+                @Override
+                public Float get( int index ) {
+                    return row.get( cols[index] );
+                }
+                @Override
+                public Float set( int index, Float value ) {
+                    return row.set( cols[index], value );
+                }
+                @Override
+                public int size() {
+                    return cols.length;
+                }
+            } );
+        }
+        return new DenseDataset( new ArrayList<String>(
+                                     Arrays.asList( columns ) ),
+                                 dataset.getRowHeaders(),
+                                 rows,
+                                 dataset.getResponseProperty(),
+                                 dataset.getResponseValues() );
+    }
+
+    /**
+     * @param dataset the dataset to sort
+     * @param column the name of the column to sort by
+     * @param ascending whether the smallest value comes first
+     * @return a dataset sharing the rows in sorted order
+     */
+    public static DenseDataset sort( DenseDataset dataset,
+                                     String column,
+                                     boolean ascending ) {
+        final int col = columnIndex( dataset.getColHeaders(), column );
+        final List<List<Float>> values = dataset.getValues();
+        final double[] keys = new double[values.size()];
+        Parallel.chunks( keys.length, new Parallel.Chunk<Void>() {
+            public Void run( int from, int to ) {
+                for ( int row = from; row < to; row++ ) {
+                    Float value = values.get( row ).get( col );
+                    keys[row] = value == null ? Double.NaN : value;
+                }
+                return null;
+            }
+        } );
+        return denseRows( dataset, IndexSort.sort(
+                              keys.length,
+                              IndexSort.numbers( keys, ascending ) ) );
+    }
+
+    /**
+     * Groups the rows by the value of a column and aggregates the values
+     * of another column per group, as for matrices. Rows without a value
+     * in the column grouped by form a group with an empty key.
+     *
+     * @param dataset the dataset to group
+     * @param keyColumn the name of the column to group by
+     * @param aggregate what to compute for each group
+     * @param valueColumn the name of the column to aggregate, may be
+     *                    <code>null</code> for {@link Aggregate#COUNT}
+     * @return a matrix with one row per group, with the value grouped by
+     *         and the aggregate
+     */
+    public static ColumnarStringMatrix groupBy( DenseDataset dataset,
+                                                String keyColumn,
+                                                Aggregate aggregate,
+                                                String valueColumn ) {
+        final int keyCol = columnIndex( dataset.getColHeaders(), keyColumn );
+        final int valueCol
+            = valueColumn == null
+                  ? keyCol : columnIndex( dataset.getColHeaders(),
+                                          valueColumn );
+        final List<List<Float>> values = dataset.getValues();
+        return group( values.size(), new GroupCells() {
+            public String key( int row ) {
+                Float value = values.get( row ).get( keyCol );
+                return value == null ? null : Aggregate.format( value );
+            }
+            public double value( int row ) {
+                Float value = values.get( row ).get( valueCol );
+                return value == null ? Double.NaN : value;
+            }
+        }, keyColumn, aggregate, valueColumn );
+    }
+
+    /**
+     * Joins two datasets on equal values in a column of each. Rows without
+     * a value never match. The response values and row names are those of
+     * the left dataset.
+     *
+     * @param left the left dataset
+     * @param leftColumn the name of the column of the left dataset
+     * @param right the right dataset
+     * @param rightColumn the name of the column of the right dataset
+     * @param keepUnmatched whether to keep rows of the left dataset without
+     *                      a match, with no values for the right one
+     * @return a dataset with the columns of the left dataset followed by
+     *         those of the right one but rightColumn, whose rows are views
+     *         of the rows of the joined datasets
+     */
+    public static DenseDataset join( DenseDataset left,
+                                     String leftColumn,
+                                     DenseDataset right,
+                                     String rightColumn,
+                                     boolean keepUnmatched ) {
+        final int lc = columnIndex( left.getColHeaders(), leftColumn );
+        final int rc = columnIndex( right.getColHeaders(), rightColumn );
+        final List<List<Float>> leftValues = left.getValues();
+        final List<List<Float>> rightValues = right.getValues();
+        int[][] pairs = matchingRows( leftValues.size(), new JoinKey() {
+            public Object key( int row ) {
+                Float value = leftValues.get( row ).get( lc );
+                return value == null ? null : numberKey( value );
+            }
+        }, rightValues.size(), new JoinKey() {
+            public Object key( int row ) {
+                Float value = rightValues.get( row ).get( rc );
+                return value == null ? null : numberKey( value );
+            }
+        }, keepUnmatched );
+
+        final int leftCount = left.getColHeaders().size();
+        final int[] rightCols = new int[right.getColHeaders().size() - 1];
+        for ( int col = 0, i = 0; col <= rightCols.length; col++ ) {
+            if ( col != rc ) {
+                rightCols[i++] = col;
+            }
+        }
+        List<List<Float>> rows = new ArrayList<List<Float>>( pairs[0].length );
+        for ( int i = 0; i < pairs[0].length; i++ ) {
+            final List<Float> l = leftValues.get( pairs[0][i] );
+            final List<Float> r = pairs[1][i] < 0
+                                  ? null : rightValues.get( pairs[1][i] );
+            rows.add( new AbstractList<Float>() {
+                @Override
+                public Float get( int index ) {
+                    if ( index < leftCount ) {
+                        return l.get( index );
+                    }
+                    return r == null ? null
+                                     : r.get( rightCols[index - leftCount] );
+                }
+                @Override
+                public int size() {
+                    return leftCount + rightCols.length;
+                }
+            } );
+        }
+        return new DenseDataset( joinedHeaders( left.getColHeaders(),
+                                                right.getColHeaders(),
+                                                rc ),
+                                 subList( left.getRowHeaders(), pairs[0] ),
+                                 rows,
+                                 left.getResponseProperty(),
+                                 subList( left.getResponseValues(),
+                                          pairs[0] ) );
+    }
+
+    private static int sparseRowCount( SparseDataset dataset ) {
+        if ( dataset.getRowHeaders() != null ) {
+            return dataset.getRowHeaders().size();
+        }
+        int rows = 0;
+        for ( Point p : dataset.getValues().keySet() ) {
+            rows = Math.max( rows, p.x );
+        }
+        return rows;
+    }
+
+    /*
+     * The values of a column, indexed by row from 0, 0 where there is none
+     */
+    private static double[] sparseColumn( SparseDataset dataset,
+                                          String column ) {
+        int col = columnIndex( dataset.getColHeaders(), column ) + 1;
+        double[] keys = new double[sparseRowCount( dataset )];
+        for ( Map.Entry<Point, Integer> e
+                  : dataset.getValues().entrySet() ) {
+            Point p = e.getKey();
+            if ( p.y == col && p.x >= 1 && p.x <= keys.length ) {
+                keys[p.x - 1] = e.getValue();
+            }
+        }
+        return keys;
+    }
+
+    /*
+     * A copy of the given rows, counted from 0, and the given columns,
+     * counted from 1, or all columns for null
+     */
+    private static SparseDataset sparseSubset( SparseDataset dataset,
+                                               int[] rows,
+                                               int[] cols,
+                                               List<String> colHeaders ) {
+        int[] newRow = new int[sparseRowCount( dataset ) + 1];
+        for ( int i = 0; i < rows.length; i++ ) {
+            newRow[rows[i] + 1] = i + 1;
+        }
+        Map<Integer, Integer> newCol = null;
+        if ( cols != null ) {
+            newCol = new HashMap<Integer, Integer>();
+            for ( int i = 0; i < cols.length; i++ ) {
+                newCol.put( cols[i], i + 1 );
+            }
+        }
+        List<List<Map.Entry<Point, Integer>>> byRow
+            = new ArrayList<List<Map.Entry<Point, Integer>>>( rows.length );
+        for ( int i = 0; i < rows.length; i++ ) {
+            byRow.add( new ArrayList<Map.Entry<Point, Integer>>( 4 ) );
+        }
+        for ( Map.Entry<Point, Integer> e
+                  : dataset.getValues().entrySet() ) {
+            Point p = e.getKey();
+            if ( p.x >= 1 && p.x < newRow.length && newRow[p.x] > 0
+                 && ( newCol == null || newCol.containsKey( p.y ) ) ) {
+                byRow.get( newRow[p.x] - 1 ).add( e );
+            }
+        }
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>();
+        for ( int i = 0; i < byRow.size(); i++ ) {
+            for ( Map.Entry<Point, Integer> e : byRow.get( i ) ) {
+                int y = newCol == null ? e.getKey().y
+                                       : newCol.get( e.getKey().y );
+                values.put( new Point( i + 1, y ), e.getValue() );
+            }
+        }
+        return new SparseDataset( colHeaders,
+                                  subList( dataset.getRowHeaders(), rows ),
+                                  dataset.getResponseProperty(),
+                                  subList( dataset.getResponseValues(),
+                                           rows ),
+                                  values );
+    }
+
+    /**
+     * @param dataset the dataset to filter
+     * @param column the name of the column to test, a missing value
+     *               counting as 0
+     * @param condition the condition the value of a kept row fulfills
+     * @return a dataset with a copy of the rows fulfilling the condition
+     */
+    public static SparseDataset filter( SparseDataset dataset,
+                                        String column,
+                                        final Condition condition ) {
+        final double[] keys = sparseColumn( dataset, column );
+        int[] rows = matching( keys.length, new RowTest() {
+            public boolean test( int row ) {
+                return condition.accept( keys[row] );
+            }
+        } );
+        return sparseSubset( dataset, rows, null, dataset.getColHeaders() );
+    }
+
+    /**
+     * @param dataset the dataset to project
+     * @param columns the names of the columns to keep
+     * @return a dataset with a copy of the columns
+     */
+    public static SparseDataset select( SparseDataset dataset,
+                                        String... columns ) {
+        int[] cols = new int[columns.length];
+        for ( int i = 0; i < columns.length; i++ ) {
+            cols[i] = columnIndex( dataset.getColHeaders(), columns[i] ) + 1;
+        }
+        int[] rows = new int[sparseRowCount( dataset )];
+        for ( int i = 0; i < rows.length; i++ ) {
+            rows[i] = i;
+        }
+        return sparseSubset( dataset, rows, cols,
+                             new ArrayList<String>(
+                                 Arrays.asList( columns ) ) );
+    }
+
+    /**
+     * @param dataset the dataset to sort
+     * @param column the name of the column to sort by, a missing value
+     *               counting as 0
+     * @param ascending whether the smallest value comes first
+     * @return a dataset with a copy of the rows in sorted order
+     */
+    public static SparseDataset sort( SparseDataset dataset,
+                                      String column,
+                                      boolean ascending ) {
+        double[] keys = sparseColumn( dataset, column );
+        int[] rows = IndexSort.sort( keys.length,
+                                     IndexSort.numbers( keys, ascending ) );
+        return sparseSubset( dataset, rows, null, dataset.getColHeaders() );
+    }
+
+    /**
+     * Groups the rows by the value of a column and aggregates the values
+     * of another column per group, as for matrices. A missing value counts
+     * as 0.
+     *
+     * @param dataset the dataset to group
+     * @param keyColumn the name of the column to group by
+     * @param aggregate what to compute for each group
+     * @param valueColumn the name of the column to aggregate, may be
+     *                    <code>null</code> for {@link Aggregate#COUNT}
+     * @return a matrix with one row per group, with the value grouped by
+     *         and the aggregate
+     */
+    public static ColumnarStringMatrix groupBy( SparseDataset dataset,
+                                                String keyColumn,
+                                                Aggregate aggregate,
+                                                String valueColumn ) {
+        final double[] keys = sparseColumn( dataset, keyColumn );
+        final double[] values = valueColumn == null
+                                ? keys : sparseColumn( dataset, valueColumn );
+        return group( keys.length, new GroupCells() {
+            public String key( int row ) {
+                return Aggregate.format( keys[row] );
+            }
+            public double value( int row ) {
+                return values[row];
+            }
+        }, keyColumn, aggregate, valueColumn );
+    }
+
+    /*
+     * The values of each row, counted from 0
+     */
+    private static List<List<Map.Entry<Point, Integer>>> sparseRows(
+                                                     SparseDataset dataset,
+                                                     int rows ) {
+        List<List<Map.Entry<Point, Integer>>> byRow
+            = new ArrayList<List<Map.Entry<Point, Integer>>>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            byRow.add( new ArrayList<Map.Entry<Point, Integer>>( 4 ) );
+        }
+        for ( Map.Entry<Point, Integer> e
+                  : dataset.getValues().entrySet() ) {
+            int row = e.getKey().x;
+            if ( row >= 1 && row <= rows ) {
+                byRow.get( row - 1 ).add( e );
+            }
+        }
+        return byRow;
+    }
+
+    /**
+     * Joins two datasets on equal values in a column of each, a missing
+     * value counting as 0. The response values and row names are those of
+     * the left dataset.
+     *
+     * @param left the left dataset
+     * @param leftColumn the name of the column of the left dataset
+     * @param right the right dataset
+     * @param rightColumn the name of the column of the right dataset
+     * @param keepUnmatched whether to keep rows of the left dataset without
+     *                      a match, with no values for the right one
+     * @return a dataset with a copy of the columns of the left dataset
+     *         followed by those of the right one but rightColumn
+     */
+    public static SparseDataset join( SparseDataset left,
+                                      String leftColumn,
+                                      SparseDataset right,
+                                      String rightColumn,
+                                      boolean keepUnmatched ) {
+        final double[] leftKeys = sparseColumn( left, leftColumn );
+        final double[] rightKeys = sparseColumn( right, rightColumn );
+        int rc = columnIndex( right.getColHeaders(), rightColumn ) + 1;
+        int[][] pairs = matchingRows( leftKeys.length, new JoinKey() {
+            public Object key( int row ) {
+                return numberKey( leftKeys[row] );
+            }
+        }, rightKeys.length, new JoinKey() {
+            public Object key( int row ) {
+                return numberKey( rightKeys[row] );
+            }
+        }, keepUnmatched );
+
+        List<List<Map.Entry<Point, Integer>>> leftRows
+            = sparseRows( left, leftKeys.length );
+        List<List<Map.Entry<Point, Integer>>> rightRows
+            = sparseRows( right, rightKeys.length );
+        int leftCount = left.getColHeaders().size();
+        LinkedHashMap<Point, Integer> values
+            = new LinkedHashMap<Point, Integer>();
+        for ( int i = 0; i < pairs[0].length; i++ ) {
+            for ( Map.Entry<Point, Integer> e : leftRows.get( pairs[0][i] ) ) {
+                values.put( new Point( i + 1, e.getKey().y ), e.getValue() );
+            }
+            if ( pairs[1][i] < 0 ) {
+                continue;
+            }
+            for ( Map.Entry<Point, Integer> e
+                      : rightRows.get( pairs[1][i] ) ) {
+                int y = e.getKey().y;
+                if ( y != rc ) {
+                    values.put( new Point( i + 1,
+                                           leftCount + ( y < rc ? y : y - 1 ) ),
+                                e.getValue() );
+                }
+            }
+        }
+        return new SparseDataset( joinedHeaders( left.getColHeaders(),
+                                                 right.getColHeaders(),
+                                                 rc - 1 ),
+                                  subList( left.getRowHeaders(), pairs[0] ),
+                                  left.getResponseProperty(),
+                                  subList( left.getResponseValues(),
+                                           pairs[0] ),
+                                  values );
+    }
+
+    /**
+     * A growing array of ints
+     */
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add( int value ) {
+            if ( size == values.length ) {
+                values = Arrays.copyOf( values, size * 2 );
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf( values, size );
+        }
+    }
+}
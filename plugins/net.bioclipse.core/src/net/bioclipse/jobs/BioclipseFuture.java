@@ -0,0 +1,264 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.core.util.Function;
+
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The result of a manager method run as a job. The future is done when the
+ * job is done, giving the value returned by the manager method, failing
+ * with what the method threw or being cancelled if the job was cancelled.
+ * <p>
+ * Instead of waiting for the result, work can be added to be done with it
+ * once it is there, using {@link #addCallback(Callback)},
+ * {@link #map(Function)} and {@link #allOf(List)}, so that many calls can
+ * be combined without holding up any threads while waiting.
+ * <p>
+ * A future is given by {@link BioclipseJob#getFuture()} or directly by the
+ * dispatcher for manager methods declared to return a BioclipseFuture in
+ * the IJava interface of a manager and implemented by a method taking a
+ * progress monitor, e.g:
+ * <pre>
+ * public BioclipseFuture&lt;List&lt;IMolecule&gt;&gt; loadMolecules( IFile f );
+ * </pre>
+ *
+ * @author agent
+ */
+public class BioclipseFuture<T> implements Future<T> {
+
+    /**
+     * Work to do when a future is done. Called in the thread completing the
+     * future, or in the thread adding the callback if the future is
+     * already done, so it should not take long.
+     */
+    public interface Callback<T> {
+
+        /**
+         * @param result the result of the future
+         */
+        public void onSuccess( T result );
+
+        /**
+         * @param failure what made the manager method fail or a
+         *        CancellationException if the future was cancelled
+         */
+        public void onFailure( Throwable failure );
+    }
+
+    private final Job            job;
+    private final CountDownLatch latch = new CountDownLatch( 1 );
+
+    private volatile T         value;
+    private volatile Throwable failure;
+    private volatile boolean   cancelled;
+
+    // guarded by this
+    private boolean done;
+    private List<Callback<? super T>> callbacks
+        = new ArrayList<Callback<? super T>>( 1 );
+
+    /**
+     * @param job the job to cancel when the future is cancelled or
+     *        <code>null</code>
+     */
+    BioclipseFuture( Job job ) {
+        this.job = job;
+    }
+
+    boolean complete( T result ) {
+        return finish( result, null, false );
+    }
+
+    boolean fail( Throwable t ) {
+        return finish( null, t, false );
+    }
+
+    boolean cancelled() {
+        return finish( null, null, true );
+    }
+
+    private boolean finish( T result, Throwable t, boolean cancel ) {
+        List<Callback<? super T>> toCall;
+        synchronized ( this ) {
+            if ( done ) {
+                return false;
+            }
+            value     = result;
+            failure   = t;
+            cancelled = cancel;
+            done      = true;
+            toCall    = callbacks;
+            callbacks = null;
+        }
+        latch.countDown();
+        for ( Callback<? super T> callback : toCall ) {
+            call( callback );
+        }
+        return true;
+    }
+
+    private void call( Callback<? super T> callback ) {
+        if ( cancelled ) {
+            callback.onFailure( new CancellationException() );
+        }
+        else if ( failure != null ) {
+            callback.onFailure( failure );
+        }
+        else {
+            callback.onSuccess( value );
+        }
+    }
+
+    /**
+     * Cancels the job computing the result. The future is cancelled at once
+     * even if the job only stops at its next check of its monitor.
+     */
+    public boolean cancel( boolean mayInterruptIfRunning ) {
+        boolean result = cancelled();
+        if ( result && job != null ) {
+            job.cancel();
+        }
+        return result;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return report();
+    }
+
+    public T get( long timeout, TimeUnit unit )
+             throws InterruptedException,
+                    ExecutionException,
+                    TimeoutException {
+        if ( !latch.await( timeout, unit ) ) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if ( cancelled ) {
+            throw new CancellationException();
+        }
+        if ( failure != null ) {
+            throw new ExecutionException( failure );
+        }
+        return value;
+    }
+
+    /**
+     * Adds work to do when the future is done, at once if it already is.
+     *
+     * @param callback the work to do
+     */
+    public void addCallback( Callback<? super T> callback ) {
+        synchronized ( this ) {
+            if ( !done ) {
+                callbacks.add( callback );
+                return;
+            }
+        }
+        call( callback );
+    }
+
+    /**
+     * @param function applied to the result once it is there
+     * @return a future for the value returned by the function, failing if
+     *         this future fails or if the function throws an exception and
+     *         cancelling the job when cancelled
+     */
+    public <R> BioclipseFuture<R> map( 
+                                      final Function<R, ? super T> function ) {
+        final BioclipseFuture<R> result = new BioclipseFuture<R>( job );
+        addCallback( new Callback<T>() {
+            public void onSuccess( T value ) {
+                try {
+                    result.complete( function.eval( value ) );
+                }
+                catch ( RuntimeException e ) {
+                    result.fail( e );
+                }
+            }
+            public void onFailure( Throwable t ) {
+                result.propagate( t );
+            }
+        });
+        return result;
+    }
+
+    private void propagate( Throwable t ) {
+        if ( t instanceof CancellationException ) {
+            cancelled();
+        }
+        else {
+            fail( t );
+        }
+    }
+
+    /**
+     * @param futures the futures to wait for
+     * @return a future for the results of all the given futures, in the
+     *         same order, failing as soon as any of them fails
+     */
+    public static <T> BioclipseFuture<List<T>> allOf(
+                  List<? extends BioclipseFuture<? extends T>> futures ) {
+
+        final BioclipseFuture<List<T>> result
+            = new BioclipseFuture<List<T>>( null );
+        final Object[] values = new Object[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger( futures.size() );
+        if ( futures.isEmpty() ) {
+            result.complete( new ArrayList<T>() );
+            return result;
+        }
+        for ( int i = 0; i < futures.size(); i++ ) {
+            final int index = i;
+            futures.get( i ).addCallback( new Callback<T>() {
+                @SuppressWarnings("unchecked")
+                public void onSuccess( T value ) {
+                    values[index] = value;
+                    if ( remaining.decrementAndGet() == 0 ) {
+                        result.complete( (List<T>) new ArrayList<Object>(
+                                             Arrays.asList( values ) ) );
+                    }
+                }
+                public void onFailure( Throwable t ) {
+                    result.propagate( t );
+                }
+            });
+        }
+        return result;
+    }
+}
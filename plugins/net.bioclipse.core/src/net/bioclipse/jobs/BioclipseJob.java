@@ -10,7 +10,11 @@ import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.SilentNotification;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.util.LogUtils;
+import net.bioclipse.managers.CallContext;
+import net.bioclipse.managers.business.DispatchPlan;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.managers.business.ManagerMethodStatistics;
+import net.bioclipse.managers.business.MethodStatistics;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.log4j.Logger;
@@ -19,7 +23,10 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.IJobChangeListener;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.action.Action;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.progress.IProgressConstants;
@@ -45,10 +52,49 @@ public class BioclipseJob<T> extends Job {
     
     private BioclipseJobUpdateHook<Object> hook = null;
     
+    private volatile long scheduledAt;
+    
+    /*
+     * The context of the thread creating the job, carried over to the 
+     * thread running it
+     */
+    private final CallContext parentContext = CallContext.current();
+
+    /*
+     * The context of the thread running the job, while it runs
+     */
+    private volatile CallContext context;
+
+    private final Object       futureLock = new Object();
+    private BioclipseFuture<T> future;
+    private IStatus            finishedWith;
+    
+    /*
+     * Notes when jobs are scheduled so that the time they are queued can be 
+     * recorded, and ends the stream of any StreamingReturner and completes 
+     * any future when jobs are done, also if they never got to run. Shared 
+     * by all jobs.
+     */
+    private static final IJobChangeListener JOB_LISTENER 
+        = new JobChangeAdapter() {
+            @Override
+            public void scheduled( IJobChangeEvent event ) {
+                ( (BioclipseJob<?>) event.getJob() ).scheduledAt 
+                    = System.nanoTime();
+            }
+            @Override
+            public void done( IJobChangeEvent event ) {
+                BioclipseJob<?> job = (BioclipseJob<?>) event.getJob();
+                job.closeStream( event.getResult() );
+                job.completeFuture( event.getResult() );
+            }
+        };
+    
     public BioclipseJob( String name, 
                          Method methodToBeInvocated, 
                          MethodInvocation originalInvocation ) {
         super( name );
+        addJobChangeListener( JOB_LISTENER );
         this.setMethod( methodToBeInvocated );
         this.invocation = originalInvocation;
         newWay = false;
@@ -56,6 +102,7 @@ public class BioclipseJob<T> extends Job {
     
     public BioclipseJob(String name) {
         super( name );
+        addJobChangeListener( JOB_LISTENER );
         newWay = true;
     }
 
@@ -63,9 +110,66 @@ public class BioclipseJob<T> extends Job {
     
     protected IStatus run( IProgressMonitor monitor ) {
 
+        CallContext context = parentContext == null 
+                              ? CallContext.newRoot( monitor )
+                              : parentContext.child( monitor );
+        CallContext previous = CallContext.attach( context );
+        this.context = context;
+        monitor = context.getMonitor();
+        long start = System.nanoTime();
+        MethodStatistics statistics = getStatistics();
+        if ( statistics != null && scheduledAt != 0 ) {
+            statistics.recordQueued( start - scheduledAt );
+        }
+        boolean failed = true;
+        try {
+            IStatus status = newWay ? runNewWay( monitor ) 
+                                    : runOldWay( monitor );
+            failed = returnValue instanceof Throwable;
+            return status;
+        }
+        finally {
+            this.context = null;
+            CallContext.attach( previous );
+            if ( statistics != null ) {
+                statistics.recordCall( System.nanoTime() - start, failed );
+            }
+        }
+    }
+
+    /*
+     * The context of the thread that created the job
+     */
+    CallContext getParentContext() {
+        return parentContext;
+    }
+
+    /*
+     * The context the job runs in, null unless it is running
+     */
+    CallContext getContext() {
+        return context;
+    }
+
+    private MethodStatistics getStatistics() {
         if ( newWay ) {
-            return runNewWay(monitor);
+            if ( bioclipseManager == null || methodCalled == null ) {
+                return null;
+            }
+            return DispatchPlan.forMethod( bioclipseManager.getClass(), 
+                                           methodCalled )
+                               .getStatistics( bioclipseManager );
+        }
+        if ( invocation != null 
+             && invocation.getThis() instanceof IBioclipseManager ) {
+            return ManagerMethodStatistics.getInstance().getStatistics( 
+                ( (IBioclipseManager) invocation.getThis() ).getManagerName(),
+                invocation.getMethod().getName() );
         }
+        return null;
+    }
+    
+    private IStatus runOldWay( IProgressMonitor monitor ) {
         
         Object[] args;
         try {
@@ -174,70 +278,47 @@ public class BioclipseJob<T> extends Job {
         
         long startTime = System.currentTimeMillis();
         try {
-            final List<Object> newArguments = new ArrayList<Object>();
-            newArguments.addAll( Arrays.asList( this.arguments ) );
+            DispatchPlan plan = DispatchPlan.forMethod( 
+                                    bioclipseManager.getClass(), 
+                                    methodCalled );
             
-            boolean usingReturner = false;
+            boolean usingReturner = plan.takesReturner();
             final ReturnCollector returnCollector = new ReturnCollector();
-            //add partial returner
-            for ( Class<?> param : methodToRun.getParameterTypes() ) {
-                if ( param == IReturner.class ) {
-                    usingReturner = true;
-                    int returnerPos = -1;
-                    for ( Object o : newArguments ) {
-                        if ( o instanceof IReturner ) {
-                            returnerPos = newArguments.indexOf( o );
-                        }
-                    }
-                    if ( returnerPos == -1 )  {
-                        newArguments.add( returnCollector );
+            IReturner returner = returnCollector;
+            int returnerPos = plan.getReturnerArgumentIndex();
+            if ( usingReturner && returnerPos != -1 
+                 && arguments[returnerPos] instanceof StreamingReturner ) {
+                //Streams are not collected, they end when the job is done
+                returner = (IReturner) arguments[returnerPos];
+            }
+            else if ( usingReturner && returnerPos != -1 
+                 && arguments[returnerPos] != null ) {
+                //If doing a complete return both the hook and the returner
+                //needs to be called. So decorating the original with a new 
+                //ReturnCollector that calls both for the complete return.
+                final IReturner collector = (IReturner) arguments[returnerPos];
+                returner = new ReturnCollector() {
+                    @Override
+                    public void completeReturn( Object returnValue ) {
+                        collector.completeReturn( returnValue );
+                        returnCollector.completeReturn( returnValue );
+                        super.completeReturn( returnValue );
                     }
-                    //If doing a complete return both the hook and the returner
-                    //needs to be called. So decorating the original with a new 
-                    //ReturnCollector that calls both for the complete return.
-                    else {
-                        final int finalReturnerPos = returnerPos;
-                        newArguments.set( returnerPos, new ReturnCollector() {
-                            IReturner collector;
-                            {
-                                collector 
-                                    = ( (IReturner)
-                                      newArguments.get( finalReturnerPos ) );
-                            }
-                            @Override
-                            public void completeReturn( Object returnValue ) {
-                                collector.completeReturn( returnValue );
-                                returnCollector.completeReturn( returnValue );
-                                super.completeReturn( returnValue );
-                            }
-                            @Override
-                            public void partialReturn( Object o ) {
-                                collector.partialReturn( o );
-                                super.partialReturn( returnValue );
-                            }
-                        });
+                    @Override
+                    public void partialReturn( Object o ) {
+                        collector.partialReturn( o );
+                        super.partialReturn( o );
                     }
-                }
+                };
             }
             
-            //remove partial returner if needed
-            if ( !usingReturner ) {
-                int toBeremoved = -1;
-                for ( int i = 0; i < arguments.length; i++ ) {
-                    if ( newArguments.get(i) instanceof IReturner ) {
-                        toBeremoved = i;
-                    }
-                }
-                if ( toBeremoved != -1 ) {
-                    Object o = newArguments.remove( toBeremoved );
-                    if ( o instanceof BioclipseJobUpdateHook ) {
-                        hook = (BioclipseJobUpdateHook<Object>) o;
-                    }
-                }
+            //a hook the method can not take is called when done instead
+            if ( !usingReturner && returnerPos != -1 
+                 && arguments[returnerPos] instanceof BioclipseJobUpdateHook ) {
+                hook = (BioclipseJobUpdateHook<Object>) arguments[returnerPos];
             }
             
-            int i = Arrays.asList( methodCalled.getParameterTypes() )
-                          .indexOf( BioclipseUIJob.class );
+            int i = plan.getUIJobIndex();
     
             final BioclipseUIJob uiJob ;
             
@@ -246,24 +327,11 @@ public class BioclipseJob<T> extends Job {
             else {
                 uiJob = null;
             }
-            if ( uiJob != null ) {
-                newArguments.remove( uiJob );
-            }
 
-            newArguments.add( monitor );
-            
-            arguments = newArguments.toArray();
-            //translate String -> IFile
-            for ( int j = 0; j < arguments.length; j++ ) {
-                if ( arguments[j] instanceof String &&
-                     methodToRun.getParameterTypes()[j] == IFile.class ) {
-                    arguments[j] = ResourcePathTransformer.getInstance()
-                                       .transform( (String)arguments[j] );
-                }
-            }
-
-            returnValue = methodToRun.invoke( bioclipseManager, 
-                                              arguments );
+            returnValue = plan.getInvoker().invoke( bioclipseManager, 
+                                                    arguments,
+                                                    returner,
+                                                    monitor );
             
             if (hook != null) {
                 hook.completeReturn( returnValue );
@@ -342,8 +410,69 @@ public class BioclipseJob<T> extends Job {
         return Status.OK_STATUS;
     }
 
+    private void closeStream( IStatus result ) {
+        Object[] args = arguments;
+        if ( args == null ) {
+            return;
+        }
+        for ( Object o : args ) {
+            if ( o instanceof StreamingReturner ) {
+                Throwable failure = null;
+                if ( returnValue instanceof Throwable ) {
+                    failure = (Throwable) returnValue;
+                }
+                else if ( result != null 
+                          && result.getSeverity() == IStatus.CANCEL ) {
+                    failure = new OperationCanceledException();
+                }
+                ( (StreamingReturner<?>) o ).close( failure );
+            }
+        }
+    }
+
+    /**
+     * @return a future done when this job is done, giving the return value
+     *         of the job
+     */
+    public BioclipseFuture<T> getFuture() {
+        synchronized ( futureLock ) {
+            if ( future == null ) {
+                future = new BioclipseFuture<T>( this );
+                if ( finishedWith != null ) {
+                    complete( future, finishedWith );
+                }
+            }
+            return future;
+        }
+    }
+
+    private void completeFuture( IStatus result ) {
+        BioclipseFuture<T> f;
+        synchronized ( futureLock ) {
+            finishedWith = result != null ? result : Status.OK_STATUS;
+            f = future;
+        }
+        if ( f != null ) {
+            complete( f, finishedWith );
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete( BioclipseFuture<T> f, IStatus result ) {
+        Object value = returnValue;
+        if ( result.getSeverity() == IStatus.CANCEL ) {
+            f.cancelled();
+        }
+        else if ( value instanceof Throwable ) {
+            f.fail( (Throwable) value );
+        }
+        else {
+            f.complete( value == NULLVALUE ? null : (T) value );
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    public synchronized T getReturnValue() {
+    public T getReturnValue() {
         if ( returnValue == NULLVALUE ) {
             throw new IllegalStateException( "There is no return value" );
         }
@@ -362,6 +491,10 @@ public class BioclipseJob<T> extends Job {
         this.arguments = arguemtns;
     }
 
+    public Object[] getArguments() {
+        return arguments;
+    }
+
     public MethodInvocation getInvocation() {
         return invocation;
     }
@@ -369,6 +502,10 @@ public class BioclipseJob<T> extends Job {
     public void setBioclipseManager( IBioclipseManager manager ) {
         this.bioclipseManager = manager;
     }
+
+    public IBioclipseManager getBioclipseManager() {
+        return bioclipseManager;
+    }
     
     public void setMethodCalled( Method methodCalled ) {
 
@@ -0,0 +1,549 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import net.bioclipse.core.Activator;
+import net.bioclipse.managers.CallContext;
+import net.bioclipse.managers.business.IBioclipseManager;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+
+/**
+ * Schedules the jobs created for manager methods so that no more than a
+ * limited number of them run at once, in total and for each manager. Jobs
+ * over the limits are scheduled asleep, so that they can be joined and
+ * cancelled as usual, and are woken up in turn as running jobs finish.
+ * Which job is woken up next is decided either by the order they were
+ * scheduled in or by their priority. Identical calls waiting to run can
+ * optionally be coalesced into one job.
+ * <p>
+ * Jobs scheduled from within a job already let through, also from pool
+ * threads the work of that job was handed to, run at once outside the
+ * limits. The job they were started from holds its place while it waits
+ * for them, so making them wait for a place could leave all places held
+ * by jobs waiting for jobs that can never run.
+ * <p>
+ * The limits are read from the preferences of net.bioclipse.core:
+ * <ul>
+ *   <li><code>jobs.maxConcurrent</code> the number of jobs that may run at
+ *       once, by default the number of processors</li>
+ *   <li><code>jobs.maxConcurrentPerManager</code> the number of jobs per
+ *       manager that may run at once, can be set for a single manager by
+ *       appending <code>.</code> and the name of the manager</li>
+ *   <li><code>jobs.admission</code> <code>FIFO</code> or
+ *       <code>PRIORITY</code></li>
+ *   <li><code>jobs.coalesce</code> whether to coalesce identical calls</li>
+ * </ul>
+ * ExtendedBioclipseJobs are not scheduled by the dispatcher but can be
+ * given to {@link #schedule(BioclipseJob)} by whoever schedules them.
+ *
+ * @author agent
+ */
+public class BioclipseJobScheduler {
+
+    public static final String MAX_JOBS             = "jobs.maxConcurrent";
+    public static final String MAX_JOBS_PER_MANAGER
+        = "jobs.maxConcurrentPerManager";
+    public static final String ADMISSION            = "jobs.admission";
+    public static final String COALESCE             = "jobs.coalesce";
+
+    /**
+     * The order in which jobs waiting to run are let through.
+     */
+    public enum Admission {
+        /** In the order they were scheduled */
+        FIFO,
+        /** By job priority, in the order they were scheduled within one */
+        PRIORITY
+    }
+
+    public static final int DEFAULT_MAX_JOBS
+        = Runtime.getRuntime().availableProcessors();
+
+    /*
+     * How long a waiting job sleeps unless it is woken up, a day is plenty
+     */
+    private static final long HOLD = 24L * 60 * 60 * 1000;
+
+    private static final Logger logger
+        = Logger.getLogger( BioclipseJobScheduler.class );
+
+    private static BioclipseJobScheduler instance;
+
+    private int       maxJobs;
+    private int       maxJobsPerManager;
+    private Admission admission;
+    private volatile boolean coalesce;
+    private final boolean followsPreferences;
+
+    private final Map<String, Integer> managerLimits
+        = new HashMap<String, Integer>();
+    private final Map<String, Integer> running
+        = new HashMap<String, Integer>();
+    private int runningTotal;
+    private final Map<String, PriorityQueue<Entry>> waiting
+        = new HashMap<String, PriorityQueue<Entry>>();
+    private final Map<Call, Entry> waitingCalls = new HashMap<Call, Entry>();
+    private final Set<Entry> admitted = new HashSet<Entry>();
+    private long sequence;
+
+    /**
+     * @return the scheduler following the preferences of net.bioclipse.core
+     */
+    public static synchronized BioclipseJobScheduler getInstance() {
+        if ( instance == null ) {
+            instance = new BioclipseJobScheduler();
+        }
+        return instance;
+    }
+
+    private BioclipseJobScheduler() {
+        followsPreferences = true;
+        maxJobs           = DEFAULT_MAX_JOBS;
+        maxJobsPerManager = DEFAULT_MAX_JOBS;
+        admission         = Admission.FIFO;
+        readPreferences();
+        try {
+            IEclipsePreferences node
+                = new InstanceScope().getNode( Activator.PLUGIN_ID );
+            if ( node != null ) {
+                node.addPreferenceChangeListener(
+                    new IPreferenceChangeListener() {
+                        public void preferenceChange(
+                                        PreferenceChangeEvent event ) {
+                            if ( event.getKey().startsWith( "jobs." ) ) {
+                                readPreferences();
+                            }
+                        }
+                    });
+            }
+        }
+        catch ( IllegalStateException e ) {
+            logger.debug( "No preferences to follow", e );
+        }
+    }
+
+    /**
+     * Creates a scheduler with fixed limits not following the preferences.
+     *
+     * @param maxJobs number of jobs that may run at once
+     * @param maxJobsPerManager number of jobs per manager that may run at
+     *        once
+     * @param admission the order waiting jobs are let through in
+     * @param coalesce whether to coalesce identical calls waiting to run
+     */
+    public BioclipseJobScheduler( int maxJobs,
+                                  int maxJobsPerManager,
+                                  Admission admission,
+                                  boolean coalesce ) {
+        if ( maxJobs < 1 || maxJobsPerManager < 1 ) {
+            throw new IllegalArgumentException(
+                "At least one job must be allowed to run" );
+        }
+        this.followsPreferences = false;
+        this.maxJobs            = maxJobs;
+        this.maxJobsPerManager  = maxJobsPerManager;
+        this.admission          = admission;
+        this.coalesce           = coalesce;
+    }
+
+    /**
+     * Schedules the job if the limits allow it to run now, otherwise
+     * schedules it asleep until it is its turn. A job scheduled from within
+     * a job already let through is scheduled at once.
+     *
+     * @param job a job running a manager method
+     * @return the job that will run the call, which is an identical call
+     *         already waiting to run if calls are coalesced and otherwise
+     *         <code>job</code>
+     */
+    public BioclipseJob<?> schedule( BioclipseJob<?> job ) {
+
+        String manager = managerOf( job );
+        Entry entry;
+        boolean runNow;
+        synchronized ( this ) {
+            if ( isNested( job ) ) {
+                entry = new Entry( job, manager, null, sequence++ );
+                entry.nested = true;
+                runNow = true;
+            }
+            else {
+                entry = admit( job, manager );
+                runNow = entry.started;
+            }
+        }
+        if ( entry.job != job ) {
+            return entry.job;
+        }
+        job.addJobChangeListener( entry );
+        if ( runNow ) {
+            job.schedule();
+        }
+        else {
+            job.schedule( HOLD );
+            boolean wake;
+            synchronized ( this ) {
+                entry.asleep = true;
+                wake = entry.started;
+            }
+            if ( wake ) {
+                job.wakeUp();
+            }
+        }
+        return job;
+    }
+
+    /*
+     * Starts the job if it may run now, otherwise queues it. Returns the
+     * entry of an identical waiting call instead if there is one.
+     */
+    private Entry admit( BioclipseJob<?> job, String manager ) {
+        Call call = coalesce && job.getBioclipseManager() != null
+                    ? new Call( job ) : null;
+        if ( call != null ) {
+            Entry identical = waitingCalls.get( call );
+            if ( identical != null ) {
+                return identical;
+            }
+        }
+        Entry entry = new Entry( job, manager, call, sequence++ );
+        // Jobs of other managers only wait when they may not run
+        if ( !waiting.containsKey( manager ) && mayRun( manager ) ) {
+            start( entry );
+        }
+        else {
+            queueFor( manager ).add( entry );
+            if ( call != null ) {
+                waitingCalls.put( call, entry );
+            }
+        }
+        return entry;
+    }
+
+    /*
+     * Whether the job is created by a job let through, or in a context
+     * carried over from one.
+     */
+    private boolean isNested( BioclipseJob<?> job ) {
+        if ( admitted.isEmpty() ) {
+            return false;
+        }
+        Job current = Job.getJobManager().currentJob();
+        Set<CallContext> running = new HashSet<CallContext>();
+        for ( Entry e : admitted ) {
+            if ( e.job == current ) {
+                return true;
+            }
+            CallContext context = e.job.getContext();
+            if ( context != null ) {
+                running.add( context );
+            }
+        }
+        for ( CallContext c = job.getParentContext();
+              c != null;
+              c = c.getParent() ) {
+            if ( running.contains( c ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of jobs currently let through to run
+     */
+    public synchronized int getRunning() {
+        return runningTotal;
+    }
+
+    /**
+     * @return the number of jobs waiting for their turn to run
+     */
+    public synchronized int getWaiting() {
+        int result = 0;
+        for ( PriorityQueue<Entry> queue : waiting.values() ) {
+            result += queue.size();
+        }
+        return result;
+    }
+
+    private void readPreferences() {
+        IPreferencesService prefs = Platform.getPreferencesService();
+        if ( prefs == null ) {
+            return;
+        }
+        String id = Activator.PLUGIN_ID;
+        synchronized ( this ) {
+            maxJobs = Math.max( 1, prefs.getInt( id, MAX_JOBS,
+                                                 DEFAULT_MAX_JOBS, null ) );
+            maxJobsPerManager = Math.max(
+                1, prefs.getInt( id, MAX_JOBS_PER_MANAGER, maxJobs, null ) );
+            coalesce = prefs.getBoolean( id, COALESCE, false, null );
+            Admission newAdmission;
+            try {
+                newAdmission = Admission.valueOf(
+                    prefs.getString( id, ADMISSION, "FIFO", null ).trim()
+                                                                .toUpperCase() );
+            }
+            catch ( IllegalArgumentException e ) {
+                logger.warn( "Unknown job admission in the preferences, "
+                             + "using FIFO" );
+                newAdmission = Admission.FIFO;
+            }
+            if ( newAdmission != admission ) {
+                admission = newAdmission;
+                // The queues are ordered so they must be rebuilt
+                for ( String manager : new ArrayList<String>(
+                                               waiting.keySet() ) ) {
+                    PriorityQueue<Entry> queue = newQueue();
+                    queue.addAll( waiting.get( manager ) );
+                    waiting.put( manager, queue );
+                }
+            }
+            managerLimits.clear();
+        }
+        // The limits may have been raised
+        admitWaiting();
+    }
+
+    private int limitFor( String manager ) {
+        if ( !followsPreferences ) {
+            return maxJobsPerManager;
+        }
+        Integer result = managerLimits.get( manager );
+        if ( result == null ) {
+            IPreferencesService prefs = Platform.getPreferencesService();
+            result = prefs == null
+                     ? maxJobsPerManager
+                     : Math.max( 1, prefs.getInt( Activator.PLUGIN_ID,
+                                                  MAX_JOBS_PER_MANAGER + "."
+                                                  + manager,
+                                                  maxJobsPerManager,
+                                                  null ) );
+            managerLimits.put( manager, result );
+        }
+        return result;
+    }
+
+    private boolean mayRun( String manager ) {
+        Integer count = running.get( manager );
+        return runningTotal < maxJobs
+               && ( count == null || count < limitFor( manager ) );
+    }
+
+    private void start( Entry entry ) {
+        entry.started = true;
+        admitted.add( entry );
+        runningTotal++;
+        Integer count = running.get( entry.manager );
+        running.put( entry.manager, count == null ? 1 : count + 1 );
+    }
+
+    private PriorityQueue<Entry> queueFor( String manager ) {
+        PriorityQueue<Entry> queue = waiting.get( manager );
+        if ( queue == null ) {
+            queue = newQueue();
+            waiting.put( manager, queue );
+        }
+        return queue;
+    }
+
+    private PriorityQueue<Entry> newQueue() {
+        final boolean byPriority = admission == Admission.PRIORITY;
+        return new PriorityQueue<Entry>( 16, new Comparator<Entry>() {
+            public int compare( Entry e1, Entry e2 ) {
+                if ( byPriority && e1.priority != e2.priority ) {
+                    return e1.priority < e2.priority ? -1 : 1;
+                }
+                return e1.sequence < e2.sequence ? -1
+                     : e1.sequence > e2.sequence ?  1 : 0;
+            }
+        });
+    }
+
+    /*
+     * Lets as many waiting jobs as the limits allow run, each time taking
+     * the first in turn among the managers that may run another job.
+     */
+    private void admitWaiting() {
+        List<BioclipseJob<?>> toWake = new ArrayList<BioclipseJob<?>>();
+        synchronized ( this ) {
+            Comparator<? super Entry> order = null;
+            while ( runningTotal < maxJobs ) {
+                Entry next = null;
+                for ( Map.Entry<String, PriorityQueue<Entry>> e
+                          : waiting.entrySet() ) {
+                    Entry head = e.getValue().peek();
+                    if ( !mayRun( e.getKey() ) ) {
+                        continue;
+                    }
+                    if ( order == null ) {
+                        order = e.getValue().comparator();
+                    }
+                    if ( next == null || order.compare( head, next ) < 0 ) {
+                        next = head;
+                    }
+                }
+                if ( next == null ) {
+                    break;
+                }
+                remove( next );
+                start( next );
+                if ( next.asleep ) {
+                    toWake.add( next.job );
+                }
+            }
+        }
+        for ( BioclipseJob<?> job : toWake ) {
+            job.wakeUp();
+        }
+    }
+
+    private void remove( Entry entry ) {
+        PriorityQueue<Entry> queue = waiting.get( entry.manager );
+        if ( queue != null ) {
+            queue.remove( entry );
+            if ( queue.isEmpty() ) {
+                waiting.remove( entry.manager );
+            }
+        }
+        if ( entry.call != null ) {
+            waitingCalls.remove( entry.call );
+        }
+    }
+
+    private void done( Entry entry ) {
+        if ( entry.nested ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( entry.started ) {
+                admitted.remove( entry );
+                runningTotal--;
+                int count = running.get( entry.manager ) - 1;
+                if ( count == 0 ) {
+                    running.remove( entry.manager );
+                }
+                else {
+                    running.put( entry.manager, count );
+                }
+            }
+            else {
+                // cancelled while waiting
+                remove( entry );
+            }
+        }
+        admitWaiting();
+    }
+
+    private static String managerOf( BioclipseJob<?> job ) {
+        IBioclipseManager manager = job.getBioclipseManager();
+        if ( manager == null && job.getInvocation() != null
+             && job.getInvocation().getThis() instanceof IBioclipseManager ) {
+            manager = (IBioclipseManager) job.getInvocation().getThis();
+        }
+        return manager == null ? "" : manager.getManagerName();
+    }
+
+    /*
+     * A scheduled job, listening for it to be done.
+     */
+    private class Entry extends JobChangeAdapter {
+
+        private final BioclipseJob<?> job;
+        private final String          manager;
+        private final Call            call;
+        private final long            sequence;
+        private final int             priority;
+        private boolean               started;
+        private boolean               asleep;
+        private boolean               nested;
+
+        Entry( BioclipseJob<?> job, String manager, Call call, long sequence ) {
+            this.job      = job;
+            this.manager  = manager;
+            this.call     = call;
+            this.sequence = sequence;
+            this.priority = job.getPriority();
+        }
+
+        @Override
+        public void done( IJobChangeEvent event ) {
+            job.removeJobChangeListener( this );
+            BioclipseJobScheduler.this.done( this );
+        }
+    }
+
+    /*
+     * What makes two calls identical: the same method called on the same
+     * manager with equal arguments.
+     */
+    private static class Call {
+
+        private final IBioclipseManager manager;
+        private final Object            method;
+        private final List<Object>      arguments;
+        private final int               hash;
+
+        Call( BioclipseJob<?> job ) {
+            manager   = job.getBioclipseManager();
+            method    = job.getMethodCalled() != null ? job.getMethodCalled()
+                                                      : job.getMethod();
+            Object[] args = job.getArguments();
+            arguments = args == null ? null : Arrays.asList( args );
+            hash = 31 * ( 31 * System.identityHashCode( manager )
+                          + ( method == null ? 0 : method.hashCode() ) )
+                   + ( arguments == null ? 0 : arguments.hashCode() );
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !(obj instanceof Call) ) {
+                return false;
+            }
+            Call other = (Call) obj;
+            return manager == other.manager
+                   && ( method == null ? other.method == null
+                                       : method.equals( other.method ) )
+                   && ( arguments == null ? other.arguments == null
+                                          : arguments.equals(
+                                                other.arguments ) );
+        }
+    }
+}
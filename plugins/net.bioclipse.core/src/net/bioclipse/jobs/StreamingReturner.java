@@ -0,0 +1,258 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.jobs;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * An update hook that hands the returned objects over to the caller through
+ * a bounded queue instead of collecting them all. The manager method runs as
+ * a job and the caller pulls the objects as they arrive, e.g.:
+ * <pre>
+ * StreamingReturner&lt;IMolecule&gt; molecules
+ *     = new StreamingReturner&lt;IMolecule&gt;( "Loading molecules" );
+ * cdk.loadMolecules( file, molecules );
+ * for ( IMolecule m : molecules ) {
+ *     ...
+ * }
+ * </pre>
+ * or from JavaScript:
+ * <pre>
+ * var molecules = new Packages.net.bioclipse.jobs.StreamingReturner( "" );
+ * cdk.loadMolecules( file, molecules );
+ * for ( var i = molecules.iterator(); i.hasNext(); ) {
+ *     var m = i.next();
+ *     ...
+ * }
+ * </pre>
+ * When the queue is full the manager method is either held back until the
+ * caller catches up or objects are dropped, depending on the
+ * {@link Policy}. Either way no more than the capacity of the queue is held
+ * in memory. The objects can only be iterated over once.
+ *
+ * @author agent
+ */
+public class StreamingReturner<T> extends BioclipseJobUpdateHook<T>
+                                  implements Iterable<T> {
+
+    /**
+     * What to do when the queue is full.
+     */
+    public enum Policy {
+        /** Wait until the caller has taken an object from the queue */
+        BLOCK,
+        /** Drop the object being returned */
+        DROP_NEWEST,
+        /** Drop the oldest object in the queue to make room */
+        DROP_OLDEST
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Object END  = new Object();
+    private static final Object NULL = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Policy                policy;
+    private final Semaphore             slots;
+    private final AtomicLong            dropped = new AtomicLong();
+
+    private volatile Throwable failure;
+    private volatile boolean   closed;
+    private volatile boolean   cancelled;
+    private volatile boolean   iterated;
+
+    public StreamingReturner( String jobName ) {
+        this( jobName, DEFAULT_CAPACITY, Policy.BLOCK );
+    }
+
+    public StreamingReturner( String jobName, int capacity ) {
+        this( jobName, capacity, Policy.BLOCK );
+    }
+
+    public StreamingReturner( String jobName, int capacity, Policy policy ) {
+        super( jobName );
+        // one extra place so that the end always fits
+        this.queue  = new ArrayBlockingQueue<Object>( capacity + 1 );
+        this.slots  = new Semaphore( capacity );
+        this.policy = policy;
+    }
+
+    @Override
+    public void partialReturn( T object ) {
+        if ( cancelled ) {
+            throw new OperationCanceledException();
+        }
+        Object o = object == null ? NULL : object;
+        switch ( policy ) {
+            case BLOCK:
+                try {
+                    slots.acquire();
+                    if ( cancelled ) {
+                        throw new OperationCanceledException();
+                    }
+                    queue.put( o );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new OperationCanceledException();
+                }
+                break;
+            case DROP_NEWEST:
+                if ( slots.tryAcquire() ) {
+                    queue.add( o );
+                }
+                else {
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                if ( !slots.tryAcquire() ) {
+                    // reuse the place of the dropped object
+                    if ( queue.poll() == null ) {
+                        slots.acquireUninterruptibly();
+                    }
+                    else {
+                        dropped.incrementAndGet();
+                    }
+                }
+                queue.add( o );
+                break;
+        }
+    }
+
+    @Override
+    public void completeReturn( T object ) {
+        partialReturn( object );
+    }
+
+    /**
+     * Marks the end of the stream. Called when the job running the manager
+     * method is done, calling it again has no effect.
+     *
+     * @param failure what made the manager method fail or <code>null</code>
+     *        if it did not
+     */
+    public void close( Throwable failure ) {
+        synchronized ( queue ) {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+        }
+        this.failure = failure;
+        if ( cancelled ) {
+            return;
+        }
+        // there is always room for the end as a place is kept for it
+        queue.offer( END );
+    }
+
+    /**
+     * Tells the manager method that the caller does not want any more
+     * objects. The next return will be cancelled and the iteration ends.
+     */
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+        // wake a caller waiting for the next object
+        queue.offer( END );
+        // let a blocked manager method see that it has been cancelled
+        slots.release( queue.remainingCapacity() + 1 );
+    }
+
+    /**
+     * @return the number of objects dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return an iterator blocking until the next object arrives, the
+     *         manager method is done or the stream is cancelled
+     * @throws IllegalStateException if called more than once
+     */
+    public Iterator<T> iterator() {
+        synchronized ( queue ) {
+            if ( iterated ) {
+                throw new IllegalStateException(
+                    "The returned objects can only be iterated over once" );
+            }
+            iterated = true;
+        }
+        return new Iterator<T>() {
+
+            private Object next;
+
+            public boolean hasNext() {
+                if ( cancelled ) {
+                    next = null;
+                    return false;
+                }
+                if ( next == null ) {
+                    try {
+                        next = queue.take();
+                        if ( next != END ) {
+                            slots.release();
+                        }
+                    }
+                    catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        cancel();
+                        throw new OperationCanceledException();
+                    }
+                }
+                if ( cancelled ) {
+                    next = null;
+                    return false;
+                }
+                if ( next == END ) {
+                    if ( failure instanceof RuntimeException ) {
+                        throw (RuntimeException) failure;
+                    }
+                    if ( failure != null ) {
+                        throw new RuntimeException(
+                            "The manager method failed: "
+                            + failure.getMessage(),
+                            failure );
+                    }
+                    return false;
+                }
+                return true;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                Object o = next;
+                next = null;
+                return o == NULL ? null : (T) o;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
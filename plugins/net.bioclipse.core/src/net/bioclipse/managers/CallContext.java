@@ -0,0 +1,207 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+
+/**
+ * What a thread is currently doing on behalf of a script or a manager call:
+ * the progress monitor to report to, whether the work has been cancelled and
+ * a trace id shared by everything started by the same script or call.
+ * <p>
+ * The context of a thread is kept in a thread local so looking it up never
+ * waits for other threads. Pool threads and job threads outlive the calls
+ * that create them, so contexts are not inherited when threads are created
+ * but are carried over explicitly: BioclipseJobs take the context of the
+ * thread that creates them and work handed to other threads should be
+ * wrapped with {@link #wrap(Runnable)} or {@link #wrap(Callable)}. A context
+ * carried over to another thread becomes the parent of a new context there
+ * and work in the new context is cancelled when the parent is.
+ *
+ * @author agent
+ */
+public final class CallContext {
+
+    private static final AtomicLong traceIds = new AtomicLong();
+
+    private static final ThreadLocal<CallContext> current
+        = new ThreadLocal<CallContext>();
+
+    private final IProgressMonitor monitor;
+    private final CallContext      parent;
+    private final long             traceId;
+
+    private CallContext( IProgressMonitor monitor,
+                         CallContext parent,
+                         long traceId ) {
+        this.parent  = parent;
+        this.traceId = traceId;
+        this.monitor = parent == null ? monitor
+                                      : new LinkedMonitor( monitor, parent );
+    }
+
+    /**
+     * @param monitor the monitor to report to
+     * @return a context with a new trace id
+     */
+    public static CallContext newRoot( IProgressMonitor monitor ) {
+        return new CallContext( monitor, null, traceIds.incrementAndGet() );
+    }
+
+    /**
+     * @param monitor the monitor to report to in the new context
+     * @return a context with the same trace id as this one, cancelled when
+     *         this one is
+     */
+    public CallContext child( IProgressMonitor monitor ) {
+        return new CallContext( monitor, this, traceId );
+    }
+
+    /**
+     * @param monitor the monitor to report to in the new context
+     * @return a child of the context of the current thread or a new root
+     *         context if the current thread has none
+     */
+    public static CallContext fork( IProgressMonitor monitor ) {
+        CallContext c = current.get();
+        return c == null ? newRoot( monitor ) : c.child( monitor );
+    }
+
+    /**
+     * @return the context of the current thread or <code>null</code>
+     */
+    public static CallContext current() {
+        return current.get();
+    }
+
+    /**
+     * Makes the given context the context of the current thread. Restore
+     * the returned context when done, in a finally block.
+     *
+     * @param context the new context or <code>null</code> to clear it
+     * @return the context the thread had before
+     */
+    public static CallContext attach( CallContext context ) {
+        CallContext previous = current.get();
+        if ( context == null ) {
+            current.remove();
+        }
+        else {
+            current.set( context );
+        }
+        return previous;
+    }
+
+    /**
+     * @return the monitor to report to, cancelled also when the work of
+     *         a parent context is cancelled
+     */
+    public IProgressMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * @return whether the work in this context or any parent context has
+     *         been cancelled
+     */
+    public boolean isCanceled() {
+        return monitor.isCanceled();
+    }
+
+    /**
+     * Cancels the work in this context and in all contexts carried over
+     * from it.
+     */
+    public void cancel() {
+        monitor.setCanceled( true );
+    }
+
+    /**
+     * @return the id shared by all contexts carried over from the same root
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * @return the context this one was carried over from or
+     *         <code>null</code>
+     */
+    public CallContext getParent() {
+        return parent;
+    }
+
+    /**
+     * @param runnable work to run in another thread
+     * @return a runnable running the given one with this context attached
+     */
+    public Runnable wrap( final Runnable runnable ) {
+        return new Runnable() {
+            public void run() {
+                CallContext previous = attach( CallContext.this );
+                try {
+                    runnable.run();
+                }
+                finally {
+                    attach( previous );
+                }
+            }
+        };
+    }
+
+    /**
+     * @param callable work to run in another thread
+     * @return a callable running the given one with this context attached
+     */
+    public <V> Callable<V> wrap( final Callable<V> callable ) {
+        return new Callable<V>() {
+            public V call() throws Exception {
+                CallContext previous = attach( CallContext.this );
+                try {
+                    return callable.call();
+                }
+                finally {
+                    attach( previous );
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "CallContext[trace " + traceId + "]";
+    }
+
+    /*
+     * A monitor also cancelled when the parent context is
+     */
+    private static class LinkedMonitor extends ProgressMonitorWrapper {
+
+        private final CallContext parent;
+
+        LinkedMonitor( IProgressMonitor monitor, CallContext parent ) {
+            super( monitor );
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return super.isCanceled() || parent.isCanceled();
+        }
+    }
+}
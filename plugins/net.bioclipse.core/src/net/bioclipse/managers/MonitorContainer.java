@@ -12,16 +12,15 @@
 
 package net.bioclipse.managers;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 
 /**
- * A singleton keeping track of all monitors used by all threads executing 
- * JavaScript scripts by connecting a monitor with a thread.
+ * A singleton giving the monitor of the {@link CallContext} of the current
+ * thread, for example the monitor of the thread executing a JavaScript 
+ * script. Kept for the code setting and getting monitors this way, 
+ * CallContext also carries the monitor over to jobs and pool threads.
  * 
  * @author jonalv
  *
@@ -31,12 +30,10 @@ public class MonitorContainer {
     private static MonitorContainer _instance = new MonitorContainer();
     private static Logger logger = Logger.getLogger( MonitorContainer.class );
     
-    private volatile Map<Thread, IProgressMonitor> monitors;
-    private volatile Map<Thread, Long>             lastWarningTimes;
+    private static final ThreadLocal<Long> lastWarningTime 
+        = new ThreadLocal<Long>();
     
     private MonitorContainer() {
-        monitors         = new WeakHashMap<Thread, IProgressMonitor>();
-        lastWarningTimes = new WeakHashMap<Thread, Long>();
     }
 
     public static MonitorContainer getInstance() {
@@ -44,36 +41,40 @@ public class MonitorContainer {
     }
     
     /**
-     * Associates the given monitor with the current thread.
+     * Associates the given monitor with the current thread by giving it a 
+     * new CallContext. The context stays with the thread, so threads that 
+     * are reused for other work, like job and pool threads, should instead 
+     * use {@link CallContext#attach(CallContext)} and restore the context 
+     * it returns in a finally block.
      * 
      * @param monitor to be associated with the current thread
      */
-    public synchronized void addMonitor( IProgressMonitor monitor ) {
-        monitors.put( Thread.currentThread(), monitor );
+    public void addMonitor( IProgressMonitor monitor ) {
+        CallContext.attach( CallContext.newRoot( monitor ) );
     }
     
     /**
      * @return monitor associated with the current thread
      */
-    public synchronized IProgressMonitor getMonitor() {
-        Thread t = Thread.currentThread();
-        IProgressMonitor m =  monitors.get( t );
-        if ( m == null ) {
+    public IProgressMonitor getMonitor() {
+        CallContext context = CallContext.current();
+        if ( context == null ) {
             
+            Thread t = Thread.currentThread();
             int timeout = 120;
-            if ( !lastWarningTimes.containsKey( t ) || 
-                    System.currentTimeMillis()
-                        - lastWarningTimes.get( t ) > 1000 * timeout ) {
+            Long last = lastWarningTime.get();
+            if ( last == null || 
+                    System.currentTimeMillis() - last > 1000 * timeout ) {
                    
-                lastWarningTimes.put( t, System.currentTimeMillis() );
+                lastWarningTime.set( System.currentTimeMillis() );
                 logger.warn( "The MonitorContainer could not find a monitor " +
                              "connected to current thread so returning a " +
                              "NullProgressMonitor. This warning will not be " +
                              "repeated withing the comming " + timeout + 
                              " seconds for thread with id: ." + t.getId() );
             }
-            m = new NullProgressMonitor();
+            return new NullProgressMonitor();
         }
-        return m;
+        return context.getMonitor();
     }
 }
@@ -3,7 +3,6 @@ package net.bioclipse.managers.business;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -12,11 +11,12 @@ import java.util.Map;
 import net.bioclipse.core.IResourcePathTransformer;
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.jobs.BioclipseFuture;
 import net.bioclipse.jobs.BioclipseJob;
-import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseJobScheduler;
 import net.bioclipse.jobs.BioclipseUIJob;
-import net.bioclipse.jobs.ExtendedBioclipseJob;
 import net.bioclipse.jobs.IReturner;
+import net.bioclipse.jobs.StreamingReturner;
 import net.bioclipse.managers.MonitorContainer;
 
 import org.aopalliance.intercept.MethodInterceptor;
@@ -84,10 +84,35 @@ public abstract class AbstractManagerMethodDispatcher
     
     public Object invoke( MethodInvocation invocation ) throws Throwable {
 
-       IBioclipseManager manager = (IBioclipseManager) invocation.getThis();
-                
-        Method m = findMethodToRun(invocation);
-        if ( invocation.getMethod().getAnnotation( GuiAction.class ) != null ) {
+        IBioclipseManager manager = (IBioclipseManager) invocation.getThis();
+        DispatchPlan plan = DispatchPlan.forInvocation( invocation );
+        MethodStatistics statistics = plan.getStatistics( manager );
+        
+        long start = System.nanoTime();
+        boolean failed = true;
+        Object returnValue = null;
+        try {
+            returnValue = dispatch( manager, invocation, plan );
+            failed = false;
+            return returnValue;
+        }
+        finally {
+            //calls run as jobs are recorded by the job once it has run,
+            //gui actions return when posted so their time says nothing
+            if ( !plan.isGuiAction()
+                 && !(returnValue instanceof BioclipseJob) 
+                 && !(returnValue instanceof BioclipseFuture) ) {
+                statistics.recordCall( System.nanoTime() - start, failed );
+            }
+        }
+    }
+    
+    private Object dispatch( IBioclipseManager manager,
+                             MethodInvocation invocation, 
+                             DispatchPlan plan ) throws Throwable {
+
+        Method m = plan.getMethodToRun();
+        if ( plan.isGuiAction() ) {
             
             logger.debug( manager.getManagerName() + "." 
                           + invocation.getMethod().getName() 
@@ -98,15 +123,21 @@ public abstract class AbstractManagerMethodDispatcher
                                         invocation );
         }
         
+        ResultCache.Key key = null;
+        if ( plan.isMemoized() ) {
+            ResultCache cache = ResultCache.getInstance();
+            key = cache.keyFor( manager, plan, invocation.getArguments() );
+            if ( key != null ) {
+                Object cached = cache.get( key );
+                if ( cached != ResultCache.MISSING ) {
+                    return cached;
+                }
+            }
+        }
+        
         Object returnValue;
-        if ( ( !BioclipseJob.class
-                            .isAssignableFrom( invocation.getMethod()
-                                                         .getReturnType() ) 
-               && invocation.getMethod().getReturnType() != void.class )
-             || Arrays.asList( invocation.getMethod().getParameterTypes() )
-                      .contains( IProgressMonitor.class ) ) {
-            if ( Arrays.asList( m.getParameterTypes() )
-                       .contains( IProgressMonitor.class) &&
+        if ( plan.runsInSameThread() ) {
+            if ( plan.takesMonitor() &&
                  !(this instanceof JavaScriptManagerMethodDispatcher) )  {
                 
                 int timeout = 120;
@@ -138,16 +169,16 @@ public abstract class AbstractManagerMethodDispatcher
                                     m, 
                                     invocation.getArguments(),
                                     invocation,
-                                    invocation.getMethod()
-                                              .getReturnType() 
-                                        != ExtendedBioclipseJob.class );
+                                    !plan.isExtended() );
         }
 
-        if ( returnValue instanceof IFile && 
-             invocation.getMethod().getReturnType() == String.class ) {
+        if ( returnValue instanceof IFile && plan.returnsString() ) {
             returnValue = ( (IFile) returnValue ).getLocationURI()
                                                  .getPath();
         }
+        if ( key != null ) {
+            ResultCache.getInstance().put( key, returnValue );
+        }
         return returnValue;
     }
 
@@ -181,65 +212,43 @@ public abstract class AbstractManagerMethodDispatcher
                             boolean notExtended ) 
                   throws BioclipseException {
 
-        List<Object> newArguments = new ArrayList<Object>();
-        newArguments.addAll( Arrays.asList( arguments ) );
-        
-        boolean doingPartialReturns = false;
-        ReturnCollector returnCollector = new ReturnCollector();
-        //add partial returner
-        for ( Class<?> param : method.getParameterTypes() ) {
-            if ( param == IReturner.class ) {
-                doingPartialReturns = true;
-                newArguments.add( returnCollector );
-            }
+        DispatchPlan plan 
+            = DispatchPlan.forMethod( manager.getClass(), 
+                                      methodCalled.getMethod() );
+        if ( isStreaming( plan, arguments ) ) {
+            return runStreaming( manager, method, arguments, methodCalled );
         }
         
-        //remove any BioclipseUIJob
-        BioclipseUIJob uiJob = null;
-        for ( Object o : newArguments ) {
-            if ( o instanceof BioclipseUIJob) {
-                uiJob = (BioclipseUIJob) o;
-            }
-        }
-        if ( uiJob != null ) {
-            newArguments.remove( uiJob );
+        ReturnCollector returnCollector = null;
+        if ( plan.takesReturner() ) {
+            returnCollector = new ReturnCollector();
         }
         
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) 
-             ) {
-            IProgressMonitor m = MonitorContainer.getInstance().getMonitor();
-            if ( m == null ) { 
-                m = new NullProgressMonitor(); 
-            }
-            if ( newArguments.size() < method.getParameterTypes().length ) {
-                newArguments.add( m );
-            }
+        BioclipseUIJob uiJob = null;
+        if ( plan.getUIJobIndex() != -1 ) {
+            uiJob = (BioclipseUIJob) arguments[ plan.getUIJobIndex() ];
         }
         
-        arguments = newArguments.toArray();
-
-        //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
-                arguments[i] 
-                    = transformer.transform( (String)arguments[i] );
+        IProgressMonitor monitor = null;
+        if ( plan.takesMonitor() ) {
+            monitor = MonitorContainer.getInstance().getMonitor();
+            if ( monitor == null ) { 
+                monitor = new NullProgressMonitor(); 
             }
         }
         
         Object returnValue = null;
         try {
-            if ( doingPartialReturns ) {
-                method.invoke( manager, arguments );
+            returnValue = plan.getInvoker().invoke( manager, 
+                                                    arguments, 
+                                                    returnCollector, 
+                                                    monitor );
+            if ( returnCollector != null ) {
                 returnValue = returnCollector.getReturnValue();
                 if ( returnValue == null ) {
                     returnValue = returnCollector.getReturnValues();
                 }
             }
-            else {
-                returnValue = method.invoke( manager, arguments );
-            }
         } catch ( IllegalArgumentException e ) {
             throw new RuntimeException("Failed to run method (Message was: "+e.getMessage()+")", e);
         } catch ( IllegalAccessException e ) {
@@ -275,82 +284,50 @@ public abstract class AbstractManagerMethodDispatcher
         }
         return returnValue;
     }
+
+    /**
+     * @return whether the caller passed a StreamingReturner that the method
+     *         to run can return to
+     */
+    protected boolean isStreaming( DispatchPlan plan, Object[] arguments ) {
+        return plan.takesReturner() 
+               && plan.getReturnerArgumentIndex() != -1
+               && arguments[plan.getReturnerArgumentIndex()] 
+                      instanceof StreamingReturner;
+    }
     
-    private Method findMethodToRun(MethodInvocation invocation) {
+    /**
+     * Runs the method as a job so that the caller can pull the returned 
+     * objects from the StreamingReturner while the method runs.
+     * 
+     * @return the job if the called method can return it
+     */
+    protected Object runStreaming( IBioclipseManager manager, 
+                                   Method method,
+                                   Object[] arguments,
+                                   MethodInvocation methodCalled ) {
         
-        Method result;
+        DispatchPlan plan 
+            = DispatchPlan.forMethod( manager.getClass(), 
+                                      methodCalled.getMethod() );
+        StreamingReturner<?> stream = (StreamingReturner<?>) 
+            arguments[plan.getReturnerArgumentIndex()];
+        BioclipseJob<Object> job 
+            = new BioclipseJob<Object>( stream.getJobName() );
+        job.setMethod( method );
+        job.setArguments( arguments );
+        job.setMethodCalled( methodCalled.getMethod() );
+        job.setBioclipseManager( manager );
+        job.setUser( false );
+        BioclipseJobScheduler.getInstance().schedule( job );
         
-        //If a method with the same signature exists use that one
-        try {
-            result = invocation.getThis().getClass()
-                               .getMethod( invocation.getMethod()
-                                                     .getName(), 
-                                           invocation.getMethod()
-                                                     .getParameterTypes() );
-        } 
-        catch ( SecurityException e ) {
-            throw new RuntimeException("Failed to find the method to run", e);
-        } 
-        catch ( NoSuchMethodException e ) {
-            result = null;
-        }
-        if ( result != null ) {
-            return result;
+        if ( plan.returnsFuture() ) {
+            return job.getFuture();
         }
-
-        //Look for "the JavaScript method" (taking String instead of IFile)
-        METHODS:
-        for ( Method m : invocation.getThis().getClass().getMethods() ) {
-            Method refMethod = invocation.getMethod();
-            int refLength = refMethod.getParameterTypes().length;
-            int mLength   = m.getParameterTypes().length;
-            if ( m.getName().equals( refMethod.getName() ) &&
-                  mLength >= refLength && 
-                  mLength <= refLength + 2 ) {
-                PARAMS:
-                for ( int i = 0, j = 0; 
-                      i < m.getParameterTypes().length; 
-                      i++ ) {
-                    Class<?> currentParam = m.getParameterTypes()[i];
-                    if ( currentParam == IReturner.class ) {
-                        continue PARAMS;
-                    }
-                    if ( invocation.getMethod()
-                                   .getParameterTypes().length >= j + 1 &&
-                         ( invocation.getMethod().getParameterTypes()[j] 
-                             == BioclipseUIJob.class  || 
-                             invocation.getMethod().getParameterTypes()[j] 
-                             == BioclipseJobUpdateHook.class  ) ) {
-                        j++;
-                    }
-                    if ( currentParam == IProgressMonitor.class &&
-                         // can only skip if there is nothing 
-                         // corresponding in the refMethods parameter types.
-                         refMethod.getParameterTypes().length < j + 1 ) {
-                        continue PARAMS;
-                    }
-                    if ( invocation.getMethod()
-                                   .getParameterTypes().length <= j ) {
-                        continue METHODS;
-                    }
-                    Class<?> refParam = invocation.getMethod()
-                                                  .getParameterTypes()[j++];
-                    if ( currentParam == refParam ) {
-                        continue PARAMS;
-                    }
-                    if ( currentParam == IFile.class && 
-                         refParam == String.class ) {
-                        continue PARAMS;
-                    }
-                    continue METHODS;
-                }
-                return m;
-            }
+        Class<?> returnType = methodCalled.getMethod().getReturnType();
+        if ( returnType == void.class || returnType.isInstance( job ) ) {
+            return job;
         }
-        
-        throw new RuntimeException(
-            "Failed to find a method to run on " 
-            + invocation.getThis().getClass() + 
-            " that could correspond to " + invocation.getMethod() );
+        return null;
     }
 }
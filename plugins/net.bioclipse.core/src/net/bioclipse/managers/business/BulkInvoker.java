@@ -0,0 +1,422 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.CallContext;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Calls a manager method once for every item in a list, spreading the calls
+ * over a pool with one thread per processor. The results are given in the
+ * same order as the arguments, also to an IReturner as soon as they and all
+ * results before them are ready. Only a limited number of calls are started
+ * ahead of the result being handed over, so that the whole list of results
+ * never needs to wait in the pool.
+ * <p>
+ * The calls are made on the manager object given, typically the proxy of a
+ * manager, so they go through the normal dispatching. Calls returning a
+ * BioclipseJob are waited for and give the return value of the job.
+ * Strings given for IFile parameters are all resolved before the first
+ * call, so that any files outside the workspace are linked in one go.
+ *
+ * @author agent
+ */
+public class BulkInvoker {
+
+    private static final int THREADS
+        = Runtime.getRuntime().availableProcessors();
+    private static final int CALLS_AHEAD = THREADS * 4;
+
+    private static final ThreadLocal<Boolean> inPool
+        = new ThreadLocal<Boolean>();
+
+    private static final ExecutorService pool
+        = new ThreadPoolExecutor( THREADS, THREADS,
+                                  60, TimeUnit.SECONDS,
+                                  new LinkedBlockingQueue<Runnable>(),
+                                  new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "Bioclipse bulk invocation "
+                                      + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+    });
+
+    private BulkInvoker() {
+    }
+
+    /**
+     * Calls the method with the given name on the manager once for every
+     * item in <code>arguments</code>. An item that is an array, or a List
+     * that is not an IBioObject, holds all arguments for a call, any other
+     * item is the only argument. Strings are accepted for IFile parameters.
+     *
+     * @param manager the manager to call, typically a manager proxy
+     * @param methodName name of the method to call
+     * @param arguments one item per call
+     * @param returner if not <code>null</code> given each result in order
+     *        through <code>partialReturn</code>
+     * @param monitor reports progress with one unit per call and cancels
+     *        all calls when cancelled
+     * @return the results in the same order as the arguments, as a
+     *         RecordableList if there are results and all of them are
+     *         IBioObjects. Empty when a returner is given, the results are
+     *         then only handed to it.
+     * @throws BioclipseException if no matching method is found or if a
+     *         call fails, remaining calls are then cancelled
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> invokeAll( Object manager,
+                                          String methodName,
+                                          List<?> arguments,
+                                          IReturner<Object> returner,
+                                          IProgressMonitor monitor )
+                               throws BioclipseException {
+
+        if ( monitor == null ) {
+            monitor = new NullProgressMonitor();
+        }
+        List<Object[]> calls = new ArrayList<Object[]>( arguments.size() );
+        for ( Object item : arguments ) {
+            calls.add( toArguments( item ) );
+        }
+        List<Method> candidates = findCandidates( manager, methodName );
+        if ( candidates.isEmpty() ) {
+            throw new BioclipseException( "Found no method called "
+                                          + methodName + " on the manager" );
+        }
+        List<Method> methods = new ArrayList<Method>( calls.size() );
+        for ( Object[] args : calls ) {
+            methods.add( findMethod( candidates, args ) );
+        }
+        resolveFiles( methods, calls );
+
+        monitor.beginTask( "Running " + methodName, calls.size() );
+        List<Object> results = returner == null
+                               ? new ArrayList<Object>( calls.size() )
+                               : new ArrayList<Object>( 0 );
+        try {
+            if ( Boolean.TRUE.equals( inPool.get() ) ) {
+                // Waiting for the pool from the pool could deadlock
+                for ( int i = 0; i < calls.size(); i++ ) {
+                    if ( monitor.isCanceled() ) {
+                        throw new OperationCanceledException();
+                    }
+                    handOver( invoke( manager,
+                                      methods.get( i ),
+                                      calls.get( i ) ),
+                              results, returner, monitor );
+                }
+            }
+            else {
+                runInPool( manager, methods, calls,
+                           results, returner, monitor );
+            }
+        }
+        finally {
+            monitor.done();
+        }
+
+        if ( results.isEmpty() ) {
+            return results;
+        }
+        for ( Object o : results ) {
+            if ( !(o instanceof IBioObject) ) {
+                return results;
+            }
+        }
+        return new RecordableList( results );
+    }
+
+    private static void runInPool( final Object manager,
+                                   List<Method> methods,
+                                   List<Object[]> calls,
+                                   List<Object> results,
+                                   IReturner<Object> returner,
+                                   final IProgressMonitor monitor )
+                        throws BioclipseException {
+
+        final CallContext context = CallContext.fork( 
+            new NullProgressMonitor() {
+                @Override
+                public boolean isCanceled() {
+                    return monitor.isCanceled();
+                }
+            });
+        LinkedList<Future<Object>> started = new LinkedList<Future<Object>>();
+        int next = 0;
+        try {
+            while ( next < calls.size() || !started.isEmpty() ) {
+                while ( next < calls.size()
+                        && started.size() < CALLS_AHEAD ) {
+                    final Method method = methods.get( next );
+                    final Object[] args = calls.get( next++ );
+                    started.add( pool.submit( context.wrap( 
+                        new Callable<Object>() {
+                            public Object call() throws Exception {
+                                if ( context.isCanceled() ) {
+                                    throw new OperationCanceledException();
+                                }
+                                inPool.set( Boolean.TRUE );
+                                return invoke( manager, method, args );
+                            }
+                        })));
+                }
+                Object result = waitFor( started.getFirst(), monitor );
+                started.removeFirst();
+                handOver( result, results, returner, monitor );
+            }
+        }
+        finally {
+            for ( Future<Object> f : started ) {
+                f.cancel( true );
+            }
+        }
+    }
+
+    private static Object waitFor( Future<Object> future,
+                                   IProgressMonitor monitor )
+                          throws BioclipseException {
+        while ( true ) {
+            if ( monitor.isCanceled() ) {
+                throw new OperationCanceledException();
+            }
+            try {
+                return future.get( 100, TimeUnit.MILLISECONDS );
+            }
+            catch ( TimeoutException e ) {
+                continue;
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            }
+            catch ( ExecutionException e ) {
+                Throwable t = e.getCause();
+                if ( t instanceof BioclipseException ) {
+                    throw (BioclipseException) t;
+                }
+                if ( t instanceof OperationCanceledException ) {
+                    throw (OperationCanceledException) t;
+                }
+                if ( t instanceof RuntimeException ) {
+                    throw (RuntimeException) t;
+                }
+                throw new BioclipseException( t.getMessage(), t );
+            }
+        }
+    }
+
+    private static void handOver( Object result,
+                                  List<Object> results,
+                                  IReturner<Object> returner,
+                                  IProgressMonitor monitor ) {
+        if ( returner != null ) {
+            returner.partialReturn( result );
+        }
+        else {
+            results.add( result );
+        }
+        monitor.worked( 1 );
+    }
+
+    private static Method findMethod( List<Method> candidates,
+                                      Object[] args )
+                          throws BioclipseException {
+        for ( Method m : candidates ) {
+            if ( accepts( m, args ) ) {
+                return m;
+            }
+        }
+        throw new BioclipseException(
+            "Found no method called " + candidates.get( 0 ).getName()
+            + " taking " + args.length + " arguments of the given types" );
+    }
+
+    /*
+     * Replaces the Strings given for IFile parameters with the files they
+     * name, linking the files outside the workspace in one operation. The
+     * arguments given are left as they are.
+     */
+    private static void resolveFiles( List<Method> methods,
+                                      List<Object[]> calls )
+                        throws BioclipseException {
+
+        List<String> strings = new ArrayList<String>();
+        for ( int i = 0; i < calls.size(); i++ ) {
+            Class<?>[] types = methods.get( i ).getParameterTypes();
+            Object[] args = calls.get( i );
+            for ( int j = 0; j < types.length; j++ ) {
+                if ( types[j] == IFile.class && args[j] instanceof String ) {
+                    strings.add( (String) args[j] );
+                }
+            }
+        }
+        if ( strings.isEmpty() ) {
+            return;
+        }
+        Iterator<IFile> files;
+        try {
+            files = ResourcePathTransformer.getInstance()
+                                           .transformAll( strings )
+                                           .iterator();
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new BioclipseException( e.getMessage(), e );
+        }
+        for ( int i = 0; i < calls.size(); i++ ) {
+            Class<?>[] types = methods.get( i ).getParameterTypes();
+            Object[] args = calls.get( i );
+            Object[] original = args;
+            for ( int j = 0; j < types.length; j++ ) {
+                if ( types[j] == IFile.class && args[j] instanceof String ) {
+                    if ( args == original ) {
+                        args = args.clone();
+                        calls.set( i, args );
+                    }
+                    args[j] = files.next();
+                }
+            }
+        }
+    }
+
+    private static Object invoke( Object manager,
+                                  Method method,
+                                  Object[] args )
+                          throws BioclipseException {
+        try {
+            Object result = method.invoke( manager, args );
+            if ( result instanceof BioclipseJob ) {
+                BioclipseJob<?> job = (BioclipseJob<?>) result;
+                job.join();
+                result = job.getReturnValue();
+                if ( result instanceof Throwable ) {
+                    throw new InvocationTargetException( (Throwable) result );
+                }
+            }
+            return result;
+        }
+        catch ( InvocationTargetException e ) {
+            Throwable t = e.getCause();
+            while ( t != null ) {
+                if ( t instanceof BioclipseException ) {
+                    throw (BioclipseException) t;
+                }
+                if ( t instanceof OperationCanceledException ) {
+                    throw (OperationCanceledException) t;
+                }
+                t = t.getCause();
+            }
+            throw new BioclipseException(
+                "Failed to run " + method.getName() + ": "
+                + e.getCause().getMessage(),
+                e.getCause() );
+        }
+        catch ( IllegalAccessException e ) {
+            throw new BioclipseException(
+                "Failed to run " + method.getName(), e );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        }
+    }
+
+    private static Object[] toArguments( Object item ) {
+        if ( item instanceof Object[] ) {
+            return (Object[]) item;
+        }
+        if ( item instanceof List && !(item instanceof IBioObject) ) {
+            return ( (List<?>) item ).toArray();
+        }
+        return new Object[] { item };
+    }
+
+    private static List<Method> findCandidates( Object manager,
+                                                String methodName ) {
+        List<Method> result = new ArrayList<Method>();
+        for ( Method m : manager.getClass().getMethods() ) {
+            if ( m.getName().equals( methodName ) ) {
+                result.add( m );
+            }
+        }
+        return result;
+    }
+
+    private static boolean accepts( Method m, Object[] args ) {
+        Class<?>[] types = m.getParameterTypes();
+        if ( types.length != args.length ) {
+            return false;
+        }
+        for ( int i = 0; i < types.length; i++ ) {
+            Object arg = args[i];
+            if ( arg == null ) {
+                if ( types[i].isPrimitive() ) {
+                    return false;
+                }
+                continue;
+            }
+            if ( types[i] == IFile.class && arg instanceof String ) {
+                continue;
+            }
+            if ( !box( types[i] ).isInstance( arg ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> box( Class<?> type ) {
+        if ( !type.isPrimitive() ) {
+            return type;
+        }
+        if ( type == int.class )     return Integer.class;
+        if ( type == double.class )  return Double.class;
+        if ( type == boolean.class ) return Boolean.class;
+        if ( type == long.class )    return Long.class;
+        if ( type == float.class )   return Float.class;
+        if ( type == short.class )   return Short.class;
+        if ( type == byte.class )    return Byte.class;
+        return Character.class;
+    }
+}
@@ -0,0 +1,435 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.bioclipse.jobs.BioclipseFuture;
+import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobUpdateHook;
+import net.bioclipse.jobs.BioclipseUIJob;
+import net.bioclipse.jobs.ExtendedBioclipseJob;
+import net.bioclipse.jobs.IReturner;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Everything the manager method dispatchers need to know about how to run a
+ * call to a manager method. A plan is resolved once per manager class and
+ * called method and then reused for every later call, so that the
+ * reflection needed to find the method to run and to inspect the parameter
+ * types is only done the first time a method is called.
+ * <p>
+ * The plans refer to the manager classes, so the core plugin clears them
+ * with {@link #clearCache()} when a bundle is stopped. Otherwise the
+ * classes of an updated bundle and its class loader would be kept.
+ *
+ * @author agent
+ */
+public class DispatchPlan {
+
+    private static final
+        ConcurrentMap<Class<?>, ConcurrentMap<Method, DispatchPlan>> plans
+            = new ConcurrentHashMap<Class<?>,
+                                    ConcurrentMap<Method, DispatchPlan>>();
+
+    private final Method   methodCalled;
+    private final Method   methodToRun;
+    private final boolean  guiAction;
+    private final boolean  memoized;
+    private final boolean  runInSameThread;
+    private final boolean  runAsJob;
+    private final boolean  extended;
+    private final boolean  returnsString;
+    private final boolean  returnsFuture;
+    private final int      returnerIndex;
+    private final int      monitorIndex;
+    private final int      uiJobIndex;
+    private final int      updateHookIndex;
+    private final int      returnerArgumentIndex;
+    private final boolean[] fileParameters;
+    private final boolean  convertsFiles;
+    private volatile ManagerMethodInvoker invoker;
+    private volatile MethodStatistics     statistics;
+
+    private DispatchPlan( Class<?> managerClass, Method methodCalled ) {
+
+        this.methodCalled = methodCalled;
+        this.methodToRun  = findMethodToRun( managerClass, methodCalled );
+
+        Class<?>[] calledParams = methodCalled.getParameterTypes();
+        Class<?>[] targetParams = methodToRun.getParameterTypes();
+        Class<?>   returnType   = methodCalled.getReturnType();
+
+        uiJobIndex      = indexOf( calledParams, BioclipseUIJob.class );
+        updateHookIndex = indexOf( calledParams,
+                                   BioclipseJobUpdateHook.class );
+        int returnerArgument = -1;
+        for ( int i = 0; i < calledParams.length; i++ ) {
+            if ( IReturner.class.isAssignableFrom( calledParams[i] ) ) {
+                returnerArgument = i;
+            }
+        }
+        returnerArgumentIndex = returnerArgument;
+        returnerIndex   = indexOf( targetParams, IReturner.class );
+        monitorIndex    = indexOf( targetParams, IProgressMonitor.class );
+
+        fileParameters = new boolean[targetParams.length];
+        boolean files = false;
+        for ( int i = 0; i < targetParams.length; i++ ) {
+            fileParameters[i] = targetParams[i] == IFile.class;
+            files |= fileParameters[i];
+        }
+        convertsFiles = files;
+
+        guiAction = methodCalled.getAnnotation( GuiAction.class ) != null;
+        returnsFuture = returnType == BioclipseFuture.class;
+        runInSameThread
+            = ( !BioclipseJob.class.isAssignableFrom( returnType )
+                && returnType != void.class 
+                && !returnsFuture )
+              || indexOf( calledParams, IProgressMonitor.class ) != -1;
+        runAsJob = monitorIndex != -1
+                   && ( returnType == void.class
+                        || returnType == BioclipseJob.class
+                        || returnType == ExtendedBioclipseJob.class
+                        || returnsFuture );
+        extended      = returnType == ExtendedBioclipseJob.class;
+        returnsString = returnType == String.class;
+        memoized = methodCalled.getAnnotation( Memoized.class ) != null
+                   && !guiAction
+                   && runInSameThread
+                   && returnType != void.class
+                   && uiJobIndex == -1
+                   && returnerArgumentIndex == -1;
+    }
+
+    /**
+     * @param invocation a call to a manager method
+     * @return the plan for running the given call, resolving it if this is
+     *         the first time the called method is invoked on a manager of
+     *         this class
+     */
+    public static DispatchPlan forInvocation( MethodInvocation invocation ) {
+        return forMethod( invocation.getThis().getClass(),
+                          invocation.getMethod() );
+    }
+
+    /**
+     * @param managerClass the class of the manager implementation
+     * @param methodCalled the method called on the manager interface
+     * @return the plan for running the method
+     */
+    public static DispatchPlan forMethod( Class<?> managerClass,
+                                          Method methodCalled ) {
+
+        ConcurrentMap<Method, DispatchPlan> classPlans
+            = plans.get( managerClass );
+        if ( classPlans == null ) {
+            classPlans = new ConcurrentHashMap<Method, DispatchPlan>();
+            ConcurrentMap<Method, DispatchPlan> existing
+                = plans.putIfAbsent( managerClass, classPlans );
+            if ( existing != null ) {
+                classPlans = existing;
+            }
+        }
+        DispatchPlan plan = classPlans.get( methodCalled );
+        if ( plan == null ) {
+            // Resolving twice in a race is harmless, the plans are equal
+            plan = new DispatchPlan( managerClass, methodCalled );
+            DispatchPlan existing
+                = classPlans.putIfAbsent( methodCalled, plan );
+            if ( existing != null ) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Forgets all plans. They are resolved again when next needed.
+     */
+    public static void clearCache() {
+        plans.clear();
+    }
+
+    private static int indexOf( Class<?>[] types, Class<?> type ) {
+        for ( int i = 0; i < types.length; i++ ) {
+            if ( types[i] == type ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the invoker bound to the method to run, created the first 
+     *         time it is asked for
+     */
+    public ManagerMethodInvoker getInvoker() {
+        ManagerMethodInvoker result = invoker;
+        if ( result == null ) {
+            result = new ManagerMethodInvoker( this );
+            invoker = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param manager the manager the method is called on
+     * @return the statistics to record calls of the method to
+     */
+    public MethodStatistics getStatistics( IBioclipseManager manager ) {
+        MethodStatistics result = statistics;
+        if ( result == null ) {
+            result = ManagerMethodStatistics.getInstance().getStatistics( 
+                         manager.getManagerName(), methodCalled.getName() );
+            statistics = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the method called on the manager interface
+     */
+    public Method getMethodCalled() {
+        return methodCalled;
+    }
+
+    /**
+     * @return the method on the manager implementation that should be run
+     */
+    public Method getMethodToRun() {
+        return methodToRun;
+    }
+
+    /**
+     * @return whether the called method is annotated with
+     *         <code>@GuiAction</code> and should be run in the gui thread
+     */
+    public boolean isGuiAction() {
+        return guiAction;
+    }
+
+    /**
+     * @return whether the called method is annotated with
+     *         <code>@Memoized</code> and returns its result in the calling
+     *         thread so that the result can be reused
+     */
+    public boolean isMemoized() {
+        return memoized;
+    }
+
+    /**
+     * @return whether the call should be run in the calling thread, that
+     *         is whether the called method neither is void nor returns a
+     *         BioclipseJob, or whether it takes a progress monitor itself
+     */
+    public boolean runsInSameThread() {
+        return runInSameThread;
+    }
+
+    /**
+     * @return whether the method to run takes a progress monitor and the
+     *         called method is void or returns a BioclipseJob so that the
+     *         call can be run as a job
+     */
+    public boolean runsAsJob() {
+        return runAsJob;
+    }
+
+    /**
+     * @return whether the called method returns an ExtendedBioclipseJob
+     *         which should not be scheduled by the dispatcher
+     */
+    public boolean isExtended() {
+        return extended;
+    }
+
+    /**
+     * @return whether the called method returns a BioclipseFuture for the
+     *         job running the call
+     */
+    public boolean returnsFuture() {
+        return returnsFuture;
+    }
+
+    /**
+     * @return whether the called method returns a String so that a returned
+     *         IFile should be given as its path
+     */
+    public boolean returnsString() {
+        return returnsString;
+    }
+
+    /**
+     * @return whether the method to run takes a progress monitor
+     */
+    public boolean takesMonitor() {
+        return monitorIndex != -1;
+    }
+
+    /**
+     * @return whether the method to run takes an IReturner
+     */
+    public boolean takesReturner() {
+        return returnerIndex != -1;
+    }
+
+    /**
+     * @return position of the IReturner among the parameters of the method
+     *         to run or -1 if there is none
+     */
+    public int getReturnerIndex() {
+        return returnerIndex;
+    }
+
+    /**
+     * @return position of the IProgressMonitor among the parameters of the
+     *         method to run or -1 if there is none
+     */
+    public int getMonitorIndex() {
+        return monitorIndex;
+    }
+
+    /**
+     * @return position of the BioclipseUIJob among the parameters of the
+     *         called method or -1 if there is none
+     */
+    public int getUIJobIndex() {
+        return uiJobIndex;
+    }
+
+    /**
+     * @return position of the BioclipseJobUpdateHook among the parameters of
+     *         the called method or -1 if there is none
+     */
+    public int getUpdateHookIndex() {
+        return updateHookIndex;
+    }
+
+    /**
+     * @return position of the last parameter of the called method taking an
+     *         IReturner, for example a BioclipseJobUpdateHook, or -1 if 
+     *         there is none
+     */
+    public int getReturnerArgumentIndex() {
+        return returnerArgumentIndex;
+    }
+
+    /**
+     * @param index position among the parameters of the method to run
+     * @return whether a String given at that position should be transformed
+     *         to an IFile
+     */
+    public boolean isFileParameter( int index ) {
+        return index < fileParameters.length && fileParameters[index];
+    }
+
+    /**
+     * @return whether any of the parameters of the method to run is an IFile
+     */
+    public boolean convertsFiles() {
+        return convertsFiles;
+    }
+
+    private static Method findMethodToRun( Class<?> managerClass,
+                                           Method refMethod ) {
+
+        Method result;
+
+        //If a method with the same signature exists use that one
+        try {
+            result = managerClass.getMethod( refMethod.getName(),
+                                             refMethod.getParameterTypes() );
+        }
+        catch ( SecurityException e ) {
+            throw new RuntimeException("Failed to find the method to run", e);
+        }
+        catch ( NoSuchMethodException e ) {
+            result = null;
+        }
+        if ( result != null ) {
+            return result;
+        }
+
+        //Look for "the JavaScript method" (taking String instead of IFile)
+        //If there are more than one, prefer the one taking an IReturner when 
+        //the called method takes something to return to
+        Class<?>[] refParams = refMethod.getParameterTypes();
+        boolean wantsReturner = false;
+        for ( Class<?> c : refParams ) {
+            wantsReturner |= IReturner.class.isAssignableFrom( c );
+        }
+        Method found = null;
+        METHODS:
+        for ( Method m : managerClass.getMethods() ) {
+            Class<?>[] mParams = m.getParameterTypes();
+            int refLength = refParams.length;
+            int mLength   = mParams.length;
+            if ( m.getName().equals( refMethod.getName() ) &&
+                  mLength >= refLength &&
+                  mLength <= refLength + 2 ) {
+                PARAMS:
+                for ( int i = 0, j = 0; i < mParams.length; i++ ) {
+                    Class<?> currentParam = mParams[i];
+                    if ( currentParam == IReturner.class ) {
+                        continue PARAMS;
+                    }
+                    if ( refParams.length >= j + 1 &&
+                         ( refParams[j] == BioclipseUIJob.class  ||
+                           refParams[j] == BioclipseJobUpdateHook.class ) ) {
+                        j++;
+                    }
+                    if ( currentParam == IProgressMonitor.class &&
+                         // can only skip if there is nothing
+                         // corresponding in the refMethods parameter types.
+                         refParams.length < j + 1 ) {
+                        continue PARAMS;
+                    }
+                    if ( refParams.length <= j ) {
+                        continue METHODS;
+                    }
+                    Class<?> refParam = refParams[j++];
+                    if ( currentParam == refParam ) {
+                        continue PARAMS;
+                    }
+                    if ( currentParam == IFile.class &&
+                         refParam == String.class ) {
+                        continue PARAMS;
+                    }
+                    continue METHODS;
+                }
+                if ( ( indexOf( mParams, IReturner.class ) != -1 ) 
+                     == wantsReturner ) {
+                    return m;
+                }
+                if ( found == null ) {
+                    found = m;
+                }
+            }
+        }
+        if ( found != null ) {
+            return found;
+        }
+
+        throw new RuntimeException(
+            "Failed to find a method to run on "
+            + managerClass + " that could correspond to " + refMethod );
+    }
+}
@@ -1,24 +1,19 @@
 package net.bioclipse.managers.business;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
-import net.bioclipse.core.IResourcePathTransformer;
-import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobScheduler;
 import net.bioclipse.jobs.BioclipseJobUpdateHook;
 import net.bioclipse.jobs.BioclipseUIJob;
 import net.bioclipse.jobs.ExtendedBioclipseJob;
-import net.bioclipse.jobs.IReturner;
+import net.bioclipse.managers.CallContext;
 import net.bioclipse.managers.business.AbstractManagerMethodDispatcher.ReturnCollector;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.log4j.Logger;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResourceRuleFactory;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -37,8 +32,6 @@ import org.eclipse.swt.widgets.Display;
 public class JavaManagerMethodDispatcher 
        extends AbstractManagerMethodDispatcher {
 
-    IResourcePathTransformer transformer 
-        = ResourcePathTransformer.getInstance();
     private Logger logger 
         = Logger.getLogger( JavaManagerMethodDispatcher.class );
     
@@ -50,91 +43,47 @@ public class JavaManagerMethodDispatcher
                             boolean notExtended) 
                   throws BioclipseException {
 
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) &&
-             ( invocation.getMethod()
-                         .getReturnType() == void.class || 
-               invocation.getMethod()
-                         .getReturnType() == BioclipseJob.class ||
-               invocation.getMethod()
-                         .getReturnType() == ExtendedBioclipseJob.class ) ) {
-            
-            return runAsJob(manager, method, arguments, invocation, notExtended);
+        DispatchPlan plan 
+            = DispatchPlan.forMethod( manager.getClass(), 
+                                      invocation.getMethod() );
+        if ( !plan.runsAsJob() && isStreaming( plan, arguments ) ) {
+            return runStreaming( manager, method, arguments, invocation );
+        }
+        if ( plan.runsAsJob() ) {
+            return runAsJob( manager, method, arguments, invocation, 
+                             notExtended, plan );
         }
         
-        return runInSameThread(manager, method, arguments);
+        return runInSameThread( manager, method, arguments, plan );
     }
 
     private Object runInSameThread( IBioclipseManager manager, Method method,
-                                    Object[] arguments ) 
+                                    Object[] arguments, DispatchPlan plan ) 
                    throws BioclipseException {
 
-        //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
-                arguments[i] = transformer.transform( (String)arguments[i] );
-            }
-        }
-        
-        List<Object> args = new ArrayList<Object>( Arrays.asList( arguments ) );
-        
-        boolean doingPartialReturns = false;
-        ReturnCollector returnCollector = new ReturnCollector();
-        
-        //add partial returner if needed
-        for ( Class<?> param : method.getParameterTypes() ) {
-            if ( param.isAssignableFrom( IReturner.class ) ) {
-                doingPartialReturns = true;
-                args.add( returnCollector );
-            }
-        }
-        
-        //remove partial returner if needed
-        if ( !doingPartialReturns ) {
-            int toBeremoved = -1;
-            for ( int i = 0; i < arguments.length; i++ ) {
-                if ( args.get(i) instanceof IReturner ) {
-                    toBeremoved = i;
-                }
-            }
-            if ( toBeremoved != -1 ) {
-                args.remove( toBeremoved );
-            }
+        ReturnCollector returnCollector = null;
+        if ( plan.takesReturner() ) {
+            returnCollector = new ReturnCollector();
         }
         
-        //Add a NullProgressMonitor if needed
-        if ( Arrays.asList( method.getParameterTypes() )
-                   .contains( IProgressMonitor.class ) &&
-             !Arrays.asList( arguments ).contains( IProgressMonitor.class ) ) {
-            
-            args.add( new NullProgressMonitor() );
-        }
-        
-        //Remove BioclipseUiJob if there
         BioclipseUIJob<Object> uiJob = null;
-        for ( Object o : args ) {
-            if ( o instanceof BioclipseUIJob ) {
-                uiJob = (BioclipseUIJob<Object>) o;
-            }
-        }
-        if ( uiJob != null ) {
-            args.remove( uiJob );
+        if ( plan.getUIJobIndex() != -1 ) {
+            uiJob = (BioclipseUIJob<Object>) arguments[ plan.getUIJobIndex() ];
         }
 
-        arguments = args.toArray();
         Object returnValue = null;
         try {
-            if ( doingPartialReturns ) {
-                method.invoke( manager, arguments );
+            returnValue = plan.getInvoker().invoke( 
+                              manager, 
+                              arguments, 
+                              returnCollector,
+                              plan.takesMonitor() ? monitor() : null );
+            if ( returnCollector != null ) {
                 returnValue = returnCollector.getReturnValue();
                 if ( returnValue == null ) {
                     returnValue = returnCollector.getReturnValues();
                 }
             }
-            else {
-                returnValue = method.invoke( manager, arguments );
-            }
         } 
         catch ( Exception e ) {
             Throwable t = e;
@@ -161,18 +110,27 @@ public class JavaManagerMethodDispatcher
         return returnValue;
     }
 
+    /*
+     * The monitor of the context the call is made in, if any
+     */
+    private static IProgressMonitor monitor() {
+        CallContext context = CallContext.current();
+        return context != null ? context.getMonitor() 
+                               : new NullProgressMonitor();
+    }
+
     private Object runAsJob( IBioclipseManager manager, 
                              Method method,
                              Object[] arguments, 
                              MethodInvocation invocation, 
-                             boolean notExtended ) {
+                             boolean notExtended,
+                             DispatchPlan plan ) {
 
         //find update hook
         BioclipseJobUpdateHook hook = null;
-        for ( Object argument : arguments ) {
-            if ( argument instanceof BioclipseJobUpdateHook ) {
-                hook = (BioclipseJobUpdateHook) argument;
-            }
+        if ( plan.getUpdateHookIndex() != -1 ) {
+            hook = (BioclipseJobUpdateHook) 
+                   arguments[ plan.getUpdateHookIndex() ];
         }
         BioclipseJob<?> job;
         if ( notExtended ) {
@@ -194,9 +152,9 @@ public class JavaManagerMethodDispatcher
                
         job.setUser( false );
         if ( notExtended ) {
-            job.schedule();
+            job = BioclipseJobScheduler.getInstance().schedule( job );
         }
-        return job;
+        return plan.returnsFuture() ? job.getFuture() : job;
     }
 
     @Override
@@ -205,18 +163,17 @@ public class JavaManagerMethodDispatcher
                                           final Object[] arguments,
                                           final MethodInvocation invocation ) {
 
-        //translate String -> IFile
-        for ( int i = 0; i < arguments.length; i++ ) {
-            if ( arguments[i] instanceof String &&
-                 method.getParameterTypes()[i] == IFile.class ) {
-                arguments[i] = transformer.transform( (String)arguments[i] );
-            }
-        }
+        final ManagerMethodInvoker invoker 
+            = DispatchPlan.forInvocation( invocation ).getInvoker();
+        // String -> IFile may create links, so not in the ui thread
+        final Object[] runArguments = invoker.arguments( arguments, 
+                                                         null, 
+                                                         null );
         Display.getDefault().asyncExec( new Runnable() {
 
             public void run() {
                 try {
-                    method.invoke( manager, arguments );
+                    invoker.invokeWith( manager, runArguments );
                 } catch ( Exception e ) {
                     Throwable root = LogUtils.findRootOrBioclipseException( e ); 
                     LogUtils.handleException( 
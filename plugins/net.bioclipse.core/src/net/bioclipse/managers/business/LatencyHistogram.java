@@ -0,0 +1,152 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations that can be recorded to from many threads at once
+ * without locking. Durations are counted in microseconds in logarithmic
+ * buckets, each power of two being split in 16 linear sub buckets, so that
+ * the percentiles given are never more than about 6% off while the whole
+ * histogram takes a fixed amount of memory.
+ *
+ * @author agent
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT    = 42;
+    private static final long MAX_VALUE      = ( 1L << ( MAX_EXPONENT + 1 ) )
+                                               - 1;
+    private static final int BUCKETS
+        = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record( long nanos ) {
+        long micros = Math.min( Math.max( nanos / 1000, 0 ), MAX_VALUE );
+        counts.incrementAndGet( bucketOf( micros ) );
+        total.addAndGet( micros );
+        long currentMax = max.get();
+        while ( micros > currentMax
+                && !max.compareAndSet( currentMax, micros ) ) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        long count = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            count += counts.get( i );
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of all recorded durations in microseconds
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return the longest recorded duration in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded durations in microseconds or 0 if
+     *         nothing has been recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total.get() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration in microseconds that the given percentage of the
+     *         recorded durations are shorter than or equal to, or 0 if
+     *         nothing has been recorded
+     */
+    public long getPercentile( double percentile ) {
+        if ( percentile < 0 || percentile > 100 ) {
+            throw new IllegalArgumentException(
+                "Percentile must be between 0 and 100, was: " + percentile );
+        }
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            snapshot[i] = counts.get( i );
+            count += snapshot[i];
+        }
+        if ( count == 0 ) {
+            return 0;
+        }
+        long wanted = Math.max( 1, (long) Math.ceil( percentile / 100 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= wanted ) {
+                return Math.min( highestValueIn( i ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            counts.set( i, 0 );
+        }
+        total.set( 0 );
+        max.set( 0 );
+    }
+
+    static int bucketOf( long micros ) {
+        if ( micros < SUB_BUCKETS ) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( micros );
+        int subBucket = (int) ( micros >>> ( exponent - SUB_BUCKET_BITS ) )
+                        & ( SUB_BUCKETS - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn( int bucket ) {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << shift;
+        return lowest + ( 1L << shift ) - 1;
+    }
+}
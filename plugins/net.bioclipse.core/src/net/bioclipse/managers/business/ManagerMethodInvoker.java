@@ -0,0 +1,193 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bioclipse.core.IResourcePathTransformer;
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.jobs.IReturner;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Invokes a resolved manager method. The invoker is bound once per
+ * {@link DispatchPlan} and knows, for every parameter of the method to run,
+ * where the value comes from: one of the arguments of the called method, the
+ * IReturner or the IProgressMonitor injected by the dispatcher. Any
+ * BioclipseUIJob, and any update hook the method to run can not take, are
+ * left out. This way the arguments for a call are put directly into an array
+ * of the right size instead of being shuffled around in a list on every call.
+ *
+ * @author agent
+ */
+public class ManagerMethodInvoker {
+
+    private static final int RETURNER = -1;
+    private static final int MONITOR  = -2;
+
+    private final Method       method;
+    private final int[]        sources;
+    private final boolean[]    fileArguments;
+    private final DispatchPlan plan;
+
+    ManagerMethodInvoker( DispatchPlan plan ) {
+
+        this.plan   = plan;
+        this.method = plan.getMethodToRun();
+        try {
+            method.setAccessible( true );
+        }
+        catch ( SecurityException e ) {
+            // Fall back to access checked invocation
+        }
+
+        int calledLength = plan.getMethodCalled().getParameterTypes().length;
+        int targetLength = method.getParameterTypes().length;
+        List<Integer> s = new ArrayList<Integer>( targetLength );
+        int j = nextArgument( 0, calledLength );
+        for ( int i = 0; i < targetLength; i++ ) {
+            if ( i == plan.getReturnerIndex() ) {
+                s.add( RETURNER );
+            }
+            else if ( i == plan.getMonitorIndex() && j >= calledLength ) {
+                s.add( MONITOR );
+            }
+            else {
+                s.add( j );
+                j = nextArgument( j + 1, calledLength );
+            }
+        }
+        sources = new int[s.size()];
+        fileArguments = new boolean[calledLength];
+        for ( int i = 0; i < sources.length; i++ ) {
+            sources[i] = s.get( i );
+            if ( sources[i] >= 0 && plan.isFileParameter( i ) ) {
+                fileArguments[sources[i]] = true;
+            }
+        }
+    }
+
+    /*
+     * Skips the arguments that are handled by the dispatcher and never 
+     * passed on to the method to run
+     */
+    private int nextArgument( int from, int calledLength ) {
+        int j = from;
+        while ( j < calledLength
+                && ( j == plan.getUIJobIndex()
+                     || j == plan.getReturnerArgumentIndex() ) ) {
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * Builds the arguments for the method to run. Strings given for IFile
+     * parameters are transformed to IFiles.
+     *
+     * @param arguments the arguments the called method was called with
+     * @param returner the returner to pass if the method takes one
+     * @param monitor the monitor to pass if the method takes one
+     * @return arguments for the method to run
+     */
+    public Object[] arguments( Object[] arguments,
+                               IReturner<?> returner,
+                               IProgressMonitor monitor ) {
+
+        Object[] result = new Object[sources.length];
+        for ( int i = 0; i < sources.length; i++ ) {
+            int source = sources[i];
+            if ( source >= 0 ) {
+                result[i] = arguments[source];
+            }
+            else if ( source == RETURNER ) {
+                result[i] = returner;
+            }
+            else {
+                result[i] = monitor;
+            }
+        }
+        if ( plan.convertsFiles() ) {
+            IResourcePathTransformer transformer
+                = ResourcePathTransformer.getInstance();
+            for ( int i = 0; i < result.length; i++ ) {
+                if ( result[i] instanceof String
+                     && plan.isFileParameter( i ) ) {
+                    result[i] = transformer.transform( (String) result[i] );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the method on the given manager.
+     *
+     * @param manager the manager to run the method on
+     * @param arguments the arguments the called method was called with
+     * @param returner the returner to pass if the method takes one
+     * @param monitor the monitor to pass if the method takes one
+     * @return the value returned by the method
+     * @throws InvocationTargetException if the method threw an exception
+     * @throws IllegalAccessException if the method could not be accessed
+     */
+    public Object invoke( Object manager,
+                          Object[] arguments,
+                          IReturner<?> returner,
+                          IProgressMonitor monitor )
+                  throws InvocationTargetException,
+                         IllegalAccessException {
+
+        return method.invoke( manager,
+                              arguments( arguments, returner, monitor ) );
+    }
+
+    /**
+     * Runs the method with arguments already built by
+     * {@link #arguments(Object[], IReturner, IProgressMonitor)}, so that
+     * they can be built in another thread.
+     *
+     * @param manager the manager to run the method on
+     * @param runArguments the arguments for the method to run
+     * @return the value returned by the method
+     * @throws InvocationTargetException if the method threw an exception
+     * @throws IllegalAccessException if the method could not be accessed
+     */
+    public Object invokeWith( Object manager, Object[] runArguments )
+                  throws InvocationTargetException,
+                         IllegalAccessException {
+
+        return method.invoke( manager, runArguments );
+    }
+
+    /**
+     * @param index position among the arguments of the called method
+     * @return whether the argument at that position is passed to an IFile
+     *         parameter of the method to run
+     */
+    public boolean isFileArgument( int index ) {
+        return index < fileArguments.length && fileArguments[index];
+    }
+
+    /**
+     * @return the method to run
+     */
+    public Method getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,120 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A singleton keeping the {@link MethodStatistics} for all manager methods
+ * that have been called. The manager method dispatchers and the jobs they
+ * create record to it as the calls finish. Methods with
+ * {@link GuiAction} are left out, since their calls are only posted to the
+ * ui thread.
+ *
+ * @author agent
+ */
+public class ManagerMethodStatistics {
+
+    private static ManagerMethodStatistics _instance 
+        = new ManagerMethodStatistics();
+
+    private final ConcurrentMap<String, MethodStatistics> statistics
+        = new ConcurrentHashMap<String, MethodStatistics>();
+
+    private ManagerMethodStatistics() {
+    }
+
+    public static ManagerMethodStatistics getInstance() {
+        return _instance;
+    }
+
+    /**
+     * @param name of the method, e.g. <code>ui.open</code>
+     * @return the statistics for the method with the given name, created if
+     *         the method has not been seen before
+     */
+    public MethodStatistics getStatistics( String name ) {
+        MethodStatistics result = statistics.get( name );
+        if ( result == null ) {
+            result = new MethodStatistics( name );
+            MethodStatistics existing = statistics.putIfAbsent( name, result );
+            if ( existing != null ) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param managerName name of the manager
+     * @param methodName name of the method
+     * @return the statistics for the given method of the given manager
+     */
+    public MethodStatistics getStatistics( String managerName, 
+                                           String methodName ) {
+        return getStatistics( managerName + "." + methodName );
+    }
+
+    /**
+     * @return the statistics for all methods that have been called, sorted
+     *         by name
+     */
+    public List<MethodStatistics> getAll() {
+        List<MethodStatistics> result = new ArrayList<MethodStatistics>();
+        for ( MethodStatistics s : statistics.values() ) {
+            if ( s.getCalls() > 0 ) {
+                result.add( s );
+            }
+        }
+        Collections.sort( result, new Comparator<MethodStatistics>() {
+            public int compare( MethodStatistics o1, MethodStatistics o2 ) {
+                return o1.getName().compareTo( o2.getName() );
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param n the number of methods to return
+     * @return the <code>n</code> methods that have taken the most time in 
+     *         total, the most expensive first
+     */
+    public List<MethodStatistics> getTop( int n ) {
+        List<MethodStatistics> result = getAll();
+        Collections.sort( result, new Comparator<MethodStatistics>() {
+            public int compare( MethodStatistics o1, MethodStatistics o2 ) {
+                long t1 = o1.getLatencies().getTotal();
+                long t2 = o2.getLatencies().getTotal();
+                return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+            }
+        });
+        return result.subList( 0, Math.max( 0, Math.min( n, result.size() ) ) );
+    }
+
+    /**
+     * Forgets everything recorded so far. The statistics objects are kept
+     * and reset so that anyone holding on to one keeps recording to the 
+     * registry.
+     */
+    public void reset() {
+        for ( MethodStatistics s : statistics.values() ) {
+            s.reset();
+        }
+    }
+}
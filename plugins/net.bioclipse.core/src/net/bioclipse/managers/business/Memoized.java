@@ -0,0 +1,36 @@
+/* *****************************************************************************
+ * Copyright (c) 2008-2009 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>.
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a manager method whose result only depends on its arguments, and
+ * on the contents of any files given to it, so that the manager method
+ * dispatchers can reuse the result of an earlier call with equal arguments
+ * instead of running the method again. Every caller gets its own copy of
+ * a returned array or collection, but the objects in it are shared so they
+ * should not be changed.
+ * <p>
+ * Only methods run in the calling thread, that is methods not returning
+ * jobs and not taking anything to return to, are memoized.
+ *
+ * @see ResultCache
+ * @author agent
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Memoized {
+}
@@ -0,0 +1,102 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput figures for one manager method, named like it is
+ * called from the JavaScript console, e.g. <code>ui.open</code>. Overloaded
+ * methods share their statistics.
+ *
+ * @author agent
+ */
+public class MethodStatistics {
+
+    private final String           name;
+    private final AtomicLong       errors     = new AtomicLong();
+    private final LatencyHistogram latencies  = new LatencyHistogram();
+    private final LatencyHistogram queueTimes = new LatencyHistogram();
+
+    MethodStatistics( String name ) {
+        this.name = name;
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param nanos how long the call took in nanoseconds
+     * @param failed whether the call ended with an exception
+     */
+    public void recordCall( long nanos, boolean failed ) {
+        latencies.record( nanos );
+        if ( failed ) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records how long a call run as a job waited between being scheduled
+     * and starting to run.
+     *
+     * @param nanos the waiting time in nanoseconds
+     */
+    public void recordQueued( long nanos ) {
+        queueTimes.record( nanos );
+    }
+
+    /**
+     * @return the name of the method, e.g. <code>ui.open</code>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of finished calls
+     */
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    /**
+     * @return the number of calls that ended with an exception
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the durations of the finished calls
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return the times calls run as jobs waited before they started
+     */
+    public LatencyHistogram getQueueTimes() {
+        return queueTimes;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        errors.set( 0 );
+        latencies.reset();
+        queueTimes.reset();
+    }
+}
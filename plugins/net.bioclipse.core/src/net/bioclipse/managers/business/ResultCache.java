@@ -0,0 +1,502 @@
+/* *****************************************************************************
+ * Copyright (c) 2009 The Bioclipse Project and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ * Contact: http://www.bioclipse.net/
+ ******************************************************************************/
+package net.bioclipse.managers.business;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.bioclipse.core.ResourcePathTransformer;
+import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.RecordableList;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Holds the results of calls to {@link Memoized} manager methods. A result
+ * is looked up by the method called and its arguments, where an IFile, or a
+ * String given for one, counts as its path together with its modification
+ * stamp so that a changed file never gives an old result. Results computed
+ * from files that are changed or removed in the workspace are dropped.
+ * Building a key never changes the workspace, a String naming a file that
+ * is not linked into it yet counts as the file's location and time of last
+ * change.
+ * <p>
+ * Arrays and collections are copied both as arguments in a key and as
+ * results, so that neither the caller nor the cache can change what the
+ * other holds. The objects in them are shared.
+ * <p>
+ * The cache holds a limited number of results and drops the least recently
+ * used one when full. It is split in independently locked segments so that
+ * calls in different threads seldom wait for each other.
+ *
+ * @author agent
+ */
+public class ResultCache implements IResourceChangeListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /**
+     * Returned by {@link #get(Key)} when there is no result for the key,
+     * as <code>null</code> may be a result.
+     */
+    public static final Object MISSING = new Object();
+
+    private static final Object NULL     = new Object();
+    private static final int    SEGMENTS = 16;
+
+    private static final Logger logger = Logger.getLogger( ResultCache.class );
+
+    private static ResultCache instance;
+
+    private final Segment[] segments;
+    private final ConcurrentMap<IPath, Set<Key>> keysByFile
+        = new ConcurrentHashMap<IPath, Set<Key>>();
+
+    private final AtomicLong hits          = new AtomicLong();
+    private final AtomicLong misses        = new AtomicLong();
+    private final AtomicLong evictions     = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @return the cache used by the manager method dispatchers, listening
+     *         for changes in the workspace
+     */
+    public static synchronized ResultCache getInstance() {
+        if ( instance == null ) {
+            instance = new ResultCache( DEFAULT_MAX_ENTRIES );
+            try {
+                IWorkspace workspace = ResourcesPlugin.getWorkspace();
+                if ( workspace != null ) {
+                    workspace.addResourceChangeListener(
+                        instance, IResourceChangeEvent.POST_CHANGE );
+                }
+            }
+            catch ( IllegalStateException e ) {
+                logger.debug( "No workspace to listen to", e );
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxEntries the number of results to hold at most
+     */
+    public ResultCache( int maxEntries ) {
+        if ( maxEntries < 1 ) {
+            throw new IllegalArgumentException(
+                "The cache must be able to hold at least one result" );
+        }
+        int n = Math.min( SEGMENTS, maxEntries );
+        segments = new Segment[n];
+        for ( int i = 0; i < n; i++ ) {
+            // spread any remainder over the first segments
+            segments[i] = new Segment( maxEntries / n
+                                       + ( i < maxEntries % n ? 1 : 0 ) );
+        }
+    }
+
+    /**
+     * Builds the key for a call.
+     *
+     * @param manager the manager called
+     * @param plan the plan for the called method
+     * @param arguments the arguments the called method was called with
+     * @return the key or <code>null</code> if a String given for an IFile
+     *         names no file, in which case the call should not be
+     *         memoized
+     */
+    public Key keyFor( IBioclipseManager manager,
+                       DispatchPlan plan,
+                       Object[] arguments ) {
+
+        ManagerMethodInvoker invoker = plan.getInvoker();
+        Object[] values = new Object[arguments.length];
+        List<IPath> files = null;
+        for ( int i = 0; i < arguments.length; i++ ) {
+            Object argument = arguments[i];
+            if ( argument instanceof IProgressMonitor ) {
+                continue;
+            }
+            IFile file = null;
+            if ( argument instanceof IFile ) {
+                file = (IFile) argument;
+            }
+            else if ( argument instanceof String
+                      && invoker.isFileArgument( i ) ) {
+                file = ResourcePathTransformer.getInstance()
+                                              .find( (String) argument );
+                if ( file == null ) {
+                    java.io.File localFile
+                        = new java.io.File( (String) argument );
+                    if ( !localFile.isFile() ) {
+                        return null;
+                    }
+                    values[i] = new FileStamp( localFile.getAbsolutePath(),
+                                               localFile.lastModified() );
+                    continue;
+                }
+            }
+            if ( file != null ) {
+                values[i] = new FileStamp( file.getFullPath(),
+                                           file.getModificationStamp() );
+                if ( files == null ) {
+                    files = new ArrayList<IPath>( 1 );
+                }
+                files.add( file.getFullPath() );
+            }
+            else {
+                values[i] = copyOf( argument );
+            }
+        }
+        return new Key( manager.getManagerName(),
+                        plan.getMethodCalled(),
+                        values,
+                        files );
+    }
+
+    /**
+     * @param key a key built by {@link #keyFor}
+     * @return the result for the key or {@link #MISSING}
+     */
+    public Object get( Key key ) {
+        Object result;
+        Segment segment = segmentFor( key );
+        synchronized ( segment ) {
+            result = segment.get( key );
+        }
+        if ( result == null ) {
+            misses.incrementAndGet();
+            return MISSING;
+        }
+        hits.incrementAndGet();
+        return result == NULL ? null : copyOf( result );
+    }
+
+    /**
+     * Stores a result, dropping the least recently used result if the cache
+     * is full.
+     *
+     * @param key a key built by {@link #keyFor}
+     * @param result the value returned by the call
+     */
+    public void put( Key key, Object result ) {
+        if ( key.files != null ) {
+            for ( IPath path : key.files ) {
+                Set<Key> keys = keysByFile.get( path );
+                if ( keys == null ) {
+                    keys = Collections.newSetFromMap(
+                               new ConcurrentHashMap<Key, Boolean>() );
+                    Set<Key> existing = keysByFile.putIfAbsent( path, keys );
+                    if ( existing != null ) {
+                        keys = existing;
+                    }
+                }
+                keys.add( key );
+            }
+        }
+        Segment segment = segmentFor( key );
+        synchronized ( segment ) {
+            segment.put( key, result == null ? NULL : copyOf( result ) );
+        }
+    }
+
+    /**
+     * Drops all results computed from the file with the given path.
+     *
+     * @param path full path of a file in the workspace
+     */
+    public void invalidate( IPath path ) {
+        Set<Key> keys = keysByFile.remove( path );
+        if ( keys == null ) {
+            return;
+        }
+        for ( Key key : keys ) {
+            Segment segment = segmentFor( key );
+            synchronized ( segment ) {
+                if ( segment.remove( key ) != null ) {
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all results.
+     */
+    public void clear() {
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                segment.clear();
+            }
+        }
+        keysByFile.clear();
+    }
+
+    public void resourceChanged( IResourceChangeEvent event ) {
+        if ( keysByFile.isEmpty() || event.getDelta() == null ) {
+            return;
+        }
+        try {
+            event.getDelta().accept( new IResourceDeltaVisitor() {
+                public boolean visit( IResourceDelta delta ) {
+                    if ( delta.getResource().getType() == IResource.FILE ) {
+                        if ( delta.getKind() != IResourceDelta.ADDED ) {
+                            invalidate( delta.getFullPath() );
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            });
+        }
+        catch ( CoreException e ) {
+            logger.warn( "Could not read the resource delta, "
+                         + "dropping all memoized results", e );
+            clear();
+        }
+    }
+
+    /**
+     * @return the number of results held
+     */
+    public int size() {
+        int result = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of lookups that found a result
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no result
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups that found a result, between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of results dropped because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of results dropped because a file they were
+     *         computed from changed
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Sets all counts to zero, the results are kept.
+     */
+    public void resetStatistics() {
+        hits.set( 0 );
+        misses.set( 0 );
+        evictions.set( 0 );
+        invalidations.set( 0 );
+    }
+
+    /*
+     * Copies arrays and collections so that changing the copy does not
+     * change the original, anything else is returned as it is.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copyOf( Object o ) {
+        if ( o instanceof Object[] ) {
+            Object[] copy = ( (Object[]) o ).clone();
+            for ( int i = 0; i < copy.length; i++ ) {
+                copy[i] = copyOf( copy[i] );
+            }
+            return copy;
+        }
+        if ( o != null && o.getClass().isArray() ) {
+            int length = Array.getLength( o );
+            Object copy = Array.newInstance( o.getClass().getComponentType(),
+                                             length );
+            System.arraycopy( o, 0, copy, 0, length );
+            return copy;
+        }
+        if ( o instanceof RecordableList ) {
+            return new RecordableList<IBioObject>( (List<IBioObject>) o );
+        }
+        if ( o instanceof List ) {
+            return new ArrayList<Object>( (List<?>) o );
+        }
+        if ( o instanceof Set ) {
+            return new LinkedHashSet<Object>( (Set<?>) o );
+        }
+        if ( o instanceof Map ) {
+            return new LinkedHashMap<Object, Object>( (Map<?, ?>) o );
+        }
+        return o;
+    }
+
+    private Segment segmentFor( Key key ) {
+        int h = key.hash;
+        h ^= ( h >>> 16 );
+        return segments[ ( h & 0x7fffffff ) % segments.length ];
+    }
+
+    private void forget( Key key ) {
+        evictions.incrementAndGet();
+        if ( key.files != null ) {
+            for ( IPath path : key.files ) {
+                Set<Key> keys = keysByFile.get( path );
+                if ( keys != null ) {
+                    keys.remove( key );
+                }
+            }
+        }
+    }
+
+    /*
+     * A part of the cache ordered from least to most recently used
+     */
+    private class Segment extends LinkedHashMap<Key, Object> {
+
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        Segment( int maxEntries ) {
+            super( 16, 0.75f, true );
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Key, Object> eldest ) {
+            if ( size() > maxEntries ) {
+                forget( eldest.getKey() );
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Stands in for a file in a key
+     */
+    private static class FileStamp {
+
+        // full path in the workspace or location in the file system
+        private final Object path;
+        private final long   stamp;
+
+        FileStamp( Object path, long stamp ) {
+            this.path  = path;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + (int) ( stamp ^ ( stamp >>> 32 ) );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !(obj instanceof FileStamp) ) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return stamp == other.stamp && path.equals( other.path );
+        }
+    }
+
+    /**
+     * Identifies a call to a memoized method.
+     */
+    public static class Key {
+
+        private final String      manager;
+        private final Method      method;
+        private final Object[]    arguments;
+        private final List<IPath> files;
+        private final int         hash;
+
+        private Key( String manager,
+                     Method method,
+                     Object[] arguments,
+                     List<IPath> files ) {
+            this.manager   = manager;
+            this.method    = method;
+            this.arguments = arguments;
+            this.files     = files;
+            this.hash      = 31 * ( 31 * manager.hashCode()
+                                    + method.hashCode() )
+                             + Arrays.deepHashCode( arguments );
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( !(obj instanceof Key) ) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                   && method.equals( other.method )
+                   && manager.equals( other.manager )
+                   && Arrays.deepEquals( arguments, other.arguments );
+        }
+    }
+}
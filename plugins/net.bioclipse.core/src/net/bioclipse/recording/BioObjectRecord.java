@@ -8,6 +8,8 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
+import java.util.List;
+
 public class BioObjectRecord extends MethodRecord {
 
     protected String bioObjectId;
@@ -21,6 +23,22 @@ public class BioObjectRecord extends MethodRecord {
         this.bioObjectId = bioObjectId;
     }
 
+    BioObjectRecord( String methodName,
+                     String bioObjectId,
+                     List<Parameter> parameters,
+                     String returnObjectId,
+                     String returnType,
+                     String[] returnedListContentsIds ) {
+
+        super( methodName, parameters, returnObjectId,
+               returnType, returnedListContentsIds );
+        this.bioObjectId = bioObjectId;
+    }
+
+    public String getBioObjectId() {
+        return bioObjectId;
+    }
+
     public String toString() {
         
         StringBuilder sb = new StringBuilder();
@@ -13,41 +13,115 @@
 package net.bioclipse.recording;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.swt.widgets.Display;
 
 /**
+ * Keeps the latest records in a ring buffer of fixed capacity. Adding a
+ * record takes no lock, and neither does reading the records.
+ * <p>
+ * Listeners are told about new records in the UI thread. However many
+ * records are added, at most one notification waits to be run there, so
+ * a script making many recorded calls can not flood the UI.
+ * <p>
+ * If a {@link SessionJournal} is set, every {@link MethodRecord} is also
+ * appended to it, so that the whole session can be replayed.
+ *
  * @author jonalv
  *
  */
 public class History implements IHistory {
 
-    private List<IRecord> records;
-    private List<IHistoryListener> historyListeners;
-    
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final int capacity;
+    private final AtomicReferenceArray<Slot> slots;
+    // the sequence number of the next record
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+    private final List<IHistoryListener> historyListeners
+        = new CopyOnWriteArrayList<IHistoryListener>();
+    private volatile SessionJournal journal;
+
+    private final Runnable dispatch = new Runnable() {
+        public void run() {
+            // records added from now on need another notification
+            dispatchPending.set( false );
+            fireHistoryEvent( new HistoryEvent() );
+        }
+    };
+
     public History() {
-        records          = Collections.synchronizedList( 
-                                           new LinkedList<IRecord>() );
-        historyListeners = Collections.synchronizedList( 
-                                           new LinkedList<IHistoryListener>() );
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * @param capacity the number of records to keep
+     */
+    public History( int capacity ) {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException( 
+                "The capacity must be positive, not " + capacity );
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<Slot>( capacity );
     }
     
     /* (non-Javadoc)
      * @see net.bioclipse.recording.IHistory#addRecord(net.bioclipse.recording.MethodRecord)
      */
     public void addRecord( IRecord record ) {
-        if ( records.size() >= 100 ) {
-            records.remove( 0 );
+        long sequence = next.getAndIncrement();
+        int index = (int) ( sequence % capacity );
+        Slot slot = new Slot( sequence, record );
+        for (;;) {
+            Slot current = slots.get( index );
+            // a slower thread must not overwrite a later record
+            if ( current != null && current.sequence > sequence ) {
+                break;
+            }
+            if ( slots.compareAndSet( index, current, slot ) ) {
+                break;
+            }
         }
-        records.add(record);
-        Display.getDefault().asyncExec( new Runnable() {
-            public void run() {
-                fireHistoryEvent( new HistoryEvent() );
+        if ( record instanceof MethodRecord ) {
+            SessionJournal j = journal;
+            if ( j != null ) {
+                j.append( (MethodRecord) record );
             }
-        } );
+        }
+        if ( dispatchPending.compareAndSet( false, true ) ) {
+            dispatch( dispatch );
+        }
+    }
+
+    /**
+     * @param journal where to keep all method records, or
+     *                <code>null</code> to only keep the latest in memory
+     */
+    public void setJournal( SessionJournal journal ) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return where all method records are kept, or <code>null</code>
+     */
+    public SessionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Runs the notification of the listeners in the UI thread.
+     * 
+     * @param notification tells the listeners about new records
+     */
+    protected void dispatch( Runnable notification ) {
+        Display.getDefault().asyncExec( notification );
     }
     
     private void fireHistoryEvent(HistoryEvent e) {
@@ -60,11 +134,28 @@ public class History implements IHistory {
      * @see net.bioclipse.recording.IHistory#getRecords()
      */
     public List<IRecord> getRecords() {
-        return new ArrayList<IRecord>(records);
+        long end = next.get();
+        long start = Math.max( 0, end - capacity );
+        List<IRecord> result = new ArrayList<IRecord>( (int) ( end - start ) );
+        for ( long sequence = start; sequence < end; sequence++ ) {
+            Slot slot = slots.get( (int) ( sequence % capacity ) );
+            // skips records still being added or already overwritten
+            if ( slot != null && slot.sequence == sequence ) {
+                result.add( slot.record );
+            }
+        }
+        return result;
     }
     
     public int getRecordCount() {
-        return records.size();
+        return (int) Math.min( next.get(), capacity );
+    }
+
+    /**
+     * @return the number of records kept
+     */
+    public int getCapacity() {
+        return capacity;
     }
 
     public void addHistoryListener(IHistoryListener l) {
@@ -74,4 +165,15 @@ public class History implements IHistory {
     public void removeHistoryListener(IHistoryListener l) {
         historyListeners.remove(l);
     }
+
+    private static final class Slot {
+
+        private final long sequence;
+        private final IRecord record;
+
+        Slot( long sequence, IRecord record ) {
+            this.sequence = sequence;
+            this.record = record;
+        }
+    }
 }
@@ -11,11 +11,15 @@
  ******************************************************************************/
 package net.bioclipse.recording;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import net.bioclipse.core.domain.RecordableList;
 import net.bioclipse.recording.MethodRecord.BioObjectParameter;
@@ -23,24 +27,25 @@ import net.bioclipse.recording.MethodRecord.NonBioObjectParameter;
 import net.bioclipse.recording.MethodRecord.Parameter;
 
 /**
+ * Generates JavaScript from method records. A return value gets a
+ * variable if a later record uses it, which is found for all records in
+ * one backward pass before the statements are written in one forward
+ * pass, so the time taken grows linearly with the number of records.
+ *
  * @author jonalv, masak
  *
  */
 public class JsScriptGenerator implements IScriptGenerator {
 
-    private Hashtable<String, Integer> refNumber
-        = new Hashtable<String, Integer>();
+    private Map<String, Integer> refNumber
+        = new HashMap<String, Integer>();
     // (String id, String variableName) in variables hash table
     private Map<String, String> variables
-        = new Hashtable<String, String>();
+        = new HashMap<String, String>();
 
     private void increaseRefNumber(String type) {
-        if( refNumber.containsKey(type) ) {
-            refNumber.put(type, refNumber.get(type) + 1);
-        }
-        else {
-            refNumber.put(type, 1);
-        }
+        Integer number = refNumber.get(type);
+        refNumber.put(type, number == null ? 1 : number + 1);
     }
 
     private String firstToLowerCase(String s) {
@@ -67,8 +72,9 @@ public class JsScriptGenerator implements IScriptGenerator {
     }
 
     private String getVariableName(String type, String id) {
-        if( variables.containsKey(id) ) {
-            return variables.get(id);
+        String variableName = variables.get(id);
+        if( variableName != null ) {
+            return variableName;
         }
 
         String newVariableName = getNewVariableName(type);
@@ -78,8 +84,9 @@ public class JsScriptGenerator implements IScriptGenerator {
     }
 
     private String getVariableName(String bioObjectId) {
-        if(variables.containsKey( bioObjectId) ) {
-            return variables.get( bioObjectId );
+        String variableName = variables.get( bioObjectId );
+        if( variableName != null ) {
+            return variableName;
         }
         else if( RecordableList.existsListContaining(bioObjectId) ){
             String id = RecordableList.idOfListContainingBioObject( bioObjectId );
@@ -92,57 +99,98 @@ public class JsScriptGenerator implements IScriptGenerator {
     }
 
     public String[] generateScript( IRecord[] records ) {
-        List<String> statements = new ArrayList<String>();
+        boolean[] referenced = findReferenced( Arrays.asList(records) );
+        // as many as there are records, the ones not needed are null
+        String[] statements = new String[records.length];
+        StringBuilder statement = new StringBuilder();
+
+        int n = 0;
+        try {
+            for ( int i = 0; i < records.length; i++ )
+                if( records[i] instanceof MethodRecord) {
+                    statement.setLength(0);
+                    appendStatement( (MethodRecord)records[i],
+                                     referenced[i],
+                                     statement );
+                    statements[n++] = statement.toString();
+                }
+        }
+        catch ( IOException e ) {
+            //A StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return statements;
+    }
 
-        List<IRecord> recordsList = Arrays.asList(records);
+    /**
+     * Writes the same statements as {@link #generateScript(IRecord[])},
+     * one a line, without keeping them in memory.
+     *
+     * @param records the records
+     * @param out where to write the script
+     * @throws IOException if writing fails
+     */
+    public void generateScript( List<? extends IRecord> records,
+                                Writer out ) throws IOException {
+        boolean[] referenced = findReferenced( records );
 
         int i = 0;
-        for ( IRecord record : records )
+        for ( IRecord record : records ) {
             if( record instanceof MethodRecord) {
-                statements.add( recordToJsStatement(
-                        record,
-                        recordsList.subList(++i, recordsList.size())) );
+                appendStatement( (MethodRecord)record, referenced[i], out );
+                out.write( '\n' );
             }
-
-
-        return statements.toArray( new String[records.length] );
+            i++;
+        }
     }
 
-    private boolean isReferenced(String objectId, List<IRecord> rest) {
-
-        for ( IRecord record : rest ) {
-            if(!(record instanceof MethodRecord)) {
+    /*
+     * For each record, whether its return value is used by a later record.
+     * Goes through the records backwards collecting the ids of the used
+     * objects. As before, any later use of an object in a RecordableList
+     * counts as a use, since the object may be fetched from the list.
+     */
+    private static boolean[] findReferenced(
+                                       List<? extends IRecord> records ) {
+        boolean[] referenced = new boolean[records.size()];
+        Set<String> usedLater = new HashSet<String>();
+        boolean listElementUsedLater = false;
+        for ( int i = records.size() - 1; i >= 0; i-- ) {
+            IRecord record = records.get(i);
+            if( !(record instanceof MethodRecord) ) {
                 continue;
             }
             MethodRecord r = (MethodRecord)record;
-            if ( r instanceof BioObjectRecord
-                && ((BioObjectRecord)r).bioObjectId.equals(objectId) )
-
-                return true;
+            referenced[i] = listElementUsedLater
+                            || usedLater.contains( r.returnObjectId );
 
-            for ( MethodRecord.Parameter p : r.paramaters )
-                if ( p instanceof BioObjectParameter
-                     && ((BioObjectParameter)p).id.equals(objectId) )
-
-                    return true;
-
-            List<String> ids = new ArrayList<String>();
             if ( r instanceof BioObjectRecord ) {
-                ids.add( ( (BioObjectRecord)r ).bioObjectId );
-            }
-            for ( MethodRecord.Parameter p : r.paramaters ) {
-                if( p instanceof BioObjectParameter) {
-                    ids.add( ((BioObjectParameter)p).id );
-                }
+                listElementUsedLater |= use( ((BioObjectRecord)r).bioObjectId,
+                                             usedLater,
+                                             listElementUsedLater );
             }
-            for(String id : ids) {
-                if( RecordableList.existsListContaining(id) ) {
-                    return true;
+            for ( Parameter p : r.paramaters ) {
+                if( p instanceof BioObjectParameter ) {
+                    listElementUsedLater |= use( ((BioObjectParameter)p).id,
+                                                 usedLater,
+                                                 listElementUsedLater );
                 }
             }
         }
+        return referenced;
+    }
 
-        return false;
+    /*
+     * Adds the id to the used ones, returns whether it is the first used
+     * to be in a RecordableList
+     */
+    private static boolean use( String id,
+                                Set<String> usedLater,
+                                boolean listElementUsedLater ) {
+        boolean added = usedLater.add(id);
+        return !listElementUsedLater
+               && added
+               && RecordableList.existsListContaining(id);
     }
 
     public String recordToJsStatement( IRecord record,
@@ -151,69 +199,80 @@ public class JsScriptGenerator implements IScriptGenerator {
         if( record instanceof MethodRecord ) {
 
             MethodRecord r = (MethodRecord)record;
-
-            List<String> paramStrings = new ArrayList<String>();
-            for ( Parameter p : r.getParameters() ) {
-                if (p instanceof BioObjectParameter) {
-                    BioObjectParameter bp = (BioObjectParameter)p;
-                    String variableName = getVariableName(bp.id);
-                    paramStrings.add(variableName);
-                }
-                else if (p instanceof NonBioObjectParameter) {
-                    NonBioObjectParameter nbp = (NonBioObjectParameter)p;
-                    paramStrings.add(nbp.stringRepresentation);
-                }
-                else {
-                    throw new IllegalStateException( "Unrecognized " +
-                                                     "paramater type: " + p );
-                }
-            }
             StringBuilder statement = new StringBuilder();
+            try {
+                List<IRecord> records
+                    = new ArrayList<IRecord>( rest.size() + 1 );
+                records.add(r);
+                records.addAll(rest);
+                appendStatement( r, findReferenced(records)[0], statement );
+            }
+            catch ( IOException e ) {
+                //A StringBuilder does not throw
+                throw new IllegalStateException(e);
+            }
+            return statement.toString();
+        }
+        else if(record instanceof ScriptRecord) {
+            return ((ScriptRecord) record).getScript(ScriptRecord.Language.JS);
+        }
+        else throw new IllegalArgumentException();
+    }
 
-            if ( !"".equals( r.returnObjectId )
-                    && isReferenced(r.returnObjectId, rest)
-                 || isPrimitive(r.returnType) ) {
+    private void appendStatement( MethodRecord r,
+                                  boolean returnValueReferenced,
+                                  Appendable statement ) throws IOException {
 
-                statement.append( getVariableName(r.returnType, r.returnObjectId) );
-                statement.append( " = ");
+        List<Parameter> parameters = r.getParameters();
+        String[] paramStrings = new String[parameters.size()];
+        for (int j = 0; j < paramStrings.length; j++) {
+            Parameter p = parameters.get(j);
+            if (p instanceof BioObjectParameter) {
+                paramStrings[j] = getVariableName(((BioObjectParameter)p).id);
             }
-
-            if ( r instanceof ManagerObjectRecord ) {
-                ManagerObjectRecord mor = (ManagerObjectRecord)r;
-                statement.append( mor.getManagerObjectName() );
+            else if (p instanceof NonBioObjectParameter) {
+                paramStrings[j] = ((NonBioObjectParameter)p)
+                                  .stringRepresentation;
+            }
+            else {
+                throw new IllegalStateException( "Unrecognized " +
+                                                 "paramater type: " + p );
             }
-            else if ( r instanceof BioObjectRecord ) {
-                BioObjectRecord bor = (BioObjectRecord)r;
-                String variableName = getVariableName(bor.bioObjectId);
+        }
 
+        if ( !"".equals( r.returnObjectId ) && returnValueReferenced
+             || isPrimitive(r.returnType) ) {
 
-                statement.append(variableName);
-            }
+            statement.append( getVariableName(r.returnType, r.returnObjectId) );
+            statement.append( " = ");
+        }
 
-            statement.append( "." );
-            statement.append( r.getMethodName() );
-            statement.append( '(' );
+        if ( r instanceof ManagerObjectRecord ) {
+            ManagerObjectRecord mor = (ManagerObjectRecord)r;
+            statement.append( mor.getManagerObjectName() );
+        }
+        else if ( r instanceof BioObjectRecord ) {
+            BioObjectRecord bor = (BioObjectRecord)r;
+            statement.append( getVariableName(bor.bioObjectId) );
+        }
 
-            if ( !paramStrings.isEmpty() )
-                statement.append(' ');
+        statement.append( "." );
+        statement.append( r.getMethodName() );
+        statement.append( '(' );
 
-            for (int j = 0; j < paramStrings.size(); j++) {
-                statement.append( paramStrings.get(j) );
+        if ( paramStrings.length > 0 )
+            statement.append(' ');
 
-                if(j != paramStrings.size() - 1) {
-                    statement.append(", ");
-                }
-                else {
-                    statement.append(' ');
-                }
-            }
-            statement.append(")");
+        for (int j = 0; j < paramStrings.length; j++) {
+            statement.append( paramStrings[j] );
 
-            return statement.toString();
+            if(j != paramStrings.length - 1) {
+                statement.append(", ");
+            }
+            else {
+                statement.append(' ');
             }
-        else if(record instanceof ScriptRecord) {
-            return ((ScriptRecord) record).getScript(ScriptRecord.Language.JS);
         }
-        else throw new IllegalArgumentException();
+        statement.append(")");
     }
 }
@@ -8,6 +8,8 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
+import java.util.List;
+
 public class ManagerObjectRecord extends MethodRecord {
 
     protected String managerObjectName;
@@ -21,6 +23,18 @@ public class ManagerObjectRecord extends MethodRecord {
         this.managerObjectName = managerObjectName;
     }
     
+    ManagerObjectRecord( String methodName,
+                         String managerObjectName,
+                         List<Parameter> parameters,
+                         String returnObjectId,
+                         String returnType,
+                         String[] returnedListContentsIds ) {
+
+        super( methodName, parameters, returnObjectId,
+               returnType, returnedListContentsIds );
+        this.managerObjectName = managerObjectName;
+    }
+
     public String toString() {
         
         StringBuilder sb = new StringBuilder();
@@ -132,6 +132,21 @@ public abstract class MethodRecord implements IRecord {
         }
     }
 
+    /**
+     * Recreates a record that was written to a {@link SessionJournal}.
+     */
+    MethodRecord( String methodName,
+                  List<Parameter> parameters,
+                  String returnObjectId,
+                  String returnType,
+                  String[] returnedListContentsIds ) {
+        this.methodName = methodName;
+        this.paramaters = parameters;
+        this.returnObjectId = returnObjectId;
+        this.returnType = returnType;
+        this.returnedListContentsIds = returnedListContentsIds;
+    }
+
     private static String toVariableCase(String name) {
         return Character.toLowerCase( name.charAt(0) ) 
            + name.substring(1);
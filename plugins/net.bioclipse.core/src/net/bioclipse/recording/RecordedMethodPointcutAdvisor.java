@@ -0,0 +1,38 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * www.eclipse.org—epl-v10.html <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+
+package net.bioclipse.recording;
+
+import java.lang.reflect.Method;
+
+import net.bioclipse.core.Recorded;
+
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+
+/**
+ * Applies its advice, normally the {@link RecordingAdvice}, to the
+ * {@link Recorded} methods only. The pointcut is static so a proxy asks
+ * once per method, and calls to methods that are not recorded never reach
+ * the advice.
+ *
+ * @author agent
+ */
+public class RecordedMethodPointcutAdvisor
+       extends StaticMethodMatcherPointcutAdvisor {
+
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unchecked")
+    public boolean matches( Method method, Class targetClass ) {
+        return Recording.isRecorded( method );
+    }
+}
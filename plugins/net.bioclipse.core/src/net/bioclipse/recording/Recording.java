@@ -0,0 +1,115 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * www.eclipse.org—epl-v10.html <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+
+package net.bioclipse.recording;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.bioclipse.core.Recorded;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Whether calls are recorded. Recording can be turned off for the whole
+ * application, e.g. for batch runs, by calling
+ * {@link #setEnabled(boolean)} or by starting with the system property
+ * <code>bioclipse.recording</code> set to <code>false</code>. Calls made
+ * while it is off are neither recorded nor wrapped in proxies.
+ * <p>
+ * Which methods are {@link Recorded} is looked up once per method.
+ *
+ * @author agent
+ */
+public final class Recording {
+
+    public static final String ENABLED_PROPERTY = "bioclipse.recording";
+
+    private static volatile boolean enabled
+        = !"false".equalsIgnoreCase( System.getProperty( ENABLED_PROPERTY ) );
+
+    private static final ConcurrentMap<Method, Boolean> recorded
+        = new ConcurrentHashMap<Method, Boolean>();
+
+    private Recording() {
+    }
+
+    /**
+     * @return whether calls are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off for the whole application. Takes effect
+     * for the next call.
+     *
+     * @param enabled whether calls should be recorded
+     */
+    public static void setEnabled( boolean enabled ) {
+        Recording.enabled = enabled;
+    }
+
+    /**
+     * A method is recorded if it, or the method it implements in one of
+     * the interfaces of its class, is annotated with {@link Recorded}.
+     *
+     * @param method the method
+     * @return whether calls to the method are recorded
+     */
+    public static boolean isRecorded( Method method ) {
+        Boolean result = recorded.get( method );
+        if ( result == null ) {
+            result = findRecorded( method );
+            recorded.put( method, result );
+        }
+        return result;
+    }
+
+    /**
+     * @param c a class
+     * @return whether any public method of the class is recorded
+     */
+    public static boolean hasRecordedMethods( Class<?> c ) {
+        for ( Method m : c.getMethods() ) {
+            if ( isRecorded( m ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean findRecorded( Method method ) {
+        if ( method.isAnnotationPresent( Recorded.class ) ) {
+            return true;
+        }
+        Class<?> declaring = method.getDeclaringClass();
+        if ( declaring.isInterface() ) {
+            return false;
+        }
+        for ( Class<?> i : ClassUtils.getAllInterfacesForClass( declaring ) ) {
+            try {
+                if ( i.getMethod( method.getName(),
+                                  method.getParameterTypes() )
+                      .isAnnotationPresent( Recorded.class ) ) {
+                    return true;
+                }
+            }
+            catch ( NoSuchMethodException e ) {
+                // not a method of that interface
+            }
+        }
+        return false;
+    }
+}
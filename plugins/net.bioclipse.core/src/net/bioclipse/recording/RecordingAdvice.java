@@ -14,7 +14,6 @@ package net.bioclipse.recording;
 
 import java.lang.reflect.Method;
 
-import net.bioclipse.core.Recorded;
 import net.bioclipse.core.domain.BioObject;
 import net.bioclipse.core.domain.IBioObject;
 import net.bioclipse.managers.business.IBioclipseManager;
@@ -23,6 +22,9 @@ import org.apache.log4j.Logger;
 
 
 /**
+ * Adds a record to the history for each call to a recorded method while
+ * {@link Recording} is enabled.
+ *
  * @author jonalv, olas
  *
  */
@@ -42,7 +44,7 @@ public class RecordingAdvice implements IRecordingAdvice {
                                 Object[] args, 
                                 Object target ) throws Throwable {
 
-        if ( !method.isAnnotationPresent(Recorded.class) ) {
+        if ( !Recording.isEnabled() || !Recording.isRecorded(method) ) {
             return;
         }
         
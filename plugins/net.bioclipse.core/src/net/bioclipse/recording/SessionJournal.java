@@ -0,0 +1,888 @@
+/* *****************************************************************************
+ * Copyright (c) 2011 The Bioclipse Project and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * www.eclipse.org—epl-v10.html <http://www.eclipse.org/legal/epl-v10.html>
+ *
+ * Contributors:
+ *     agent <agent@local>
+ *
+ ******************************************************************************/
+
+package net.bioclipse.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.bioclipse.recording.MethodRecord.BioObjectParameter;
+import net.bioclipse.recording.MethodRecord.NonBioObjectParameter;
+import net.bioclipse.recording.MethodRecord.Parameter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps every {@link MethodRecord} of a session on disk, so that scripts
+ * can be generated for any part of a session, also after a restart.
+ * <p>
+ * Records are appended to memory mapped segment files by a background
+ * thread, the thread adding a record only puts it in a queue without
+ * taking any lock. A new segment is started when the current one is
+ * full. Each entry is written
+ * in a compact binary form: the kind of record, the time it was added, and
+ * length prefixed strings for the method, its target, its parameters and
+ * what it returned.
+ * <p>
+ * The entries are indexed in memory by time and by manager, and the index
+ * is rebuilt from the segments by the writer thread when a journal is
+ * opened again, queries waiting until it is done. A query fails if the
+ * writer thread dies before that. Entries are found as soon as they are
+ * written; call {@link #flush()} to wait for the records added so far.
+ * <p>
+ * Only the newest segments are kept, the oldest segment is deleted and
+ * its entries forgotten when there are more than the maximum number of
+ * segments.
+ *
+ * @author agent
+ */
+public class SessionJournal {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+
+    private static final Logger logger
+        = Logger.getLogger( SessionJournal.class );
+
+    private static final Charset UTF8   = Charset.forName( "UTF-8" );
+    private static final int     MAGIC  = 0x424a4e31;
+    private static final String  PREFIX = "journal-";
+    private static final String  SUFFIX = ".seg";
+
+    private static final byte MANAGER_RECORD    = 1;
+    private static final byte BIOOBJECT_RECORD  = 2;
+    private static final byte NONBIOOBJECT_PARAM = 1;
+    private static final byte BIOOBJECT_PARAM    = 2;
+
+    private static final Entry CLOSE = new Entry( 0, null );
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final BlockingQueue<Entry> queue
+        = new LinkedBlockingQueue<Entry>();
+    private final Thread writer;
+    private final AtomicLong added = new AtomicLong();
+    private volatile boolean closed;
+    // what made the writer thread die, if it did
+    private volatile Throwable writerFailure;
+
+    // guards everything below, which the writer changes
+    private final Object index = new Object();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    // the time and offset of entry first + i are at i
+    private long[] times = new long[1024];
+    private int[] offsets = new int[1024];
+    // the number of the oldest entry kept and the one after the newest
+    private int first;
+    private int count;
+    private long lastTime;
+    private final Map<String, Entries> byManager
+        = new HashMap<String, Entries>();
+    private long handled;
+    private boolean loaded;
+
+    // only used by the writer after the constructor
+    private ByteBuffer current;
+    private int nextSegment;
+    private boolean failed;
+    private final Encoder encoder = new Encoder();
+
+    /**
+     * Opens the journal kept in the state location of the core plugin.
+     */
+    public SessionJournal() {
+        this( new File( stateLocation(), "journal" ),
+              DEFAULT_SEGMENT_SIZE,
+              DEFAULT_MAX_SEGMENTS );
+    }
+
+    /**
+     * Opens a journal keeping at most {@link #DEFAULT_MAX_SEGMENTS}
+     * segments.
+     *
+     * @param dir the directory to keep the segments in, created if missing
+     * @param segmentSize the number of bytes of a segment
+     */
+    public SessionJournal( File dir, int segmentSize ) {
+        this( dir, segmentSize, DEFAULT_MAX_SEGMENTS );
+    }
+
+    /**
+     * Opens a journal. The entries already in it are indexed by the writer
+     * thread.
+     *
+     * @param dir the directory to keep the segments in, created if missing
+     * @param segmentSize the number of bytes of a segment
+     * @param maxSegments the number of segments to keep
+     */
+    public SessionJournal( File dir, int segmentSize, int maxSegments ) {
+        if ( segmentSize < 64 ) {
+            throw new IllegalArgumentException(
+                "A segment must be at least 64 bytes, not " + segmentSize );
+        }
+        if ( maxSegments < 1 ) {
+            throw new IllegalArgumentException(
+                "At least one segment must be kept, not " + maxSegments );
+        }
+        if ( !dir.isDirectory() && !dir.mkdirs() ) {
+            throw new IllegalArgumentException(
+                "Could not create the directory " + dir );
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        writer = new Thread( new Runnable() {
+            public void run() {
+                try {
+                    write();
+                }
+                catch ( Throwable t ) {
+                    writerFailure = t;
+                    logger.error( "The session journal writer died, "
+                                  + "nothing more is journaled", t );
+                    synchronized ( index ) {
+                        index.notifyAll();
+                    }
+                }
+            }
+        }, "Bioclipse session journal writer" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    private static File stateLocation() {
+        net.bioclipse.core.Activator core
+            = net.bioclipse.core.Activator.getDefault();
+        if ( core == null ) {
+            throw new IllegalStateException(
+                "The core plugin is not started" );
+        }
+        return core.getStateLocation().toFile();
+    }
+
+    /**
+     * Queues a record to be written. Returns at once. A record appended
+     * after the journal is closed is logged and dropped, as may be one
+     * appended while it is being closed.
+     *
+     * @param record the record
+     */
+    public void append( MethodRecord record ) {
+        if ( closed ) {
+            logger.warn( "The session journal is closed, not journaling "
+                         + "a call to " + record.getMethodName() );
+            return;
+        }
+        added.incrementAndGet();
+        queue.add( new Entry( System.currentTimeMillis(), record ) );
+    }
+
+    /**
+     * Waits until the records appended so far are written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        long target = added.get();
+        synchronized ( index ) {
+            while ( handled < target && writer.isAlive() ) {
+                index.wait( 100 );
+            }
+        }
+    }
+
+    /**
+     * Writes the records appended so far, forces the segments to disk and
+     * stops the writer. The journal can not be used after this.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        // the writer writes what was queued before it
+        queue.add( CLOSE );
+        writer.join();
+        List<Segment> written;
+        synchronized ( index ) {
+            written = new ArrayList<Segment>( segments );
+        }
+        for ( Segment segment : written ) {
+            segment.buffer.force();
+        }
+    }
+
+    /*
+     * Waits until the segments on disk are indexed. Called holding the
+     * index lock.
+     *
+     * @throws IllegalStateException if the writer died before that
+     */
+    private void awaitLoaded() {
+        while ( !loaded ) {
+            if ( !writer.isAlive() ) {
+                throw new IllegalStateException(
+                    "The session journal could not be read",
+                    writerFailure );
+            }
+            try {
+                index.wait( 100 );
+            }
+            catch ( InterruptedException e ) {
+                // answers from what is indexed so far
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries kept
+     */
+    public int getEntryCount() {
+        synchronized ( index ) {
+            awaitLoaded();
+            return count - first;
+        }
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int getSegmentCount() {
+        synchronized ( index ) {
+            awaitLoaded();
+            return segments.size();
+        }
+    }
+
+    /**
+     * @return the names of the managers with records in the journal
+     */
+    public List<String> getManagerNames() {
+        synchronized ( index ) {
+            awaitLoaded();
+            return new ArrayList<String>( byManager.keySet() );
+        }
+    }
+
+    /**
+     * @param from the earliest time, in milliseconds
+     * @param to the time after the latest, in milliseconds
+     * @return the records added in the time window, oldest first
+     */
+    public List<MethodRecord> getRecords( long from, long to ) {
+        ByteBuffer[] buffers;
+        int[] found;
+        synchronized ( index ) {
+            awaitLoaded();
+            int start = firstAtOrAfter( from );
+            int end = Math.max( start, firstAtOrAfter( to ) );
+            buffers = new ByteBuffer[end - start];
+            found = new int[end - start];
+            for ( int i = 0; i < found.length; i++ ) {
+                locate( first + start + i, buffers, found, i );
+            }
+        }
+        return decode( buffers, found );
+    }
+
+    /**
+     * @param managerName the name of the manager
+     * @param from the earliest time, in milliseconds
+     * @param to the time after the latest, in milliseconds
+     * @return the records of calls to the manager in the time window,
+     *         oldest first
+     */
+    public List<MethodRecord> getRecords( String managerName,
+                                          long from,
+                                          long to ) {
+        ByteBuffer[] buffers;
+        int[] found;
+        synchronized ( index ) {
+            awaitLoaded();
+            Entries entries = byManager.get( managerName );
+            if ( entries == null ) {
+                return new ArrayList<MethodRecord>();
+            }
+            int start = entries.firstAtOrAfter( from );
+            int end = Math.max( start, entries.firstAtOrAfter( to ) );
+            buffers = new ByteBuffer[end - start];
+            found = new int[end - start];
+            for ( int i = 0; i < found.length; i++ ) {
+                locate( entries.numbers[start + i], buffers, found, i );
+            }
+        }
+        return decode( buffers, found );
+    }
+
+    /**
+     * Generates the script for a part of the session.
+     *
+     * @param from the earliest time, in milliseconds
+     * @param to the time after the latest, in milliseconds
+     * @param generator generates the script, should not have been used
+     * @return the script
+     */
+    public String[] replay( long from, long to, IScriptGenerator generator ) {
+        List<MethodRecord> records = getRecords( from, to );
+        return generator.generateScript(
+                   records.toArray( new IRecord[records.size()] ) );
+    }
+
+    /**
+     * Writes the JavaScript for a part of the session, one statement a
+     * line.
+     *
+     * @param from the earliest time, in milliseconds
+     * @param to the time after the latest, in milliseconds
+     * @param out where to write the script
+     * @throws IOException if writing fails
+     */
+    public void replay( long from, long to, Writer out ) throws IOException {
+        new JsScriptGenerator().generateScript( getRecords( from, to ), out );
+    }
+
+    /*
+     * The index, counted from the oldest kept entry, of the first entry at
+     * or after the time. Entry times never decrease.
+     */
+    private int firstAtOrAfter( long time ) {
+        int low = 0;
+        int high = count - first;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( times[mid] < time ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Stores the segment and offset of an entry at i. Called holding the
+     * index lock.
+     */
+    private void locate( int entry,
+                         ByteBuffer[] buffers,
+                         int[] found,
+                         int i ) {
+        // the last segment starting at or before the entry
+        int low = 0;
+        int high = segments.size() - 1;
+        while ( low < high ) {
+            int mid = ( low + high + 1 ) >>> 1;
+            if ( segments.get( mid ).firstEntry <= entry ) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        buffers[i] = segments.get( low ).buffer;
+        found[i] = offsets[entry - first];
+    }
+
+    private static List<MethodRecord> decode( ByteBuffer[] buffers,
+                                              int[] found ) {
+        List<MethodRecord> records
+            = new ArrayList<MethodRecord>( found.length );
+        for ( int i = 0; i < found.length; i++ ) {
+            ByteBuffer in = buffers[i].duplicate();
+            // skips the length
+            in.position( found[i] + 4 );
+            records.add( readRecord( in ) );
+        }
+        return records;
+    }
+
+    /*
+     * The number of a segment file, or -1 for other files
+     */
+    private static int segmentNumber( String name ) {
+        if ( !name.startsWith( PREFIX ) || !name.endsWith( SUFFIX ) ) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(
+                name.substring( PREFIX.length(),
+                                name.length() - SUFFIX.length() ) );
+        }
+        catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /*
+     * Indexes the segments already on disk, stopping at the first entry
+     * that was not completely written. Deletes the oldest segments if
+     * there are too many. Called by the writer before it writes anything.
+     */
+    private void readSegments() {
+        File[] files = dir.listFiles();
+        List<Integer> numbers = new ArrayList<Integer>();
+        if ( files != null ) {
+            for ( File f : files ) {
+                int number = segmentNumber( f.getName() );
+                if ( number >= 0 ) {
+                    numbers.add( number );
+                }
+            }
+        }
+        Collections.sort( numbers );
+        // numbers may have gaps, so a new segment follows the highest
+        nextSegment = numbers.isEmpty()
+                      ? 0 : numbers.get( numbers.size() - 1 ) + 1;
+        int keep = Math.max( 0, numbers.size() - maxSegments );
+        for ( int number : numbers.subList( 0, keep ) ) {
+            deleteSegment( segmentFile( number ) );
+        }
+        for ( int number : numbers.subList( keep, numbers.size() ) ) {
+            File f = segmentFile( number );
+            MappedByteBuffer buffer;
+            try {
+                buffer = map( f, (int) f.length() );
+            }
+            catch ( IOException e ) {
+                logger.warn( "Could not read the journal segment " + f, e );
+                continue;
+            }
+            if ( buffer.capacity() < 8 || buffer.getInt( 0 ) != MAGIC ) {
+                logger.warn( "Skipping " + f + ", it is no journal segment" );
+                continue;
+            }
+            // one segment at a time, so queries are not held up for long
+            synchronized ( index ) {
+                segments.add( new Segment( f, buffer, count ) );
+                current = buffer.duplicate();
+                current.position( 4 );
+                while ( current.remaining() >= 4 ) {
+                    int offset = current.position();
+                    int length = current.getInt();
+                    if ( length <= 0 || length > current.remaining() ) {
+                        // the rest was never completely written
+                        current.position( offset );
+                        break;
+                    }
+                    ByteBuffer in = current.duplicate();
+                    current.position( offset + 4 + length );
+                    try {
+                        byte kind = in.get();
+                        long time = readLong( in );
+                        index( time, offset, kind, readString( in ) );
+                    }
+                    catch ( RuntimeException e ) {
+                        logger.warn( "Skipping a broken entry in " + f, e );
+                    }
+                }
+            }
+        }
+        synchronized ( index ) {
+            loaded = true;
+            index.notifyAll();
+        }
+    }
+
+    private File segmentFile( int number ) {
+        return new File( dir, String.format( "%s%08d%s",
+                                             PREFIX, number, SUFFIX ) );
+    }
+
+    private static void deleteSegment( File f ) {
+        if ( !f.delete() ) {
+            logger.warn( "Could not delete the old journal segment " + f );
+        }
+    }
+
+    /*
+     * Forgets the oldest segment and its entries. Called holding the index
+     * lock, returns the segment so that its file can be deleted after.
+     */
+    private Segment dropOldestSegment() {
+        Segment oldest = segments.remove( 0 );
+        int end = segments.get( 0 ).firstEntry;
+        System.arraycopy( times, end - first, times, 0, count - end );
+        System.arraycopy( offsets, end - first, offsets, 0, count - end );
+        first = end;
+        for ( Iterator<Entries> i = byManager.values().iterator();
+              i.hasNext(); ) {
+            Entries entries = i.next();
+            entries.dropBefore( end );
+            if ( entries.size == 0 ) {
+                i.remove();
+            }
+        }
+        return oldest;
+    }
+
+    private void write() {
+        readSegments();
+        List<Entry> batch = new ArrayList<Entry>();
+        boolean closing = false;
+        while ( !closing ) {
+            try {
+                batch.add( queue.take() );
+            }
+            catch ( InterruptedException e ) {
+                // only a close stops the writer
+                continue;
+            }
+            queue.drainTo( batch );
+            for ( Entry entry : batch ) {
+                if ( entry == CLOSE ) {
+                    closing = true;
+                    continue;
+                }
+                if ( !failed ) {
+                    try {
+                        writeEntry( entry );
+                    }
+                    catch ( IOException e ) {
+                        failed = true;
+                        logger.error( "Could not write the session "
+                                      + "journal, nothing more is "
+                                      + "journaled", e );
+                    }
+                }
+            }
+            synchronized ( index ) {
+                handled += closing ? batch.size() - 1 : batch.size();
+                index.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /*
+     * Called by the writer, only indexing the entry holds the index lock
+     */
+    private void writeEntry( Entry entry ) throws IOException {
+        MethodRecord record = entry.record;
+        byte kind;
+        String target;
+        if ( record instanceof ManagerObjectRecord ) {
+            kind = MANAGER_RECORD;
+            target = ( (ManagerObjectRecord) record ).getManagerObjectName();
+        }
+        else if ( record instanceof BioObjectRecord ) {
+            kind = BIOOBJECT_RECORD;
+            target = ( (BioObjectRecord) record ).getBioObjectId();
+        }
+        else {
+            throw new IllegalArgumentException(
+                "Can not journal a " + record.getClass().getName() );
+        }
+        // entry times never decrease so that they can be searched
+        long time = Math.max( entry.time, lastTime );
+
+        Encoder out = encoder;
+        out.reset();
+        out.writeByte( kind );
+        out.writeLong( time );
+        out.writeString( target );
+        out.writeString( record.getMethodName() );
+        List<Parameter> parameters = record.getParameters();
+        out.writeLong( parameters.size() );
+        for ( Parameter p : parameters ) {
+            if ( p instanceof BioObjectParameter ) {
+                out.writeByte( BIOOBJECT_PARAM );
+                out.writeString( p.type );
+                out.writeString( ( (BioObjectParameter) p ).id );
+            }
+            else {
+                out.writeByte( NONBIOOBJECT_PARAM );
+                out.writeString( p.type );
+                out.writeString(
+                    ( (NonBioObjectParameter) p ).stringRepresentation );
+            }
+        }
+        out.writeString( record.getReturnObjectId() );
+        out.writeString( record.getReturnType() );
+        String[] ids = record.returnedListContentsIds;
+        out.writeLong( ids == null ? 0 : ids.length + 1 );
+        if ( ids != null ) {
+            for ( String id : ids ) {
+                out.writeString( id );
+            }
+        }
+
+        if ( current == null || current.remaining() < out.size + 4 ) {
+            startSegment( out.size + 8 );
+        }
+        int offset = current.position();
+        // the length is written last so a torn entry is never read
+        current.position( offset + 4 );
+        current.put( out.bytes, 0, out.size );
+        current.putInt( offset, out.size );
+        synchronized ( index ) {
+            index( time, offset, kind, target );
+        }
+    }
+
+    private void startSegment( int minimumSize ) throws IOException {
+        File f = segmentFile( nextSegment++ );
+        MappedByteBuffer buffer = map( f, Math.max( segmentSize,
+                                                    minimumSize ) );
+        buffer.putInt( 0, MAGIC );
+        Segment dropped = null;
+        synchronized ( index ) {
+            segments.add( new Segment( f, buffer, count ) );
+            if ( segments.size() > maxSegments ) {
+                dropped = dropOldestSegment();
+            }
+        }
+        current = buffer.duplicate();
+        current.position( 4 );
+        if ( dropped != null ) {
+            // queries still holding the mapping can read it after this
+            deleteSegment( dropped.file );
+        }
+    }
+
+    private static MappedByteBuffer map( File f, int size )
+                                    throws IOException {
+        RandomAccessFile file = new RandomAccessFile( f, "rw" );
+        try {
+            // the mapping stays valid after the file is closed
+            return file.getChannel().map( FileChannel.MapMode.READ_WRITE,
+                                          0,
+                                          size );
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /*
+     * Indexes an entry of the newest segment. Called holding the index
+     * lock.
+     */
+    private void index( long time, int offset, byte kind, String target ) {
+        int i = count - first;
+        if ( i == times.length ) {
+            times = Arrays.copyOf( times, i * 2 );
+            offsets = Arrays.copyOf( offsets, i * 2 );
+        }
+        times[i] = time;
+        offsets[i] = offset;
+        lastTime = time;
+        if ( kind == MANAGER_RECORD ) {
+            Entries entries = byManager.get( target );
+            if ( entries == null ) {
+                entries = new Entries();
+                byManager.put( target, entries );
+            }
+            entries.add( count );
+        }
+        count++;
+    }
+
+    private static MethodRecord readRecord( ByteBuffer in ) {
+        try {
+            byte kind = in.get();
+            readLong( in );
+            String target = readString( in );
+            String methodName = readString( in );
+            int size = (int) readLong( in );
+            List<Parameter> parameters = new ArrayList<Parameter>( size );
+            for ( int i = 0; i < size; i++ ) {
+                byte type = in.get();
+                if ( type == BIOOBJECT_PARAM ) {
+                    parameters.add( new BioObjectParameter(
+                                        readString( in ),
+                                        readString( in ) ) );
+                }
+                else {
+                    parameters.add( new NonBioObjectParameter(
+                                        readString( in ),
+                                        readString( in ) ) );
+                }
+            }
+            String returnObjectId = readString( in );
+            String returnType = readString( in );
+            int idCount = (int) readLong( in );
+            String[] ids = null;
+            if ( idCount > 0 ) {
+                ids = new String[idCount - 1];
+                for ( int i = 0; i < ids.length; i++ ) {
+                    ids[i] = readString( in );
+                }
+            }
+            if ( kind == MANAGER_RECORD ) {
+                return new ManagerObjectRecord( methodName, target, parameters,
+                                                returnObjectId, returnType,
+                                                ids );
+            }
+            return new BioObjectRecord( methodName, target, parameters,
+                                        returnObjectId, returnType, ids );
+        }
+        catch ( BufferUnderflowException e ) {
+            throw new IllegalStateException( "A journal entry is broken", e );
+        }
+    }
+
+    /*
+     * Variable length, seven bits a byte, lowest first
+     */
+    private static long readLong( ByteBuffer in ) {
+        long value = 0;
+        for ( int shift = 0; ; shift += 7 ) {
+            byte b = in.get();
+            value |= (long) ( b & 0x7f ) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString( ByteBuffer in ) {
+        int length = (int) readLong( in );
+        if ( length == 0 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+    private static class Encoder {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeByte( int b ) {
+            if ( size == bytes.length ) {
+                bytes = Arrays.copyOf( bytes, size * 2 );
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void writeLong( long value ) {
+            while ( ( value & ~0x7fL ) != 0 ) {
+                writeByte( (int) ( value & 0x7f ) | 0x80 );
+                value >>>= 7;
+            }
+            writeByte( (int) value );
+        }
+
+        /*
+         * The length plus one, or zero for null, and then the UTF-8 bytes
+         */
+        void writeString( String s ) {
+            if ( s == null ) {
+                writeLong( 0 );
+                return;
+            }
+            byte[] encoded = s.getBytes( UTF8 );
+            writeLong( encoded.length + 1 );
+            if ( size + encoded.length > bytes.length ) {
+                bytes = Arrays.copyOf( bytes,
+                                       Math.max( bytes.length * 2,
+                                                 size + encoded.length ) );
+            }
+            System.arraycopy( encoded, 0, bytes, size, encoded.length );
+            size += encoded.length;
+        }
+    }
+
+    /*
+     * The numbers of the entries of a manager, in the order written
+     */
+    private class Entries {
+
+        private int[] numbers = new int[16];
+        private int size;
+
+        void add( int number ) {
+            if ( size == numbers.length ) {
+                numbers = Arrays.copyOf( numbers, size * 2 );
+            }
+            numbers[size++] = number;
+        }
+
+        void dropBefore( int number ) {
+            int kept = 0;
+            while ( kept < size && numbers[kept] < number ) {
+                kept++;
+            }
+            System.arraycopy( numbers, kept, numbers, 0, size - kept );
+            size -= kept;
+        }
+
+        int firstAtOrAfter( long time ) {
+            int low = 0;
+            int high = size;
+            while ( low < high ) {
+                int mid = ( low + high ) >>> 1;
+                if ( times[numbers[mid] - first] < time ) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        // the number of its first entry
+        private final int firstEntry;
+
+        Segment( File file, MappedByteBuffer buffer, int firstEntry ) {
+            this.file = file;
+            this.buffer = buffer;
+            this.firstEntry = firstEntry;
+        }
+    }
+
+    private static class Entry {
+
+        private final long time;
+        private final MethodRecord record;
+
+        Entry( long time, MethodRecord record ) {
+            this.time = time;
+            this.record = record;
+        }
+    }
+}
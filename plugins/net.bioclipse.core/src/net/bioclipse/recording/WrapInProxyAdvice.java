@@ -8,26 +8,94 @@
  *******************************************************************************/
 package net.bioclipse.recording;
 
-import net.bioclipse.recording.Activator;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import net.bioclipse.core.domain.IBioObject;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
 
 import org.aopalliance.intercept.MethodInvocation;
-import org.springframework.aop.framework.ProxyFactory;
 
+/**
+ * Wraps returned bioobjects in proxies that wrap the bioobjects their
+ * methods return in turn. The proxies record nothing themselves, calls are
+ * recorded by the recording advice of the managers.
+ * <p>
+ * Only bioobjects with recorded methods are wrapped, and nothing is
+ * wrapped while {@link Recording} is disabled. The proxy class of a
+ * bioobject class is made once, later proxies are new instances of it.
+ * <p>
+ * The prototypes refer to the bioobject classes, so the core plugin
+ * clears them with {@link #clearPrototypes()} when a bundle is stopped.
+ */
 public class WrapInProxyAdvice implements IWrapInProxyAdvice {
 
-    private ProxyFactory pf;
-    
+    // bioobject class -> proxy to make more from, or NOT_RECORDED
+    private static final ConcurrentMap<Class<?>, Object> prototypes
+        = new ConcurrentHashMap<Class<?>, Object>();
+    private static final Object NOT_RECORDED = new Object();
+
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        Object returnValue = invocation.proceed();
-        if(  returnValue instanceof IBioObject && 
-           !(returnValue instanceof net.sf.cglib.proxy.Factory) ) {
-            pf = new ProxyFactory();
-            pf.addAdvice(this);
-//            pf.addAdvice(Activator.getDefault().getRecordingAdvice());
-            pf.setTarget(returnValue);
-            returnValue = pf.getProxy();
+        return wrap( invocation.proceed() );
+    }
+
+    private static Object wrap( Object returnValue ) {
+        if ( !Recording.isEnabled()
+             || !(returnValue instanceof IBioObject)
+             || returnValue instanceof Factory ) {
+            return returnValue;
+        }
+        Class<?> c = returnValue.getClass();
+        Object prototype = prototypes.get( c );
+        if ( prototype == null ) {
+            if ( !Recording.hasRecordedMethods( c ) ) {
+                prototypes.put( c, NOT_RECORDED );
+                return returnValue;
+            }
+            // the first proxy of a class is made from scratch
+            Enhancer enhancer = new Enhancer();
+            enhancer.setSuperclass( c );
+            // the constructor works on the proxy itself, not on a target
+            enhancer.setInterceptDuringConstruction( false );
+            enhancer.setCallback( new Interceptor( returnValue ) );
+            Object proxy = enhancer.create();
+            // kept without a target so that it holds on to no bioobject
+            prototypes.putIfAbsent( c, ( (Factory) proxy ).newInstance(
+                                           new Interceptor( null ) ) );
+            return proxy;
+        }
+        if ( prototype == NOT_RECORDED ) {
+            return returnValue;
+        }
+        return ( (Factory) prototype ).newInstance(
+                   new Interceptor( returnValue ) );
+    }
+
+    /**
+     * Forgets all prototypes. They are made again when next needed.
+     */
+    public static void clearPrototypes() {
+        prototypes.clear();
+    }
+
+    private static class Interceptor implements MethodInterceptor {
+
+        private final Object target;
+
+        Interceptor( Object target ) {
+            this.target = target;
+        }
+
+        public Object intercept( Object proxy,
+                                 Method method,
+                                 Object[] args,
+                                 MethodProxy methodProxy ) throws Throwable {
+
+            return wrap( methodProxy.invoke( target, args ) );
         }
-        return returnValue;
     }
 }
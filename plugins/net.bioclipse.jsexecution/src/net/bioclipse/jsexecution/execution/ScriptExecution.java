@@ -13,7 +13,7 @@ import net.bioclipse.jsexecution.Activator;
 import net.bioclipse.jsexecution.exceptions.ScriptException;
 import net.bioclipse.jsexecution.execution.helper.ThreadSafeConsoleWrap;
 import net.bioclipse.jsexecution.tools.ScriptingTools;
-import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.CallContext;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -104,8 +104,9 @@ public class ScriptExecution {
             protected IStatus run(IProgressMonitor monitor) {
                 boolean done = true;
 
-                MonitorContainer.getInstance().addMonitor(
-                    SubMonitor.convert(monitor, 100)
+                // job threads are reused, so the context is restored after
+                CallContext previous = CallContext.attach(
+                    CallContext.newRoot(SubMonitor.convert(monitor, 100))
                 );
 
                 monitor.beginTask( "Running JavaScript...",
@@ -126,6 +127,8 @@ public class ScriptExecution {
                         + System.getProperty("line.separator")
                         + " " + traced_e;
                     done = false;
+                } finally {
+                    CallContext.attach(previous);
                 }
 
                 if (done == true)
@@ -13,7 +13,7 @@ import java.util.LinkedList;
 import java.util.Map;
 
 import net.bioclipse.core.util.LogUtils;
-import net.bioclipse.managers.MonitorContainer;
+import net.bioclipse.managers.CallContext;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -138,8 +138,10 @@ public class JsThread extends ScriptingThread {
                         }
                     }
                 }
+                // this thread runs every command, so the context is restored
+                CallContext previous
+                    = CallContext.attach( CallContext.newRoot( monitor[0] ) );
                 try {
-                    MonitorContainer.getInstance().addMonitor(monitor[0]);
                     result[0] = js.eval( nextAction.getCommand() );
                     if (result[0] instanceof String) {
                         String s = (String)result[0];
@@ -153,6 +155,9 @@ public class JsThread extends ScriptingThread {
                     LogUtils.debugTrace(logger, e);
                     result[0] = e;
                 }
+                finally {
+                    CallContext.attach( previous );
+                }
                 synchronized ( jsRunning ) {
                     jsRunning[0] = false;
                     jsRunning.notifyAll();
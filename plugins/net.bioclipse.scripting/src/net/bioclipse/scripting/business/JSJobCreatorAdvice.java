@@ -13,6 +13,8 @@ package net.bioclipse.scripting.business;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.managers.MonitorContainer;
@@ -33,13 +35,19 @@ import org.eclipse.core.runtime.SubProgressMonitor;
  */
 public class JSJobCreatorAdvice implements IJSJobCreatorAdvice {
 
+    private static final ConcurrentMap<Method, Target> targets 
+        = new ConcurrentHashMap<Method, Target>();
+
     public Object invoke( MethodInvocation invocation ) throws Throwable {
 
-        Method methodToInvoke = invocation.getMethod();
+        Target target = targets.get( invocation.getMethod() );
+        if ( target == null ) {
+            target = new Target( invocation );
+            targets.putIfAbsent( invocation.getMethod(), target );
+        }
+        
         Object[] args = invocation.getArguments();
-        Method m = findMethodWithMonitor(invocation);
-        if ( m != null) {
-            methodToInvoke = m;
+        if ( target.withMonitor ) {
             /*
              * Setup args array
              */
@@ -64,29 +72,60 @@ public class JSJobCreatorAdvice implements IJSJobCreatorAdvice {
                               invocation.getArguments().length );
 
         }
-        else {
-            m = findMethodWithCorrespondingIFile(invocation);
-            if ( m != null ) {
-                methodToInvoke = m;
-            }
-        }
 
         /*
          * Then substitute from String to IFile where suitable
          */
-        for ( int i = 0; i < args.length; i++ ) {
-            Object arg = args[i];
-            if ( arg instanceof String &&
-                 methodToInvoke
-                     .getParameterTypes()[i] == IFile.class ) {
-                 
-                args[i] = ResourcePathTransformer
-                          .getInstance()
-                          .transform( (String) arg );
+        if ( target.convertsFiles ) {
+            for ( int i = 0; i < args.length; i++ ) {
+                Object arg = args[i];
+                if ( arg instanceof String && target.fileParameters[i] ) {
+                    args[i] = ResourcePathTransformer
+                              .getInstance()
+                              .transform( (String) arg );
+                }
             }
         }
         
-        return methodToInvoke.invoke( invocation.getThis(), args ); 
+        return target.method.invoke( invocation.getThis(), args ); 
+    }
+
+    /**
+     * The method to invoke for a called method, looked up the first time 
+     * the called method is invoked.
+     */
+    private class Target {
+        
+        final Method    method;
+        final boolean   withMonitor;
+        final boolean[] fileParameters;
+        final boolean   convertsFiles;
+        
+        Target( MethodInvocation invocation ) {
+            Method m = findMethodWithMonitor( invocation );
+            withMonitor = m != null;
+            if ( m == null ) {
+                m = findMethodWithCorrespondingIFile( invocation );
+            }
+            if ( m == null ) {
+                m = invocation.getMethod();
+            }
+            try {
+                m.setAccessible( true );
+            }
+            catch ( SecurityException e ) {
+                // Fall back to access checked invocation
+            }
+            method = m;
+            Class<?>[] params = m.getParameterTypes();
+            fileParameters = new boolean[params.length];
+            boolean files = false;
+            for ( int i = 0; i < params.length; i++ ) {
+                fileParameters[i] = params[i] == IFile.class;
+                files |= fileParameters[i];
+            }
+            convertsFiles = files;
+        }
     }
 
     private Method 
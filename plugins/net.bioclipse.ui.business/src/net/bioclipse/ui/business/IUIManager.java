@@ -22,6 +22,7 @@ import net.bioclipse.core.TestClasses;
 import net.bioclipse.core.TestMethods;
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.IStringMatrix;
 import net.bioclipse.managers.business.GuiAction;
 import net.bioclipse.managers.business.IBioclipseManager;
 
@@ -192,6 +193,24 @@ public interface IUIManager extends IBioclipseManager {
     public String[] readFileIntoArray(String path) throws BioclipseException;
     public String[] readFileIntoArray(IFile file) throws BioclipseException;
 
+    @Recorded
+    @PublishedMethod( params="String path",
+                      methodSummary="Reads a CSV or TSV file into a matrix, " +
+                          "taking the column names from the first line. " +
+                          "Files larger than a megabyte are not loaded " +
+                          "into memory, their cells are read from the " +
+                          "file when asked for until the matrix is given " +
+                          "to closeTable. Files ending in .csv are comma " +
+                          "separated, others are tab separated." )
+    public IStringMatrix readTable(String path) throws BioclipseException;
+    public IStringMatrix readTable(IFile file) throws BioclipseException;
+
+    @PublishedMethod( params="IStringMatrix matrix",
+                      methodSummary="Lets go of the file read by a matrix " +
+                          "from readTable. Does nothing for a matrix held " +
+                          "in memory." )
+    public void closeTable(IStringMatrix matrix);
+
     @Recorded
     @PublishedMethod(
         params="String type, IContentType contentType",
@@ -17,6 +17,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -24,6 +25,9 @@ import java.util.Map;
 
 import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IBioObject;
+import net.bioclipse.core.domain.ColumnarStringMatrix;
+import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.core.domain.MappedStringMatrix;
 import net.bioclipse.managers.business.IBioclipseManager;
 import net.bioclipse.scripting.ui.Activator;
 import net.bioclipse.scripting.ui.business.IJsConsoleManager;
@@ -79,6 +83,9 @@ public class UIManager implements IBioclipseManager {
 
     private static final String NAVIGATOR_ID = "net.bioclipse.navigator";
 
+    // tables up to this size are read into memory by readTable
+    private static final long IN_MEMORY_TABLE_BYTES = 1024 * 1024;
+
     private static final Logger logger = Logger.getLogger(UIManager.class);
 
     public String getManagerName() {
@@ -538,6 +545,59 @@ public class UIManager implements IBioclipseManager {
         }
     }
 
+    /**
+     * Read a CSV or TSV file into a matrix. Small files are read into memory,
+     * larger ones are read in place and should be given to
+     * {@link #closeTable(IStringMatrix)} when done with.
+     * @param file IFile to read from
+     * @return IStringMatrix with the column names of the first line
+     * @throws BioclipseException
+     */
+    public IStringMatrix readTable(IFile file) throws BioclipseException{
+        if (!file.exists()) throw new BioclipseException("File '"
+                                         + file.getName() + "' does not exit.");
+        if (file.getLocation() == null)
+            throw new BioclipseException("File '" + file.getName()
+                                         + "' is not a local file.");
+
+        char separator = "csv".equalsIgnoreCase( file.getFileExtension() )
+                         ? ',' : '\t';
+        MappedStringMatrix matrix;
+        try {
+            matrix = new MappedStringMatrix( file.getLocation().toFile(),
+                                             separator, true,
+                                             Charset.forName(
+                                                 file.getCharset() ) );
+        } catch ( CoreException e ) {
+            throw new BioclipseException("Error opening/reading file: "
+                                         + file.getName(), e);
+        } catch ( IOException e ) {
+            throw new BioclipseException("Error opening/reading file: "
+                                         + file.getName(), e);
+        } catch ( IllegalArgumentException e ) {
+            throw new BioclipseException("Can not read file '"
+                                         + file.getName() + "': "
+                                         + e.getMessage(), e);
+        }
+        if ( matrix.getFile().length() > IN_MEMORY_TABLE_BYTES ) {
+            return matrix;
+        }
+        try {
+            return ColumnarStringMatrix.copyOf( matrix );
+        } catch ( IllegalStateException e ) {
+            throw new BioclipseException("Error reading file: "
+                                         + file.getName() + ": "
+                                         + e.getMessage(), e);
+        } finally {
+            matrix.close();
+        }
+    }
+
+    public void closeTable(IStringMatrix matrix) {
+        if (matrix instanceof MappedStringMatrix)
+            ((MappedStringMatrix) matrix).close();
+    }
+
     public boolean isContentType(String type, IContentType contentType)
         throws BioclipseException {
         if (type == null || contentType == null) return false;
@@ -18,6 +18,8 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
+import net.bioclipse.core.BioclipseStore;
+import net.bioclipse.core.ModelDiskCache;
 import net.bioclipse.core.util.ListFuncs;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.core.util.Predicate;
@@ -122,7 +124,37 @@ public class Activator extends BioclipseActivator {
         System.setProperty( "eclipse.buildId", 
                             context.getBundle().getVersion().toString() );
 //        initBioclipseCache();
-        
+        initModelCache();
+    }
+
+    @Override
+    public void stop(BundleContext context) throws Exception {
+        ModelDiskCache disk = BioclipseStore.instance.getDiskCache();
+        if (disk != null) {
+            BioclipseStore.instance.setDiskCache(null);
+            disk.close(5000);
+        }
+        super.stop(context);
+    }
+
+    /*
+     * Lets parsed models survive restarts by keeping them in the cache dir
+     */
+    private void initModelCache() {
+        try {
+            File folder = BioclipseCache.getCacheDir();
+            if (folder == null) {
+                logger.info("No cache dir, parsed models are not kept "
+                            + "on disk.");
+                return;
+            }
+            BioclipseStore.instance.setDiskCache(
+                new ModelDiskCache(new File(folder, "models"),
+                                   ModelDiskCache.DEFAULT_QUOTA));
+        } catch (Exception e) {
+            logger.info("Could not keep parsed models on disk: "
+                        + e.getMessage());
+        }
     }
 
 
@@ -8,6 +8,7 @@ import java.util.List;
 import net.bioclipse.core.ResourcePathTransformer;
 import net.bioclipse.core.util.LogUtils;
 import net.bioclipse.jobs.BioclipseJob;
+import net.bioclipse.jobs.BioclipseJobScheduler;
 import net.bioclipse.jobs.BioclipseUIJob;
 import net.bioclipse.managers.business.IBioclipseManager;
 
@@ -75,7 +76,7 @@ public class CreateJobAdvice implements ICreateJobAdvice {
             job.setUser( true );
         }
 
-        job.schedule();
+        BioclipseJobScheduler.getInstance().schedule( job );
 
         return null;
     }
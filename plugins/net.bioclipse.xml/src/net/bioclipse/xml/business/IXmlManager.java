@@ -17,6 +17,7 @@ import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.TestClasses;
 import net.bioclipse.core.TestMethods;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.managers.business.Memoized;
 
 @PublishedClass(
     value="Manager to analyze and validate XML documents."
@@ -30,6 +31,7 @@ public interface IXmlManager extends IBioclipseManager {
         params="String filename"
     )
     @TestMethods("testIsWellFormed")
+    @Memoized
     public boolean isWellFormed(String filename);
 
     @PublishedMethod(
@@ -53,6 +55,7 @@ public interface IXmlManager extends IBioclipseManager {
         params="String filename"
     )
     @TestMethods("testListNamespaces")
+    @Memoized
     public List<String> listNamespaces(String filename);
 
     @PublishedMethod(
@@ -61,6 +64,7 @@ public interface IXmlManager extends IBioclipseManager {
         params="String filename, String schematronFilename"
     )
     @TestMethods("testValidateAgainstSchematron")
+    @Memoized
     public List<XMLError> validateAgainstSchematron(
         String filename,
         String schematronFilename
@@ -72,6 +76,7 @@ public interface IXmlManager extends IBioclipseManager {
         params="String filename, String relaxngFilename"
     )
     @TestMethods("testValidateAgainstRelaxNG")
+    @Memoized
     public List<XMLError> validateAgainstRelaxNG(
         String filename,
         String relaxngFilename
@@ -83,6 +88,7 @@ public interface IXmlManager extends IBioclipseManager {
         params="String filename, String xmlSchemaFilename"
     )
     @TestMethods("testValidateAgainstXMLSchema")
+    @Memoized
     public List<XMLError> validateAgainstXMLSchema(
         String filename,
         String xmlSchemaFilename